@@ -0,0 +1,47 @@
+package com.hs.bench;
+
+import com.hs.dto.OrderIn;
+
+/**
+ * Payloads realistas (tomados de respuestas de /v1/orders en sandbox) usados
+ * por los benchmarks.
+ */
+final class BenchData {
+
+    // Respuesta de createOrder (201) con qr_data
+    static final String CREATED = "{\"id\":\"ORD01JQ4S4KY8HWQ6NA5PXB65B3D3\",\"type\":\"qr\",\"processing_mode\":\"automatic\","
+            + "\"external_reference\":\"REF-000123\",\"description\":\"Venta mostrador\",\"total_amount\":\"54.00\","
+            + "\"country_code\":\"ARG\",\"user_id\":\"2021490191\",\"status\":\"created\",\"status_detail\":\"created\","
+            + "\"currency\":\"ARS\",\"created_date\":\"2025-03-25T12:01:12.529Z\",\"last_updated_date\":\"2025-03-25T12:01:12.529Z\","
+            + "\"integration_data\":{\"application_id\":\"8464617380385447\"},"
+            + "\"transactions\":{\"payments\":[{\"id\":\"PAY01JQ4S4KY8HWQ6NA5PXB6HRXYP\",\"amount\":\"54.00\",\"status\":\"created\"}]},"
+            + "\"config\":{\"qr\":{\"external_pos_id\":\"POS001\",\"mode\":\"dynamic\"}},"
+            + "\"items\":[{\"title\":\"Item\",\"unit_price\":\"54.00\",\"quantity\":1,\"unit_measure\":\"unidad\"}],"
+            + "\"type_response\":{\"qr_data\":\"00020101021243650016COM.MERCADOLIBRE02013063638f1192a-5fd1-4180-a180-8bcae3556bc35204000053039865802BR5925IZABEL AAAA DE MELO6007BARUERI62070503***63040B6D\"}}";
+
+    // Orden cobrada (GET) con medio de pago y referencia completa
+    static final String PROCESSED = "{\"id\":\"ORD01JQ4S4KY8HWQ6NA5PXB65B3D3\",\"type\":\"qr\",\"processing_mode\":\"automatic\","
+            + "\"external_reference\":\"REF-000123\",\"description\":\"Venta mostrador\",\"total_amount\":\"54.00\","
+            + "\"total_paid_amount\":\"54.00\",\"country_code\":\"ARG\",\"user_id\":\"2021490191\",\"status\":\"processed\","
+            + "\"status_detail\":\"accredited\",\"currency\":\"ARS\",\"created_date\":\"2025-03-25T12:01:12.529Z\","
+            + "\"last_updated_date\":\"2025-03-25T12:02:40.110Z\",\"integration_data\":{\"application_id\":\"8464617380385447\"},"
+            + "\"transactions\":{\"payments\":[{\"id\":\"PAY01JQ4S4KY8HWQ6NA5PXB6HRXYP\",\"amount\":\"54.00\",\"paid_amount\":\"54.00\","
+            + "\"status\":\"processed\",\"status_detail\":\"accredited\",\"reference\":{\"id\":\"106293735522\"},"
+            + "\"payment_method\":{\"id\":\"account_money\",\"type\":\"account_money\",\"installments\":1}}]},"
+            + "\"config\":{\"qr\":{\"external_pos_id\":\"POS001\",\"mode\":\"dynamic\"}},"
+            + "\"items\":[{\"title\":\"Item\",\"unit_price\":\"54.00\",\"quantity\":1,\"unit_measure\":\"unidad\",\"external_code\":\"SKU-1\"}]}";
+
+    private BenchData() {
+    }
+
+    static OrderIn order() {
+        OrderIn in = new OrderIn();
+        in.externalReference = "REF-000123";
+        in.externalPosId = "POS001";
+        in.totalAmount = "54.00";
+        in.description = "Venta mostrador";
+        in.mode = "dynamic";
+        in.idempotencyKey = "REF-000123";
+        return in;
+    }
+}
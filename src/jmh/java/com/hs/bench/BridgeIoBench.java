@@ -0,0 +1,56 @@
+package com.hs.bench;
+
+import com.hs.bridge.MpBridgeActions;
+import com.hs.dto.MpResult;
+import com.hs.log.MpLogFormat;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Lado ISCOBOL del puente: valores de salida (MpBridgeActions.outputs) y formato de log
+ * (sanitize / logLarge de MP_QR_HIBRIDO).
+ *
+ * El set() sobre CobolVar lo implementa el runtime ISCOBOL y queda fuera.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BridgeIoBench {
+
+    private MpResult result;
+    private String rawMultiline;
+
+    @Setup
+    public void setup() {
+        result = MpResult.ok();
+        result.id = "ORD01JQ4S4KY8HWQ6NA5PXB65B3D3";
+        result.status = "processed";
+        result.paymentId = "PAY01JQ4S4KY8HWQ6NA5PXB6HRXYP";
+        result.qrData = "00020101021243650016COM.MERCADOLIBRE0201306363";
+        result.rawJson = BenchData.PROCESSED;
+        rawMultiline = BenchData.PROCESSED.replace(",", ",\r\n  ");
+    }
+
+    @Benchmark
+    public String[] outValues() {
+        return MpBridgeActions.outputs(result);
+    }
+
+    @Benchmark
+    public String sanitizeShort() {
+        return MpLogFormat.sanitize("  REF-000123\r\n", 80);
+    }
+
+    @Benchmark
+    public String sanitizeRaw() {
+        return MpLogFormat.sanitize(rawMultiline, 0);
+    }
+
+    @Benchmark
+    public String logLarge() {
+        return MpLogFormat.large("raw_json", MpLogFormat.sanitize(rawMultiline, 0));
+    }
+}
@@ -0,0 +1,62 @@
+package com.hs.bench;
+
+import com.hs.config.MpConfig;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Costo de obtener la configuración por llamada: load() / forPath() con la
+ * caché caliente (camino normal) y el parseo completo de un snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConfigBench {
+
+    private File file;
+    private Properties props;
+
+    @Setup
+    public void setup() throws Exception {
+        props = new Properties();
+        props.setProperty("mp.etapa", "test");
+        props.setProperty("mp.accessTokenTest", "TEST-bench");
+        props.setProperty("mp.baseUrl", "https://api.mercadopago.com");
+        props.setProperty("mp.endpoint.createOrder", "/v1/orders");
+        props.setProperty("mp.endpoint.getOrder", "/v1/orders/%s");
+        props.setProperty("mp.timeout.socket.createOrder", "30000");
+        file = File.createTempFile("mp-bench", ".properties");
+        try (OutputStream out = new FileOutputStream(file)) {
+            props.store(out, null);
+        }
+        System.setProperty("mp.config", file.getAbsolutePath());
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.clearProperty("mp.config");
+        file.delete();
+    }
+
+    @Benchmark
+    public MpConfig load() {
+        return MpConfig.load();
+    }
+
+    @Benchmark
+    public MpConfig forPath() {
+        return MpConfig.forPath(file.getAbsolutePath());
+    }
+
+    @Benchmark
+    public MpConfig fromProperties() {
+        return MpConfig.fromProperties(props);
+    }
+}
@@ -0,0 +1,117 @@
+package com.hs.bench;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.http.MpHttp;
+import com.hs.json.MpOrderBodyWriter;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * createOrder completo (validación + body + parseo) con MpHttp stub: mide
+ * solo el costo propio del puente, sin red.
+ *
+ * orderBodyGsonTree es la línea de base: el body armado con árbol Gson como
+ * lo hacía MpBridgeCore antes de MpOrderBodyWriter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CreateOrderBench {
+
+    private final Gson gson = new Gson();
+    private MpBridgeCore core;
+    private OrderIn in;
+
+    @Setup
+    public void setup() {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-bench");
+        MpHttp http = new MpHttp() {
+            @Override
+            public MpHttpResponse get(String endpoint) {
+                return new MpHttpResponse(200, BenchData.PROCESSED);
+            }
+
+            @Override
+            public MpHttpResponse postJson(String endpoint, String jsonBody, String idempotencyKey) {
+                return new MpHttpResponse(201, BenchData.CREATED);
+            }
+        };
+        core = new MpBridgeCore(MpConfig.fromProperties(p), http);
+        in = BenchData.order();
+    }
+
+    @Benchmark
+    public MpResult createOrder() {
+        return core.createOrder(in);
+    }
+
+    @Benchmark
+    public String orderBody() {
+        return MpOrderBodyWriter.write(in);
+    }
+
+    @Benchmark
+    public String orderBodyGsonTree() {
+        String mode = isBlank(in.mode) ? "dynamic" : in.mode.trim();
+        String unitMeasure = isBlank(in.unitMeasure) ? "unidad" : in.unitMeasure.trim();
+        String itemTitle = isBlank(in.itemTitle) ? "Item" : in.itemTitle.trim();
+
+        JsonObject body = new JsonObject();
+        body.addProperty("type", "qr");
+        body.addProperty("total_amount", in.totalAmount.trim());
+        body.addProperty("description", in.description == null ? "" : in.description);
+        body.addProperty("external_reference", in.externalReference.trim());
+        if (!isBlank(in.expirationTime)) {
+            body.addProperty("expiration_time", in.expirationTime.trim());
+        }
+
+        JsonObject cfgNode = new JsonObject();
+        JsonObject qr = new JsonObject();
+        qr.addProperty("external_pos_id", in.externalPosId.trim());
+        qr.addProperty("mode", mode);
+        cfgNode.add("qr", qr);
+        body.add("config", cfgNode);
+
+        JsonObject transactions = new JsonObject();
+        JsonArray payments = new JsonArray();
+        JsonObject p0 = new JsonObject();
+        p0.addProperty("amount", in.totalAmount.trim());
+        payments.add(p0);
+        transactions.add("payments", payments);
+        body.add("transactions", transactions);
+
+        JsonArray items = new JsonArray();
+        JsonObject it = new JsonObject();
+        it.addProperty("title", itemTitle);
+        it.addProperty("unit_price", in.totalAmount.trim());
+        it.addProperty("quantity", 1);
+        it.addProperty("unit_measure", unitMeasure);
+        if (!isBlank(in.externalCode)) {
+            it.addProperty("external_code", in.externalCode.trim());
+        }
+        items.add(it);
+        body.add("items", items);
+
+        return gson.toJson(body);
+    }
+
+    @Benchmark
+    public MpResult getOrder() {
+        return core.getOrder("ORD01JQ4S4KY8HWQ6NA5PXB65B3D3");
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
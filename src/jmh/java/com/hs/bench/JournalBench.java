@@ -0,0 +1,54 @@
+package com.hs.bench;
+
+import com.hs.dto.OrderIn;
+import com.hs.journal.MpJournal;
+import com.hs.json.MpOrderBodyWriter;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Costo del journal en el camino caliente: intención + resultado de un
+ * createOrder, con fsync agrupado (default) y con fsync por registro.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JournalBench {
+
+    @Param({"50", "0"})
+    public long syncMs;
+
+    private File dir;
+    private MpJournal journal;
+    private String body;
+    private long n;
+
+    @Setup
+    public void setup() throws Exception {
+        dir = Files.createTempDirectory("mp-journal-bench").toFile();
+        journal = MpJournal.open(new File(dir, "bench.journal"), 4096 * 1024, syncMs);
+        OrderIn in = BenchData.order();
+        body = MpOrderBodyWriter.write(in);
+    }
+
+    @TearDown
+    public void tearDown() {
+        journal.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public long intentAndOutcome() {
+        long seq = journal.intent("createOrder", "/v1/orders", "REF-" + (n++), body);
+        journal.outcome(seq, 201, "res=0 id=ORD-1");
+        return seq;
+    }
+}
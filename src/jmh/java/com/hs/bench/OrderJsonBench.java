@@ -0,0 +1,98 @@
+package com.hs.bench;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hs.json.MpOrderFields;
+import com.hs.json.MpOrderJsonReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Extracción de campos (id, status, payment, qr_data) sobre respuestas reales
+ * de órdenes.
+ *
+ * treeExtract es la línea de base: árbol JsonParser + el recorrido que hacía
+ * MpBridgeCore antes de MpOrderJsonReader (extractPaymentInfo, extractQrData,
+ * getJsonStr). Correr con -prof gc para comparar gc.alloc.rate.norm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderJsonBench {
+
+    @Param({"created", "processed"})
+    public String payload;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        json = "created".equals(payload) ? BenchData.CREATED : BenchData.PROCESSED;
+    }
+
+    @Benchmark
+    public MpOrderFields extract() {
+        return MpOrderJsonReader.read(json);
+    }
+
+    @Benchmark
+    public MpOrderFields treeExtract() {
+        MpOrderFields f = new MpOrderFields();
+        JsonObject mp = safeObj(json);
+        f.id = getJsonStr(mp, "id");
+        f.status = getJsonStr(mp, "status");
+        f.statusDetail = getJsonStr(mp, "status_detail");
+        try {
+            JsonObject transactions = obj(mp.get("transactions"));
+            JsonArray payments = arr(transactions == null ? null : transactions.get("payments"));
+            if (payments != null && payments.size() > 0) {
+                JsonObject p0 = obj(payments.get(0));
+                f.paymentId = getJsonStr(p0, "id");
+                f.paymentStatus = getJsonStr(p0, "status");
+            }
+        } catch (Exception ignored) {
+        }
+        try {
+            f.qrData = getJsonStr(obj(mp.get("type_response")), "qr_data");
+        } catch (Exception ignored) {
+        }
+        return f;
+    }
+
+    private static JsonObject safeObj(String json) {
+        try {
+            JsonElement e = JsonParser.parseString(json);
+            return e.isJsonObject() ? e.getAsJsonObject() : new JsonObject();
+        } catch (Exception e) {
+            return new JsonObject();
+        }
+    }
+
+    private static JsonObject obj(JsonElement e) {
+        return (e != null && e.isJsonObject()) ? e.getAsJsonObject() : null;
+    }
+
+    private static JsonArray arr(JsonElement e) {
+        return (e != null && e.isJsonArray()) ? e.getAsJsonArray() : null;
+    }
+
+    private static String getJsonStr(JsonObject o, String k) {
+        try {
+            if (o == null || k == null) {
+                return "";
+            }
+            JsonElement e = o.get(k);
+            if (e == null || e.isJsonNull()) {
+                return "";
+            }
+            return e.getAsString();
+        } catch (Exception ex) {
+            return "";
+        }
+    }
+}
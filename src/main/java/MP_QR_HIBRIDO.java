@@ -1,18 +1,16 @@
 
-import com.google.gson.JsonObject;
-import com.hs.bridge.MpOutWriter;
+import com.hs.bridge.MpBridgeActions;
 import com.hs.config.MpConfig;
-import com.hs.core.MpBridgeCore;
+import com.hs.daemon.MpDaemonClient;
 import com.hs.dto.MpResult;
+import com.hs.log.MpLog;
+import com.hs.log.MpLogFormat;
 import com.iscobol.rts.IscobolCall;
 import com.iscobol.types.CobolVar;
 import com.iscobol.types.NumericVar;
-import java.io.File;
-import java.util.logging.FileHandler;
-import java.util.logging.Handler;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.logging.SimpleFormatter;
 
 /**
  * Puente ISCOBOL -> MercadoPago QR híbrido.
@@ -22,6 +20,16 @@ import java.util.logging.SimpleFormatter;
  *
  * ACCION (argv[0]): "O" Crear Orden QR "Q" Consultar Orden "C" Cancelar Orden
  * "R" Refund "S" Crear Store "P" Crear POS "LS" Buscar Stores "LP" Buscar POS
+ * "W" Esperar estado final de la orden (argv[1] order_id, argv[5] espera
+ * máxima en segundos o ISO-8601, ej: PT2M) "LK" Id de MP desde el registro en
+ * memoria (argv[21] pos_external_id, si no argv[13] store_external_id, si no
+ * argv[12] store_name; argv[28] id, argv[30] "store"/"pos") "WU" Warm-up al
+ * abrir la caja: clases, DNS y conexiones a MP (argv[27] resumen con el
+ * tiempo, argv[32] detalle JSON)
+ *
+ * Las acciones viven en com.hs.bridge.MpBridgeActions. Con mp.daemon.address
+ * este CALL solo reenvía las 26 entradas al daemon (com.hs.daemon.MpDaemon) y
+ * copia las 7 salidas; si el daemon no atiende se ejecuta en proceso.
  *
  * SALIDAS (siempre): argv[26] resultado (0 OK, !=0 ERROR) argv[27] msg argv[28]
  * id relevante (order_id / store_id / pos_id según acción) argv[29] qr_data (si
@@ -30,8 +38,7 @@ import java.util.logging.SimpleFormatter;
  */
 public class MP_QR_HIBRIDO implements IscobolCall {
 
-    private Logger logger;        // logger por llamada
-    private FileHandler fh;       // handler por llamada (se cierra siempre)
+    private Logger logger;        // logger único de la JVM (handler asincrónico)
 
     // IN
     private static final int I_ACCION = 0;
@@ -77,7 +84,6 @@ public class MP_QR_HIBRIDO implements IscobolCall {
     private static final int O_RAW = 32;
 
     // Alias semánticos (mismo índice, no cambia contrato)
-    private static final int I_ORDER_ID = I_EXT_REF;       // Q/C/R usan argv[1]
     private static final int I_IDEMPOTENCY = I_IDEM;
 
     @Override
@@ -90,74 +96,31 @@ public class MP_QR_HIBRIDO implements IscobolCall {
     }
 
     public CobolVar call(CobolVar[] argv) {
-        int resultado;
-
-        // logger por llamada (evita locks)
-        initLoggerPerCall();
+        // logger compartido: publicar solo encola, no abre archivos
+        initLogger();
 
         try {
-            String accion = nvl(getStr(argv, I_ACCION)).toUpperCase();
-
             logInputsCompact(argv);
 
-            switch (accion) {
-                case "O":
-                    logger.info("---> CREATE_ORDER (O)");
-                    resultado = createOrder(argv);
-                    break;
-
-                case "Q":
-                    logger.info("---> GET_ORDER (Q)");
-                    resultado = getOrder(argv);
-                    break;
-
-                case "C":
-                    logger.info("---> CANCEL_ORDER (C)");
-                    resultado = cancelOrder(argv);
-                    break;
-
-                case "R":
-                    logger.info("---> REFUND_ORDER (R)");
-                    resultado = refundOrder(argv);
-                    break;
-
-                case "S":
-                    logger.info("---> CREATE_STORE (S)");
-                    resultado = createStore(argv);
-                    break;
-
-                case "P":
-                    logger.info("---> CREATE_POS (P)");
-                    resultado = createPos(argv);
-                    break;
-
-                case "LS":
-                    logger.info("---> SEARCH_STORES (LS)");
-                    resultado = searchStores(argv);
-                    break;
-
-                case "LP":
-                    logger.info("---> SEARCH_POS (LP)");
-                    resultado = searchPos(argv);
-                    break;
-
-                default:
-                    logger.warning("---> Accion invalida: " + accion);
-                    fail(argv, 8, "Acción inválida: " + accion);
-                    resultado = 8;
-                    break;
+            String[] in = inputs(argv);
+            String[] out = viaDaemon(in);
+            if (out == null) {
+                // en proceso: misma ejecución que hace el daemon
+                out = MpBridgeActions.outputs(MpBridgeActions.run(in, null, logger), argv.length - O_RES);
+            }
+            for (int i = 0; i < out.length && i < MpBridgeActions.OUT_FIELDS; i++) {
+                setOut(argv, O_RES + i, out[i]);
             }
 
         } catch (Exception e) {
             safeLog(Level.SEVERE, "Excepción general", e);
             fail(argv, 9, "Excepción: " + e.getMessage());
         } finally {
-            // SIEMPRE loguear salidas + cerrar handler (libera lock)
+            // SIEMPRE loguear salidas
             try {
                 logOutputsCompact(argv);
             } catch (Exception ignored) {
             }
-            closeLoggerPerCall();
         }
 
         // devolver resultado (lo que ya escribiste en argv[26] manda)
@@ -165,192 +128,62 @@ public class MP_QR_HIBRIDO implements IscobolCall {
         return NumericVar.literal(res, false);
     }
 
-    // ======= CORE FACTORY =======
-    private MpBridgeCore core(CobolVar[] argv) {
-        String pathProperties = getStr(argv, I_PATH);
-        if (!isBlank(pathProperties)) {
-            System.setProperty("mp.config", pathProperties);
+    private String[] inputs(CobolVar[] argv) {
+        String[] in = new String[MpBridgeActions.IN_FIELDS];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = getStr(argv, i);
         }
-
-        MpConfig cfg = MpConfig.load();
-
-        return new MpBridgeCore(cfg, logger);
-    }
-
-    // ======= ACCIONES (todas delegadas al core) =======
-    private int createOrder(CobolVar[] argv) {
-        com.hs.dto.OrderIn in = new com.hs.dto.OrderIn();
-        in.externalReference = getStr(argv, I_EXT_REF);
-        in.description = getStr(argv, I_DESC);
-        in.externalPosId = getStr(argv, I_EXT_POS);
-        in.mode = getStr(argv, I_MODO);
-        in.expirationTime = getStr(argv, I_EXP);
-        in.totalAmount = getStr(argv, I_TOTAL);
-        in.unitMeasure = getStr(argv, I_UNIT);
-        in.itemTitle = getStr(argv, I_ITEM);
-        in.externalCode = getStr(argv, I_EXT_CODE);
-        in.idempotencyKey = getStr(argv, I_IDEMPOTENCY);
-
-        MpResult r = core(argv).createOrder(in);
-        MpOutWriter.write(argv, r);
-        return 0;
+        return in;
     }
 
-    private int getOrder(CobolVar[] argv) {
-        String orderId = getStr(argv, I_ORDER_ID);
-
-        MpResult r = core(argv).getOrder(orderId);
-        if (r != null && isBlank(r.id)) {
-            r.id = orderId;
+    // ======= DAEMON =======
+    /**
+     * Con mp.daemon.address el CALL solo reenvía las entradas. null = se
+     * ejecuta en este proceso (sin daemon, o daemon caído antes de recibir el
+     * pedido y mp.daemon.fallback=true).
+     */
+    private String[] viaDaemon(String[] in) {
+        MpConfig cfg;
+        MpDaemonClient client;
+        try {
+            cfg = MpBridgeActions.config(in, null);
+        } catch (RuntimeException e) {
+            return null; // sin config: que la ejecución local informe el error
         }
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int cancelOrder(CobolVar[] argv) {
-        String orderId = getStr(argv, I_ORDER_ID);
-        String idem = getStr(argv, I_IDEMPOTENCY);
-
-        MpResult r = core(argv).cancelOrder(orderId, idem);
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int refundOrder(CobolVar[] argv) {
-        String orderId = getStr(argv, I_ORDER_ID);
-        String idem = getStr(argv, I_IDEMPOTENCY);
-
-        MpResult r = core(argv).refundOrder(orderId, idem);
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int createStore(CobolVar[] argv) {
-        com.hs.dto.StoreIn in = new com.hs.dto.StoreIn();
-        in.name = getStr(argv, I_STORE_NAME);
-        in.externalId = getStr(argv, I_STORE_EXTID);
-        in.street = getStr(argv, I_STORE_STREET);
-        in.streetNumber = getStr(argv, I_STORE_STREETNRO);
-        in.city = getStr(argv, I_STORE_CITY);
-        in.state = getStr(argv, I_STORE_STATE);
-        in.latitude = getStr(argv, I_STORE_LAT);
-        in.longitude = getStr(argv, I_STORE_LON);
-        in.idempotencyKey = getStr(argv, I_IDEMPOTENCY);
-
-        MpResult r = core(argv).createStore(in);
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int createPos(CobolVar[] argv) {
-        com.hs.dto.PosIn in = new com.hs.dto.PosIn();
-        in.name = getStr(argv, I_POS_NAME);
-        in.externalId = getStr(argv, I_POS_EXTID);
-
-        String storeIdStr = getStr(argv, I_POS_STOREID);
         try {
-            in.storeId = Long.parseLong(nvl(storeIdStr).trim());
-        } catch (Exception e) {
-            MpOutWriter.write(argv, MpResult.error(4, "store_id debe ser numérico"));
-            return 0;
+            client = MpDaemonClient.forConfig(cfg);
+        } catch (RuntimeException e) {
+            logger.warning(e.getMessage() + " -> se ejecuta en proceso"); // sin secreto no se habla con el daemon
+            return null;
+        }
+        if (client == null) {
+            return null;
+        }
+        try {
+            return client.call(in);
+        } catch (MpDaemonClient.Unavailable e) {
+            if (cfg.getBoolean("mp.daemon.fallback", true)) {
+                logger.warning(e.getMessage() + " -> se ejecuta en proceso");
+                return null;
+            }
+            return MpBridgeActions.outputs(MpResult.error(4, e.getMessage()));
+        } catch (IOException e) {
+            // el pedido pudo haber llegado: no se repite acá (O/C/R saldrían dos veces)
+            return MpBridgeActions.outputs(MpResult.error(4, "Daemon MP sin respuesta (reintentar con la misma "
+                    + "idempotency_key): " + e.getMessage()));
         }
-
-        in.idempotencyKey = getStr(argv, I_IDEMPOTENCY);
-
-        MpResult r = core(argv).createPos(in);
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int searchStores(CobolVar[] argv) {
-        com.hs.dto.SearchIn in = new com.hs.dto.SearchIn();
-        in.limit = parseIntDef(getStr(argv, I_LIMIT), 50);
-        in.offset = parseIntDef(getStr(argv, I_OFFSET), 0);
-        in.filterExternalId = getStr(argv, I_FILTER_EXTID);
-
-        MpResult r = core(argv).searchStores(in);
-        MpOutWriter.write(argv, r);
-        return 0;
-    }
-
-    private int searchPos(CobolVar[] argv) {
-        com.hs.dto.SearchIn in = new com.hs.dto.SearchIn();
-        in.limit = parseIntDef(getStr(argv, I_LIMIT), 50);
-        in.offset = parseIntDef(getStr(argv, I_OFFSET), 0);
-        in.filterExternalId = getStr(argv, I_FILTER_EXTID);
-
-        MpResult r = core(argv).searchPos(in);
-        MpOutWriter.write(argv, r);
-        return 0;
     }
 
     // ======= LOGGING =======
-    private void initLoggerPerCall() {
+    private void initLogger() {
         try {
-            logger = Logger.getLogger("MP_QR_HIBRIDO_CALL");
-            logger.setUseParentHandlers(false);
-            logger.setLevel(Level.INFO);
-
-            // Por si la JVM reutiliza el logger: limpiar handlers previos
-            removeAndCloseHandlers(logger);
-
-            String dir = "C:\\A2JTMP";
-            new File(dir).mkdirs();
-
-            String file = dir + "\\MP_QR_HIBRIDO.log";
-            fh = new FileHandler(file, true);
-            fh.setEncoding("UTF-8");
-            fh.setFormatter(new SimpleFormatter());
-            fh.setLevel(Level.INFO);
-
-            logger.addHandler(fh);
+            logger = MpLog.bridgeLogger();
         } catch (Exception e) {
             // No romper la operación si falla el log
             logger = Logger.getLogger("MP_QR_HIBRIDO_FALLBACK");
         }
     }
 
-    private void closeLoggerPerCall() {
-        try {
-            if (fh != null) {
-                try {
-                    fh.flush();
-                } catch (Exception ignored) {
-                }
-                try {
-                    logger.removeHandler(fh);
-                } catch (Exception ignored) {
-                }
-                try {
-                    fh.close();
-                } catch (Exception ignored) {
-                }
-            }
-        } finally {
-            fh = null;
-        }
-    }
-
-    private void removeAndCloseHandlers(Logger log) {
-        if (log == null) {
-            return;
-        }
-        for (Handler h : log.getHandlers()) {
-            try {
-                h.flush();
-            } catch (Exception ignored) {
-            }
-            try {
-                h.close();
-            } catch (Exception ignored) {
-            }
-            try {
-                log.removeHandler(h);
-            } catch (Exception ignored) {
-            }
-        }
-    }
-
     private void safeLog(Level level, String msg, Throwable t) {
         try {
             if (logger != null) {
@@ -417,32 +250,11 @@ public class MP_QR_HIBRIDO implements IscobolCall {
 
 // ======= HELPERS =======
 private String sanitize(String s, int max) {
-        if (s == null) {
-            return "";
-        }
-        String x = s.replace('\r', ' ').replace('\n', ' ').trim();
-        if (max > 0 && x.length() > max) {
-            return x.substring(0, max) + "...";
-        }
-        return x;
+        return MpLogFormat.sanitize(s, max);
     }
 
-    
     private void logLarge(String label, String text) {
-        if (text == null) {
-            logger.info(label + "=<null>");
-            return;
-        }
-        final int CHUNK = 500;
-        int len = text.length();
-        if (len == 0) {
-            logger.info(label + "=[]");
-            return;
-        }
-        for (int i = 0; i < len; i += CHUNK) {
-            int end = Math.min(len, i + CHUNK);
-            logger.info(label + "_part[" + i + "-" + end + "]=" + text.substring(i, end));
-        }
+        logger.info(MpLogFormat.large(label, text));
     }
 
 private String getStr(CobolVar[] argv, int idx) {
@@ -478,28 +290,6 @@ private String getStr(CobolVar[] argv, int idx) {
         return code;
     }
 
-    private boolean isBlank(String s) {
-        return s == null || s.trim().isEmpty();
-    }
-
-    private String nvl(String s) {
-        return s == null ? "" : s;
-    }
-
-    private String getJsonStr(JsonObject o, String key) {
-        try {
-            if (o == null || key == null) {
-                return "";
-            }
-            if (!o.has(key) || o.get(key).isJsonNull()) {
-                return "";
-            }
-            return o.get(key).getAsString();
-        } catch (Exception e) {
-            return "";
-        }
-    }
-
     private int parseIntDef(String s, int def) {
         try {
             if (s == null) {
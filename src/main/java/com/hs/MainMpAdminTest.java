@@ -20,11 +20,8 @@ public class MainMpAdminTest {
     public static void main(String[] args) {
         try {
             // 1) Properties: por args[0] o por -Dmp.config
-            if (args != null && args.length > 0 && args[0] != null && !args[0].trim().isEmpty()) {
-                System.setProperty("mp.config", args[0].trim());
-            }
-
-            MpConfig cfg = MpConfig.load();
+            String path = (args != null && args.length > 0) ? args[0] : null;
+            MpConfig cfg = MpConfig.forPath(path);
             MpHttpClient httpClient = new MpHttpClient(cfg);
             MpBridgeCore core = new MpBridgeCore(cfg, Logger.getLogger("MP_ADMIN_TEST"));
 
@@ -103,8 +100,9 @@ public class MainMpAdminTest {
         System.out.println("id=" + r.id);
         System.out.println("status=" + r.status);
         System.out.println("payment_id=" + r.paymentId);
-        if (r.rawJson != null) {
-            String preview = r.rawJson.length() > 800 ? r.rawJson.substring(0, 800) + "..." : r.rawJson;
+        String raw = r.rawJson();
+        if (raw != null) {
+            String preview = raw.length() > 800 ? raw.substring(0, 800) + "..." : raw;
             System.out.println("raw_json=" + preview);
         }
     }
@@ -7,19 +7,28 @@ public class MpBridgeResponse {
     private static final Gson GSON = new Gson();
 
     public static String ok(String message, JsonObject data) {
-        JsonObject out = new JsonObject();
-        out.addProperty("status", "OK");
-        out.addProperty("message", message == null ? "" : message);
-        out.add("data", data == null ? new JsonObject() : data);
-        return GSON.toJson(out);
+        return GSON.toJson(okJson(message, data));
     }
 
     public static String fail(String message) {
+        return GSON.toJson(failJson(message, null));
+    }
+
+    // Mismas respuestas como árbol (el batch les agrega seq/action sin re-parsear)
+    public static JsonObject okJson(String message, JsonObject data) {
+        return build("OK", message, data);
+    }
+
+    public static JsonObject failJson(String message, JsonObject data) {
+        return build("ERROR", message, data);
+    }
+
+    private static JsonObject build(String status, String message, JsonObject data) {
         JsonObject out = new JsonObject();
-        out.addProperty("status", "ERROR");
+        out.addProperty("status", status);
         out.addProperty("message", message == null ? "" : message);
-        out.add("data", new JsonObject());
-        return GSON.toJson(out);
+        out.add("data", data == null ? new JsonObject() : data);
+        return out;
     }
 
     public static String error(String status, String message, Exception ex) {
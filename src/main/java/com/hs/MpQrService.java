@@ -1,30 +1,57 @@
 package com.hs;
 
-import com.hs.http.MpHttpClient;
 import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.dto.PosIn;
+import com.hs.dto.SearchIn;
+import com.hs.dto.StoreIn;
 import com.google.gson.Gson;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
 import java.util.logging.Logger;
 
+/**
+ * Acciones JSON-in / JSON-out (CREATE_ORDER, GET_ORDER...) sobre
+ * MpBridgeCore. Respuesta: {"status":"OK"|"ERROR","message":..,"data":{..}}
+ * con data.res (mismo código que el CALL) y los ids / estado / mp (JSON de
+ * MP).
+ *
+ * Es thread-safe: el batch (com.hs.admin.MpBatch) la usa desde varios hilos.
+ */
 public class MpQrService {
 
     private static final Gson GSON = new Gson();
     private final Logger logger;
-    private final MpConfig config = MpConfig.load();
-    private final MpHttpClient http = new MpHttpClient(config);
+    private final MpBridgeCore core;
 
     public MpQrService(Logger logger) {
+        this(new MpBridgeCore(MpConfig.load(), logger), logger);
+    }
+
+    public MpQrService(MpBridgeCore core, Logger logger) {
+        this.core = core;
         this.logger = logger;
     }
 
     public String dispatch(String accion, String jsonEntrada) throws Exception {
+        return GSON.toJson(call(accion, safeParse(jsonEntrada)));
+    }
+
+    /**
+     * Igual que dispatch pero con la entrada ya parseada y la respuesta como
+     * árbol.
+     */
+    public JsonObject call(String accion, JsonObject in) {
         if (accion == null) {
             accion = "";
         }
         accion = accion.trim().toUpperCase();
-
-        JsonObject in = safeParse(jsonEntrada);
+        if (in == null) {
+            in = new JsonObject();
+        }
 
         switch (accion) {
             case "CREATE_STORE":
@@ -34,13 +61,22 @@ public class MpQrService {
             case "CREATE_ORDER":
                 return createOrder(in);
             case "CANCEL_ORDER":
-                return cancelOrder(in);
+                return respond(core.cancelOrder(orderId(in), getAsString(in, "idempotency_key")), "order_id");
             case "REFUND_ORDER":
-                return refundOrder(in);
+                return respond(core.refundOrder(orderId(in), getAsString(in, "idempotency_key")), "order_id");
             case "GET_ORDER":
-                return getOrder(in);
+                return respond(core.getOrder(orderId(in)), "order_id");
+            case "AWAIT_ORDER":
+                return respond(core.awaitOrder(orderId(in), parseLong(getAsString(in, "max_wait_seconds"), 0) * 1000L),
+                        "order_id");
+            case "SEARCH_STORES":
+                return respond(core.searchStores(search(in)), "id");
+            case "SEARCH_POS":
+                return respond(core.searchPos(search(in)), "id");
+            case "LOOKUP":
+                return lookup(in);
             default:
-                return MpBridgeResponse.fail("Acción no soportada: " + accion);
+                return MpBridgeResponse.failJson("Acción no soportada: " + accion, null);
         }
     }
 
@@ -55,108 +91,115 @@ public class MpQrService {
         }
     }
 
-    private String createStore(JsonObject in) throws Exception {
-        // TODO validar campos
-        // TODO armar endpoint + body según MP
-        return MpBridgeResponse.ok("createStore pendiente", new JsonObject());
-    }
-
-    private String createPos(JsonObject in) throws Exception {
-        return MpBridgeResponse.ok("createPos pendiente", new JsonObject());
+    private JsonObject createStore(JsonObject in) {
+        JsonObject body = extractBody(in);
+        JsonObject loc = obj(body, "location");
+        StoreIn s = new StoreIn();
+        s.name = getAsString(body, "name");
+        s.externalId = getAsString(body, "external_id");
+        s.street = first(getAsString(body, "street"), getAsString(loc, "street_name"));
+        s.streetNumber = first(getAsString(body, "street_number"), getAsString(loc, "street_number"));
+        s.city = first(getAsString(body, "city"), getAsString(loc, "city_name"));
+        s.state = first(getAsString(body, "state"), getAsString(loc, "state_name"));
+        s.latitude = first(getAsString(body, "latitude"), getAsString(loc, "latitude"));
+        s.longitude = first(getAsString(body, "longitude"), getAsString(loc, "longitude"));
+        s.idempotencyKey = first(getAsString(in, "idempotency_key"), getAsString(body, "idempotency_key"));
+        return respond(core.createStore(s), "store_id");
     }
 
-    private String createOrder(JsonObject in) throws Exception {
-
-        String endpoint = config.get("mp.endpoint.createOrder", "/v1/orders");
-
-        logger.info("POST " + endpoint);
-
+    private JsonObject createPos(JsonObject in) {
         JsonObject body = extractBody(in);
-
-        // Si no viene type, lo ponemos (es requerido para QR)
-        if (!body.has("type")) {
-            body.addProperty("type", "qr");
-        }
-
-        // Validaciones mínimas
-        String externalRef = getAsString(body, "external_reference");
-        String totalAmount = getAsString(body, "total_amount");
-        if (isBlank(externalRef)) {
-            return MpBridgeResponse.fail("CREATE_ORDER: falta 'external_reference'.");
-        }
-        if (isBlank(totalAmount)) {
-            return MpBridgeResponse.fail("CREATE_ORDER: falta 'total_amount'.");
+        PosIn p = new PosIn();
+        p.name = getAsString(body, "name");
+        p.externalId = getAsString(body, "external_id");
+        p.idempotencyKey = first(getAsString(in, "idempotency_key"), getAsString(body, "idempotency_key"));
+        long storeId = parseLong(getAsString(body, "store_id"), -1);
+        if (storeId < 0) {
+            return MpBridgeResponse.failJson("CREATE_POS: store_id debe ser numérico.", null);
         }
+        p.storeId = storeId;
+        return respond(core.createPos(p), "pos_id");
+    }
 
-        // Idempotency
-        String idemKey = getAsString(in, "idempotency_key");
-        if (isBlank(idemKey)) {
-            idemKey = externalRef;
+    private JsonObject createOrder(JsonObject in) {
+        // Acepta campos planos o el body con la forma de MP (config.qr / items)
+        JsonObject body = extractBody(in);
+        JsonObject qr = obj(obj(body, "config"), "qr");
+        JsonObject item = null;
+        JsonElement items = body.get("items");
+        if (items != null && items.isJsonArray() && items.getAsJsonArray().size() > 0
+                && items.getAsJsonArray().get(0).isJsonObject()) {
+            item = items.getAsJsonArray().get(0).getAsJsonObject();
         }
-        logger.info("BODY " + GSON.toJson(body));
-        MpHttpClient.MpHttpResponse r = http.postJson(endpoint, GSON.toJson(body), idemKey);
-        logger.info("HTTP " + r.statusCode + " RESP " + r.body);
-        if (r.is2xx() || r.statusCode == 201) {
-            JsonObject mp = safeParseObj(r.body);
-            if (mp == null) {
-                mp = new JsonObject();
-            }
 
-            // Extraer campos útiles
-            JsonObject data = new JsonObject();
-            data.addProperty("httpStatus", r.statusCode);
-            data.add("mp", mp);
+        OrderIn o = new OrderIn();
+        o.externalReference = getAsString(body, "external_reference");
+        o.description = getAsString(body, "description");
+        o.externalPosId = first(getAsString(body, "external_pos_id"), getAsString(qr, "external_pos_id"));
+        o.mode = first(getAsString(body, "mode"), getAsString(qr, "mode"));
+        o.expirationTime = getAsString(body, "expiration_time");
+        o.totalAmount = getAsString(body, "total_amount");
+        o.itemTitle = first(getAsString(body, "item_title"), getAsString(item, "title"));
+        o.unitMeasure = first(getAsString(body, "unit_measure"), getAsString(item, "unit_measure"));
+        o.externalCode = first(getAsString(body, "external_code"), getAsString(item, "external_code"));
+        // Idempotency (si no viene, el core usa external_reference)
+        o.idempotencyKey = first(getAsString(in, "idempotency_key"), getAsString(body, "idempotency_key"));
 
-            data.addProperty("order_id", getAsString(mp, "id"));
-            data.addProperty("external_reference", getAsString(mp, "external_reference"));
-            data.addProperty("status", getAsString(mp, "status"));
-            data.addProperty("status_detail", getAsString(mp, "status_detail"));
+        JsonObject out = respond(core.createOrder(o), "order_id");
+        out.getAsJsonObject("data").addProperty("external_reference", o.externalReference);
+        return out;
+    }
 
-            // payment_id: transactions.payments[0].id
-            String paymentId = null;
-            try {
-                if (mp.has("transactions") && mp.get("transactions").isJsonObject()) {
-                    JsonObject tr = mp.getAsJsonObject("transactions");
-                    if (tr.has("payments") && tr.get("payments").isJsonArray() && tr.getAsJsonArray("payments").size() > 0) {
-                        JsonObject p0 = tr.getAsJsonArray("payments").get(0).getAsJsonObject();
-                        paymentId = getAsString(p0, "id");
-                    }
-                }
-            } catch (Exception ignored) {
-            }
-            if (paymentId != null) {
-                data.addProperty("payment_id", paymentId);
-            }
+    private JsonObject lookup(JsonObject in) {
+        String pos = getAsString(in, "pos_external_id");
+        String store = getAsString(in, "store_external_id");
+        String name = getAsString(in, "store_name");
+        MpResult r;
+        if (!isBlank(pos)) {
+            r = core.lookupPos(pos);
+        } else if (!isBlank(store)) {
+            r = core.lookupStore(store);
+        } else if (!isBlank(name)) {
+            r = core.lookupStoreByName(name);
+        } else {
+            r = MpResult.error(4, "Falta pos_external_id, store_external_id o store_name");
+        }
+        return respond(r, "id");
+    }
 
-            // qr_data: type_response.qr_data
-            String qrData = null;
+    // MpResult -> respuesta JSON; idField: nombre del id según la acción
+    private JsonObject respond(MpResult r, String idField) {
+        JsonObject data = new JsonObject();
+        data.addProperty("res", r.res);
+        put(data, idField, r.id);
+        put(data, "status", r.status);
+        put(data, "status_detail", r.statusDetail);
+        put(data, "payment_id", r.paymentId);
+        put(data, "qr_data", r.qrData);
+        String raw = r.rawJson();
+        if (!isBlank(raw)) {
             try {
-                if (mp.has("type_response") && mp.get("type_response").isJsonObject()) {
-                    JsonObject tr = mp.getAsJsonObject("type_response");
-                    qrData = getAsString(tr, "qr_data");
-                }
-            } catch (Exception ignored) {
-            }
-            if (qrData != null) {
-                data.addProperty("qr_data", qrData);
+                data.add("mp", JsonParser.parseString(raw));
+            } catch (RuntimeException e) {
+                data.addProperty("mp_raw", raw);
             }
-
-            return MpBridgeResponse.ok("Orden creada OK", data);
         }
-
-        return MpBridgeResponse.fail(buildHttpError("CREATE_ORDER", r));
-    }
-
-    private String cancelOrder(JsonObject in) throws Exception {
-        return MpBridgeResponse.ok("cancelOrder pendiente", new JsonObject());
+        if (r.res != 0 && logger != null) {
+            logger.info("res=" + r.res + " " + r.msg);
+        }
+        return r.res == 0 ? MpBridgeResponse.okJson(r.msg, data) : MpBridgeResponse.failJson(r.msg, data);
     }
 
-    private String refundOrder(JsonObject in) throws Exception {
-        return MpBridgeResponse.ok("refundOrder pendiente", new JsonObject());
+    private String orderId(JsonObject in) {
+        return first(getAsString(in, "order_id"), getAsString(in, "id"));
     }
 
-    private String getOrder(JsonObject in) throws Exception {
-        return MpBridgeResponse.ok("getOrder pendiente", new JsonObject());
+    private SearchIn search(JsonObject in) {
+        SearchIn s = new SearchIn();
+        s.limit = (int) parseLong(getAsString(in, "limit"), 50);
+        s.offset = (int) parseLong(getAsString(in, "offset"), 0);
+        s.filterExternalId = getAsString(in, "external_id");
+        return s;
     }
 
     private JsonObject extractBody(JsonObject in) {
@@ -170,26 +213,36 @@ public class MpQrService {
         return in;
     }
 
-    private String buildHttpError(String action, MpHttpClient.MpHttpResponse r) {
-        // Ojo: r.body puede traer JSON con detalle (lo devolvemos completo)
-        return action + ": HTTP " + r.statusCode + " - " + (r.body == null ? "" : r.body);
+    private static JsonObject obj(JsonObject o, String k) {
+        JsonElement e = o == null ? null : o.get(k);
+        return e != null && e.isJsonObject() ? e.getAsJsonObject() : null;
+    }
+
+    private static void put(JsonObject o, String k, String v) {
+        if (!isBlank(v)) {
+            o.addProperty(k, v);
+        }
+    }
+
+    private static String first(String a, String b) {
+        return isBlank(a) ? b : a;
     }
 
-    private JsonObject safeParseObj(String json) {
+    private static long parseLong(String s, long def) {
         try {
-            return GSON.fromJson(json, JsonObject.class);
-        } catch (Exception e) {
-            return null;
+            return isBlank(s) ? def : Long.parseLong(s.trim());
+        } catch (NumberFormatException e) {
+            return def;
         }
     }
 
-    private String getAsString(JsonObject o, String k) {
+    private static String getAsString(JsonObject o, String k) {
         try {
             if (o == null || k == null) {
                 return null;
             }
             JsonElement e = o.get(k);
-            if (e == null || e.isJsonNull()) {
+            if (e == null || e.isJsonNull() || !e.isJsonPrimitive()) {
                 return null;
             }
             return e.getAsString();
@@ -198,7 +251,7 @@ public class MpQrService {
         }
     }
 
-    private boolean isBlank(String s) {
+    private static boolean isBlank(String s) {
         return s == null || s.trim().isEmpty();
     }
 }
@@ -0,0 +1,272 @@
+package com.hs.admin;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hs.MpBridgeResponse;
+import com.hs.MpQrService;
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Batch JSON-lines sobre las acciones de MpQrService (consultas y
+ * cancelaciones masivas de back-office en un solo proceso).
+ *
+ * Entrada: un objeto JSON por línea, {"seq":..,"action":"GET_ORDER",
+ * "input":{"order_id":".."}}. Sin "input" la línea misma es la entrada
+ * ({"action":"GET_ORDER","order_id":".."}); sin "seq" se usa el número de
+ * pedido (1, 2, ...). Las líneas vacías se ignoran.
+ *
+ * Salida: una línea por pedido, {"seq":..,"action":..,"ms":..,"status":..,
+ * "message":..,"data":{..}}, en el mismo orden que la entrada aunque se
+ * ejecuten a lo sumo parallelism acciones a la vez. Cada línea se escribe
+ * (y se hace flush) apenas están listas todas las anteriores, así que la
+ * salida se puede ir consumiendo mientras corre.
+ *
+ * Las acciones corren en hilos propios de la corrida (uno por permiso de
+ * paralelismo), no en MpExecutors.fanOut(): un AWAIT_ORDER largo o un LOOKUP
+ * que sincroniza el registro (y pagina en fanOut) no le quita hilos al
+ * resto del bridge.
+ *
+ * Uso: java ... com.hs.admin.MpBatch mercadopagoQR.properties
+ * pedidos.jsonl|- [resultado.jsonl|-] [paralelismo]
+ */
+public final class MpBatch {
+
+    private static final Gson GSON = new Gson();
+
+    private final MpQrService service;
+    private final int parallelism;
+
+    public MpBatch(MpQrService service, int parallelism) {
+        this.service = service;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public static final class Report {
+
+        public final AtomicInteger ok = new AtomicInteger();
+        public final AtomicInteger failed = new AtomicInteger();
+        public int lines;
+        public long elapsedMs;
+
+        @Override
+        public String toString() {
+            return "lines=" + lines + " ok=" + ok + " error=" + failed + " ms=" + elapsedMs;
+        }
+    }
+
+    // ==========================================================
+    // Corrida
+    // ==========================================================
+    public Report run(Reader input, Writer output) throws IOException {
+        long t0 = System.currentTimeMillis();
+        Report report = new Report();
+        int window = parallelism * 16; // líneas leídas y sin escribir
+        Semaphore calls = new Semaphore(parallelism);
+        Semaphore pending = new Semaphore(window);
+        Results results = new Results(output, report, pending);
+        AtomicInteger threads = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread t = new Thread(r, "mp-batch-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            read(input, calls, pending, results, workers, report);
+        } finally {
+            workers.shutdown();
+        }
+        // Todo escrito = la ventana completa de vuelta
+        pending.acquireUninterruptibly(window);
+        results.check();
+        report.elapsedMs = System.currentTimeMillis() - t0;
+        return report;
+    }
+
+    private void read(Reader input, Semaphore calls, Semaphore pending, Results results, ExecutorService workers,
+            Report report) throws IOException {
+        BufferedReader in = input instanceof BufferedReader ? (BufferedReader) input : new BufferedReader(input);
+        String line;
+        int n = 0;
+        while ((line = in.readLine()) != null) {
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            int index = n++;
+            acquire(pending);
+            JsonObject req;
+            try {
+                JsonElement e = JsonParser.parseString(line);
+                if (!e.isJsonObject()) {
+                    throw new IllegalArgumentException("se esperaba un objeto JSON");
+                }
+                req = e.getAsJsonObject();
+            } catch (RuntimeException e) {
+                results.put(index, line(String.valueOf(index + 1), "", 0,
+                        MpBridgeResponse.failJson("Línea " + (index + 1) + " inválida: " + e.getMessage(), null)));
+                continue;
+            }
+            String seq = str(req, "seq", String.valueOf(index + 1));
+            String action = str(req, "action", "");
+            JsonElement body = req.get("input");
+            JsonObject actionIn = body != null && body.isJsonObject() ? body.getAsJsonObject() : req;
+
+            acquire(calls);
+            try {
+                workers.execute(() -> {
+                    long t = System.nanoTime();
+                    JsonObject resp;
+                    try {
+                        resp = service.call(action, actionIn);
+                    } catch (RuntimeException e) {
+                        resp = MpBridgeResponse.failJson("Excepción: " + e.getMessage(), null);
+                    } finally {
+                        calls.release();
+                    }
+                    results.put(index, line(seq, action, (System.nanoTime() - t) / 1_000_000L, resp));
+                });
+            } catch (RuntimeException e) {
+                calls.release();
+                results.put(index, line(seq, action, 0, MpBridgeResponse.failJson("Excepción: " + e.getMessage(), null)));
+            }
+        }
+        report.lines = n;
+    }
+
+    private static JsonObject line(String seq, String action, long ms, JsonObject resp) {
+        JsonObject out = new JsonObject();
+        out.addProperty("seq", seq);
+        out.addProperty("action", action);
+        out.addProperty("ms", ms);
+        for (Map.Entry<String, JsonElement> e : resp.entrySet()) {
+            out.add(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
+    private static String str(JsonObject o, String k, String def) {
+        JsonElement e = o.get(k);
+        return e == null || e.isJsonNull() || !e.isJsonPrimitive() ? def : e.getAsString();
+    }
+
+    private static void acquire(Semaphore s) {
+        try {
+            s.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Batch interrumpido", e);
+        }
+    }
+
+    // ==========================================================
+    // Salida en orden
+    // ==========================================================
+    private static final class Results {
+        private final Writer out;
+        private final Report report;
+        private final Semaphore pending;
+        private final Map<Integer, JsonObject> ready = new HashMap<>();
+        private int next;
+        private IOException error;
+
+        Results(Writer out, Report report, Semaphore pending) {
+            this.out = out;
+            this.report = report;
+            this.pending = pending;
+        }
+
+        void put(int index, JsonObject line) {
+            if ("OK".equals(str(line, "status", ""))) {
+                report.ok.incrementAndGet();
+            } else {
+                report.failed.incrementAndGet();
+            }
+            synchronized (this) {
+                ready.put(index, line);
+                int written = 0;
+                JsonObject l;
+                while ((l = ready.remove(next)) != null) {
+                    next++;
+                    written++;
+                    if (error == null) {
+                        try {
+                            out.write(GSON.toJson(l));
+                            out.write('\n');
+                        } catch (IOException e) {
+                            error = e; // se sigue drenando para no trabar la lectura
+                        }
+                    }
+                }
+                if (written > 0) {
+                    if (error == null) {
+                        try {
+                            out.flush();
+                        } catch (IOException e) {
+                            error = e;
+                        }
+                    }
+                    pending.release(written);
+                }
+            }
+        }
+
+        synchronized void check() throws IOException {
+            if (error != null) {
+                throw new IOException("No se pudo escribir el resultado: " + error.getMessage(), error);
+            }
+        }
+    }
+
+    // ==========================================================
+    // Consola
+    // ==========================================================
+    public static void main(String[] args) throws Exception {
+        if (args == null || args.length < 2) {
+            System.out.println("Uso: MpBatch <mercadopagoQR.properties> <pedidos.jsonl|-> [resultado.jsonl|-] [paralelismo]");
+            return;
+        }
+        MpConfig cfg = MpConfig.forPath(args[0]);
+        String output = args.length > 2 ? args[2] : "-";
+        int parallelism = args.length > 3 ? Integer.parseInt(args[3].trim()) : cfg.getInt("mp.batch.parallelism", 8);
+
+        Logger logger = Logger.getLogger("MP_BATCH");
+        MpQrService service = new MpQrService(new MpBridgeCore(cfg, logger), logger);
+        Reader in = "-".equals(args[1])
+                ? new InputStreamReader(System.in, StandardCharsets.UTF_8)
+                : Files.newBufferedReader(Paths.get(args[1]), StandardCharsets.UTF_8);
+        Writer out = "-".equals(output)
+                ? new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8))
+                : Files.newBufferedWriter(Paths.get(output), StandardCharsets.UTF_8);
+        Report r;
+        try {
+            r = new MpBatch(service, parallelism).run(in, out);
+        } finally {
+            in.close();
+            out.flush();
+            if (!"-".equals(output)) {
+                out.close();
+            }
+        }
+        // el resumen va a stderr: stdout puede ser la salida JSON-lines
+        System.err.println("Batch " + args[1] + " -> " + output + ": " + r);
+    }
+}
@@ -0,0 +1,439 @@
+package com.hs.admin;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.core.MpExecutors;
+import com.hs.dto.MpResult;
+import com.hs.dto.PosIn;
+import com.hs.dto.StoreIn;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Alta masiva de stores y POS desde un CSV (apertura de una cadena).
+ *
+ * Entrada (con encabezado, separador ',' o ';'): type (STORE / POS),
+ * external_id, name, store_external_id (POS), street, street_number, city,
+ * state, latitude, longitude. Cada POS espera al store de su
+ * store_external_id: tiene que estar antes en el archivo o existir ya en MP.
+ *
+ * Las filas se procesan a medida que se leen, con a lo sumo parallelism
+ * llamadas a MP a la vez. Un 409 cuenta como hecho (se busca el id
+ * existente). El resultado se agrega línea por línea al CSV de salida, que
+ * también es el checkpoint: al relanzar, las filas OK / EXISTS se saltean y
+ * los POS toman el store_id de ahí. Las claves de idempotencia dependen solo
+ * de la fila, así que un reintento de una fila cortada no duplica el alta.
+ *
+ * Uso: java ... com.hs.admin.MpProvisioner mercadopagoQR.properties
+ * altas.csv [resultado.csv] [paralelismo]
+ */
+public final class MpProvisioner {
+
+    static final String OUT_HEADER = "line,type,external_id,status,id,res,msg";
+
+    private final MpBridgeCore core;
+    private final int parallelism;
+
+    public MpProvisioner(MpBridgeCore core, int parallelism) {
+        this.core = core;
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public static final class Report {
+
+        public final AtomicInteger ok = new AtomicInteger();
+        public final AtomicInteger exists = new AtomicInteger();
+        public final AtomicInteger failed = new AtomicInteger();
+        public final AtomicInteger skipped = new AtomicInteger();
+        public int resumed;
+        public long elapsedMs;
+
+        @Override
+        public String toString() {
+            return "ok=" + ok + " exists=" + exists + " error=" + failed + " skipped=" + skipped
+                    + " resumed=" + resumed + " ms=" + elapsedMs;
+        }
+    }
+
+    // Fila del CSV de entrada
+    private static final class Row {
+        final int line;
+        final String type;
+        final String externalId;
+        final Map<String, String> cols;
+
+        Row(int line, Map<String, String> cols) {
+            this.line = line;
+            this.cols = cols;
+            this.type = get(cols, "type").toUpperCase(Locale.ROOT);
+            this.externalId = get(cols, "external_id");
+        }
+
+        String col(String name) {
+            return get(cols, name);
+        }
+
+        // Misma fila, misma clave (también entre corridas)
+        String idempotencyKey() {
+            return "PROV-" + type + "-" + externalId + "-" + Integer.toHexString(cols.hashCode());
+        }
+    }
+
+    // ==========================================================
+    // Corrida
+    // ==========================================================
+    public Report run(File input, File output) throws IOException {
+        long t0 = System.currentTimeMillis();
+        Report report = new Report();
+        Map<String, String> done = checkpoint(output);
+
+        // store external_id -> id (null si el alta falló)
+        Map<String, CompletableFuture<String>> storeIds = new ConcurrentHashMap<>();
+        for (Map.Entry<String, String> e : done.entrySet()) {
+            if (e.getKey().startsWith("STORE|")) {
+                storeIds.put(e.getKey().substring(6), CompletableFuture.completedFuture(e.getValue()));
+            }
+        }
+
+        // Índice de stores/POS cargado acá y no en la primera fila: las
+        // búsquedas de las filas salen de memoria en vez de paginar dentro de
+        // las tareas del pool (si falla, cada búsqueda va puntual a MP)
+        core.syncRegistry();
+
+        Semaphore calls = new Semaphore(parallelism);
+        Semaphore pending = new Semaphore(parallelism * 16); // filas leídas y sin terminar
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+
+        boolean fresh = !output.isFile() || output.length() == 0;
+        try (BufferedReader in = Files.newBufferedReader(input.toPath(), StandardCharsets.UTF_8);
+                Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(output.toPath(),
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND), StandardCharsets.UTF_8))) {
+            if (fresh) {
+                out.write(OUT_HEADER + "\n");
+                out.flush();
+            }
+            String headerLine = in.readLine();
+            if (headerLine == null) {
+                report.elapsedMs = System.currentTimeMillis() - t0;
+                return report;
+            }
+            char sep = headerLine.indexOf(';') >= 0 && headerLine.indexOf(',') < 0 ? ';' : ',';
+            List<String> header = new ArrayList<>();
+            for (String h : split(stripBom(headerLine), sep)) {
+                header.add(h.trim().toLowerCase(Locale.ROOT));
+            }
+            Results results = new Results(out, report);
+
+            String line;
+            int lineNo = 1;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                Row row = new Row(lineNo, toMap(header, split(line, sep)));
+                if (done.containsKey(row.type + "|" + row.externalId)) {
+                    report.resumed++;
+                    continue;
+                }
+                acquire(pending);
+                CompletableFuture<Void> f;
+                if ("STORE".equals(row.type)) {
+                    f = submitStore(row, storeIds, calls, results);
+                } else if ("POS".equals(row.type)) {
+                    f = submitPos(row, storeIds, calls, results);
+                } else {
+                    results.write(row, "ERROR", "", 4, "type debe ser STORE o POS");
+                    f = CompletableFuture.completedFuture(null);
+                }
+                all.add(f.whenComplete((v, ex) -> pending.release()));
+            }
+            CompletableFuture.allOf(all.toArray(new CompletableFuture<?>[0])).join();
+        }
+        report.elapsedMs = System.currentTimeMillis() - t0;
+        return report;
+    }
+
+    private CompletableFuture<Void> submitStore(Row row, Map<String, CompletableFuture<String>> storeIds,
+            Semaphore calls, Results results) {
+        CompletableFuture<String> id = new CompletableFuture<>();
+        if (row.externalId.isEmpty() || storeIds.putIfAbsent(row.externalId, id) != null) {
+            results.write(row, "ERROR", "", 4,
+                    row.externalId.isEmpty() ? "Falta external_id" : "store repetido o después de sus POS");
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> {
+            String storeId = null;
+            try {
+                storeId = createStore(row, calls, results);
+            } catch (RuntimeException e) {
+                results.write(row, "ERROR", "", 9, "Excepción: " + e.getMessage());
+            } finally {
+                id.complete(storeId);
+            }
+        }, MpExecutors.fanOut());
+    }
+
+    private CompletableFuture<Void> submitPos(Row row, Map<String, CompletableFuture<String>> storeIds,
+            Semaphore calls, Results results) {
+        String storeExt = row.col("store_external_id");
+        if (storeExt.isEmpty()) {
+            results.write(row, "ERROR", "", 4, "Falta store_external_id");
+            return CompletableFuture.completedFuture(null);
+        }
+        // Store que no está en el archivo (ni en el checkpoint): tiene que existir en MP
+        CompletableFuture<String> storeId = storeIds.computeIfAbsent(storeExt,
+                k -> CompletableFuture.supplyAsync(() -> existingStore(k), MpExecutors.fanOut()));
+        return storeId.thenAcceptAsync(sid -> {
+            if (sid == null) {
+                results.write(row, "SKIPPED", "", 2, "store " + storeExt + " sin id");
+                return;
+            }
+            try {
+                createPos(row, sid, calls, results);
+            } catch (RuntimeException e) {
+                results.write(row, "ERROR", "", 9, "Excepción: " + e.getMessage());
+            }
+        }, MpExecutors.fanOut());
+    }
+
+    // ==========================================================
+    // Altas
+    // ==========================================================
+    // Solo el POST toma permiso de calls; la búsqueda del 409 va sin permiso
+    // (puede sincronizar el registro, que pagina en el mismo pool)
+    private String createStore(Row row, Semaphore calls, Results results) {
+        StoreIn in = new StoreIn();
+        in.name = row.col("name");
+        in.externalId = row.externalId;
+        in.street = row.col("street");
+        in.streetNumber = row.col("street_number");
+        in.city = row.col("city");
+        in.state = row.col("state");
+        in.latitude = row.col("latitude");
+        in.longitude = row.col("longitude");
+        in.idempotencyKey = row.idempotencyKey();
+
+        MpResult r = limited(calls, () -> core.createStore(in));
+        if (r.res == 0) {
+            results.write(row, "OK", r.id, 0, "");
+            return r.id;
+        }
+        if (r.res == 2) {
+            MpResult l = core.lookupStore(row.externalId);
+            if (l.res == 0) {
+                results.write(row, "EXISTS", l.id, 2, r.msg);
+                return l.id;
+            }
+            r = l;
+        }
+        results.write(row, "ERROR", "", r.res, r.msg);
+        return null;
+    }
+
+    private String existingStore(String externalId) {
+        MpResult l = core.lookupStore(externalId);
+        return l.res == 0 ? l.id : null;
+    }
+
+    private String createPos(Row row, String storeId, Semaphore calls, Results results) {
+        PosIn in = new PosIn();
+        in.name = row.col("name");
+        in.externalId = row.externalId;
+        in.idempotencyKey = row.idempotencyKey();
+        try {
+            in.storeId = Long.parseLong(storeId.trim());
+        } catch (NumberFormatException e) {
+            results.write(row, "ERROR", "", 4, "store_id no numérico: " + storeId);
+            return null;
+        }
+
+        MpResult r = limited(calls, () -> core.createPos(in));
+        if (r.res == 0) {
+            results.write(row, "OK", r.id, 0, "");
+            return r.id;
+        }
+        if (r.res == 2) {
+            MpResult l = core.lookupPos(row.externalId);
+            if (l.res == 0) {
+                results.write(row, "EXISTS", l.id, 2, r.msg);
+                return l.id;
+            }
+            r = l;
+        }
+        results.write(row, "ERROR", "", r.res, r.msg);
+        return null;
+    }
+
+    private static <T> T limited(Semaphore calls, Supplier<T> call) {
+        acquire(calls);
+        try {
+            return call.get();
+        } finally {
+            calls.release();
+        }
+    }
+
+    private static void acquire(Semaphore s) {
+        try {
+            s.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Alta masiva interrumpida", e);
+        }
+    }
+
+    // ==========================================================
+    // Resultado / checkpoint
+    // ==========================================================
+    private static final class Results {
+        private final Writer out;
+        private final Report report;
+
+        Results(Writer out, Report report) {
+            this.out = out;
+            this.report = report;
+        }
+
+        void write(Row row, String status, String id, int res, String msg) {
+            switch (status) {
+                case "OK":
+                    report.ok.incrementAndGet();
+                    break;
+                case "EXISTS":
+                    report.exists.incrementAndGet();
+                    break;
+                case "SKIPPED":
+                    report.skipped.incrementAndGet();
+                    break;
+                default:
+                    report.failed.incrementAndGet();
+                    break;
+            }
+            String line = row.line + "," + csv(row.type) + "," + csv(row.externalId) + "," + status + ","
+                    + csv(id) + "," + res + "," + csv(msg) + "\n";
+            synchronized (this) {
+                try {
+                    out.write(line);
+                    out.flush(); // checkpoint: lo escrito sobrevive a un corte
+                } catch (IOException e) {
+                    throw new IllegalStateException("No se pudo escribir el resultado: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    // TYPE|external_id -> id de las filas ya hechas (OK / EXISTS)
+    static Map<String, String> checkpoint(File output) throws IOException {
+        Map<String, String> done = new HashMap<>();
+        if (!output.isFile()) {
+            return done;
+        }
+        try (BufferedReader in = Files.newBufferedReader(output.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                List<String> c = split(line, ',');
+                if (c.size() < 5 || !("OK".equals(c.get(3)) || "EXISTS".equals(c.get(3))) || c.get(4).isEmpty()) {
+                    continue; // encabezado, error o línea cortada
+                }
+                done.put(c.get(1) + "|" + c.get(2), c.get(4));
+            }
+        }
+        return done;
+    }
+
+    // ==========================================================
+    // CSV
+    // ==========================================================
+    static List<String> split(String line, char sep) {
+        List<String> out = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    sb.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == sep) {
+                out.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        out.add(sb.toString());
+        return out;
+    }
+
+    private static String csv(String s) {
+        if (s == null) {
+            return "";
+        }
+        String x = s.replace('\r', ' ').replace('\n', ' ');
+        if (x.indexOf(',') < 0 && x.indexOf('"') < 0) {
+            return x;
+        }
+        return "\"" + x.replace("\"", "\"\"") + "\"";
+    }
+
+    private static Map<String, String> toMap(List<String> header, List<String> values) {
+        Map<String, String> m = new HashMap<>();
+        for (int i = 0; i < header.size() && i < values.size(); i++) {
+            m.put(header.get(i), values.get(i).trim());
+        }
+        return m;
+    }
+
+    private static String get(Map<String, String> m, String k) {
+        String v = m.get(k);
+        return v == null ? "" : v;
+    }
+
+    private static String stripBom(String s) {
+        return !s.isEmpty() && s.charAt(0) == '\uFEFF' ? s.substring(1) : s;
+    }
+
+    // ==========================================================
+    // Consola
+    // ==========================================================
+    public static void main(String[] args) throws Exception {
+        if (args == null || args.length < 2) {
+            System.out.println("Uso: MpProvisioner <mercadopagoQR.properties> <altas.csv> [resultado.csv] [paralelismo]");
+            return;
+        }
+        MpConfig cfg = MpConfig.forPath(args[0]);
+        File input = new File(args[1]);
+        File output = new File(args.length > 2 ? args[2] : args[1] + ".resultado.csv");
+        int parallelism = args.length > 3 ? Integer.parseInt(args[3].trim()) : cfg.getInt("mp.provision.parallelism", 8);
+
+        MpBridgeCore core = new MpBridgeCore(cfg, Logger.getLogger("MP_PROVISION"));
+        Report r = new MpProvisioner(core, parallelism).run(input, output);
+        System.out.println("Alta masiva " + input + " -> " + output + ": " + r);
+    }
+}
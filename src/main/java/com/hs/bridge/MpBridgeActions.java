@@ -0,0 +1,298 @@
+package com.hs.bridge;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.dto.PosIn;
+import com.hs.dto.SearchIn;
+import com.hs.dto.StoreIn;
+import com.hs.metrics.MpMetrics;
+import com.hs.tenant.MpTenantRegistry;
+import com.hs.webhook.MpWebhookServer;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Acciones del contrato MP_QR_HIBRIDO sobre texto: las 26 entradas
+ * (argv[0..25]) como String[] y el resultado como MpResult (argv[26..32]
+ * con outputs()).
+ *
+ * No conoce ISCOBOL: la usan el CALL en proceso y el daemon (com.hs.daemon),
+ * así las dos vías arman exactamente lo mismo.
+ */
+public final class MpBridgeActions {
+
+    public static final int IN_FIELDS = 26;
+    public static final int OUT_FIELDS = 7;
+
+    // IN
+    public static final int I_ACCION = 0;
+    public static final int I_EXT_REF = 1;     // según acción: external_ref u order_id
+    public static final int I_DESC = 2;
+    public static final int I_EXT_POS = 3;
+    public static final int I_MODO = 4;
+    public static final int I_EXP = 5;
+    public static final int I_TOTAL = 6;
+    public static final int I_UNIT = 7;
+    public static final int I_ITEM = 8;
+    public static final int I_EXT_CODE = 9;
+    public static final int I_PATH = 10;
+    public static final int I_IDEM = 11;
+
+    // STORE
+    public static final int I_STORE_NAME = 12;
+    public static final int I_STORE_EXTID = 13;
+    public static final int I_STORE_STREET = 14;
+    public static final int I_STORE_STREETNRO = 15;
+    public static final int I_STORE_CITY = 16;
+    public static final int I_STORE_STATE = 17;
+    public static final int I_STORE_LAT = 18;
+    public static final int I_STORE_LON = 19;
+
+    // POS
+    public static final int I_POS_NAME = 20;
+    public static final int I_POS_EXTID = 21;
+    public static final int I_POS_STOREID = 22;
+
+    // SEARCH
+    public static final int I_LIMIT = 23;
+    public static final int I_OFFSET = 24;
+    public static final int I_FILTER_EXTID = 25;
+
+    // Alias semánticos (mismo índice, no cambia contrato)
+    private static final int I_ORDER_ID = I_EXT_REF;       // Q/C/R usan argv[1]
+    private static final int I_IDEMPOTENCY = I_IDEM;
+    private static final int I_WAIT = I_EXP;               // W: espera máxima
+
+    private MpBridgeActions() {
+    }
+
+    /**
+     * Ejecuta la acción de in[0]. Nunca lanza: acción desconocida = res 8,
+     * excepción = res 9.
+     *
+     * @param defaultPath properties si in[10] viene vacío (null/"" =
+     * MpConfig.load())
+     */
+    public static MpResult run(String[] in, String defaultPath, Logger logger) {
+        try {
+            String accion = get(in, I_ACCION).toUpperCase();
+            switch (accion) {
+                case "O":
+                    log(logger, "---> CREATE_ORDER (O)");
+                    return createOrder(in, core(in, defaultPath, logger));
+                case "Q":
+                    log(logger, "---> GET_ORDER (Q)");
+                    return withId(core(in, defaultPath, logger).getOrder(get(in, I_ORDER_ID)), get(in, I_ORDER_ID));
+                case "W":
+                    log(logger, "---> AWAIT_ORDER (W)");
+                    return withId(core(in, defaultPath, logger).awaitOrder(get(in, I_ORDER_ID),
+                            parseWaitMs(get(in, I_WAIT))), get(in, I_ORDER_ID));
+                case "C":
+                    log(logger, "---> CANCEL_ORDER (C)");
+                    return core(in, defaultPath, logger).cancelOrder(get(in, I_ORDER_ID), get(in, I_IDEMPOTENCY));
+                case "R":
+                    log(logger, "---> REFUND_ORDER (R)");
+                    return core(in, defaultPath, logger).refundOrder(get(in, I_ORDER_ID), get(in, I_IDEMPOTENCY));
+                case "S":
+                    log(logger, "---> CREATE_STORE (S)");
+                    return createStore(in, core(in, defaultPath, logger));
+                case "P":
+                    log(logger, "---> CREATE_POS (P)");
+                    return createPos(in, core(in, defaultPath, logger));
+                case "LS":
+                    log(logger, "---> SEARCH_STORES (LS)");
+                    return core(in, defaultPath, logger).searchStores(search(in));
+                case "LP":
+                    log(logger, "---> SEARCH_POS (LP)");
+                    return core(in, defaultPath, logger).searchPos(search(in));
+                case "LK":
+                    log(logger, "---> LOOKUP (LK)");
+                    return lookup(in, core(in, defaultPath, logger));
+                case "WU":
+                    log(logger, "---> WARM_UP (WU)");
+                    return core(in, defaultPath, logger).warmUp();
+                default:
+                    if (logger != null) {
+                        logger.warning("---> Accion invalida: " + accion);
+                    }
+                    return MpResult.error(8, "Acción inválida: " + accion);
+            }
+        } catch (Exception e) {
+            if (logger != null) {
+                logger.log(Level.SEVERE, "Excepción general", e);
+            }
+            return MpResult.error(9, "Excepción: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Valores de salida en orden argv[26..32] (res, msg, id, qr, status,
+     * payment_id, raw), ya normalizados a texto.
+     */
+    public static String[] outputs(MpResult r) {
+        return outputs(r, OUT_FIELDS);
+    }
+
+    /**
+     * Igual, para quien solo tiene los primeros slots: sin el de raw el JSON
+     * de MP ni se decodifica.
+     */
+    public static String[] outputs(MpResult r, int slots) {
+        return new String[]{
+            String.valueOf(r.res),
+            nvl(r.msg),
+            nvl(r.id),
+            nvl(r.qrData),
+            nvl(r.status),
+            nvl(r.paymentId),
+            slots >= OUT_FIELDS ? nvl(r.rawJson()) : ""
+        };
+    }
+
+    // ======= CORE FACTORY =======
+    /**
+     * Config de in[10] (ruta o "tenant:&lt;id&gt;"; vacío = la default).
+     */
+    public static MpConfig config(String[] in, String defaultPath) {
+        // Snapshot cacheado por ruta (sin System.setProperty: no se pisan hilos con distinto I_PATH)
+        return MpTenantRegistry.shared().config(get(in, I_PATH), defaultPath);
+    }
+
+    /**
+     * Core del tenant de in[10] (uno por cuenta de MP, se reusa entre
+     * llamadas) y servicios de JVM (webhook, métricas), que arrancan una sola
+     * vez.
+     */
+    private static MpBridgeCore core(String[] in, String defaultPath, Logger logger) {
+        MpConfig cfg = config(in, defaultPath);
+        // Receptor de webhooks (solo si mp.webhook.enabled=true; una vez por JVM)
+        MpWebhookServer.ensureStarted(cfg, logger);
+        // MBeans + volcado periódico de métricas (una vez por JVM)
+        MpMetrics.ensureStarted(cfg, logger);
+        // El registry dispara el replay del journal al armar el core del tenant
+        return MpTenantRegistry.shared().core(cfg, logger);
+    }
+
+    // ======= ACCIONES (todas delegadas al core) =======
+    private static MpResult createOrder(String[] argv, MpBridgeCore core) {
+        OrderIn in = new OrderIn();
+        in.externalReference = get(argv, I_EXT_REF);
+        in.description = get(argv, I_DESC);
+        in.externalPosId = get(argv, I_EXT_POS);
+        in.mode = get(argv, I_MODO);
+        in.expirationTime = get(argv, I_EXP);
+        in.totalAmount = get(argv, I_TOTAL);
+        in.unitMeasure = get(argv, I_UNIT);
+        in.itemTitle = get(argv, I_ITEM);
+        in.externalCode = get(argv, I_EXT_CODE);
+        in.idempotencyKey = get(argv, I_IDEMPOTENCY);
+        return core.createOrder(in);
+    }
+
+    private static MpResult withId(MpResult r, String orderId) {
+        if (r != null && isBlank(r.id)) {
+            r.id = orderId;
+        }
+        return r;
+    }
+
+    private static MpResult createStore(String[] argv, MpBridgeCore core) {
+        StoreIn in = new StoreIn();
+        in.name = get(argv, I_STORE_NAME);
+        in.externalId = get(argv, I_STORE_EXTID);
+        in.street = get(argv, I_STORE_STREET);
+        in.streetNumber = get(argv, I_STORE_STREETNRO);
+        in.city = get(argv, I_STORE_CITY);
+        in.state = get(argv, I_STORE_STATE);
+        in.latitude = get(argv, I_STORE_LAT);
+        in.longitude = get(argv, I_STORE_LON);
+        in.idempotencyKey = get(argv, I_IDEMPOTENCY);
+        return core.createStore(in);
+    }
+
+    private static MpResult createPos(String[] argv, MpBridgeCore core) {
+        PosIn in = new PosIn();
+        in.name = get(argv, I_POS_NAME);
+        in.externalId = get(argv, I_POS_EXTID);
+        try {
+            in.storeId = Long.parseLong(get(argv, I_POS_STOREID));
+        } catch (Exception e) {
+            return MpResult.error(4, "store_id debe ser numérico");
+        }
+        in.idempotencyKey = get(argv, I_IDEMPOTENCY);
+        return core.createPos(in);
+    }
+
+    private static SearchIn search(String[] argv) {
+        SearchIn in = new SearchIn();
+        in.limit = parseIntDef(get(argv, I_LIMIT), 50);
+        in.offset = parseIntDef(get(argv, I_OFFSET), 0);
+        in.filterExternalId = get(argv, I_FILTER_EXTID);
+        return in;
+    }
+
+    private static MpResult lookup(String[] argv, MpBridgeCore core) {
+        String posExtId = get(argv, I_POS_EXTID);
+        String storeExtId = get(argv, I_STORE_EXTID);
+        String storeName = get(argv, I_STORE_NAME);
+        if (!isBlank(posExtId)) {
+            return core.lookupPos(posExtId);
+        }
+        if (!isBlank(storeExtId)) {
+            return core.lookupStore(storeExtId);
+        }
+        if (!isBlank(storeName)) {
+            return core.lookupStoreByName(storeName);
+        }
+        return MpResult.error(4, "Falta pos_external_id, store_external_id o store_name");
+    }
+
+    // ======= HELPERS =======
+    private static String get(String[] in, int idx) {
+        if (in == null || idx < 0 || idx >= in.length || in[idx] == null) {
+            return "";
+        }
+        return in[idx].trim();
+    }
+
+    private static void log(Logger logger, String msg) {
+        if (logger != null) {
+            logger.info(msg);
+        }
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String nvl(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static int parseIntDef(String s, int def) {
+        try {
+            return isBlank(s) ? def : Integer.parseInt(s.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
+    // "120" (segundos) o "PT2M"; 0 = default de config (mp.await.maxMs)
+    private static long parseWaitMs(String s) {
+        if (isBlank(s)) {
+            return 0;
+        }
+        String x = s.trim();
+        try {
+            if (x.toUpperCase().startsWith("P")) {
+                return Duration.parse(x.toUpperCase()).toMillis();
+            }
+            return Long.parseLong(x) * 1000L;
+        } catch (Exception e) {
+            return 0;
+        }
+    }
+}
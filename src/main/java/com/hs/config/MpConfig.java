@@ -1,17 +1,108 @@
 package com.hs.config;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Snapshot inmutable de mercadopagoQR.properties.
+ *
+ * Los snapshots se cachean por ruta canónica (forPath): la llamada ISCOBOL solo
+ * paga un lookup en un mapa; el archivo se vuelve a leer únicamente si cambió
+ * su fecha o tamaño, y eso se verifica como mucho cada
+ * mp.config.recheckSeconds (default 5).
+ */
 public class MpConfig {
 
+    private static final String FILE_NAME = "mercadopagoQR.properties";
+
+    // Cache: ruta tal cual llega (I_PATH) y ruta canónica -> entrada
+    private static final ConcurrentHashMap<String, Entry> BY_PATH = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Entry> BY_CANONICAL = new ConcurrentHashMap<>();
+    private static volatile MpConfig classpathSnapshot;
+
     private final Properties p;
+    private final String source;
+
+    // Valores tipados resueltos una sola vez
+    private final String etapa;
+    private final String tenant;
+    private final String accountKey;
+    private final boolean test;
+    private final String baseUrl;
+    private final String accessToken;
+    private final String authorizationHeader;
+    private final Map<String, String> endpoints;
+    private final int connectTimeoutMs;
+    private final int socketTimeoutMs;
+    private final int poolTimeoutMs;
+    private final boolean logHttp;
+    private final int logHttpMax;
+    private final long recheckMs;
+
+    private MpConfig(Properties src, String source) {
+        Properties copy = new Properties();
+        copy.putAll(src);
+        this.p = copy;
+        this.source = source;
+
+        this.etapa = get("mp.etapa", "test").trim().toLowerCase();
+        String id = get("mp.tenant.id", "").trim();
+        this.tenant = id.isEmpty() ? source : id;
+        this.test = "test".equals(etapa);
+        this.baseUrl = get("mp.baseUrl", "https://api.mercadopago.com");
+        String t = get(test ? "mp.accessTokenTest" : "mp.accessToken", "").trim();
+        this.accessToken = t.isEmpty() ? null : t;
+        this.authorizationHeader = accessToken == null ? null : "Bearer " + accessToken;
+        this.accountKey = sha256(tenant + "\n" + (accessToken == null ? "" : accessToken));
+
+        Map<String, String> eps = new HashMap<>();
+        for (String k : copy.stringPropertyNames()) {
+            if (k.startsWith("mp.endpoint.")) {
+                eps.put(k.substring("mp.endpoint.".length()), copy.getProperty(k).trim());
+            }
+        }
+        this.endpoints = Collections.unmodifiableMap(eps);
+
+        this.connectTimeoutMs = getInt("mp.timeout.connect", 10000);
+        this.socketTimeoutMs = getInt("mp.timeout.socket", 20000);
+        this.poolTimeoutMs = getInt("mp.timeout.pool", 5000);
+        this.logHttp = getBoolean("mp.log.http", false);
+        this.logHttpMax = getInt("mp.log.http.max", 2000);
+        this.recheckMs = Math.max(0, getInt("mp.config.recheckSeconds", 5)) * 1000L;
+    }
 
-    Boolean logHttp = false;
-    int logHttpMax = 0;
+    /**
+     * Snapshot sin cache (tests / config armada en memoria).
+     */
+    public static MpConfig fromProperties(Properties props) {
+        return new MpConfig(props, "memory");
+    }
 
-    private MpConfig(Properties p) {
-        this.p = p;
+    /**
+     * Snapshot cacheado para un archivo .properties puntual (I_PATH).
+     * No toca System properties: dos hilos con rutas distintas no se pisan.
+     */
+    public static MpConfig forPath(String path) {
+        if (path == null || path.trim().isEmpty()) {
+            return load();
+        }
+        String key = path.trim();
+        Entry e = BY_PATH.get(key);
+        if (e == null) {
+            e = entryFor(new File(key));
+            Entry prev = BY_PATH.putIfAbsent(key, e);
+            if (prev != null) {
+                e = prev;
+            }
+        }
+        return e.current();
     }
 
     /**
@@ -20,44 +111,75 @@ public class MpConfig {
      * (/mercadopago.properties)
      */
     public static MpConfig load() {
-        Properties props = new Properties();
-        InputStream in = null;
+        // 1) Ruta explícita por VM option
+        String explicitPath = System.getProperty("mp.config");
+        if (explicitPath != null && !explicitPath.trim().isEmpty()) {
+            return forPath(explicitPath.trim());
+        }
 
-        try {
-            // 1) Ruta explícita por VM option
-            String explicitPath = System.getProperty("mp.config");
-            if (explicitPath != null && !explicitPath.trim().isEmpty()) {
-                in = new FileInputStream(explicitPath.trim());
-            }
+        // 2) Archivo en working dir
+        File f = new File(FILE_NAME);
+        if (f.exists()) {
+            return forPath(f.getPath());
+        }
 
-            // 2) Archivo en working dir
-            if (in == null) {
-                File f = new File("mercadopagoQR.properties");
-                if (f.exists()) {
-                    in = new FileInputStream(f);
+        // 3) Classpath (jar / ejecución normal): no cambia en caliente
+        MpConfig cp = classpathSnapshot;
+        if (cp != null) {
+            return cp;
+        }
+        InputStream in = MpConfig.class.getResourceAsStream("/" + FILE_NAME);
+        if (in != null) {
+            try {
+                Properties props = new Properties();
+                props.load(in);
+                cp = new MpConfig(props, "classpath:/" + FILE_NAME);
+                classpathSnapshot = cp;
+                return cp;
+            } catch (Exception e) {
+                throw new RuntimeException("Error cargando " + FILE_NAME + ": " + e.getMessage(), e);
+            } finally {
+                try {
+                    in.close();
+                } catch (Exception ignored) {
                 }
             }
+        }
 
-            // 3) Classpath (jar / ejecución normal)
-            if (in == null) {
-                in = MpConfig.class.getResourceAsStream("/mercadopagoQR.properties");
-            }
+        // 4) Fallback: target/classes (NetBeans + exec-maven-plugin)
+        f = new File("target/classes/" + FILE_NAME);
+        if (f.exists()) {
+            return forPath(f.getPath());
+        }
 
-            // 4) Fallback: target/classes (NetBeans + exec-maven-plugin)
-            if (in == null) {
-                File f = new File("target/classes/mercadopagoQR.properties");
-                if (f.exists()) {
-                    in = new FileInputStream(f);
-                }
-            }
+        throw new RuntimeException("No se encontró mercadopagoQR.properties por ningún medio.");
+    }
 
-            if (in == null) {
-                throw new RuntimeException("No se encontró mercadopagoQR.properties por ningún medio.");
+    private static Entry entryFor(File f) {
+        String canonical;
+        try {
+            canonical = f.getCanonicalPath();
+        } catch (IOException ex) {
+            canonical = f.getAbsolutePath();
+        }
+        Entry e = BY_CANONICAL.get(canonical);
+        if (e == null) {
+            e = new Entry(new File(canonical));
+            Entry prev = BY_CANONICAL.putIfAbsent(canonical, e);
+            if (prev != null) {
+                e = prev;
             }
+        }
+        return e;
+    }
 
+    private static MpConfig readFile(File f) {
+        InputStream in = null;
+        try {
+            in = new FileInputStream(f);
+            Properties props = new Properties();
             props.load(in);
-            return new MpConfig(props);
-
+            return new MpConfig(props, f.getPath());
         } catch (Exception e) {
             throw new RuntimeException("Error cargando mercadopagoQR.properties: " + e.getMessage(), e);
         } finally {
@@ -68,21 +190,103 @@ public class MpConfig {
         }
     }
 
+    /**
+     * Entrada de cache por archivo: snapshot actual + firma (mtime/size).
+     */
+    private static final class Entry {
+
+        private final File file;
+        private volatile MpConfig snapshot;
+        private volatile long mtime = -1;
+        private volatile long size = -1;
+        private volatile long nextCheckAt;
+
+        Entry(File file) {
+            this.file = file;
+        }
+
+        MpConfig current() {
+            MpConfig s = snapshot;
+            if (s != null && System.currentTimeMillis() < nextCheckAt) {
+                return s;
+            }
+            synchronized (this) {
+                s = snapshot;
+                long now = System.currentTimeMillis();
+                if (s != null && now < nextCheckAt) {
+                    return s;
+                }
+                long m = file.lastModified();
+                long len = file.length();
+                if (s == null || m != mtime || len != size) {
+                    try {
+                        s = readFile(file);
+                    } catch (RuntimeException ex) {
+                        if (snapshot == null) {
+                            throw ex;
+                        }
+                        // Archivo a medio escribir / bloqueado: seguimos con el anterior
+                        s = snapshot;
+                    }
+                    if (s != snapshot) {
+                        snapshot = s;
+                        mtime = m;
+                        size = len;
+                    }
+                }
+                nextCheckAt = now + s.recheckMs;
+                return s;
+            }
+        }
+    }
+
+    /**
+     * Origen del snapshot (ruta del archivo, classpath o memoria).
+     */
+    public String source() {
+        return source;
+    }
+
+    /**
+     * Cuenta de MP de este snapshot: mp.tenant.id, o el origen si no está
+     * definido (un archivo por cuenta). Separa pool HTTP y core.
+     */
+    public String tenant() {
+        return tenant;
+    }
+
+    /**
+     * SHA-256 (hex) de tenant + token: clave de lo que no se puede compartir
+     * entre cuentas (journal por defecto, caché de resultados, registro). Dos
+     * tokens nunca comparten clave y el token no queda en memoria ni en
+     * nombres de archivo.
+     */
+    public String accountKey() {
+        return accountKey;
+    }
+
     public String etapa() {
-        return get("mp.etapa", "test").trim().toLowerCase();
+        return etapa;
     }
 
     public boolean isTest() {
-        return "test".equals(etapa());
+        return test;
     }
 
     public String accessToken() {
-        String key = isTest() ? "mp.accessTokenTest" : "mp.accessToken";
-        String t = get(key, "").trim();
-        if (t.isEmpty()) {
+        if (accessToken == null) {
+            String key = isTest() ? "mp.accessTokenTest" : "mp.accessToken";
             throw new IllegalStateException("Falta " + key + " en mercadopago.properties");
         }
-        return t;
+        return accessToken;
+    }
+
+    /**
+     * Header Authorization ya armado ("Bearer ...").
+     */
+    public String authorizationHeader() {
+        accessToken();
+        return authorizationHeader;
     }
 
     public String publicKey() {
@@ -104,15 +308,61 @@ public class MpConfig {
     }
 
     public String baseUrl() {
-        return get("mp.baseUrl", "https://api.mercadopago.com");
+        return baseUrl;
+    }
+
+    /**
+     * Template de mp.endpoint.&lt;name&gt; (ej: endpoint("getOrder", "/v1/orders/%s")).
+     */
+    public String endpoint(String name, String def) {
+        String v = endpoints.get(name);
+        return (v == null) ? def : v;
     }
 
     public int connectTimeoutMs() {
-        return getInt("mp.timeout.connect", 10000);
+        return connectTimeoutMs;
     }
 
     public int socketTimeoutMs() {
-        return getInt("mp.timeout.socket", 20000);
+        return socketTimeoutMs;
+    }
+
+    /**
+     * Espera máxima para obtener una conexión del pool.
+     */
+    public int poolTimeoutMs() {
+        return poolTimeoutMs;
+    }
+
+    // Overrides por endpoint: mp.timeout.<tipo>.<endpoint> (ej: mp.timeout.socket.getOrder)
+    public int connectTimeoutMs(String endpointName) {
+        return getInt(opKey("mp.timeout.connect", endpointName), connectTimeoutMs());
+    }
+
+    public int socketTimeoutMs(String endpointName) {
+        return getInt(opKey("mp.timeout.socket", endpointName), socketTimeoutMs());
+    }
+
+    public int poolTimeoutMs(String endpointName) {
+        return getInt(opKey("mp.timeout.pool", endpointName), poolTimeoutMs());
+    }
+
+    private static String sha256(String s) {
+        try {
+            byte[] d = MessageDigest.getInstance("SHA-256").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(d.length * 2);
+            for (byte b : d) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 está en toda JVM, esto es solo por contrato del método
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String opKey(String base, String endpointName) {
+        return (endpointName == null || endpointName.isEmpty()) ? base : base + "." + endpointName;
     }
 
     public String get(String key, String def) {
@@ -132,6 +382,14 @@ public class MpConfig {
         }
     }
 
+    /**
+     * key.endpointName si está definida; si no, key; si no, def (ej:
+     * getInt("mp.retry.maxAttempts", "createOrder", 3)).
+     */
+    public int getInt(String key, String endpointName, int def) {
+        return getInt(opKey(key, endpointName), getInt(key, def));
+    }
+
     public boolean getBoolean(String key, boolean def) {
         String v = p.getProperty(key);
         if (v == null) {
@@ -142,16 +400,10 @@ public class MpConfig {
     }
 
     public boolean logHttp() {
-        if (logHttp == null) {
-            logHttp = getBoolean("mp.log.http", false);
-        }
         return logHttp;
     }
 
     public int logHttpMax() {
-        if (logHttpMax <= 0) {
-            logHttpMax = getInt("mp.log.http.max", 2000);
-        }
         return logHttpMax;
     }
 
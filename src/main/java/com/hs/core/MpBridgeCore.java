@@ -1,37 +1,138 @@
 package com.hs.core;
 
 import com.google.gson.Gson;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.hs.config.MpConfig;
 import com.hs.dto.*;
+import com.hs.http.MpCircuitOpenException;
 import com.hs.http.MpHttp;
 import com.hs.http.MpHttpAdapter;
+import com.hs.http.MpHttpAsync;
+import com.hs.http.MpHttpAsyncClient;
+import com.hs.http.MpHttpRetryException;
+import com.hs.http.MpRateLimitedException;
+import com.hs.journal.MpJournal;
+import com.hs.json.MpOrderBodyWriter;
+import com.hs.json.MpOrderFields;
+import com.hs.json.MpOrderJsonReader;
+import com.hs.metrics.MpMetrics;
+import com.hs.registry.MpRegistry;
+import com.hs.webhook.MpOrderStatusCache;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 /**
  * Capa de negocio/armado de JSON para Mercado Pago.
  *
  * Esta clase NO conoce ISCOBOL. Es testeable (mockeando MpHttp).
+ *
+ * Cada operación de órdenes/búsquedas tiene variante *Async
+ * (CompletableFuture) sobre MpHttpAsync, con el mismo armado y parseo.
  */
 public class MpBridgeCore {
 
     private final MpConfig cfg;
     private final MpHttp http;
+    private final Logger logger;
+    private final MpHttpAsync httpAsync; // el reactor NIO se crea recién en el primer request async
     private final Gson gson = new Gson();
+    private final MpOrderStatusCache orderCache; // null si no hay webhook
+    private final MpJournal journal; // null si mp.journal.enabled=false
+    private final MpResultCache results; // null si mp.idem.enabled=false
+    private final MpRegistry registry; // null si mp.registry.enabled=false
 
     public MpBridgeCore(MpConfig cfg, Logger logger) {
+        this(cfg, new MpHttpAdapter(cfg, logger), null, logger);
+    }
+
+    /**
+     * Para tests (MpHttp mockeado) o para inyectar otro transporte. Las
+     * variantes *Async corren el MpHttp bloqueante en el common pool.
+     */
+    public MpBridgeCore(MpConfig cfg, MpHttp http) {
+        this(cfg, http, null, null);
+    }
+
+    public MpBridgeCore(MpConfig cfg, MpHttp http, MpHttpAsync httpAsync, Logger logger) {
+        this(cfg, http, httpAsync, logger,
+                cfg.getBoolean("mp.webhook.enabled", false) ? MpOrderStatusCache.forConfig(cfg) : null);
+    }
+
+    /**
+     * Para tests: cache de webhooks propio en vez del de la cuenta.
+     */
+    public MpBridgeCore(MpConfig cfg, MpHttp http, MpOrderStatusCache orderCache) {
+        this(cfg, http, null, null, orderCache);
+    }
+
+    private MpBridgeCore(MpConfig cfg, MpHttp http, MpHttpAsync httpAsync, Logger logger,
+            MpOrderStatusCache orderCache) {
         this.cfg = cfg;
-        this.http = new MpHttpAdapter(cfg, logger);
+        this.http = http;
+        this.httpAsync = httpAsync != null ? httpAsync
+                : (http instanceof MpHttpAdapter) ? new MpHttpAsyncClient(cfg, logger)
+                : MpHttpAsync.blocking(http, ForkJoinPool.commonPool());
+        this.logger = logger;
+        this.orderCache = orderCache;
+        this.journal = MpJournal.forConfig(cfg);
+        this.results = MpResultCache.forConfig(cfg);
+        this.registry = MpRegistry.forConfig(cfg);
     }
 
     // --------------------------
     // Ordenes (O/Q/C/R)
     // --------------------------
     public MpResult createOrder(OrderIn in) {
+        return metered("createOrder", System.nanoTime(), deduped("createOrder", createIdem(in), () -> doCreateOrder(in)));
+    }
+
+    private MpResult doCreateOrder(OrderIn in) {
+        MpResult invalid = validateOrder(in);
+        if (invalid != null) {
+            return invalid;
+        }
+        String endpoint = cfg.endpoint("createOrder", "/v1/orders");
+        String body = orderBody(in);
+        String idem = orderIdem(in);
+        long seq = journalIntent("createOrder", endpoint, idem, body);
+        try {
+            MpHttp.MpHttpResponse r = http.postJson("createOrder", endpoint, body, idem);
+            return journaled(seq, r, parseCreateOrder(r));
+        } catch (Exception ex) {
+            return journaled(seq, ex, technicalError("createOrder", ex));
+        }
+    }
+
+    public CompletableFuture<MpResult> createOrderAsync(OrderIn in) {
+        return metered("createOrder", System.nanoTime(),
+                dedupedAsync("createOrder", createIdem(in), () -> doCreateOrderAsync(in)));
+    }
+
+    private CompletableFuture<MpResult> doCreateOrderAsync(OrderIn in) {
+        MpResult invalid = validateOrder(in);
+        if (invalid != null) {
+            return CompletableFuture.completedFuture(invalid);
+        }
+        String endpoint = cfg.endpoint("createOrder", "/v1/orders");
+        String body = orderBody(in);
+        String idem = orderIdem(in);
+        long seq = journalIntent("createOrder", endpoint, idem, body);
+        return handle("createOrder", seq, httpAsync.postJsonAsync("createOrder", endpoint, body, idem),
+                this::parseCreateOrder);
+    }
+
+    private MpResult validateOrder(OrderIn in) {
         if (in == null) {
             return MpResult.error(4, "Falta input");
         }
@@ -44,218 +145,442 @@ public class MpBridgeCore {
         if (isBlank(in.totalAmount)) {
             return MpResult.error(4, "Falta total_amount");
         }
+        if (registry != null && cfg.getBoolean("mp.registry.validateOrders", false)) {
+            try {
+                if (registry.missingPos(in.externalPosId, registrySource)) {
+                    return MpResult.error(4, "POS inexistente en MP: " + in.externalPosId.trim());
+                }
+            } catch (RuntimeException ex) {
+                // sin respuesta de la búsqueda: que decida MP
+            }
+        }
+        return null;
+    }
 
-        String mode = isBlank(in.mode) ? "dynamic" : in.mode.trim();
-        String unitMeasure = isBlank(in.unitMeasure) ? "unidad" : in.unitMeasure.trim();
-        String itemTitle = isBlank(in.itemTitle) ? "Item" : in.itemTitle.trim();
-        String idem = isBlank(in.idempotencyKey) ? in.externalReference.trim() : in.idempotencyKey.trim();
-
-        String endpoint = cfg.get("mp.endpoint.createOrder", "/v1/orders");
+    private static String orderIdem(OrderIn in) {
+        return isBlank(in.idempotencyKey) ? in.externalReference.trim() : in.idempotencyKey.trim();
+    }
 
-        JsonObject body = new JsonObject();
-        body.addProperty("type", "qr");
-        body.addProperty("total_amount", in.totalAmount.trim());
-        body.addProperty("description", nvl(in.description));
-        body.addProperty("external_reference", in.externalReference.trim());
-        if (!isBlank(in.expirationTime)) {
-            body.addProperty("expiration_time", in.expirationTime.trim());
-        }
-
-        JsonObject cfgNode = new JsonObject();
-        JsonObject qr = new JsonObject();
-        qr.addProperty("external_pos_id", in.externalPosId.trim());
-        qr.addProperty("mode", mode);
-        cfgNode.add("qr", qr);
-        body.add("config", cfgNode);
-
-        JsonObject transactions = new JsonObject();
-        JsonArray payments = new JsonArray();
-        JsonObject p0 = new JsonObject();
-        p0.addProperty("amount", in.totalAmount.trim());
-        payments.add(p0);
-        transactions.add("payments", payments);
-        body.add("transactions", transactions);
-
-        JsonArray items = new JsonArray();
-        JsonObject it = new JsonObject();
-        it.addProperty("title", itemTitle);
-        it.addProperty("unit_price", in.totalAmount.trim());
-        it.addProperty("quantity", 1);
-        it.addProperty("unit_measure", unitMeasure);
-        if (!isBlank(in.externalCode)) {
-            it.addProperty("external_code", in.externalCode.trim());
-        }
-        items.add(it);
-        body.add("items", items);
+    // Clave de idempotencia explícita o, si no viene, el id por defecto
+    private static String idem(String idempotencyKey, String def) {
+        return isBlank(idempotencyKey) ? def.trim() : idempotencyKey.trim();
+    }
 
-        try {
-            MpHttp.MpHttpResponse r = http.postJson(endpoint, gson.toJson(body), idem);
+    // Body de createOrder sin árbol Gson (mismo JSON que el armado anterior)
+    private static String orderBody(OrderIn in) {
+        return MpOrderBodyWriter.write(in);
+    }
 
-            MpResult out = MpResult.ok();
-            out.rawJson = r.body;
+    private MpResult parseCreateOrder(MpHttp.MpHttpResponse r) {
+        MpResult out = MpResult.ok();
+        out.rawJson(r.content()::text);
+        out.attempts = r.attempts;
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                // create suele devolver 201; si llegamos aquí es error
-                out.res = 5;
-                out.msg = "MP createOrder HTTP " + r.httpCode;
-                return out;
-            }
-
-            JsonObject mp = safeObj(r.body);
-            out.id = getJsonStr(mp, "id");
-            out.status = getJsonStr(mp, "status");
-            out.paymentId = extractPaymentId(mp);
-            out.qrData = extractQrData(mp);
-            out.msg = "OK";
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            // create suele devolver 201; si llegamos aquí es error
+            out.res = 5;
+            out.msg = "MP createOrder HTTP " + r.httpCode;
             return out;
-
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico createOrder: " + ex.getMessage());
         }
+
+        MpOrderFields mp = MpOrderJsonReader.read(r.content().reader(), new MpOrderFields());
+        out.id = mp.id;
+        out.status = mp.status;
+        out.statusDetail = mp.statusDetail;
+        out.paymentId = mp.paymentId;
+        out.qrData = mp.qrData;
+        out.msg = "OK";
+        return out;
     }
 
+    /**
+     * Consulta de estado ("Q"). Si hay webhook y una notificación vigente para
+     * la orden, responde desde memoria; si no, va a la API. Un pago informado
+     * por webhook se confirma siempre con la API antes de devolverlo.
+     */
     public MpResult getOrder(String orderId) {
+        return metered("getOrder", System.nanoTime(), doGetOrder(orderId));
+    }
+
+    private MpResult doGetOrder(String orderId) {
         if (isBlank(orderId)) {
             return MpResult.error(4, "Falta order_id");
         }
+        MpResult cached = fromOrderCache(orderId);
+        return cached != null ? cached : fetchOrder(orderId);
+    }
+
+    public CompletableFuture<MpResult> getOrderAsync(String orderId) {
+        return metered("getOrder", System.nanoTime(), doGetOrderAsync(orderId));
+    }
+
+    private CompletableFuture<MpResult> doGetOrderAsync(String orderId) {
+        if (isBlank(orderId)) {
+            return CompletableFuture.completedFuture(MpResult.error(4, "Falta order_id"));
+        }
+        MpResult cached = fromOrderCache(orderId);
+        return cached != null ? CompletableFuture.completedFuture(cached) : fetchOrderAsync(orderId);
+    }
+
+    private MpResult fromOrderCache(String orderId) {
+        if (orderCache == null) {
+            return null;
+        }
+        MpOrderStatusCache.Entry e = orderCache.getFresh(orderId.trim());
+        if (e == null || "processed".equalsIgnoreCase(e.status) || "processed".equalsIgnoreCase(e.paymentStatus)) {
+            return null; // el cobro no se da por hecho sin el GET
+        }
+        // Un estado intermedio vale pocos segundos: si se pierde el webhook de
+        // "processed", Q/W tienen que volver a ver la API
+        if (!isTerminalStatus(e.status)
+                && System.currentTimeMillis() - e.receivedAt > cfg.getInt("mp.webhook.pendingFreshMs", 3000)) {
+            return null;
+        }
+        MpResult out = MpResult.ok();
+        out.id = orderId.trim();
+        out.status = e.status;
+        out.statusDetail = nvl(e.statusDetail);
+        out.paymentId = nvl(e.paymentId);
+        out.rawJson = e.rawJson;
+        out.msg = "OK (webhook)";
+        return out;
+    }
 
-        String endpointFmt = cfg.get("mp.endpoint.getOrder", "/v1/orders/%s");
-        String endpoint = String.format(endpointFmt, orderId.trim());
+    /**
+     * Consulta siempre contra la API (cancel/refund validan con dato fresco).
+     */
+    private MpResult fetchOrder(String orderId) {
+        return fetchOrder(orderId, new MpOrderFields());
+    }
 
+    private MpResult fetchOrder(String orderId, MpOrderFields f) {
+        if (isBlank(orderId)) {
+            return MpResult.error(4, "Falta order_id");
+        }
         try {
-            MpHttp.MpHttpResponse r = http.get(endpoint);
+            return parseGetOrder(orderId, http.get("getOrder", orderEndpoint("getOrder", "/v1/orders/%s", orderId)), f);
+        } catch (Exception ex) {
+            return technicalError("getOrder", ex);
+        }
+    }
 
-            MpResult out = MpResult.ok();
-            out.id = orderId.trim();
-            out.rawJson = r.body;
+    private CompletableFuture<MpResult> fetchOrderAsync(String orderId) {
+        return fetchOrderAsync(orderId, new MpOrderFields());
+    }
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                out.res = 5;
-                out.msg = "MP getOrder HTTP " + r.httpCode;
-                return out;
-            }
+    private CompletableFuture<MpResult> fetchOrderAsync(String orderId, MpOrderFields f) {
+        return handle("getOrder", httpAsync.getAsync("getOrder", orderEndpoint("getOrder", "/v1/orders/%s", orderId)),
+                r -> parseGetOrder(orderId, r, f));
+    }
 
-            JsonObject mp = safeObj(r.body);
-            out.status = getJsonStr(mp, "status");
-            out.paymentId = extractPaymentId(mp);
-            out.qrData = extractQrData(mp);
-            out.msg = "OK";
-            return out;
+    private String orderEndpoint(String name, String def, String orderId) {
+        return String.format(cfg.endpoint(name, def), orderId.trim());
+    }
 
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico getOrder: " + ex.getMessage());
+    // f: campos parseados, para quien necesita más que el MpResult (refund)
+    private MpResult parseGetOrder(String orderId, MpHttp.MpHttpResponse r, MpOrderFields f) {
+        MpResult out = MpResult.ok();
+        out.id = orderId.trim();
+        out.rawJson(r.content()::text);
+        out.attempts = r.attempts;
+
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            out.res = 5;
+            out.msg = "MP getOrder HTTP " + r.httpCode;
+            return out;
         }
+
+        MpOrderFields mp = MpOrderJsonReader.read(r.content().reader(), f);
+        out.status = mp.status;
+        out.statusDetail = mp.statusDetail;
+        out.paymentId = mp.paymentId;
+        out.qrData = mp.qrData;
+        out.msg = "OK";
+        return out;
     }
 
     public MpResult cancelOrder(String orderId, String idempotencyKey) {
+        return metered("cancelOrder", System.nanoTime(), deduped("cancelOrder", actionIdem(orderId, idempotencyKey),
+                () -> doCancelOrder(orderId, idempotencyKey)));
+    }
+
+    private MpResult doCancelOrder(String orderId, String idempotencyKey) {
         if (isBlank(orderId)) {
             return MpResult.error(4, "Falta order_id");
         }
 
+        long seq = -1;
         try {
             // 1) validar status
-            MpResult q = getOrder(orderId);
-            if (q.res != 0) {
-                return q;
-            }
-
-            String status = nvl(q.status);
-            if (!"created".equalsIgnoreCase(status)) {
-                MpResult out = MpResult.business("No se puede cancelar: status=" + status);
-                out.id = orderId.trim();
-                out.status = status;
-                out.paymentId = q.paymentId;
-                out.qrData = q.qrData;
-                out.rawJson = q.rawJson;
-                return out;
+            MpResult q = fetchOrder(orderId);
+            MpResult blocked = checkCancelable(orderId, q);
+            if (blocked != null) {
+                return blocked;
             }
 
             // 2) cancelar
-            String endpointFmt = cfg.get("mp.endpoint.cancelOrder", "/v1/orders/%s/cancel");
-            String endpoint = String.format(endpointFmt, orderId.trim());
+            String endpoint = orderEndpoint("cancelOrder", "/v1/orders/%s/cancel", orderId);
+            String idem = idem(idempotencyKey, orderId);
+            seq = journalIntent("cancelOrder", endpoint, idem, "{}");
+            MpHttp.MpHttpResponse r = http.postJson("cancelOrder", endpoint, "{}", idem);
+            return journaled(seq, r, parseCancelOrder(orderId, r));
 
-            String idem = isBlank(idempotencyKey) ? orderId.trim() : idempotencyKey.trim();
-            MpHttp.MpHttpResponse r = http.postJson(endpoint, "{}", idem);
+        } catch (Exception ex) {
+            return journaled(seq, ex, technicalError("cancelOrder", ex));
+        }
+    }
 
-            MpResult out = MpResult.ok();
-            out.id = orderId.trim();
-            out.rawJson = r.body;
+    public CompletableFuture<MpResult> cancelOrderAsync(String orderId, String idempotencyKey) {
+        return metered("cancelOrder", System.nanoTime(), dedupedAsync("cancelOrder", actionIdem(orderId, idempotencyKey),
+                () -> doCancelOrderAsync(orderId, idempotencyKey)));
+    }
 
-            if (r.httpCode == 409) {
-                out.res = 2;
-                out.msg = "Negocio: cannot_cancel_order/expired";
-                return out;
+    private CompletableFuture<MpResult> doCancelOrderAsync(String orderId, String idempotencyKey) {
+        if (isBlank(orderId)) {
+            return CompletableFuture.completedFuture(MpResult.error(4, "Falta order_id"));
+        }
+        return fetchOrderAsync(orderId).thenCompose(q -> {
+            MpResult blocked = checkCancelable(orderId, q);
+            if (blocked != null) {
+                return CompletableFuture.completedFuture(blocked);
             }
+            String endpoint = orderEndpoint("cancelOrder", "/v1/orders/%s/cancel", orderId);
+            String idem = idem(idempotencyKey, orderId);
+            long seq = journalIntent("cancelOrder", endpoint, idem, "{}");
+            return handle("cancelOrder", seq, httpAsync.postJsonAsync("cancelOrder", endpoint, "{}", idem),
+                    r -> parseCancelOrder(orderId, r));
+        });
+    }
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                out.res = 5;
-                out.msg = "MP cancelOrder HTTP " + r.httpCode;
-                return out;
-            }
+    // null = se puede cancelar; si no, el resultado a devolver
+    private MpResult checkCancelable(String orderId, MpResult q) {
+        if (q.res != 0) {
+            return q;
+        }
 
-            out.status = "cancelled";
-            out.msg = "Cancelada";
+        String status = nvl(q.status);
+        if (!"created".equalsIgnoreCase(status)) {
+            MpResult out = MpResult.business("No se puede cancelar: status=" + status);
+            out.id = orderId.trim();
+            out.status = status;
+            out.paymentId = q.paymentId;
+            out.qrData = q.qrData;
+            out.rawJson(q::rawJson);
             return out;
+        }
+        return null;
+    }
 
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico cancelOrder: " + ex.getMessage());
+    private MpResult parseCancelOrder(String orderId, MpHttp.MpHttpResponse r) {
+        MpResult out = MpResult.ok();
+        out.id = orderId.trim();
+        out.rawJson(r.content()::text);
+        out.attempts = r.attempts;
+
+        if (r.httpCode == 409) {
+            out.res = 2;
+            out.msg = "Negocio: cannot_cancel_order/expired";
+            return out;
         }
+
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            out.res = 5;
+            out.msg = "MP cancelOrder HTTP " + r.httpCode;
+            return out;
+        }
+
+        out.status = "cancelled";
+        out.msg = "Cancelada";
+        return out;
     }
 
     public MpResult refundOrder(String orderId, String idempotencyKey) {
+        return metered("refundOrder", System.nanoTime(), deduped("refundOrder", actionIdem(orderId, idempotencyKey),
+                () -> doRefundOrder(orderId, idempotencyKey)));
+    }
+
+    private MpResult doRefundOrder(String orderId, String idempotencyKey) {
         if (isBlank(orderId)) {
             return MpResult.error(4, "Falta order_id");
         }
 
+        long seq = -1;
         try {
             // 1) consultar orden y verificar pago
-            MpResult q = getOrder(orderId);
+            MpOrderFields pi = new MpOrderFields();
+            MpResult q = fetchOrder(orderId, pi);
             if (q.res != 0) {
                 return q;
             }
-
-            JsonObject mp = safeObj(q.rawJson);
-            PaymentInfo pi = extractPaymentInfo(mp);
-
-            boolean paid = "approved".equalsIgnoreCase(pi.status) || "paid".equalsIgnoreCase(pi.status);
-            if (!paid) {
-                MpResult out = MpResult.business("No reembolsable: payment.status=" + nvl(pi.status) + " order.status=" + nvl(q.status));
-                out.id = orderId.trim();
-                out.status = q.status;
-                out.paymentId = pi.id;
-                out.rawJson = q.rawJson;
-                return out;
+            MpResult blocked = checkRefundable(orderId, q, pi);
+            if (blocked != null) {
+                return blocked;
             }
 
             // 2) refund
-            String endpointFmt = cfg.get("mp.endpoint.refundOrder", "/v1/orders/%s/refund");
-            String endpoint = String.format(endpointFmt, orderId.trim());
+            String endpoint = orderEndpoint("refundOrder", "/v1/orders/%s/refund", orderId);
+            String idem = idem(idempotencyKey, orderId);
+            seq = journalIntent("refundOrder", endpoint, idem, "{}");
+            MpHttp.MpHttpResponse r = http.postJson("refundOrder", endpoint, "{}", idem);
+            return journaled(seq, r, parseRefundOrder(orderId, pi.paymentId, r));
 
-            String idem = isBlank(idempotencyKey) ? orderId.trim() : idempotencyKey.trim();
-            MpHttp.MpHttpResponse r = http.postJson(endpoint, "{}", idem);
+        } catch (Exception ex) {
+            return journaled(seq, ex, technicalError("refundOrder", ex));
+        }
+    }
 
-            MpResult out = MpResult.ok();
+    public CompletableFuture<MpResult> refundOrderAsync(String orderId, String idempotencyKey) {
+        return metered("refundOrder", System.nanoTime(), dedupedAsync("refundOrder", actionIdem(orderId, idempotencyKey),
+                () -> doRefundOrderAsync(orderId, idempotencyKey)));
+    }
+
+    private CompletableFuture<MpResult> doRefundOrderAsync(String orderId, String idempotencyKey) {
+        if (isBlank(orderId)) {
+            return CompletableFuture.completedFuture(MpResult.error(4, "Falta order_id"));
+        }
+        MpOrderFields pi = new MpOrderFields();
+        return fetchOrderAsync(orderId, pi).thenCompose(q -> {
+            if (q.res != 0) {
+                return CompletableFuture.completedFuture(q);
+            }
+            MpResult blocked = checkRefundable(orderId, q, pi);
+            if (blocked != null) {
+                return CompletableFuture.completedFuture(blocked);
+            }
+            String endpoint = orderEndpoint("refundOrder", "/v1/orders/%s/refund", orderId);
+            String idem = idem(idempotencyKey, orderId);
+            long seq = journalIntent("refundOrder", endpoint, idem, "{}");
+            return handle("refundOrder", seq, httpAsync.postJsonAsync("refundOrder", endpoint, "{}", idem),
+                    r -> parseRefundOrder(orderId, pi.paymentId, r));
+        });
+    }
+
+    private MpResult checkRefundable(String orderId, MpResult q, MpOrderFields pi) {
+        boolean paid = "approved".equalsIgnoreCase(pi.paymentStatus) || "paid".equalsIgnoreCase(pi.paymentStatus);
+        if (!paid) {
+            MpResult out = MpResult.business("No reembolsable: payment.status=" + pi.paymentStatus + " order.status=" + nvl(q.status));
             out.id = orderId.trim();
-            out.paymentId = pi.id;
-            out.rawJson = r.body;
+            out.status = q.status;
+            out.paymentId = pi.paymentId;
+            out.rawJson(q::rawJson);
+            return out;
+        }
+        return null;
+    }
 
-            if (r.httpCode == 409) {
-                out.res = 2;
-                out.msg = "Negocio: cannot_refund_order";
-                return out;
+    private MpResult parseRefundOrder(String orderId, String paymentId, MpHttp.MpHttpResponse r) {
+        MpResult out = MpResult.ok();
+        out.id = orderId.trim();
+        out.paymentId = paymentId;
+        out.rawJson(r.content()::text);
+        out.attempts = r.attempts;
+
+        if (r.httpCode == 409) {
+            out.res = 2;
+            out.msg = "Negocio: cannot_refund_order";
+            return out;
+        }
+
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            out.res = 5;
+            out.msg = "MP refundOrder HTTP " + r.httpCode;
+            return out;
+        }
+
+        out.msg = "Refund OK";
+        return out;
+    }
+
+    // --------------------------
+    // Espera de pago (W)
+    // --------------------------
+    /**
+     * Bloquea hasta que la orden llegue a un estado final o venza maxWaitMs.
+     *
+     * Consulta con backoff exponencial + jitter (mp.await.initialMs,
+     * mp.await.maxIntervalMs, mp.await.factor) para que COBOL no tenga que
+     * hacer un loop de CALL "Q". Con webhook activo las consultas salen de
+     * memoria. Si vence el plazo devuelve res=3 con el último estado leído.
+     * El plazo pedido por el llamador se recorta a mp.await.limitMs para que
+     * un CALL "W" no retenga el hilo de la caja sin límite.
+     */
+    public MpResult awaitOrder(String orderId, long maxWaitMs) {
+        return metered("awaitOrder", System.nanoTime(), doAwaitOrder(orderId, maxWaitMs));
+    }
+
+    private MpResult doAwaitOrder(String orderId, long maxWaitMs) {
+        if (isBlank(orderId)) {
+            return MpResult.error(4, "Falta order_id");
+        }
+
+        long limit = Math.max(1, cfg.getInt("mp.await.limitMs", 300000));
+        long max = Math.min(limit, maxWaitMs > 0 ? maxWaitMs : cfg.getInt("mp.await.maxMs", 120000));
+        long interval = Math.max(50, cfg.getInt("mp.await.initialMs", 500));
+        long maxInterval = Math.max(interval, cfg.getInt("mp.await.maxIntervalMs", 5000));
+        double factor = Math.max(1.0, parseDoubleDef(cfg.get("mp.await.factor", "1.5"), 1.5));
+        int maxErrors = Math.max(1, cfg.getInt("mp.await.maxErrors", 5));
+
+        long deadline = System.currentTimeMillis() + max;
+        int polls = 0;
+        int errors = 0;
+        MpResult last;
+
+        while (true) {
+            last = getOrder(orderId);
+            polls++;
+
+            if (last.res == 0) {
+                errors = 0;
+                if (isTerminalStatus(last.status)) {
+                    last.msg = "Estado final: " + last.status + " (consultas=" + polls + ")";
+                    return last;
+                }
+            } else if (++errors >= maxErrors) {
+                return last; // error persistente: no seguir esperando
             }
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                out.res = 5;
-                out.msg = "MP refundOrder HTTP " + r.httpCode;
-                return out;
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
             }
 
-            out.msg = "Refund OK";
-            return out;
+            // "equal jitter": mitad fija + mitad aleatoria, para no sincronizar cajas
+            long half = interval / 2;
+            long sleep = Math.min(remaining, half + ThreadLocalRandom.current().nextLong(half + 1));
+            try {
+                Thread.sleep(sleep);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            interval = Math.min(maxInterval, (long) (interval * factor));
+        }
 
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico refundOrder: " + ex.getMessage());
+        MpResult out = last;
+        if (out.res == 0) {
+            out.res = 3;
+        }
+        out.msg = "Sin estado final al vencer la espera: status=" + nvl(out.status) + " (consultas=" + polls + ")";
+        return out;
+    }
+
+    /**
+     * Estados de orden que ya no cambian solos.
+     */
+    public static boolean isTerminalStatus(String status) {
+        if (status == null) {
+            return false;
+        }
+        switch (status.trim().toLowerCase()) {
+            case "processed":
+            case "canceled":
+            case "cancelled":
+            case "expired":
+            case "refunded":
+            case "failed":
+                return true;
+            default:
+                return false;
         }
     }
 
@@ -263,6 +588,10 @@ public class MpBridgeCore {
     // Admin: Stores (S / LS)
     // --------------------------
     public MpResult createStore(StoreIn in) {
+        return metered("createStore", System.nanoTime(), doCreateStore(in));
+    }
+
+    private MpResult doCreateStore(StoreIn in) {
         if (in == null) {
             return MpResult.error(4, "Falta input");
         }
@@ -278,7 +607,7 @@ public class MpBridgeCore {
             return MpResult.error(4, "Falta user_id en config");
         }
 
-        String endpointFmt = cfg.get("mp.endpoint.createStore", "/users/%s/stores");
+        String endpointFmt = cfg.endpoint("createStore", "/users/%s/stores");
         String endpoint = String.format(endpointFmt, userId.trim());
 
         JsonObject body = new JsonObject();
@@ -309,9 +638,10 @@ public class MpBridgeCore {
         String idem = isBlank(in.idempotencyKey) ? in.externalId.trim() : in.idempotencyKey.trim();
 
         try {
-            MpHttp.MpHttpResponse r = http.postJson(endpoint, gson.toJson(body), idem);
+            MpHttp.MpHttpResponse r = http.postJson("createStore", endpoint, gson.toJson(body), idem);
             MpResult out = MpResult.ok();
-            out.rawJson = r.body;
+            out.rawJson(r.content()::text);
+            out.attempts = r.attempts;
 
             if (r.httpCode == 409) {
                 out.res = 2;
@@ -324,13 +654,16 @@ public class MpBridgeCore {
                 return out;
             }
 
-            JsonObject mp = safeObj(r.body);
+            JsonObject mp = safeObj(r);
             out.id = firstNonBlank(getJsonStr(mp, "id"), getJsonStr(mp, "store_id"));
             out.msg = "OK";
+            if (registry != null) {
+                registry.put(new MpRegistry.Entry(MpRegistry.STORE, out.id, in.name, in.externalId, null, null));
+            }
             return out;
 
         } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico createStore: " + ex.getMessage());
+            return technicalError("createStore", ex);
         }
     }
 
@@ -346,61 +679,79 @@ public MpResult searchStores(SearchIn in) {
 }
 
     public MpResult searchStores(String userId, SearchIn in) {
-
-        int limit = (in != null && in.limit > 0) ? in.limit : 50;
-        int offset = (in != null && in.offset >= 0) ? in.offset : 0;
-        String filter = (in != null && in.filterExternalId != null)
-                ? in.filterExternalId
-                : "";
-
-        return searchStores(userId, limit, offset, filter);
+        return searchStores(userId, limitOf(in), offsetOf(in), filterOf(in));
     }
 
 // ===============================
 // SEARCH POS (LP)
 // ===============================
     public MpResult searchPos(SearchIn in) {
-
-        int limit = (in != null && in.limit > 0) ? in.limit : 50;
-        int offset = (in != null && in.offset >= 0) ? in.offset : 0;
-        String filter = (in != null && in.filterExternalId != null)
-                ? in.filterExternalId
-                : "";
-
-        return searchPos(limit, offset, filter);
+        return searchPos(limitOf(in), offsetOf(in), filterOf(in));
     }
 
     public MpResult searchStores(String userId, int limit, int offset, String externalStoreId) {
+        return metered("searchStores", System.nanoTime(), doSearchStores(userId, limit, offset, externalStoreId));
+    }
+
+    private MpResult doSearchStores(String userId, int limit, int offset, String externalStoreId) {
         if (isBlank(userId)) {
             return MpResult.error(4, "Falta user_id");
         }
-        String endpointFmt = cfg.get("mp.endpoint.searchStores", "/users/%s/stores/search");
-        String base = String.format(endpointFmt, userId.trim());
+        try {
+            return parseSearch("searchStores", http.get("searchStores", storesQuery(userId, limit, offset, externalStoreId)));
+        } catch (Exception ex) {
+            return technicalError("searchStores", ex);
+        }
+    }
+
+    public CompletableFuture<MpResult> searchStoresAsync(SearchIn in) {
+        String userId = cfg.userId();
+        if (isBlank(userId)) {
+            return CompletableFuture.completedFuture(MpResult.error(4, "Falta user_id en config"));
+        }
+        return searchStoresAsync(userId, limitOf(in), offsetOf(in), filterOf(in));
+    }
+
+    public CompletableFuture<MpResult> searchStoresAsync(String userId, int limit, int offset, String externalStoreId) {
+        return metered("searchStores", System.nanoTime(), doSearchStoresAsync(userId, limit, offset, externalStoreId));
+    }
+
+    private CompletableFuture<MpResult> doSearchStoresAsync(String userId, int limit, int offset, String externalStoreId) {
+        if (isBlank(userId)) {
+            return CompletableFuture.completedFuture(MpResult.error(4, "Falta user_id"));
+        }
+        return handle("searchStores", httpAsync.getAsync("searchStores", storesQuery(userId, limit, offset, externalStoreId)),
+                r -> parseSearch("searchStores", r));
+    }
 
+    private String storesQuery(String userId, int limit, int offset, String externalStoreId) {
+        String endpointFmt = cfg.endpoint("searchStores", "/users/%s/stores/search");
+        return searchQuery(String.format(endpointFmt, userId.trim()), limit, offset, externalStoreId);
+    }
+
+    private static String searchQuery(String base, int limit, int offset, String externalId) {
         StringBuilder sb = new StringBuilder(base);
         sb.append("?limit=").append(limit);
         sb.append("&offset=").append(offset);
-        if (!isBlank(externalStoreId)) {
-            sb.append("&external_id=").append(url(externalStoreId.trim()));
+        if (!isBlank(externalId)) {
+            sb.append("&external_id=").append(url(externalId.trim()));
         }
+        return sb.toString();
+    }
 
-        try {
-            MpHttp.MpHttpResponse r = http.get(sb.toString());
-            MpResult out = MpResult.ok();
-            out.rawJson = r.body;
+    private static MpResult parseSearch(String op, MpHttp.MpHttpResponse r) {
+        MpResult out = MpResult.ok();
+        out.rawJson(r.content()::text);
+        out.attempts = r.attempts;
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                out.res = 5;
-                out.msg = "MP searchStores HTTP " + r.httpCode;
-                return out;
-            }
-
-            out.msg = "OK";
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            out.res = 5;
+            out.msg = "MP " + op + " HTTP " + r.httpCode;
             return out;
-
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico searchStores: " + ex.getMessage());
         }
+
+        out.msg = "OK";
+        return out;
     }
 
     // overload de compatibilidad (por si algún main viejo lo llama con 5 params)
@@ -412,6 +763,10 @@ public MpResult searchStores(SearchIn in) {
     // Admin: POS (P / LP)
     // --------------------------
     public MpResult createPos(PosIn in) {
+        return metered("createPos", System.nanoTime(), doCreatePos(in));
+    }
+
+    private MpResult doCreatePos(PosIn in) {
         if (in == null) {
             return MpResult.error(4, "Falta input");
         }
@@ -425,7 +780,7 @@ public MpResult searchStores(SearchIn in) {
             return MpResult.error(4, "Falta store_id");
         }
 
-        String endpoint = cfg.get("mp.endpoint.createPos", "/pos");
+        String endpoint = cfg.endpoint("createPos", "/pos");
 
         JsonObject body = new JsonObject();
         body.addProperty("name", in.name.trim());
@@ -435,9 +790,10 @@ public MpResult searchStores(SearchIn in) {
         String idem = isBlank(in.idempotencyKey) ? in.externalId.trim() : in.idempotencyKey.trim();
 
         try {
-            MpHttp.MpHttpResponse r = http.postJson(endpoint, gson.toJson(body), idem);
+            MpHttp.MpHttpResponse r = http.postJson("createPos", endpoint, gson.toJson(body), idem);
             MpResult out = MpResult.ok();
-            out.rawJson = r.body;
+            out.rawJson(r.content()::text);
+            out.attempts = r.attempts;
 
             if (r.httpCode == 409) {
                 out.res = 2;
@@ -450,13 +806,17 @@ public MpResult searchStores(SearchIn in) {
                 return out;
             }
 
-            JsonObject mp = safeObj(r.body);
+            JsonObject mp = safeObj(r);
             out.id = firstNonBlank(getJsonStr(mp, "id"), getJsonStr(mp, "pos_id"));
             out.msg = "OK";
+            if (registry != null) {
+                registry.put(new MpRegistry.Entry(MpRegistry.POS, out.id, in.name, in.externalId,
+                        String.valueOf(in.storeId), getJsonStr(mp, "external_store_id")));
+            }
             return out;
 
         } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico createPos: " + ex.getMessage());
+            return technicalError("createPos", ex);
         }
     }
 
@@ -470,71 +830,449 @@ public MpResult searchStores(SearchIn in) {
     }
 
     public MpResult searchPos(int limit, int offset, String externalPosId) {
-        String base = cfg.get("mp.endpoint.searchPos", "/pos");
+        return metered("searchPos", System.nanoTime(), doSearchPos(limit, offset, externalPosId));
+    }
 
-        StringBuilder sb = new StringBuilder(base);
-        sb.append("?limit=").append(limit);
-        sb.append("&offset=").append(offset);
-        if (!isBlank(externalPosId)) {
-            sb.append("&external_id=").append(url(externalPosId.trim()));
+    private MpResult doSearchPos(int limit, int offset, String externalPosId) {
+        try {
+            return parseSearch("searchPos", http.get("searchPos", posQuery(limit, offset, externalPosId)));
+        } catch (Exception ex) {
+            return technicalError("searchPos", ex);
         }
+    }
 
+    public CompletableFuture<MpResult> searchPosAsync(SearchIn in) {
+        return searchPosAsync(limitOf(in), offsetOf(in), filterOf(in));
+    }
+
+    public CompletableFuture<MpResult> searchPosAsync(int limit, int offset, String externalPosId) {
+        return metered("searchPos", System.nanoTime(), doSearchPosAsync(limit, offset, externalPosId));
+    }
+
+    private CompletableFuture<MpResult> doSearchPosAsync(int limit, int offset, String externalPosId) {
+        return handle("searchPos", httpAsync.getAsync("searchPos", posQuery(limit, offset, externalPosId)),
+                r -> parseSearch("searchPos", r));
+    }
+
+    private String posQuery(int limit, int offset, String externalPosId) {
+        return searchQuery(cfg.endpoint("searchPos", "/pos"), limit, offset, externalPosId);
+    }
+
+    private static int limitOf(SearchIn in) {
+        return (in != null && in.limit > 0) ? in.limit : 50;
+    }
+
+    private static int offsetOf(SearchIn in) {
+        return (in != null && in.offset >= 0) ? in.offset : 0;
+    }
+
+    private static String filterOf(SearchIn in) {
+        return (in != null && in.filterExternalId != null) ? in.filterExternalId : "";
+    }
+
+    // --------------------------
+    // Registro de stores / POS (LK)
+    // --------------------------
+    private final MpRegistry.Source registrySource = new MpRegistry.Source() {
+        @Override
+        public MpResult stores(int limit, int offset, String externalId) {
+            try {
+                return searchStores(cfg.userId(), limit, offset, externalId);
+            } catch (IllegalStateException ex) {
+                return MpResult.error(4, ex.getMessage());
+            }
+        }
+
+        @Override
+        public MpResult pos(int limit, int offset, String externalId) {
+            return searchPos(limit, offset, externalId);
+        }
+    };
+
+    /**
+     * Id de MP del store con ese external_id (desde memoria; si no está, una
+     * búsqueda puntual). res 2 si no existe.
+     */
+    public MpResult lookupStore(String externalId) {
+        return metered("lookup", System.nanoTime(), lookup(MpRegistry.STORE, externalId));
+    }
+
+    public MpResult lookupPos(String externalId) {
+        return metered("lookup", System.nanoTime(), lookup(MpRegistry.POS, externalId));
+    }
+
+    /**
+     * Store por nombre: solo desde el registro (MP no busca por nombre).
+     */
+    public MpResult lookupStoreByName(String name) {
+        return metered("lookup", System.nanoTime(), doLookupStoreByName(name));
+    }
+
+    private MpResult doLookupStoreByName(String name) {
+        if (isBlank(name)) {
+            return MpResult.error(4, "Falta store_name");
+        }
+        if (registry == null) {
+            return MpResult.error(4, "Búsqueda por nombre requiere mp.registry.enabled=true");
+        }
         try {
-            MpHttp.MpHttpResponse r = http.get(sb.toString());
-            MpResult out = MpResult.ok();
-            out.rawJson = r.body;
+            return found(registry.storeByName(name, registrySource), name);
+        } catch (RuntimeException ex) {
+            return lookupError(ex);
+        }
+    }
 
-            if (r.httpCode < 200 || r.httpCode >= 300) {
-                out.res = 5;
-                out.msg = "MP searchPos HTTP " + r.httpCode;
-                return out;
+    private MpResult lookup(String kind, String externalId) {
+        if (isBlank(externalId)) {
+            return MpResult.error(4, MpRegistry.STORE.equals(kind) ? "Falta store_external_id" : "Falta pos_external_id");
+        }
+        try {
+            MpRegistry.Entry e = registry == null
+                    ? MpRegistry.fetchOne(kind, externalId.trim(), registrySource)
+                    : (MpRegistry.STORE.equals(kind) ? registry.store(externalId, registrySource)
+                    : registry.pos(externalId, registrySource));
+            return found(e, externalId.trim());
+        } catch (RuntimeException ex) {
+            return lookupError(ex);
+        }
+    }
+
+    private static MpResult found(MpRegistry.Entry e, String key) {
+        if (e == null) {
+            return MpResult.business("Negocio: no existe " + key);
+        }
+        MpResult out = MpResult.ok();
+        out.id = e.id;
+        out.status = e.kind;
+        out.rawJson = e.toJson();
+        return out;
+    }
+
+    private MpResult lookupError(RuntimeException ex) {
+        MpResult failed = MpRegistry.failure(ex);
+        return failed != null ? failed : technicalError("lookup", ex);
+    }
+
+    /**
+     * POS del store según el registro (vacío si está deshabilitado).
+     */
+    public List<MpRegistry.Entry> posOfStore(String storeId) {
+        return registry == null ? Collections.emptyList() : registry.posOfStore(storeId, registrySource);
+    }
+
+    /**
+     * Pagina todos los stores y POS y reemplaza el índice del registro.
+     */
+    public MpResult syncRegistry() {
+        if (registry == null) {
+            return MpResult.error(4, "mp.registry.enabled=false");
+        }
+        return registry.sync(registrySource);
+    }
+
+    // --------------------------
+    // Warm-up (WU)
+    // --------------------------
+    /**
+     * Precarga clases, DNS y conexiones y calienta el código de órdenes (ver
+     * MpWarmup).
+     */
+    public MpResult warmUp() {
+        return metered("warmup", System.nanoTime(), MpWarmup.run(cfg, logger, this));
+    }
+
+    // Respuestas de ejemplo con la forma de las de MP (solo para warm-up)
+    private static final String WARM_ORDER = "{\"id\":\"ORD01WARMUP\",\"type\":\"qr\",\"external_reference\":\"WARM-1\","
+            + "\"status\":\"processed\",\"status_detail\":\"accredited\",\"total_amount\":\"54.00\","
+            + "\"config\":{\"qr\":{\"external_pos_id\":\"WARMPOS\",\"mode\":\"hybrid\"}},"
+            + "\"type_response\":{\"qr_data\":\"00020101021243650016COM.MERCADOLIBRE\"},"
+            + "\"transactions\":{\"payments\":[{\"id\":\"PAY01WARMUP\",\"amount\":\"54.00\",\"status\":\"processed\"}]}}";
+    private static final String WARM_SEARCH = "{\"paging\":{\"total\":1,\"offset\":0,\"limit\":50},"
+            + "\"results\":[{\"id\":\"1234567\",\"name\":\"Warm\",\"external_id\":\"WARM\"}]}";
+    private static final String WARM_ERROR = "{\"errors\":[{\"code\":\"cannot_cancel_order\",\"message\":\"warm-up\"}]}";
+
+    /**
+     * Corre armado y parseo de O/Q/C/R y búsquedas sobre respuestas de
+     * ejemplo: sin red, sin journal ni caché de duplicados y sin métricas. Lo
+     * que devuelve es solo para que el JIT no descarte el trabajo.
+     */
+    int exercise(int rounds) {
+        OrderIn in = new OrderIn();
+        in.externalReference = "WARM-1";
+        in.description = "Warm-up";
+        in.externalPosId = "WARMPOS";
+        in.totalAmount = "54.00";
+        in.itemTitle = "Warm-up";
+        in.expirationTime = "PT5M";
+        MpHttp.MpHttpResponse created = new MpHttp.MpHttpResponse(201, WARM_ORDER);
+        MpHttp.MpHttpResponse found = new MpHttp.MpHttpResponse(200, WARM_SEARCH);
+        MpHttp.MpHttpResponse conflict = new MpHttp.MpHttpResponse(409, WARM_ERROR);
+
+        int sum = 0;
+        for (int i = 0; i < rounds; i++) {
+            sum += orderBody(in).length() + orderIdem(in).length();
+            sum += parseCreateOrder(created).id.length();
+            sum += parseGetOrder("ORD01WARMUP", created, new MpOrderFields()).status.length();
+            sum += parseCancelOrder("ORD01WARMUP", conflict).res;
+            sum += parseRefundOrder("ORD01WARMUP", "PAY01WARMUP", created).res;
+            sum += parseSearch("searchPos", found).res;
+            sum += isTerminalStatus("processed") ? 1 : 0;
+            JsonObject o = safeObj(WARM_SEARCH);
+            sum += o == null ? 0 : o.size();
+        }
+        return sum;
+    }
+
+    // --------------------------
+    // Async / errores técnicos
+    // --------------------------
+    // Métricas por operación: tiempo total (reintentos incluidos) y res.
+    // t0 se evalúa antes que la llamada (argumentos de izquierda a derecha).
+    private static MpResult metered(String op, long t0, MpResult r) {
+        MpMetrics.operation(op, r.res, System.nanoTime() - t0);
+        return r;
+    }
+
+    private static CompletableFuture<MpResult> metered(String op, long t0, CompletableFuture<MpResult> f) {
+        return f.whenComplete((r, ex) -> MpMetrics.operation(op, r != null ? r.res : 9, System.nanoTime() - t0));
+    }
+
+    private CompletableFuture<MpResult> handle(String op, CompletableFuture<MpHttp.MpHttpResponse> f,
+            Function<MpHttp.MpHttpResponse, MpResult> parse) {
+        return handle(op, -1, f, parse);
+    }
+
+    // seq: intención anotada en el journal (-1 = sin journal)
+    private CompletableFuture<MpResult> handle(String op, long seq, CompletableFuture<MpHttp.MpHttpResponse> f,
+            Function<MpHttp.MpHttpResponse, MpResult> parse) {
+        return f.handle((r, ex) -> {
+            if (ex != null) {
+                Throwable t = unwrap(ex);
+                return journaled(seq, t, technicalError(op, t));
             }
+            return journaled(seq, r, parse.apply(r));
+        });
+    }
 
-            out.msg = "OK";
-            return out;
+    private static Throwable unwrap(Throwable t) {
+        while ((t instanceof CompletionException || t instanceof ExecutionException) && t.getCause() != null) {
+            t = t.getCause();
+        }
+        return t;
+    }
 
-        } catch (Exception ex) {
-            return MpResult.error(4, "Error técnico searchPos: " + ex.getMessage());
+    // --------------------------
+    // Duplicados (mismo O/C/R con la misma clave de idempotencia)
+    // --------------------------
+    // Clave de createOrder, o null si el input no es válido (lo rechaza doCreateOrder)
+    private static String createIdem(OrderIn in) {
+        return in == null || isBlank(in.externalReference) ? null : orderIdem(in);
+    }
+
+    private static String actionIdem(String orderId, String idempotencyKey) {
+        return isBlank(orderId) ? null : idem(idempotencyKey, orderId);
+    }
+
+    private MpResult deduped(String op, String idem, Supplier<MpResult> call) {
+        String key = resultKey(op, idem);
+        return key == null ? call.get() : results.execute(key, call);
+    }
+
+    private CompletableFuture<MpResult> dedupedAsync(String op, String idem, Supplier<CompletableFuture<MpResult>> call) {
+        String key = resultKey(op, idem);
+        return key == null ? call.get() : results.executeAsync(key, call);
+    }
+
+    // Las claves de idempotencia de MP son por cuenta: results ya es el caché
+    // de esta cuenta (MpResultCache.forConfig, tenant + SHA-256 del token).
+    // null = sin caché (deshabilitado, sin clave o sin token: la llamada reporta el error)
+    private String resultKey(String op, String idem) {
+        if (results == null || idem == null) {
+            return null;
+        }
+        try {
+            cfg.authorizationHeader();
+        } catch (IllegalStateException e) {
+            return null;
         }
+        return op + "|" + idem;
     }
 
     // --------------------------
-    // Parsing helpers
+    // Journal (WAL de create/cancel/refund)
     // --------------------------
-    private static class PaymentInfo {
+    private long journalIntent(String op, String endpoint, String idem, String body) {
+        return journal == null ? -1 : journal.intent(op, endpoint, idem, body);
+    }
 
-        String id;
-        String status;
+    private MpResult journaled(long seq, MpHttp.MpHttpResponse r, MpResult out) {
+        if (journal != null) {
+            journal.outcome(seq, r.httpCode, "res=" + out.res + " id=" + nvl(out.id));
+        }
+        return out;
+    }
+
+    // Error: si seguro no salió (circuito abierto / límite de tasa) se cierra;
+    // si fue de red, MP pudo haberla recibido y queda pendiente para re-envío.
+    private MpResult journaled(long seq, Throwable ex, MpResult out) {
+        if (journal != null && (ex instanceof MpCircuitOpenException || ex instanceof MpRateLimitedException)) {
+            journal.outcome(seq, -1, "res=" + out.res + " no enviado");
+        }
+        return out;
     }
 
-    private PaymentInfo extractPaymentInfo(JsonObject mp) {
-        PaymentInfo pi = new PaymentInfo();
-        if (mp == null) {
-            return pi;
+    /**
+     * Concilia las intenciones que una JVM anterior dejó sin resultado en el
+     * journal (caída entre el POST y la respuesta). Devuelve cuántas se
+     * cerraron.
+     *
+     * Solo las leídas del disco al abrir (no las que esta JVM tiene en curso)
+     * y no más viejas que mp.journal.replayMaxAgeMinutes (60; 0 = sin
+     * límite): pasada la ventana de idempotencia de MP un re-envío ya no es
+     * seguro, se cierran sin enviar y queda en el log. Un createOrder no se
+     * re-envía (crearía una orden viva en la caja al arrancar): se busca por
+     * external_reference y se anota lo que haya en MP. Cancel y refund se
+     * re-envían con la misma X-Idempotency-Key.
+     */
+    public int replayJournal() {
+        if (journal == null) {
+            return 0;
         }
+        long maxAgeMs = cfg.getInt("mp.journal.replayMaxAgeMinutes", 60) * 60_000L;
+        int done = 0;
+        for (MpJournal.Entry e : journal.recovered()) {
+            long age = System.currentTimeMillis() - e.atMillis;
+            if (maxAgeMs > 0 && age > maxAgeMs) {
+                journal.outcome(e.seq, -1, "replay vencido (" + age / 60_000L + " min)");
+                log("journal replay " + e + " descartado: " + age / 60_000L + " min, sin re-envío");
+                done++;
+                continue;
+            }
+            try {
+                if ("createOrder".equals(e.op)) {
+                    MpHttp.MpHttpResponse r = reconcileCreateOrder(e);
+                    if (r == null) {
+                        continue;
+                    }
+                    journal.outcome(e.seq, r.httpCode, "replay: " + r.body());
+                    log("journal replay " + e + " -> " + r.body());
+                } else {
+                    MpHttp.MpHttpResponse r = http.postJson(e.op, e.endpoint, e.body, e.idempotencyKey);
+                    journal.outcome(e.seq, r.httpCode, "replay HTTP " + r.httpCode);
+                    log("journal replay " + e + " -> HTTP " + r.httpCode);
+                }
+                done++;
+            } catch (Exception ex) {
+                log("journal replay " + e + " falló: " + ex.getMessage());
+            }
+        }
+        return done;
+    }
+
+    // createOrder del journal: GET por external_reference en vez de re-POST.
+    // Devuelve el código y un resumen para el journal, o null si no se pudo
+    // consultar (queda pendiente para el próximo arranque).
+    private MpHttp.MpHttpResponse reconcileCreateOrder(MpJournal.Entry e) throws Exception {
+        String ref;
         try {
-            JsonObject transactions = obj(mp.get("transactions"));
-            JsonArray payments = arr(transactions == null ? null : transactions.get("payments"));
-            if (payments != null && payments.size() > 0) {
-                JsonObject p0 = obj(payments.get(0));
-                pi.id = getJsonStr(p0, "id");
-                pi.status = getJsonStr(p0, "status");
+            ref = getJsonStr(gson.fromJson(e.body, JsonObject.class), "external_reference");
+        } catch (RuntimeException ex) {
+            ref = null;
+        }
+        if (isBlank(ref)) {
+            return new MpHttp.MpHttpResponse(-1, "sin external_reference, no se re-envía");
+        }
+        MpHttp.MpHttpResponse r = http.get("searchOrders",
+                String.format(cfg.endpoint("searchOrders", "/v1/orders?external_reference=%s"), url(ref)));
+        if (r.httpCode == 404) {
+            return new MpHttp.MpHttpResponse(404, "ref=" + ref + " no está en MP, no se re-envía");
+        }
+        if (r.httpCode < 200 || r.httpCode >= 300) {
+            log("journal replay " + e + ": búsqueda ref=" + ref + " HTTP " + r.httpCode);
+            return null;
+        }
+        String id = orderIdByReference(r.body(), ref);
+        return new MpHttp.MpHttpResponse(r.httpCode, id == null
+                ? "ref=" + ref + " no está en MP, no se re-envía"
+                : "ref=" + ref + " ya creada id=" + id);
+    }
+
+    // {"data":[...]} / {"results":[...]} / la orden sola: id de la de ref
+    private String orderIdByReference(String json, String ref) {
+        JsonObject o;
+        try {
+            o = gson.fromJson(json, JsonObject.class);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (o == null) {
+            return null;
+        }
+        if (ref.equals(getJsonStr(o, "external_reference"))) {
+            return getJsonStr(o, "id");
+        }
+        for (String k : new String[]{"data", "results", "elements"}) {
+            JsonElement a = o.get(k);
+            if (a != null && a.isJsonArray()) {
+                for (JsonElement x : a.getAsJsonArray()) {
+                    if (x.isJsonObject() && ref.equals(getJsonStr(x.getAsJsonObject(), "external_reference"))) {
+                        return getJsonStr(x.getAsJsonObject(), "id");
+                    }
+                }
             }
-        } catch (Exception ignored) {
         }
-        return pi;
+        return null;
+    }
+
+    /**
+     * Re-envío de arranque (una vez por journal, si mp.journal.replayOnStart)
+     * en un hilo aparte para no demorar la llamada en curso.
+     */
+    public void startJournalReplay() {
+        if (journal == null || !cfg.getBoolean("mp.journal.replayOnStart", true) || !journal.claimReplay()
+                || journal.recovered().isEmpty()) {
+            return;
+        }
+        Thread t = new Thread(this::replayJournal, "mp-journal-replay");
+        t.setDaemon(true);
+        t.start();
+    }
+
+    private void log(String msg) {
+        if (logger != null) {
+            logger.warning(msg);
+        }
     }
 
-    private String extractPaymentId(JsonObject mp) {
-        return nvl(extractPaymentInfo(mp).id);
+    private MpResult technicalError(String op, Throwable ex) {
+        if (ex instanceof MpCircuitOpenException) {
+            MpResult out = MpResult.error(7, ex.getMessage());
+            out.attempts = 0; // no salió hacia MP
+            return out;
+        }
+        if (ex instanceof MpRateLimitedException) {
+            MpResult out = MpResult.error(6, ex.getMessage());
+            out.attempts = 0; // no salió hacia MP
+            return out;
+        }
+        MpResult out = MpResult.error(4, "Error técnico " + op + ": " + ex.getMessage());
+        out.attempts = (ex instanceof MpHttpRetryException) ? ((MpHttpRetryException) ex).attempts() : 1;
+        return out;
     }
 
-    private String extractQrData(JsonObject mp) {
+    // --------------------------
+    // Parsing helpers (órdenes: MpOrderJsonReader; admin: árbol Gson)
+    // --------------------------
+    // Cuerpo de MP a árbol, leyendo los bytes (sin pasar por String)
+    private JsonObject safeObj(MpHttp.MpHttpResponse r) {
         try {
-            JsonObject tr = obj(mp == null ? null : mp.get("type_response"));
-            return getJsonStr(tr, "qr_data");
-        } catch (Exception ignored) {
-            return "";
+            if (r.content().isEmpty()) {
+                return new JsonObject();
+            }
+            JsonObject o = gson.fromJson(r.content().reader(), JsonObject.class);
+            return o == null ? new JsonObject() : o;
+        } catch (Exception e) {
+            return new JsonObject();
         }
     }
 
@@ -550,14 +1288,6 @@ public MpResult searchStores(SearchIn in) {
         }
     }
 
-    private static JsonObject obj(JsonElement e) {
-        return (e != null && e.isJsonObject()) ? e.getAsJsonObject() : null;
-    }
-
-    private static JsonArray arr(JsonElement e) {
-        return (e != null && e.isJsonArray()) ? e.getAsJsonArray() : null;
-    }
-
     private static String getJsonStr(JsonObject o, String k) {
         try {
             if (o == null || k == null) {
@@ -586,6 +1316,14 @@ public MpResult searchStores(SearchIn in) {
         return Double.parseDouble(x);
     }
 
+    private static double parseDoubleDef(String s, double def) {
+        try {
+            return Double.parseDouble(s.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
     private static String url(String s) {
         try {
             return URLEncoder.encode(s, "UTF-8");
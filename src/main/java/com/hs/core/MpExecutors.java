@@ -0,0 +1,191 @@
+package com.hs.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Ejecutor para operaciones en abanico (paginado de búsquedas, altas
+ * masivas): muchas llamadas MpHttp bloqueantes en paralelo.
+ *
+ * Hilos daemon compartidos por la JVM; el paralelismo de cada operación se
+ * acota en parallel() (o con semáforos), no con el tamaño del pool.
+ *
+ * Con Java 21+ y el jar multi-release el ejecutor usa hilos virtuales: miles
+ * de llamadas bloqueantes sin un hilo de plataforma por cada una. En Java 8
+ * (runtime ISCOBOL) queda el pool de plataforma. Se elige al arrancar con
+ * -Dmp.fanout=auto (default) | virtual | platform; ver MpThreads.
+ */
+public final class MpExecutors {
+
+    public static final String PLATFORM = "platform";
+    public static final String VIRTUAL = "virtual";
+
+    private static final int MAX_THREADS = Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+    private static volatile ExecutorService fanOut;
+
+    private MpExecutors() {
+    }
+
+    public static ExecutorService fanOut() {
+        ExecutorService e = fanOut;
+        if (e == null) {
+            synchronized (MpExecutors.class) {
+                e = fanOut;
+                if (e == null) {
+                    fanOut = e = newFanOut(kind());
+                }
+            }
+        }
+        return e;
+    }
+
+    /**
+     * Tipo de hilos de fanOut() en esta JVM: VIRTUAL o PLATFORM.
+     */
+    public static String kind() {
+        String want = System.getProperty("mp.fanout", "auto").trim().toLowerCase(Locale.ROOT);
+        return !PLATFORM.equals(want) && MpThreads.virtualSupported() ? VIRTUAL : PLATFORM;
+    }
+
+    /**
+     * Ejecutor nuevo del tipo pedido (benchmarks / pruebas; lo cierra quien
+     * lo pide). VIRTUAL sin soporte en esta JVM devuelve uno de plataforma.
+     */
+    public static ExecutorService newFanOut(String kind) {
+        if (VIRTUAL.equals(kind)) {
+            ExecutorService v = MpThreads.newVirtualPerTask("mp-vfanout-");
+            if (v != null) {
+                return v;
+            }
+        }
+        AtomicInteger n = new AtomicInteger();
+        ThreadPoolExecutor p = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "mp-fanout-" + n.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        p.allowCoreThreadTimeOut(true);
+        return p;
+    }
+
+    /**
+     * fn sobre cada item con a lo sumo parallelism llamadas a la vez;
+     * resultados en el orden de items. Si fn falla no se toman más items y la
+     * excepción se relanza (CompletionException) cuando terminan las en curso.
+     *
+     * El hilo que llama es uno de los workers (caller-runs) y no espera a las
+     * tareas que el ejecutor todavía no arrancó: un parallel() anidado dentro
+     * de una tarea de fanOut() (p. ej. la sincronización de MpRegistry desde
+     * un alta masiva) avanza aunque el pool esté lleno, en vez de bloquearse
+     * esperando hilos que a su vez esperan.
+     */
+    public static <T, R> List<R> parallel(List<T> items, int parallelism, Function<? super T, ? extends R> fn) {
+        return parallel(items, parallelism, fn, fanOut());
+    }
+
+    /**
+     * Igual que parallel(items, parallelism, fn) sobre otro ejecutor.
+     */
+    public static <T, R> List<R> parallel(List<T> items, int parallelism, Function<? super T, ? extends R> fn,
+            Executor executor) {
+        Run<T, R> run = new Run<>(items, fn);
+        int workers = Math.max(1, Math.min(parallelism, items.size()));
+        for (int w = 1; w < workers; w++) {
+            try {
+                executor.execute(run::work);
+            } catch (RejectedExecutionException e) {
+                break; // ejecutor cerrado o saturado: sigue el que llama
+            }
+        }
+        run.work();
+        return run.await();
+    }
+
+    /**
+     * Estado de un parallel(): los workers toman índices de next; running
+     * cuenta los que están dentro del ciclo.
+     */
+    private static final class Run<T, R> {
+
+        private final List<T> items;
+        private final Function<? super T, ? extends R> fn;
+        private final int n;
+        private final List<R> out;
+        private final AtomicInteger next = new AtomicInteger();
+        private int running;            // bajo this
+        private Throwable error;        // bajo this
+
+        Run(List<T> items, Function<? super T, ? extends R> fn) {
+            this.items = items;
+            this.fn = fn;
+            this.n = items.size();
+            this.out = new ArrayList<>(n);
+            for (int i = 0; i < n; i++) {
+                out.add(null);
+            }
+        }
+
+        void work() {
+            synchronized (this) {
+                running++;
+            }
+            try {
+                int i;
+                // una tarea que arranca tarde ve next >= n y sale sin tomar nada
+                while ((i = next.getAndIncrement()) < n) {
+                    R r = fn.apply(items.get(i));
+                    synchronized (this) {
+                        out.set(i, r);
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                next.set(n); // los demás workers cortan en el próximo item
+                synchronized (this) {
+                    if (error == null) {
+                        error = e;
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    if (--running == 0) {
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        /**
+         * Llamado por el dueño después de su propio work(): next ya llegó a
+         * n, así que solo faltan los items que otros workers tienen en curso.
+         */
+        synchronized List<R> await() {
+            boolean interrupted = false;
+            while (running > 0) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error instanceof CompletionException ? (CompletionException) error
+                        : new CompletionException(error);
+            }
+            return out;
+        }
+    }
+}
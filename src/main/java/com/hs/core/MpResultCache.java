@@ -0,0 +1,379 @@
+package com.hs.core;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.hs.config.MpConfig;
+import com.hs.dto.MpResult;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Resultados de O/C/R por acción + clave de idempotencia.
+ *
+ * COBOL suele repetir la misma operación (refresco de pantalla, timeout del
+ * lado COBOL). Si ya hay un resultado final (res 0 OK o 2 negocio de MP)
+ * vigente, se devuelve una copia sin llamar a MP; si la primera llamada todavía está en
+ * curso, las repetidas esperan su resultado en vez de salir a la red. Los
+ * errores técnicos no se guardan (el próximo intento vuelve a MP).
+ *
+ * Vencimiento por TTL y tope de entradas (se descartan primero las vencidas y
+ * después las más viejas). Opcionalmente se guarda en un archivo para que
+ * sobreviva a un reinicio de la JVM.
+ *
+ * Un caché por cuenta (MpConfig.accountKey: tenant + SHA-256 del token), cada
+ * uno con los límites y el archivo de su config: dos cuentas nunca ven los
+ * resultados de la otra aunque repitan la clave de idempotencia.
+ *
+ * Properties: mp.idem.enabled (true), mp.idem.ttlSeconds (900),
+ * mp.idem.maxEntries (10000), mp.idem.waitMs (60000: espera máxima de un
+ * duplicado en curso), mp.idem.file (vacío = sin persistencia),
+ * mp.idem.persistSeconds (30)
+ */
+public final class MpResultCache {
+
+    private static final Logger LOG = Logger.getLogger(MpResultCache.class.getName());
+    private static final ConcurrentHashMap<String, MpResultCache> BY_ACCOUNT = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, MpResultCache> BY_FILE = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Slot> map = new ConcurrentHashMap<>();
+    private volatile long ttlMs;
+    private volatile int maxEntries;
+    private volatile long waitMs;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder waits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    private volatile File file;
+
+    // Resultado de una llamada (pendiente mientras está en curso)
+    private static final class Slot {
+        final CompletableFuture<MpResult> result = new CompletableFuture<>();
+        volatile long doneAt; // 0 = en curso
+
+        boolean expired(long now, long ttl) {
+            long d = doneAt;
+            return d > 0 && now - d > ttl;
+        }
+    }
+
+    public MpResultCache(long ttlMs, int maxEntries, long waitMs) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = Math.max(10, maxEntries);
+        this.waitMs = waitMs;
+    }
+
+    /**
+     * Caché de la cuenta de cfg con sus límites; null si
+     * mp.idem.enabled=false.
+     */
+    public static MpResultCache forConfig(MpConfig cfg) {
+        if (!cfg.getBoolean("mp.idem.enabled", true)) {
+            return null;
+        }
+        MpResultCache c = BY_ACCOUNT.computeIfAbsent(cfg.accountKey(), k -> new MpResultCache(900_000L, 10000, 60000L));
+        c.ttlMs = cfg.getInt("mp.idem.ttlSeconds", 900) * 1000L;
+        c.maxEntries = Math.max(10, cfg.getInt("mp.idem.maxEntries", 10000));
+        c.waitMs = cfg.getInt("mp.idem.waitMs", 60000);
+        String f = cfg.get("mp.idem.file", "");
+        if (f != null && !f.trim().isEmpty() && c.file == null) {
+            File file = new File(f.trim()).getAbsoluteFile();
+            MpResultCache owner = BY_FILE.putIfAbsent(file.getPath(), c);
+            if (owner == null || owner == c) {
+                c.persistTo(file, cfg.getInt("mp.idem.persistSeconds", 30));
+            } else {
+                LOG.warning("mp.idem.file " + file + " ya lo usa otra cuenta: " + cfg.tenant() + " sin persistencia");
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Estadísticas sumadas de los cachés de todas las cuentas (JMX).
+     */
+    public static String totalStats() {
+        long size = 0;
+        long h = 0;
+        long w = 0;
+        long m = 0;
+        for (MpResultCache c : BY_ACCOUNT.values()) {
+            size += c.map.size();
+            h += c.hits.sum();
+            w += c.waits.sum();
+            m += c.misses.sum();
+        }
+        return "idem cache accounts=" + BY_ACCOUNT.size() + " size=" + size + " hits=" + h + " waits=" + w
+                + " misses=" + m;
+    }
+
+    // ==========================================================
+    // Uso desde el core
+    // ==========================================================
+    /**
+     * Resultado para key: del caché, de la llamada en curso o ejecutando call.
+     */
+    public MpResult execute(String key, Supplier<MpResult> call) {
+        Slot mine = new Slot();
+        Slot cur = claim(key, mine);
+        if (cur != null) {
+            MpResult r = await(cur);
+            if (r != null) {
+                return r;
+            }
+            return call.get(); // la primera no terminó a tiempo: seguir por cuenta propia, sin guardar
+        }
+        MpResult r;
+        try {
+            r = call.get();
+        } catch (RuntimeException e) {
+            map.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        finish(key, mine, r);
+        return r;
+    }
+
+    /**
+     * Igual que execute, para las variantes *Async (los duplicados encadenan
+     * sobre el future de la primera llamada, sin bloquear).
+     */
+    public CompletableFuture<MpResult> executeAsync(String key, Supplier<CompletableFuture<MpResult>> call) {
+        Slot mine = new Slot();
+        Slot cur = claim(key, mine);
+        if (cur != null) {
+            if (cur.doneAt > 0) {
+                hits.increment();
+            } else {
+                waits.increment();
+            }
+            return cur.result.thenApply(MpResultCache::replay);
+        }
+        CompletableFuture<MpResult> f;
+        try {
+            f = call.get();
+        } catch (RuntimeException e) {
+            map.remove(key, mine);
+            mine.result.completeExceptionally(e);
+            throw e;
+        }
+        return f.whenComplete((r, ex) -> {
+            if (ex != null) {
+                map.remove(key, mine);
+                mine.result.completeExceptionally(ex);
+            } else {
+                finish(key, mine, r);
+            }
+        });
+    }
+
+    // null = mine quedó registrado (hay que llamar); si no, el slot existente
+    private Slot claim(String key, Slot mine) {
+        long now = System.currentTimeMillis();
+        while (true) {
+            Slot cur = map.putIfAbsent(key, mine);
+            if (cur == null) {
+                misses.increment();
+                if (map.size() > maxEntries) {
+                    evict();
+                }
+                return null;
+            }
+            if (!cur.expired(now, ttlMs)) {
+                return cur;
+            }
+            if (map.replace(key, cur, mine)) {
+                misses.increment();
+                return null;
+            }
+        }
+    }
+
+    private MpResult await(Slot cur) {
+        if (cur.doneAt > 0) {
+            hits.increment();
+        } else {
+            waits.increment();
+        }
+        try {
+            return replay(cur.result.get(Math.max(1, waitMs), TimeUnit.MILLISECONDS));
+        } catch (TimeoutException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            return null; // la primera falló con excepción: intentar de nuevo
+        }
+    }
+
+    // Se guarda: OK, o negocio que respondió MP (409). Los rechazos locales
+    // por estado (attempts=0: "no cancelable", "no reembolsable") no, porque
+    // la orden puede cambiar y el próximo intento tiene que volver a mirar.
+    static boolean cacheable(MpResult r) {
+        return r != null && (r.res == 0 || (r.res == 2 && r.attempts > 0));
+    }
+
+    private void finish(String key, Slot mine, MpResult r) {
+        if (cacheable(r)) {
+            mine.doneAt = System.currentTimeMillis();
+        } else {
+            map.remove(key, mine); // error técnico o rechazo local: no se guarda
+        }
+        mine.result.complete(r == null ? null : r.copy());
+    }
+
+    // Copia para quien repite: sin intentos HTTP (no salió a la red)
+    private static MpResult replay(MpResult r) {
+        if (r == null) {
+            return null;
+        }
+        MpResult c = r.copy();
+        c.attempts = 0;
+        return c;
+    }
+
+    // ==========================================================
+    // Vencimiento
+    // ==========================================================
+    private void evict() {
+        long now = System.currentTimeMillis();
+        long ttl = ttlMs;
+        map.entrySet().removeIf(e -> e.getValue().expired(now, ttl));
+        int over = map.size() - maxEntries;
+        if (over <= 0) {
+            return;
+        }
+        // Las más viejas primero (con margen del 10 % para no repetir en cada alta)
+        List<Map.Entry<String, Slot>> done = new ArrayList<>();
+        for (Map.Entry<String, Slot> e : map.entrySet()) {
+            if (e.getValue().doneAt > 0) {
+                done.add(e);
+            }
+        }
+        done.sort((a, b) -> Long.compare(a.getValue().doneAt, b.getValue().doneAt));
+        int n = Math.min(done.size(), over + maxEntries / 10);
+        for (int i = 0; i < n; i++) {
+            map.remove(done.get(i).getKey(), done.get(i).getValue());
+        }
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void clear() {
+        map.clear();
+    }
+
+    public String stats() {
+        return "idem cache size=" + map.size() + " hits=" + hits.sum() + " waits=" + waits.sum()
+                + " misses=" + misses.sum();
+    }
+
+    // ==========================================================
+    // Persistencia (opcional)
+    // ==========================================================
+    /**
+     * Carga file (si existe) y lo reescribe cada persistSeconds y al cerrar la
+     * JVM con las entradas vigentes.
+     */
+    public synchronized void persistTo(File f, int persistSeconds) {
+        if (file != null) {
+            return;
+        }
+        file = f;
+        load(f);
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mp-idem-save");
+            t.setDaemon(true);
+            return t;
+        });
+        int every = Math.max(1, persistSeconds);
+        s.scheduleWithFixedDelay(() -> save(f), every, every, TimeUnit.SECONDS);
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> save(f), "mp-idem-shutdown"));
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Una línea JSON por entrada terminada y vigente: {"k":..,"t":..,"r":{..}}.
+     */
+    public void save(File f) {
+        Gson gson = new Gson();
+        long now = System.currentTimeMillis();
+        try {
+            Path tmp = f.toPath().resolveSibling(f.getName() + ".tmp");
+            try (BufferedWriter w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                for (Map.Entry<String, Slot> e : map.entrySet()) {
+                    Slot s = e.getValue();
+                    MpResult r = s.doneAt > 0 && !s.expired(now, ttlMs) ? s.result.getNow(null) : null;
+                    if (r == null) {
+                        continue;
+                    }
+                    r.rawJson(); // el crudo perezoso no se serializa: decodificarlo antes
+                    JsonObject o = new JsonObject();
+                    o.addProperty("k", e.getKey());
+                    o.addProperty("t", s.doneAt);
+                    o.add("r", gson.toJsonTree(r));
+                    w.write(o.toString());
+                    w.newLine();
+                }
+            }
+            try {
+                Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, f.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            LOG.log(Level.WARNING, "No se pudo guardar el cache de idempotencia en " + f + ": " + e.getMessage());
+        }
+    }
+
+    void load(File f) {
+        if (!f.isFile()) {
+            return;
+        }
+        Gson gson = new Gson();
+        long now = System.currentTimeMillis();
+        try (BufferedReader in = Files.newBufferedReader(f.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                try {
+                    JsonObject o = gson.fromJson(line, JsonObject.class);
+                    Slot s = new Slot();
+                    s.doneAt = o.get("t").getAsLong();
+                    if (s.expired(now, ttlMs)) {
+                        continue;
+                    }
+                    s.result.complete(gson.fromJson(o.get("r"), MpResult.class));
+                    map.putIfAbsent(o.get("k").getAsString(), s);
+                } catch (RuntimeException ignored) {
+                    // línea incompleta: se saltea
+                }
+            }
+        } catch (IOException e) {
+            LOG.log(Level.WARNING, "No se pudo leer el cache de idempotencia " + f + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.hs.core;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Lo que depende de la versión de Java para MpExecutors. Esta es la de Java
+ * 8 (runtime ISCOBOL): sin hilos virtuales.
+ *
+ * El jar multi-release trae en META-INF/versions/21 la variante con hilos
+ * virtuales (src/main/java21, profile java21 del pom): la JVM elige la clase
+ * al cargarla, sin reflexión ni chequeos de versión en el código.
+ */
+final class MpThreads {
+
+    private MpThreads() {
+    }
+
+    static boolean virtualSupported() {
+        return false;
+    }
+
+    /**
+     * Sin hilos virtuales: null, y MpExecutors.newFanOut arma el pool de
+     * plataforma.
+     */
+    static ExecutorService newVirtualPerTask(String namePrefix) {
+        return null;
+    }
+}
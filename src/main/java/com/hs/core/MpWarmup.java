@@ -0,0 +1,169 @@
+package com.hs.core;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.hs.config.MpConfig;
+import com.hs.dto.MpResult;
+import com.hs.http.MpHttpClient;
+import com.hs.http.MpHttpTransport;
+import java.net.InetAddress;
+import java.net.URI;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+
+/**
+ * Warm-up del puente (acción "WU"): que la primera "O" del día no pague la
+ * carga de clases, el DNS, el handshake TLS y el código interpretado.
+ *
+ * Pasos: 1) carga de clases de Gson/HttpClient/puente y del SSLContext,
+ * 2) resolución DNS de mp.baseUrl (queda en el cache de la JVM),
+ * 3) mp.warmup.connections conexiones keep-alive abiertas en el pool
+ * del tenant (sin requests a MP), 4) mp.warmup.rounds vueltas de armado y
+ * parseo sobre respuestas de ejemplo, 5) opcional: un GET real a
+ * mp.warmup.probePath (vacío = no).
+ *
+ * Las conexiones duran lo que mp.http.keepAliveMs / mp.http.pool.idleEvictMs:
+ * conviene llamarlo al abrir la caja, no horas antes.
+ */
+public final class MpWarmup {
+
+    // Clases que la primera venta carga sí o sí (las que falten se ignoran)
+    private static final String[] CLASSES = {
+        "com.google.gson.Gson",
+        "com.google.gson.JsonParser",
+        "com.google.gson.stream.JsonReader",
+        "com.google.gson.stream.JsonWriter",
+        "org.apache.http.impl.client.HttpClients",
+        "org.apache.http.impl.execchain.MainClientExec",
+        "org.apache.http.impl.execchain.ProtocolExec",
+        "org.apache.http.impl.conn.DefaultHttpClientConnectionOperator",
+        "org.apache.http.impl.conn.DefaultManagedHttpClientConnection",
+        "org.apache.http.impl.io.DefaultHttpResponseParser",
+        "org.apache.http.impl.io.ChunkedInputStream",
+        "org.apache.http.impl.io.ContentLengthInputStream",
+        "org.apache.http.protocol.HttpRequestExecutor",
+        "org.apache.http.conn.ssl.SSLConnectionSocketFactory",
+        "org.apache.http.entity.StringEntity",
+        "com.hs.http.MpHttpClient",
+        "com.hs.http.MpBody",
+        "com.hs.http.MpRetryPolicy",
+        "com.hs.http.MpRateLimiter",
+        "com.hs.http.MpCircuitBreaker",
+        "com.hs.http.MpHttpRetryException",
+        "com.hs.json.MpOrderBodyWriter",
+        "com.hs.json.MpOrderJsonReader",
+        "com.hs.json.MpOrderFields",
+        "com.hs.core.MpResultCache",
+        "com.hs.journal.MpJournal",
+        "com.hs.metrics.MpMetrics",
+        "com.hs.bridge.MpBridgeActions"
+    };
+
+    private MpWarmup() {
+    }
+
+    /**
+     * Warm-up con un core propio (standalone / tests).
+     */
+    public static MpResult run(MpConfig cfg, Logger logger) {
+        return run(cfg, logger, new MpBridgeCore(cfg, logger));
+    }
+
+    static MpResult run(MpConfig cfg, Logger logger, MpBridgeCore core) {
+        long t0 = System.nanoTime();
+        JsonObject report = new JsonObject();
+
+        // 1) Clases
+        long t = System.nanoTime();
+        int loaded = 0;
+        ClassLoader cl = MpWarmup.class.getClassLoader();
+        for (String name : CLASSES) {
+            try {
+                Class.forName(name, true, cl);
+                loaded++;
+            } catch (ClassNotFoundException | LinkageError e) {
+                // fuera de ISCOBOL no está CobolVar, etc.
+            }
+        }
+        try {
+            SSLContext.getDefault(); // carga del truststore
+        } catch (Exception e) {
+            // sin TLS por defecto: lo verá la conexión
+        }
+        report.addProperty("classes", loaded);
+        report.addProperty("classesMs", ms(t));
+
+        // 2) DNS
+        t = System.nanoTime();
+        String host = null;
+        String error = null;
+        try {
+            host = URI.create(cfg.baseUrl()).getHost();
+            JsonArray addrs = new JsonArray();
+            for (InetAddress a : InetAddress.getAllByName(host)) {
+                addrs.add(a.getHostAddress());
+            }
+            report.add("addresses", addrs);
+        } catch (Exception e) {
+            error = "DNS " + host + ": " + e;
+        }
+        report.addProperty("host", host);
+        report.addProperty("dnsMs", ms(t));
+
+        // 3) Conexiones keep-alive al pool del tenant
+        int want = Math.max(0, cfg.getInt("mp.warmup.connections", 4));
+        int open = 0;
+        t = System.nanoTime();
+        if (error == null && want > 0) {
+            try {
+                open = MpHttpTransport.forConfig(cfg).preconnect(cfg.baseUrl(), want, cfg.connectTimeoutMs(),
+                        MpExecutors.fanOut());
+                if (open == 0) {
+                    error = "No se pudo abrir ninguna conexión a " + host;
+                }
+            } catch (Exception e) {
+                error = "Conexiones a " + host + ": " + e;
+            }
+        }
+        report.addProperty("connections", open);
+        report.addProperty("connectionsMs", ms(t));
+
+        // 4) Armado/parseo en memoria para el JIT
+        int rounds = Math.max(0, cfg.getInt("mp.warmup.rounds", 2000));
+        t = System.nanoTime();
+        report.addProperty("rounds", rounds);
+        report.addProperty("checksum", core.exercise(rounds));
+        report.addProperty("codeMs", ms(t));
+
+        // 5) Request real opcional (recorre también la ejecución HTTP)
+        String probe = cfg.get("mp.warmup.probePath", "");
+        if (error == null && !probe.trim().isEmpty()) {
+            t = System.nanoTime();
+            try {
+                report.addProperty("probeStatus", new MpHttpClient(cfg, logger).get("warmup", probe.trim(), null).statusCode);
+            } catch (Exception e) {
+                report.addProperty("probeError", e.toString());
+            }
+            report.addProperty("probeMs", ms(t));
+        }
+
+        long total = ms(t0);
+        report.addProperty("totalMs", total);
+
+        MpResult out = error == null ? MpResult.ok() : MpResult.error(4, "Warm-up incompleto: " + error);
+        if (error == null) {
+            out.msg = "Warm-up OK en " + total + " ms (" + open + "/" + want + " conexiones)";
+            out.status = "warm";
+        }
+        out.attempts = 0;
+        out.rawJson = report.toString();
+        if (logger != null) {
+            logger.info("MP WARMUP " + out.rawJson);
+        }
+        return out;
+    }
+
+    private static long ms(long t0) {
+        return (System.nanoTime() - t0) / 1_000_000L;
+    }
+}
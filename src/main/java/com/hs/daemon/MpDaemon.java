@@ -0,0 +1,256 @@
+package com.hs.daemon;
+
+import com.hs.bridge.MpBridgeActions;
+import com.hs.config.MpConfig;
+import com.hs.dto.MpResult;
+import com.hs.log.MpLog;
+import com.hs.tenant.MpTenantRegistry;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Daemon del puente: una JVM de larga vida en el servidor del local atiende
+ * los CALL de todas las cajas (MP_QR_HIBRIDO con mp.daemon.address), así el
+ * pool de conexiones a MP, las caches y el JIT caliente se comparten.
+ *
+ * TCP solo en loopback, frames de MpDaemonProtocol. Cada conexión es de un
+ * proceso ISCOBOL y se atiende en su hilo (pedidos en serie, como el CALL).
+ * Loopback no alcanza: cualquier usuario del servidor llega al puerto, así
+ * que cada conexión prueba conocer el secreto de mp.daemon.secretFile antes
+ * de su primer pedido, y argv[10] solo puede elegir configs conocidas (vacío,
+ * "tenant:&lt;id&gt;", la ruta por defecto o mp.daemon.allowedPaths).
+ *
+ * Properties: mp.daemon.address (127.0.0.1:7781), mp.daemon.secretFile
+ * (obligatoria), mp.daemon.allowedPaths (rutas separadas por coma),
+ * mp.daemon.maxConnections (256), mp.daemon.maxFrameBytes (8 MB),
+ * mp.daemon.warmup (true: WU al arrancar).
+ *
+ * Uso: java -cp ... com.hs.daemon.MpDaemon [ruta.properties]
+ */
+public class MpDaemon {
+
+    private static final int HANDSHAKE_TIMEOUT_MS = 5000;
+
+    private final String defaultPath;
+    private final Logger logger;
+    private final String secretFile;
+    private final Set<String> allowedPaths = new HashSet<>();
+    private byte[] secret;
+    private final int maxFrameBytes;
+    private final Semaphore slots;
+    private final Set<Socket> open = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private ServerSocket server;
+    private ExecutorService executor;
+    private volatile boolean running;
+
+    /**
+     * @param defaultPath properties para los CALL que no traen argv[10]
+     * (null = MpConfig.load())
+     */
+    public MpDaemon(MpConfig cfg, String defaultPath, Logger logger) {
+        this.defaultPath = defaultPath;
+        this.logger = logger;
+        this.maxFrameBytes = cfg.getInt("mp.daemon.maxFrameBytes", 8 * 1024 * 1024);
+        this.slots = new Semaphore(Math.max(1, cfg.getInt("mp.daemon.maxConnections", 256)));
+        this.secretFile = cfg.get("mp.daemon.secretFile", "");
+        if (defaultPath != null && !defaultPath.trim().isEmpty()) {
+            allowedPaths.add(canonical(defaultPath));
+        }
+        for (String p : cfg.get("mp.daemon.allowedPaths", "").split(",")) {
+            if (!p.trim().isEmpty()) {
+                allowedPaths.add(canonical(p));
+            }
+        }
+    }
+
+    /**
+     * @return puerto efectivo (útil con port=0 en tests)
+     */
+    public int start(InetSocketAddress address) throws IOException {
+        if (address.getAddress() == null || !address.getAddress().isLoopbackAddress()) {
+            // el daemon opera con el token de MP: nada de escuchar hacia afuera
+            throw new IOException("El daemon solo escucha en loopback: " + address);
+        }
+        secret = MpDaemonProtocol.readSecret(secretFile);
+        server = new ServerSocket();
+        server.setReuseAddress(true);
+        server.bind(address, 128);
+        AtomicInteger n = new AtomicInteger();
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "mp-daemon-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        running = true;
+        Thread acceptor = new Thread(this::acceptLoop, "mp-daemon-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        int effective = server.getLocalPort();
+        log(Level.INFO, "Daemon MP escuchando en " + address.getAddress().getHostAddress() + ":" + effective);
+        return effective;
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+        } catch (IOException ignored) {
+        }
+        for (Socket s : open) {
+            closeQuietly(s);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        stopped.countDown();
+    }
+
+    public void await() throws InterruptedException {
+        stopped.await();
+    }
+
+    // ======= CONEXIONES =======
+    private void acceptLoop() {
+        while (running) {
+            Socket s;
+            try {
+                s = server.accept();
+            } catch (IOException e) {
+                if (running) {
+                    log(Level.WARNING, "accept: " + e.getMessage());
+                }
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                log(Level.WARNING, "Daemon sin lugar para más conexiones, se rechaza " + s.getRemoteSocketAddress());
+                closeQuietly(s);
+                continue;
+            }
+            open.add(s);
+            try {
+                executor.execute(() -> serve(s));
+            } catch (RuntimeException e) {
+                release(s); // stop() en curso
+            }
+        }
+    }
+
+    private void serve(Socket s) {
+        try {
+            s.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(s.getInputStream(), 16 * 1024));
+            DataOutputStream out = new DataOutputStream(s.getOutputStream());
+            if (!handshake(s, in, out)) {
+                log(Level.WARNING, "Conexión " + s.getRemoteSocketAddress() + " sin el secreto del daemon, se corta");
+                return;
+            }
+            String[] req;
+            while ((req = MpDaemonProtocol.read(in, maxFrameBytes)) != null) {
+                MpDaemonProtocol.write(out, handle(req));
+            }
+        } catch (IOException e) {
+            if (running) {
+                log(Level.FINE, "Conexión " + s.getRemoteSocketAddress() + " cerrada: " + e.getMessage());
+            }
+        } finally {
+            release(s);
+        }
+    }
+
+    // Desafío: el cliente firma un nonce con el secreto compartido
+    private boolean handshake(Socket s, DataInputStream in, DataOutputStream out) throws IOException {
+        String nonce = MpDaemonProtocol.nonce();
+        s.setSoTimeout(HANDSHAKE_TIMEOUT_MS); // sin auth no se retiene un lugar
+        MpDaemonProtocol.write(out, new String[]{MpDaemonProtocol.HELLO, nonce});
+        if (!MpDaemonProtocol.validProof(secret, nonce, MpDaemonProtocol.read(in, 1024))) {
+            return false;
+        }
+        s.setSoTimeout(0);
+        MpDaemonProtocol.write(out, new String[]{MpDaemonProtocol.OK});
+        return true;
+    }
+
+    /**
+     * Un CALL: 26 entradas -> 7 salidas (misma ejecución que en proceso).
+     */
+    String[] handle(String[] req) {
+        String path = req.length > MpBridgeActions.I_PATH ? req[MpBridgeActions.I_PATH] : "";
+        if (!allowedPath(path)) {
+            log(Level.WARNING, "Daemon: config no permitida en argv[10]: " + path);
+            return MpBridgeActions.outputs(MpResult.error(4, "Config no permitida en el daemon: " + path));
+        }
+        MpResult r = MpBridgeActions.run(req, defaultPath, logger);
+        return MpBridgeActions.outputs(r);
+    }
+
+    // Vacío y "tenant:<id>" se resuelven con la config del daemon; una ruta,
+    // solo si es la por defecto o está en mp.daemon.allowedPaths
+    private boolean allowedPath(String path) {
+        String p = path == null ? "" : path.trim();
+        return p.isEmpty() || p.startsWith(MpTenantRegistry.ID_PREFIX) || allowedPaths.contains(canonical(p));
+    }
+
+    private static String canonical(String path) {
+        try {
+            return new File(path.trim()).getCanonicalPath();
+        } catch (IOException e) {
+            return new File(path.trim()).getAbsolutePath();
+        }
+    }
+
+    private void release(Socket s) {
+        closeQuietly(s);
+        if (open.remove(s)) {
+            slots.release();
+        }
+    }
+
+    private static void closeQuietly(Socket s) {
+        try {
+            s.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void log(Level level, String msg) {
+        if (logger != null) {
+            logger.log(level, msg);
+        }
+    }
+
+    // ======= MAIN =======
+    public static void main(String[] args) throws Exception {
+        String path = args.length > 0 ? args[0] : System.getProperty("mp.config", "");
+        MpConfig cfg = path.trim().isEmpty() ? MpConfig.load() : MpConfig.forPath(path);
+        Logger logger = MpLog.bridgeLogger();
+
+        MpDaemon d = new MpDaemon(cfg, path, logger);
+        d.start(MpDaemonClient.parseAddress(cfg.get("mp.daemon.address", "")));
+        Runtime.getRuntime().addShutdownHook(new Thread(d::stop, "mp-daemon-shutdown"));
+
+        if (cfg.getBoolean("mp.daemon.warmup", true)) {
+            MpResult wu = MpBridgeActions.run(new String[]{"WU"}, path, logger);
+            logger.info("Daemon MP: " + wu.msg);
+        }
+        d.await();
+    }
+}
@@ -0,0 +1,258 @@
+package com.hs.daemon;
+
+import com.hs.config.MpConfig;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lado cliente del daemon (lo usa MP_QR_HIBRIDO dentro del runtime ISCOBOL):
+ * manda las 26 entradas y devuelve las 7 salidas.
+ *
+ * Conexiones reutilizables por dirección (una por hilo que esté llamando a
+ * la vez). Unavailable = no se pudo conectar: el pedido no salió y se puede
+ * ejecutar en proceso; cualquier otra IOException puede haber llegado al
+ * daemon. Si una conexión del pool resulta cerrada por el daemon antes de
+ * responder nada (reinicio, stop()), se reintenta una vez con una nueva.
+ *
+ * Cada conexión nueva hace el handshake de MpDaemonProtocol con el secreto de
+ * mp.daemon.secretFile; si el daemon no lo acepta, también es Unavailable.
+ *
+ * Properties: mp.daemon.address (vacío = sin daemon), mp.daemon.secretFile,
+ * mp.daemon.connectTimeoutMs (500), mp.daemon.readTimeoutMs (0 = sin tope:
+ * "W" puede esperar minutos), mp.daemon.maxFrameBytes (8 MB).
+ */
+public final class MpDaemonClient {
+
+    private static final int MAX_IDLE = 8;
+    private static final ConcurrentHashMap<String, MpDaemonClient> SHARED = new ConcurrentHashMap<>();
+
+    private final InetSocketAddress address;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxFrameBytes;
+    private final byte[] secret;
+    private final ConcurrentLinkedDeque<Conn> idle = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    public MpDaemonClient(InetSocketAddress address, int connectTimeoutMs, int readTimeoutMs, int maxFrameBytes,
+            byte[] secret) {
+        this.address = address;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxFrameBytes = maxFrameBytes;
+        this.secret = secret;
+    }
+
+    /**
+     * Cliente compartido para mp.daemon.address; null si no hay daemon
+     * configurado.
+     *
+     * @throws IllegalStateException si no se puede leer mp.daemon.secretFile
+     */
+    public static MpDaemonClient forConfig(MpConfig cfg) {
+        String addr = cfg.get("mp.daemon.address", "");
+        if (addr.trim().isEmpty()) {
+            return null;
+        }
+        return SHARED.computeIfAbsent(addr.trim(), k -> {
+            byte[] secret;
+            try {
+                secret = MpDaemonProtocol.readSecret(cfg.get("mp.daemon.secretFile", ""));
+            } catch (IOException e) {
+                throw new IllegalStateException(e.getMessage(), e);
+            }
+            return new MpDaemonClient(parseAddress(k),
+                    cfg.getInt("mp.daemon.connectTimeoutMs", 500),
+                    cfg.getInt("mp.daemon.readTimeoutMs", 0),
+                    cfg.getInt("mp.daemon.maxFrameBytes", 8 * 1024 * 1024), secret);
+        });
+    }
+
+    /**
+     * "host:puerto", ":puerto" o "puerto" (host por defecto 127.0.0.1).
+     */
+    public static InetSocketAddress parseAddress(String s) {
+        String x = s == null ? "" : s.trim();
+        if (x.isEmpty()) {
+            x = "127.0.0.1:7781";
+        }
+        int i = x.lastIndexOf(':');
+        String host = i <= 0 ? "127.0.0.1" : x.substring(0, i);
+        int port = Integer.parseInt(i < 0 ? x : x.substring(i + 1));
+        return new InetSocketAddress(host, port);
+    }
+
+    public String[] call(String[] in) throws IOException {
+        Conn c = idle.pollFirst();
+        while (c != null) {
+            idleCount.decrementAndGet();
+            if (!c.stale()) {
+                break;
+            }
+            c.close(); // el daemon se reinició o cortó por su lado
+            c = idle.pollFirst();
+        }
+        if (c != null) {
+            String[] out = exchange(c, in, true);
+            if (out != null) {
+                return out;
+            }
+            // el daemon cerró la conexión ociosa después del chequeo: una vez más con una nueva
+        }
+        try {
+            c = connect();
+        } catch (IOException e) {
+            throw new Unavailable(address, e);
+        }
+        return exchange(c, in, false);
+    }
+
+    /**
+     * Manda el pedido y lee la respuesta.
+     *
+     * @return null si c venía del pool y el daemon la cerró (EOF o reset)
+     * antes del primer byte de respuesta: el pedido no se ejecutó
+     */
+    private String[] exchange(Conn c, String[] in, boolean reused) throws IOException {
+        try {
+            boolean answered;
+            try {
+                MpDaemonProtocol.write(c.out, in);
+                answered = c.awaitResponse();
+            } catch (SocketException e) {
+                if (!reused) {
+                    throw e;
+                }
+                answered = false;
+            }
+            if (!answered) {
+                c.close();
+                if (reused) {
+                    return null;
+                }
+                throw new EOFException("El daemon cerró la conexión sin responder");
+            }
+            String[] out = MpDaemonProtocol.read(c.in, maxFrameBytes);
+            if (out == null) {
+                throw new EOFException("Respuesta del daemon incompleta");
+            }
+            giveBack(c);
+            return out;
+        } catch (IOException e) {
+            c.close();
+            throw e;
+        }
+    }
+
+    private Conn connect() throws IOException {
+        Socket s = new Socket();
+        try {
+            s.setTcpNoDelay(true);
+            s.connect(address, connectTimeoutMs);
+            s.setSoTimeout(Math.max(connectTimeoutMs, 1000)); // handshake: el daemon contesta enseguida
+            Conn c = new Conn(s, readTimeoutMs);
+            String[] hello = MpDaemonProtocol.read(c.in, 1024);
+            if (hello == null || hello.length != 2 || !MpDaemonProtocol.HELLO.equals(hello[0])) {
+                throw new IOException("No es el daemon MP (saludo inválido)");
+            }
+            MpDaemonProtocol.write(c.out, new String[]{MpDaemonProtocol.AUTH, MpDaemonProtocol.proof(secret, hello[1])});
+            String[] ok = MpDaemonProtocol.read(c.in, 1024);
+            if (ok == null || ok.length != 1 || !MpDaemonProtocol.OK.equals(ok[0])) {
+                throw new IOException("El daemon rechazó el secreto (mp.daemon.secretFile)");
+            }
+            s.setSoTimeout(readTimeoutMs);
+            return c;
+        } catch (IOException e) {
+            s.close();
+            throw e;
+        }
+    }
+
+    private void giveBack(Conn c) {
+        if (idleCount.incrementAndGet() > MAX_IDLE) {
+            idleCount.decrementAndGet();
+            c.close();
+            return;
+        }
+        idle.offerFirst(c);
+    }
+
+    /**
+     * Cierra las conexiones ociosas (fin de proceso / tests).
+     */
+    public void close() {
+        Conn c;
+        while ((c = idle.pollFirst()) != null) {
+            idleCount.decrementAndGet();
+            c.close();
+        }
+    }
+
+    /**
+     * No se pudo conectar con el daemon: el pedido no se envió.
+     */
+    public static class Unavailable extends IOException {
+
+        public Unavailable(InetSocketAddress address, IOException cause) {
+            super("Daemon MP no disponible en " + address + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    private static final class Conn {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+        final int readTimeoutMs;
+
+        Conn(Socket socket, int readTimeoutMs) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), 16 * 1024));
+            this.out = new DataOutputStream(socket.getOutputStream());
+            this.readTimeoutMs = readTimeoutMs;
+        }
+
+        // Espera el primer byte de la respuesta sin consumirlo; false = EOF
+        boolean awaitResponse() throws IOException {
+            in.mark(1);
+            int b = in.read();
+            in.reset();
+            return b >= 0;
+        }
+
+        // Igual que el chequeo de HttpClient: lectura de 1 ms. Sin datos = viva;
+        // EOF (o bytes que nadie pidió) = no se usa.
+        boolean stale() {
+            try {
+                socket.setSoTimeout(1);
+                in.read();
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            } finally {
+                try {
+                    socket.setSoTimeout(readTimeoutMs);
+                } catch (IOException ignored) {
+                }
+            }
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.hs.daemon;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Set;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Protocolo del daemon: un frame por mensaje.
+ *
+ * Frame = int32 largo (big-endian) + payload. Payload = byte versión (1) +
+ * int16 cantidad de campos + por campo int32 largo y los bytes UTF-8. El
+ * pedido lleva las 26 entradas del CALL y la respuesta las 7 salidas.
+ *
+ * Al conectar, antes del primer pedido: el daemon manda {"MPD", nonce}, el
+ * cliente contesta {"AUTH", HMAC-SHA256(secreto, nonce)} y el daemon {"OK"}
+ * (o corta). El secreto sale de mp.daemon.secretFile, un archivo que solo
+ * puede leer el usuario de las cajas; nunca viaja por el socket.
+ */
+public final class MpDaemonProtocol {
+
+    public static final byte VERSION = 1;
+    static final String HELLO = "MPD";
+    static final String AUTH = "AUTH";
+    static final String OK = "OK";
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private MpDaemonProtocol() {
+    }
+
+    public static void write(DataOutputStream out, String[] fields) throws IOException {
+        byte[][] enc = new byte[fields.length][];
+        int len = 1 + 2;
+        for (int i = 0; i < fields.length; i++) {
+            enc[i] = (fields[i] == null ? "" : fields[i]).getBytes(StandardCharsets.UTF_8);
+            len += 4 + enc[i].length;
+        }
+        // un solo write: el frame sale en un segmento (TCP_NODELAY)
+        ByteBuffer b = ByteBuffer.allocate(4 + len);
+        b.putInt(len).put(VERSION).putShort((short) fields.length);
+        for (byte[] f : enc) {
+            b.putInt(f.length).put(f);
+        }
+        out.write(b.array(), 0, b.position());
+        out.flush();
+    }
+
+    /**
+     * Lee un frame completo.
+     *
+     * @return null si el otro extremo cerró limpio antes de empezar el frame
+     */
+    public static String[] read(DataInputStream in, int maxFrameBytes) throws IOException {
+        int len;
+        try {
+            len = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        if (len < 3 || len > maxFrameBytes) { // versión + cantidad como mínimo
+            throw new IOException("Frame inválido (" + len + " bytes, máximo " + maxFrameBytes + ")");
+        }
+        byte[] payload = new byte[len];
+        in.readFully(payload);
+        ByteBuffer b = ByteBuffer.wrap(payload);
+        byte v = b.get();
+        if (v != VERSION) {
+            throw new IOException("Versión de protocolo no soportada: " + v);
+        }
+        int n = b.getShort();
+        if (n < 0) {
+            throw new IOException("Cantidad de campos inválida: " + n);
+        }
+        String[] fields = new String[n];
+        for (int i = 0; i < n; i++) {
+            int fl = b.remaining() >= 4 ? b.getInt() : -1;
+            if (fl < 0 || fl > b.remaining()) {
+                throw new IOException("Campo " + i + " fuera del frame");
+            }
+            fields[i] = new String(payload, b.position(), fl, StandardCharsets.UTF_8);
+            b.position(b.position() + fl);
+        }
+        return fields;
+    }
+
+    /**
+     * Frame armado en memoria (tests / diagnóstico).
+     */
+    static byte[] encode(String[] fields) throws IOException {
+        ByteArrayOutputStream bo = new ByteArrayOutputStream();
+        write(new DataOutputStream(bo), fields);
+        return bo.toByteArray();
+    }
+
+    // ==========================================================
+    // Autenticación
+    // ==========================================================
+    /**
+     * Secreto compartido de mp.daemon.secretFile. Se rechaza si falta, está
+     * vacío o (en sistemas POSIX) lo puede leer o escribir otro usuario.
+     */
+    public static byte[] readSecret(String file) throws IOException {
+        if (file == null || file.trim().isEmpty()) {
+            throw new IOException("Falta mp.daemon.secretFile");
+        }
+        Path p = Paths.get(file.trim());
+        PosixFileAttributeView posix = Files.getFileAttributeView(p, PosixFileAttributeView.class);
+        if (posix != null) {
+            Set<PosixFilePermission> perms = posix.readAttributes().permissions();
+            if (perms.contains(PosixFilePermission.GROUP_READ) || perms.contains(PosixFilePermission.OTHERS_READ)
+                    || perms.contains(PosixFilePermission.GROUP_WRITE) || perms.contains(PosixFilePermission.OTHERS_WRITE)) {
+                throw new IOException("El secreto del daemon no puede ser legible por otros usuarios (chmod 600): " + p);
+            }
+        }
+        byte[] secret = new String(Files.readAllBytes(p), StandardCharsets.UTF_8).trim().getBytes(StandardCharsets.UTF_8);
+        if (secret.length == 0) {
+            throw new IOException("Secreto del daemon vacío: " + p);
+        }
+        return secret;
+    }
+
+    static String nonce() {
+        byte[] b = new byte[24];
+        RANDOM.nextBytes(b);
+        return hex(b);
+    }
+
+    static String proof(byte[] secret, String nonce) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret, "HmacSHA256"));
+            return hex(mac.doFinal(nonce.getBytes(StandardCharsets.UTF_8)));
+        } catch (Exception e) {
+            throw new IllegalStateException("HmacSHA256 no disponible", e);
+        }
+    }
+
+    static boolean validProof(byte[] secret, String nonce, String[] reply) {
+        if (reply == null || reply.length != 2 || !AUTH.equals(reply[0])) {
+            return false;
+        }
+        return MessageDigest.isEqual(proof(secret, nonce).getBytes(StandardCharsets.UTF_8),
+                reply[1].getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String hex(byte[] b) {
+        StringBuilder sb = new StringBuilder(b.length * 2);
+        for (byte x : b) {
+            sb.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -1,13 +1,18 @@
 package com.hs.dto;
 
+import java.util.function.Supplier;
+
 public class MpResult {
-    public int res;          // 00 OK, 02 negocio, >=4 error
+    public int res;          // 00 OK, 02 negocio, 03 sin estado final (W), 06 límite de tasa local, 07 circuito abierto, >=4 error
     public String msg;
     public String id;        // order_id / store_id / pos_id
     public String qrData;
     public String status;
+    public String statusDetail; // no va a COBOL (no hay slot en argv)
     public String paymentId;
-    public String rawJson;
+    public String rawJson;      // leer con rawJson(): el cuerpo de MP se decodifica recién ahí
+    public int attempts;        // intentos HTTP de la última llamada (no va a COBOL)
+    private transient Supplier<String> rawLazy;
 
     public static MpResult ok() {
         MpResult r = new MpResult();
@@ -29,4 +34,37 @@ public class MpResult {
         r.msg = msg;
         return r;
     }
+
+    /**
+     * JSON crudo de MP. Si se cargó con rawJson(Supplier) se decodifica la
+     * primera vez que alguien lo pide (slot argv[32], log, respuesta JSON).
+     */
+    public String rawJson() {
+        Supplier<String> lazy = rawLazy;
+        if (rawJson == null && lazy != null) {
+            rawJson = lazy.get();
+            rawLazy = null;
+        }
+        return rawJson;
+    }
+
+    public void rawJson(Supplier<String> lazy) {
+        rawJson = null;
+        rawLazy = lazy;
+    }
+
+    public MpResult copy() {
+        MpResult r = new MpResult();
+        r.res = res;
+        r.msg = msg;
+        r.id = id;
+        r.qrData = qrData;
+        r.status = status;
+        r.statusDetail = statusDetail;
+        r.paymentId = paymentId;
+        r.rawJson = rawJson;
+        r.rawLazy = rawLazy;
+        r.attempts = attempts;
+        return r;
+    }
 }
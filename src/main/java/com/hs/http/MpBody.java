@@ -0,0 +1,221 @@
+package com.hs.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.apache.http.HttpEntity;
+import org.apache.http.conn.ConnectionReleaseTrigger;
+
+/**
+ * Cuerpo de una respuesta de MP como bytes; el texto se decodifica recién
+ * cuando alguien lo pide (y una sola vez).
+ *
+ * La lectura usa buffers de un pool (sin el char[] que crece ni la copia a
+ * String de EntityUtils.toString) y corta en maxBytes: lo que sobra no se
+ * guarda y la respuesta queda marcada como truncada.
+ */
+public final class MpBody {
+
+    public static final MpBody EMPTY = new MpBody(new byte[0], 0, StandardCharsets.UTF_8, false, "");
+
+    // Pool de buffers de lectura (los más grandes que CHUNK no vuelven al pool)
+    private static final int CHUNK = 16 * 1024;
+    private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(64);
+
+    private final byte[] bytes;
+    private final int length;
+    private final Charset charset;
+    private final boolean truncated;
+    private volatile String text;
+
+    private MpBody(byte[] bytes, int length, Charset charset, boolean truncated, String text) {
+        this.bytes = bytes;
+        this.length = length;
+        this.charset = charset;
+        this.truncated = truncated;
+        this.text = text;
+    }
+
+    /**
+     * Cuerpo ya en texto (tests, dobles de MpHttp).
+     */
+    public static MpBody of(String s) {
+        if (s == null || s.isEmpty()) {
+            return EMPTY;
+        }
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        return new MpBody(b, b.length, StandardCharsets.UTF_8, false, s);
+    }
+
+    public String text() {
+        String t = text;
+        if (t == null) {
+            t = new String(bytes, 0, length, charset);
+            text = t;
+        }
+        return t;
+    }
+
+    /**
+     * Hasta maxBytes decodificados (vista previa para el log).
+     */
+    public String preview(int maxBytes) {
+        String t = text;
+        if (t != null) {
+            return t.length() <= maxBytes ? t : t.substring(0, maxBytes) + "...";
+        }
+        return length <= maxBytes ? text() : new String(bytes, 0, maxBytes, charset) + "...";
+    }
+
+    /**
+     * Lector para el parser de streaming: sobre el texto si ya se decodificó,
+     * si no directo sobre los bytes.
+     */
+    public Reader reader() {
+        String t = text;
+        if (t != null) {
+            return new StringReader(t);
+        }
+        return new InputStreamReader(new ByteArrayInputStream(bytes, 0, length), charset);
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public boolean truncated() {
+        return truncated;
+    }
+
+    // ==========================================================
+    // Lectura
+    // ==========================================================
+    /**
+     * Lee la entidad (sincrónica) hasta maxBytes. Si hay más, aborta la
+     * conexión: cerrar el stream normal consumiría el resto del cuerpo (así
+     * libera HttpClient la conexión al pool) y un cuerpo gigante se bajaría
+     * entero igual.
+     */
+    public static MpBody read(HttpEntity entity, int maxBytes) throws IOException {
+        if (entity == null) {
+            return EMPTY;
+        }
+        Charset cs = MpHttpClient.charsetOf(entity);
+        Sink sink = new Sink(maxBytes, entity.getContentLength());
+        try (InputStream in = entity.getContent()) {
+            if (in == null) {
+                return EMPTY;
+            }
+            int n;
+            while (!sink.full() && (n = in.read(sink.buf, sink.len, sink.room())) != -1) {
+                sink.len += n;
+                if (sink.len == sink.buf.length) {
+                    sink.grow();
+                }
+            }
+            if (sink.full() && in.read() != -1) {
+                sink.truncated = true;
+                if (in instanceof ConnectionReleaseTrigger) {
+                    ((ConnectionReleaseTrigger) in).abortConnection();
+                }
+            }
+            return sink.finish(cs);
+        } finally {
+            sink.release();
+        }
+    }
+
+    /**
+     * Acumulador con tope para lecturas por partes (cliente NIO).
+     */
+    static final class Sink {
+        private final int max;
+        private byte[] buf;
+        private int len;
+        private boolean truncated;
+
+        Sink(int maxBytes, long contentLength) {
+            this.max = Math.max(1, maxBytes);
+            this.buf = contentLength > CHUNK && contentLength <= max ? new byte[(int) contentLength] : borrow();
+        }
+
+        // true si llegó al tope (lo que venga después se descarta)
+        boolean full() {
+            return len >= max;
+        }
+
+        int room() {
+            return Math.min(buf.length, max) - len;
+        }
+
+        void grow() {
+            if (buf.length >= max) {
+                return;
+            }
+            byte[] old = buf;
+            buf = Arrays.copyOf(old, (int) Math.min(max, old.length * 2L));
+            giveBack(old);
+        }
+
+        void append(ByteBuffer src) {
+            while (src.hasRemaining()) {
+                if (full()) {
+                    truncated = true;
+                    src.position(src.limit()); // descartar sin guardar
+                    return;
+                }
+                if (len == buf.length) {
+                    grow();
+                }
+                int n = Math.min(src.remaining(), room());
+                src.get(buf, len, n);
+                len += n;
+            }
+        }
+
+        boolean truncated() {
+            return truncated;
+        }
+
+        MpBody finish(Charset cs) {
+            if (len == 0) {
+                return EMPTY;
+            }
+            // del pool se copia justo lo leído; un buffer propio del tamaño exacto se entrega tal cual
+            boolean exact = buf.length == len && buf.length != CHUNK;
+            byte[] out = exact ? buf : Arrays.copyOf(buf, len);
+            if (exact) {
+                buf = null;
+            }
+            return new MpBody(out, len, cs, truncated, null);
+        }
+
+        void release() {
+            giveBack(buf);
+            buf = null;
+        }
+    }
+
+    private static byte[] borrow() {
+        byte[] b = POOL.poll();
+        return b != null ? b : new byte[CHUNK];
+    }
+
+    private static void giveBack(byte[] b) {
+        if (b != null && b.length == CHUNK) {
+            POOL.offer(b);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hs.http;
+
+import java.io.IOException;
+
+/**
+ * La respuesta de MP superó mp.http.maxBodyBytes: se cortó la lectura y no se
+ * parsea (no se reintenta: volvería igual).
+ */
+public class MpBodyTooLargeException extends IOException {
+
+    private final int httpCode;
+
+    public MpBodyTooLargeException(int httpCode, int maxBytes) {
+        super("Respuesta de MP de más de " + maxBytes + " bytes (HTTP " + httpCode + "), se descarta");
+        this.httpCode = httpCode;
+    }
+
+    public int httpCode() {
+        return httpCode;
+    }
+}
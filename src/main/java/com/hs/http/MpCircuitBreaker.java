@@ -0,0 +1,333 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Circuit breaker hacia la API de MP (uno por mp.baseUrl en la JVM).
+ *
+ * CLOSED: se mide una ventana deslizante de las últimas N llamadas; si la
+ * tasa de fallas (errores de red, HTTP 5xx) o de llamadas lentas supera el
+ * umbral, se abre. OPEN: todo falla al instante (MpCircuitOpenException, res
+ * 7) sin esperar timeouts. Pasado openMs pasa a HALF_OPEN y deja salir hasta
+ * "probes" llamadas de prueba: si todas salen bien cierra, si una falla vuelve
+ * a abrir.
+ *
+ * Cada permiso lleva la generación del breaker (cuántos cambios de estado
+ * hubo al darlo). Un resultado de otra generación llega tarde, de una
+ * llamada admitida en un estado anterior, y no cuenta: una respuesta lenta
+ * de cuando estaba CLOSED no puede cerrar un HALF_OPEN.
+ *
+ * Una prueba que no informa resultado (el llamador murió con una excepción
+ * inesperada) se da por perdida a los openMs: se abre una nueva generación de
+ * HALF_OPEN para que el circuito no quede trabado rechazando todo.
+ *
+ * Properties: mp.breaker.enabled (true), mp.breaker.window (20),
+ * mp.breaker.minCalls (10), mp.breaker.failureRate (50 %),
+ * mp.breaker.slowCallMs (8000), mp.breaker.slowRate (80 %),
+ * mp.breaker.openMs (15000), mp.breaker.probes (3)
+ */
+public final class MpCircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Cambio de estado (para monitoreo).
+     */
+    public static final class Transition {
+        public final String name;
+        public final State from;
+        public final State to;
+        public final long atMillis;
+        public final String reason;
+
+        Transition(String name, State from, State to, String reason) {
+            this.name = name;
+            this.from = from;
+            this.to = to;
+            this.atMillis = System.currentTimeMillis();
+            this.reason = reason;
+        }
+
+        @Override
+        public String toString() {
+            return "circuito " + name + ": " + from + " -> " + to + " (" + reason + ")";
+        }
+    }
+
+    /**
+     * tryAcquire(): circuito abierto, no hay permiso.
+     */
+    public static final long REJECTED = -1;
+
+    private static final ConcurrentHashMap<String, MpCircuitBreaker> BY_URL = new ConcurrentHashMap<>();
+    private static final Logger LOG = Logger.getLogger(MpCircuitBreaker.class.getName());
+
+    private final String name;
+    private final List<Consumer<Transition>> listeners = new CopyOnWriteArrayList<>();
+
+    // config (se actualiza si cambia el .properties)
+    private int window;
+    private int minCalls;
+    private int failureRatePct;
+    private long slowCallMs;
+    private int slowRatePct;
+    private long openMs;
+    private int probes;
+
+    // ventana: 0 ok, 1 falla, 2 lenta, 3 falla lenta
+    private byte[] outcomes;
+    private int pos;
+    private int calls;
+    private int failures;
+    private int slows;
+
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probesOk;
+    private long lastProbeAt;
+    private long rejected;
+    private long transitions; // también es la generación de los permisos
+
+    MpCircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Breaker de la API configurada en cfg; null si está deshabilitado.
+     */
+    public static MpCircuitBreaker forConfig(MpConfig cfg) {
+        if (!cfg.getBoolean("mp.breaker.enabled", true)) {
+            return null;
+        }
+        MpCircuitBreaker b = BY_URL.computeIfAbsent(cfg.baseUrl(), MpCircuitBreaker::new);
+        b.configure(cfg.getInt("mp.breaker.window", 20), cfg.getInt("mp.breaker.minCalls", 10),
+                cfg.getInt("mp.breaker.failureRate", 50), cfg.getInt("mp.breaker.slowCallMs", 8000),
+                cfg.getInt("mp.breaker.slowRate", 80), cfg.getInt("mp.breaker.openMs", 15000),
+                cfg.getInt("mp.breaker.probes", 3));
+        return b;
+    }
+
+    /**
+     * Todos los breakers creados (monitoreo).
+     */
+    public static List<MpCircuitBreaker> all() {
+        return new ArrayList<>(BY_URL.values());
+    }
+
+    synchronized void configure(int window, int minCalls, int failureRatePct, long slowCallMs, int slowRatePct,
+            long openMs, int probes) {
+        window = Math.max(1, window);
+        if (outcomes == null || outcomes.length != window) {
+            outcomes = new byte[window];
+            pos = 0;
+            calls = 0;
+            failures = 0;
+            slows = 0;
+        }
+        this.window = window;
+        this.minCalls = Math.max(1, Math.min(minCalls, window));
+        this.failureRatePct = failureRatePct;
+        this.slowCallMs = slowCallMs;
+        this.slowRatePct = slowRatePct;
+        this.openMs = Math.max(0, openMs);
+        this.probes = Math.max(1, probes);
+    }
+
+    public void addListener(Consumer<Transition> l) {
+        listeners.add(l);
+    }
+
+    // ==========================================================
+    // Uso desde el transporte
+    // ==========================================================
+    /**
+     * Permiso para hacer una llamada: la generación a devolver en
+     * onResponse/onError/release, o REJECTED si el circuito está abierto (o
+     * sin lugar para más pruebas en HALF_OPEN).
+     */
+    public long tryAcquire() {
+        Transition t = null;
+        long permit;
+        synchronized (this) {
+            long now = System.currentTimeMillis();
+            if (state == State.OPEN && now - openedAt >= openMs) {
+                t = moveTo(State.HALF_OPEN, "fin de espera " + openMs + " ms");
+            } else if (state == State.HALF_OPEN && probesInFlight > 0 && probesInFlight + probesOk >= probes
+                    && now - lastProbeAt >= openMs) {
+                t = moveTo(State.HALF_OPEN, probesInFlight + " pruebas sin resultado en " + openMs + " ms");
+            }
+            if (state == State.CLOSED) {
+                permit = transitions;
+            } else if (state == State.HALF_OPEN && probesInFlight + probesOk < probes) {
+                probesInFlight++;
+                lastProbeAt = now;
+                permit = transitions;
+            } else {
+                rejected++;
+                permit = REJECTED;
+            }
+        }
+        fire(t);
+        return permit;
+    }
+
+    /**
+     * true si el circuito está abierto y todavía no toca probar (cuenta como
+     * rechazada). Permite fallar en seco antes de esperar turno en el
+     * limitador de tasa, sin tomar permiso.
+     */
+    public synchronized boolean rejectsNow() {
+        if (state == State.OPEN && System.currentTimeMillis() - openedAt < openMs) {
+            rejected++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Devuelve un permiso sin resultado (la llamada no llegó a salir o cortó
+     * con una excepción que no es de red).
+     */
+    public synchronized void release(long permit) {
+        if (permit == transitions && state == State.HALF_OPEN && probesInFlight > 0) {
+            probesInFlight--;
+        }
+    }
+
+    /**
+     * Respuesta HTTP recibida: 5xx cuenta como falla; 429 y 4xx no (MP está
+     * vivo).
+     */
+    public void onResponse(long permit, int httpCode, long elapsedMs) {
+        record(permit, httpCode >= 500, elapsedMs);
+    }
+
+    /**
+     * Error de red / timeout.
+     */
+    public void onError(long permit, long elapsedMs) {
+        record(permit, true, elapsedMs);
+    }
+
+    private void record(long permit, boolean failed, long elapsedMs) {
+        boolean slow = elapsedMs >= slowCallMs;
+        Transition t = null;
+        synchronized (this) {
+            if (permit != transitions) {
+                return; // admitida en un estado anterior: ya no dice nada del actual
+            }
+            if (state == State.HALF_OPEN) {
+                if (probesInFlight > 0) {
+                    probesInFlight--;
+                }
+                if (failed || slow) {
+                    t = open(failed ? "falla en prueba" : "prueba lenta (" + elapsedMs + " ms)");
+                } else if (++probesOk >= probes) {
+                    t = moveTo(State.CLOSED, probesOk + " pruebas OK");
+                }
+            } else if (state == State.CLOSED) {
+                t = sample(failed, slow);
+            }
+        }
+        fire(t);
+    }
+
+    private Transition sample(boolean failed, boolean slow) {
+        byte old = outcomes[pos];
+        if (calls == window) {
+            failures -= old & 1;
+            slows -= (old >> 1) & 1;
+        } else {
+            calls++;
+        }
+        byte now = (byte) ((failed ? 1 : 0) | (slow ? 2 : 0));
+        outcomes[pos] = now;
+        pos = (pos + 1) % window;
+        failures += now & 1;
+        slows += (now >> 1) & 1;
+
+        if (calls < minCalls) {
+            return null;
+        }
+        if (failures * 100 >= failureRatePct * calls) {
+            return open("fallas " + failures + "/" + calls);
+        }
+        if (slows * 100 >= slowRatePct * calls) {
+            return open("lentas " + slows + "/" + calls + " (>= " + slowCallMs + " ms)");
+        }
+        return null;
+    }
+
+    private Transition open(String reason) {
+        openedAt = System.currentTimeMillis();
+        return moveTo(State.OPEN, reason);
+    }
+
+    private Transition moveTo(State to, String reason) {
+        Transition t = new Transition(name, state, to, reason);
+        state = to;
+        transitions++;
+        probesInFlight = 0;
+        probesOk = 0;
+        if (to == State.CLOSED) {
+            Arrays.fill(outcomes, (byte) 0);
+            pos = 0;
+            calls = 0;
+            failures = 0;
+            slows = 0;
+        }
+        return t;
+    }
+
+    private void fire(Transition t) {
+        if (t == null) {
+            return;
+        }
+        LOG.warning(t.toString());
+        for (Consumer<Transition> l : listeners) {
+            try {
+                l.accept(t);
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    // ==========================================================
+    // Monitoreo
+    // ==========================================================
+    public String name() {
+        return name;
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    /**
+     * Milisegundos hasta admitir pruebas (0 si no está abierto).
+     */
+    public synchronized long retryInMs() {
+        return state != State.OPEN ? 0 : Math.max(0, openMs - (System.currentTimeMillis() - openedAt));
+    }
+
+    public synchronized String snapshot() {
+        int fr = calls == 0 ? 0 : failures * 100 / calls;
+        int sr = calls == 0 ? 0 : slows * 100 / calls;
+        return "circuito " + name + " state=" + state + " calls=" + calls + " failureRate=" + fr + "% slowRate=" + sr
+                + "% rejected=" + rejected + " transitions=" + transitions;
+    }
+
+    public synchronized long rejectedCount() {
+        return rejected;
+    }
+}
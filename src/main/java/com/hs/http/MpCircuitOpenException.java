@@ -0,0 +1,21 @@
+package com.hs.http;
+
+import java.io.IOException;
+
+/**
+ * Circuito abierto: MP viene fallando y la llamada se rechaza al instante,
+ * sin salir a la red.
+ */
+public class MpCircuitOpenException extends IOException {
+
+    private final long retryInMs;
+
+    public MpCircuitOpenException(String name, long retryInMs) {
+        super("MP no disponible (circuito abierto " + name + "), reintentar en " + Math.max(1, (retryInMs + 999) / 1000) + " s");
+        this.retryInMs = retryInMs;
+    }
+
+    public long retryInMs() {
+        return retryInMs;
+    }
+}
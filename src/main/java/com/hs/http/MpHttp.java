@@ -6,13 +6,49 @@ public interface MpHttp {
 
     MpHttpResponse postJson(String endpoint, String jsonBody, String idempotencyKey) throws Exception;
 
+    /**
+     * Igual que get(endpoint) pero indicando el nombre del endpoint en config
+     * (getOrder, searchPos...), para timeouts por endpoint.
+     */
+    default MpHttpResponse get(String op, String endpoint) throws Exception {
+        return get(endpoint);
+    }
+
+    default MpHttpResponse postJson(String op, String endpoint, String jsonBody, String idempotencyKey) throws Exception {
+        return postJson(endpoint, jsonBody, idempotencyKey);
+    }
+
     class MpHttpResponse {
         public final int httpCode;
-        public final String body;
+        public final int attempts; // intentos HTTP (reintentos incluidos)
+        private final MpBody content;
 
         public MpHttpResponse(int httpCode, String body) {
+            this(httpCode, body, 1);
+        }
+
+        public MpHttpResponse(int httpCode, String body, int attempts) {
+            this(httpCode, MpBody.of(body), attempts);
+        }
+
+        public MpHttpResponse(int httpCode, MpBody content, int attempts) {
             this.httpCode = httpCode;
-            this.body = body;
+            this.content = content == null ? MpBody.EMPTY : content;
+            this.attempts = attempts;
+        }
+
+        /**
+         * Cuerpo como texto; se decodifica la primera vez que se pide.
+         */
+        public String body() {
+            return content.text();
+        }
+
+        /**
+         * Cuerpo en bytes, para parsear sin armar el String.
+         */
+        public MpBody content() {
+            return content;
         }
     }
 }
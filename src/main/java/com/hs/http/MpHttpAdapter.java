@@ -15,12 +15,24 @@ public class MpHttpAdapter implements MpHttp {
     public MpHttpResponse get(String endpoint) throws Exception {
         // MpHttpClient.get(path, idempotencyKey)
         MpHttpClient.MpHttpResponse r = http.get(endpoint, null);
-        return new MpHttpResponse(r.statusCode, r.body);
+        return new MpHttpResponse(r.statusCode, r.content(), r.attempts);
     }
 
     @Override
     public MpHttpResponse postJson(String endpoint, String jsonBody, String idempotencyKey) throws Exception {
         MpHttpClient.MpHttpResponse r = http.postJson(endpoint, jsonBody, idempotencyKey);
-        return new MpHttpResponse(r.statusCode, r.body);
+        return new MpHttpResponse(r.statusCode, r.content(), r.attempts);
+    }
+
+    @Override
+    public MpHttpResponse get(String op, String endpoint) throws Exception {
+        MpHttpClient.MpHttpResponse r = http.get(op, endpoint, null);
+        return new MpHttpResponse(r.statusCode, r.content(), r.attempts);
+    }
+
+    @Override
+    public MpHttpResponse postJson(String op, String endpoint, String jsonBody, String idempotencyKey) throws Exception {
+        MpHttpClient.MpHttpResponse r = http.postJson(op, endpoint, jsonBody, idempotencyKey);
+        return new MpHttpResponse(r.statusCode, r.content(), r.attempts);
     }
 }
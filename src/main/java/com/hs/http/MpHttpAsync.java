@@ -0,0 +1,46 @@
+package com.hs.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Variante no bloqueante de MpHttp: las respuestas llegan como
+ * CompletableFuture, sin ocupar un hilo por request en vuelo.
+ */
+public interface MpHttpAsync {
+
+    CompletableFuture<MpHttp.MpHttpResponse> getAsync(String op, String endpoint);
+
+    CompletableFuture<MpHttp.MpHttpResponse> postJsonAsync(String op, String endpoint, String jsonBody, String idempotencyKey);
+
+    /**
+     * Adapta un MpHttp bloqueante (mock en tests, transporte inyectado)
+     * ejecutándolo en el executor dado.
+     */
+    static MpHttpAsync blocking(MpHttp http, Executor executor) {
+        return new MpHttpAsync() {
+            @Override
+            public CompletableFuture<MpHttp.MpHttpResponse> getAsync(String op, String endpoint) {
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return http.get(op, endpoint);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+            }
+
+            @Override
+            public CompletableFuture<MpHttp.MpHttpResponse> postJsonAsync(String op, String endpoint, String jsonBody, String idempotencyKey) {
+                return CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return http.postJson(op, endpoint, jsonBody, idempotencyKey);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+            }
+        };
+    }
+}
@@ -0,0 +1,427 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import com.hs.metrics.MpMetrics;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Cliente no bloqueante (Apache HttpAsyncClient / NIO) hacia Mercado Pago.
+ *
+ * Un par de hilos de I/O atienden cientos de requests en vuelo; pensado para
+ * herramientas admin/batch. El runtime ISCOBOL sigue usando MpHttpClient: el
+ * reactor se crea recién en el primer uso, uno por cuenta (como
+ * MpHttpTransport) y dimensionado con la config de esa cuenta.
+ *
+ * Reintenta con la misma MpRetryPolicy que el cliente sincrónico (GET y POST
+ * con X-Idempotency-Key); las esperas entre intentos son timers, no hilos
+ * dormidos. Cualquier error, incluso armando el request (p.ej. sin token),
+ * llega como future fallido.
+ *
+ * Properties: mp.http.async.ioThreads (2), mp.http.async.maxTotal (200),
+ * mp.http.async.maxPerRoute (100) + los mismos mp.timeout.*, mp.retry.*,
+ * mp.ratelimit.* y mp.breaker.* que el cliente sincrónico. El cuerpo se junta
+ * en buffers del pool de MpBody con el mismo tope mp.http.maxBodyBytes.
+ */
+public class MpHttpAsyncClient implements MpHttpAsync {
+
+    private static final ConcurrentHashMap<String, CloseableHttpAsyncClient> BY_ACCOUNT = new ConcurrentHashMap<>();
+
+    private final MpConfig cfg;
+    private final Logger logger;
+    private final boolean logHttp;
+    private final int maxBodyBytes;
+    private final ConcurrentHashMap<String, RequestConfig> requestConfigByOp = new ConcurrentHashMap<>();
+    private final RequestConfig defaultRequestConfig;
+    private final ConcurrentHashMap<String, MpRetryPolicy> retryPolicyByOp = new ConcurrentHashMap<>();
+    private final MpRetryPolicy defaultRetryPolicy;
+
+    public MpHttpAsyncClient(MpConfig cfg, Logger logger) {
+        this.cfg = cfg;
+        this.logger = logger;
+        this.logHttp = cfg.logHttp();
+        this.maxBodyBytes = Math.max(1024, cfg.getInt("mp.http.maxBodyBytes", 2 * 1024 * 1024));
+        this.defaultRequestConfig = MpHttpClient.buildRequestConfig(cfg, null);
+        this.defaultRetryPolicy = MpRetryPolicy.forOp(cfg, null);
+    }
+
+    /**
+     * Cliente de la cuenta de cfg; se crea en el primer request y se vuelve a
+     * crear si alguien lo cerró.
+     */
+    private static CloseableHttpAsyncClient client(MpConfig cfg) {
+        String key = cfg.accountKey();
+        CloseableHttpAsyncClient c = BY_ACCOUNT.get(key);
+        if (c == null || !c.isRunning()) {
+            c = BY_ACCOUNT.compute(key, (k, old) -> old == null || !old.isRunning() ? create(cfg) : old);
+        }
+        return c;
+    }
+
+    private static CloseableHttpAsyncClient create(MpConfig cfg) {
+        try {
+            IOReactorConfig io = IOReactorConfig.custom()
+                    .setIoThreadCount(cfg.getInt("mp.http.async.ioThreads", 2))
+                    .setConnectTimeout(cfg.connectTimeoutMs())
+                    .setSoTimeout(cfg.socketTimeoutMs())
+                    .setSoKeepAlive(true)
+                    .build();
+            PoolingNHttpClientConnectionManager pool
+                    = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(io));
+            pool.setMaxTotal(cfg.getInt("mp.http.async.maxTotal", 200));
+            pool.setDefaultMaxPerRoute(cfg.getInt("mp.http.async.maxPerRoute", 100));
+
+            CloseableHttpAsyncClient c = HttpAsyncClients.custom()
+                    .setConnectionManager(pool)
+                    .setDefaultRequestConfig(MpHttpClient.buildRequestConfig(cfg, null))
+                    .build();
+            c.start();
+            return c;
+        } catch (Exception e) {
+            throw new IllegalStateException("No se pudo iniciar HttpAsyncClient: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Cierra el cliente async de la cuenta de cfg (baja en MpTenantRegistry).
+     */
+    public static void shutdown(MpConfig cfg) {
+        close(cfg.accountKey());
+    }
+
+    private static void close(String accountKey) {
+        CloseableHttpAsyncClient c = BY_ACCOUNT.remove(accountKey);
+        if (c != null) {
+            try {
+                c.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Cierra todos los clientes async (fin de proceso standalone).
+     */
+    public static void shutdownAll() {
+        for (String key : BY_ACCOUNT.keySet()) {
+            close(key);
+        }
+    }
+
+    @Override
+    public CompletableFuture<MpHttp.MpHttpResponse> getAsync(String op, String endpoint) {
+        try {
+            HttpGet req = new HttpGet(cfg.baseUrl() + endpoint);
+            applyHeaders(req);
+            return execute(op, req);
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
+
+    @Override
+    public CompletableFuture<MpHttp.MpHttpResponse> postJsonAsync(String op, String endpoint, String jsonBody, String idempotencyKey) {
+        try {
+            HttpPost req = new HttpPost(cfg.baseUrl() + endpoint);
+            applyHeaders(req);
+            if (idempotencyKey != null && !idempotencyKey.trim().isEmpty()) {
+                req.setHeader("X-Idempotency-Key", idempotencyKey.trim());
+            }
+            if (jsonBody != null) {
+                req.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
+            }
+            return execute(op, req);
+        } catch (Exception e) {
+            return failed(e);
+        }
+    }
+
+    private CompletableFuture<MpHttp.MpHttpResponse> execute(String op, HttpRequestBase req) {
+        req.setConfig(op == null ? defaultRequestConfig
+                : requestConfigByOp.computeIfAbsent(op, k -> MpHttpClient.buildRequestConfig(cfg, k)));
+        if (logHttp && logger != null) {
+            logger.info("MP HTTP ASYNC REQUEST " + req.getMethod() + " " + req.getURI());
+        }
+        MpRetryPolicy policy = (op == null || op.isEmpty()) ? defaultRetryPolicy
+                : retryPolicyByOp.computeIfAbsent(op, k -> MpRetryPolicy.forOp(cfg, k));
+        return attempt(new Call(op, req, policy, MpCircuitBreaker.forConfig(cfg), MpRateLimiter.bucket(cfg, op)), 1,
+                null, null);
+    }
+
+    // Un request con sus reintentos
+    private static final class Call {
+        final String op;
+        final HttpRequestBase req;
+        final RequestConfig rc;
+        final MpRetryPolicy policy;
+        final int maxAttempts;
+        final long deadline;
+        final MpCircuitBreaker breaker;
+        final MpRateLimiter.Bucket bucket;
+
+        Call(String op, HttpRequestBase req, MpRetryPolicy policy, MpCircuitBreaker breaker, MpRateLimiter.Bucket bucket) {
+            this.op = op;
+            this.req = req;
+            this.rc = req.getConfig();
+            this.policy = policy;
+            boolean repeatable = "GET".equals(req.getMethod()) || req.containsHeader("X-Idempotency-Key");
+            this.maxAttempts = repeatable ? policy.maxAttempts : 1;
+            this.deadline = System.currentTimeMillis() + policy.deadlineMs;
+            this.breaker = breaker;
+            this.bucket = bucket;
+        }
+    }
+
+    private CompletableFuture<MpHttp.MpHttpResponse> attempt(Call c, int n, MpHttp.MpHttpResponse last,
+            IOException lastError) {
+        // Circuito abierto: fallar ya, sin gastar cupo
+        if (c.breaker != null && c.breaker.rejectsNow()) {
+            return n == 1 ? failed(new MpCircuitOpenException(c.breaker.name(), c.breaker.retryInMs()))
+                    : lastOutcome(n - 1, last, lastError);
+        }
+
+        // Límite de tasa: el turno se espera con un timer, sin bloquear hilos
+        long wait = 0;
+        if (c.bucket != null) {
+            long maxWait = n == 1 ? c.bucket.maxWaitMs()
+                    : Math.min(c.bucket.maxWaitMs(), c.deadline - System.currentTimeMillis());
+            wait = c.bucket.reserve(maxWait);
+            if (wait < 0) {
+                return n == 1 ? failed(new MpRateLimitedException(c.bucket.bucketClass(), c.bucket.maxWaitMs()))
+                        : lastOutcome(n - 1, last, lastError);
+            }
+        }
+
+        // El permiso del circuito se toma recién con el turno: una prueba de
+        // HALF_OPEN no queda tomada mientras se espera el limitador
+        CompletableFuture<Void> turn = wait > 0 ? MpRateLimiter.delay(wait) : CompletableFuture.completedFuture(null);
+        return turn.thenCompose(v -> {
+            long permit = c.breaker == null ? 0 : c.breaker.tryAcquire();
+            if (permit == MpCircuitBreaker.REJECTED) {
+                return n == 1 ? failed(new MpCircuitOpenException(c.breaker.name(), c.breaker.retryInMs()))
+                        : lastOutcome(n - 1, last, lastError);
+            }
+            return send(c, n, permit).handle((r, err) -> next(c, n, r, err)).thenCompose(f -> f);
+        });
+    }
+
+    // Decide si el intento n queda como resultado o se reintenta
+    private CompletableFuture<MpHttp.MpHttpResponse> next(Call c, int n, Received r, Throwable err) {
+        if (err != null) {
+            Throwable e = (err instanceof CompletionException && err.getCause() != null) ? err.getCause() : err;
+            if (!(e instanceof IOException)) {
+                return failed(e);
+            }
+            IOException io = (IOException) e;
+            long wait = c.policy.backoffMs(n);
+            if (n >= c.maxAttempts || !MpRetryPolicy.retryableError(io) || !fits(c.deadline, wait)) {
+                return failed(retryFailure(n, io));
+            }
+            logRetry(c.op, n, c.maxAttempts, wait, io.toString());
+            return MpRateLimiter.delay(wait).thenCompose(v -> attempt(c, n + 1, null, io));
+        }
+
+        MpHttp.MpHttpResponse res = new MpHttp.MpHttpResponse(r.status, r.body, n);
+        if (n >= c.maxAttempts || !c.policy.retryableStatus(r.status)) {
+            return CompletableFuture.completedFuture(res);
+        }
+        long retryAfter = MpRetryPolicy.retryAfterMs(r.headers, System.currentTimeMillis());
+        long wait = retryAfter >= 0 ? retryAfter : c.policy.backoffMs(n);
+        if (retryAfter > c.policy.retryAfterMaxMs || !fits(c.deadline, wait)) {
+            return CompletableFuture.completedFuture(res); // no entra en el plazo: la respuesta tal cual
+        }
+        logRetry(c.op, n, c.maxAttempts, wait, "HTTP " + r.status);
+        return MpRateLimiter.delay(wait).thenCompose(v -> attempt(c, n + 1, res, null));
+    }
+
+    private static boolean fits(long deadline, long waitMs) {
+        return System.currentTimeMillis() + waitMs < deadline;
+    }
+
+    private static IOException retryFailure(int attempts, IOException e) {
+        return attempts > 1 ? new MpHttpRetryException(attempts, e) : e;
+    }
+
+    // Se corta el reintento: vale lo que dio el intento anterior
+    private static CompletableFuture<MpHttp.MpHttpResponse> lastOutcome(int attempts, MpHttp.MpHttpResponse last,
+            IOException lastError) {
+        return lastError != null ? failed(retryFailure(attempts, lastError)) : CompletableFuture.completedFuture(last);
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable e) {
+        CompletableFuture<T> f = new CompletableFuture<>();
+        f.completeExceptionally(e);
+        return f;
+    }
+
+    private void logRetry(String op, int attempt, int maxAttempts, long waitMs, String cause) {
+        if (logger != null) {
+            logger.warning("MP HTTP ASYNC reintento " + (op == null ? "" : op + " ") + (attempt + 1) + "/" + maxAttempts
+                    + " en " + waitMs + " ms (" + cause + ")");
+        }
+    }
+
+    private CompletableFuture<Received> send(Call c, int n, long permit) {
+        HttpRequestBase req = c.req;
+        MpCircuitBreaker breaker = c.breaker;
+        try {
+            req.reset();
+            req.setConfig(n == 1 ? c.rc : MpHttpClient.capSocketTimeout(c.rc, c.deadline));
+            return execute(c, permit);
+        } catch (RuntimeException e) {
+            // el cliente no llegó a aceptar el request (reactor parado...): devolver la prueba
+            if (breaker != null) {
+                breaker.release(permit);
+            }
+            return failed(e);
+        }
+    }
+
+    private CompletableFuture<Received> execute(Call c, long permit) {
+        HttpRequestBase req = c.req;
+        MpCircuitBreaker breaker = c.breaker;
+        MpRateLimiter.Bucket bucket = c.bucket;
+        String metric = c.op != null ? c.op : req.getMethod();
+        long bytesOut = MpHttpClient.requestBytes(req);
+        CompletableFuture<Received> f = new CompletableFuture<>();
+        long t0 = System.nanoTime();
+        client(cfg).execute(HttpAsyncMethods.create(req), new CappedConsumer(maxBodyBytes), new FutureCallback<Received>() {
+            @Override
+            public void completed(Received r) {
+                try {
+                    if (breaker != null) {
+                        breaker.onResponse(permit, r.status, (System.nanoTime() - t0) / 1_000_000L);
+                    }
+                    MpMetrics.http(metric, r.status, System.nanoTime() - t0, bytesOut, r.body.length());
+                    if (r.status == 429 && bucket != null) {
+                        bucket.drain();
+                    }
+                    if (r.body.truncated()) {
+                        f.completeExceptionally(new MpBodyTooLargeException(r.status, maxBodyBytes));
+                        return;
+                    }
+                    f.complete(r);
+                } catch (Exception e) {
+                    f.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                if (breaker != null) {
+                    breaker.onError(permit, (System.nanoTime() - t0) / 1_000_000L);
+                }
+                MpMetrics.httpError(metric, System.nanoTime() - t0, bytesOut);
+                f.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                if (breaker != null) {
+                    breaker.release(permit);
+                }
+                f.cancel(false);
+            }
+        });
+        return f;
+    }
+
+    // ==========================================================
+    // Lectura del cuerpo con tope
+    // ==========================================================
+    static final class Received {
+        final int status;
+        final Header[] headers;
+        final MpBody body;
+
+        Received(int status, Header[] headers, MpBody body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+
+    /**
+     * Junta el cuerpo a medida que llega del reactor; pasado el tope sigue
+     * drenando el socket pero sin guardar nada.
+     */
+    static final class CappedConsumer extends AbstractAsyncResponseConsumer<Received> {
+        private final int maxBytes;
+        private final ByteBuffer chunk = ByteBuffer.allocate(8 * 1024);
+        private int status;
+        private Header[] headers;
+        private Charset charset = StandardCharsets.UTF_8;
+        private MpBody.Sink sink;
+
+        CappedConsumer(int maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) {
+            status = response.getStatusLine().getStatusCode();
+            headers = response.getAllHeaders();
+        }
+
+        @Override
+        protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) {
+            if (contentType != null && contentType.getCharset() != null) {
+                charset = contentType.getCharset();
+            }
+            sink = new MpBody.Sink(maxBytes, entity.getContentLength());
+        }
+
+        @Override
+        protected void onContentReceived(ContentDecoder decoder, IOControl ioctrl) throws IOException {
+            while (decoder.read(chunk) > 0) {
+                chunk.flip();
+                sink.append(chunk);
+                chunk.clear();
+            }
+        }
+
+        @Override
+        protected Received buildResult(HttpContext context) {
+            return new Received(status, headers, sink == null ? MpBody.EMPTY : sink.finish(charset));
+        }
+
+        @Override
+        protected void releaseResources() {
+            if (sink != null) {
+                sink.release();
+            }
+        }
+    }
+
+    private void applyHeaders(HttpRequestBase req) {
+        req.setHeader("Authorization", cfg.authorizationHeader());
+        req.setHeader("Content-Type", "application/json");
+        req.setHeader("Accept", "application/json");
+    }
+}
@@ -1,25 +1,37 @@
 package com.hs.http;
 
 import com.hs.config.MpConfig;
+import com.hs.metrics.MpMetrics;
+import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.*;
+import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.util.EntityUtils;
 
 public class MpHttpClient {
 
     private final MpConfig cfg;
     private final Logger logger;
-    private final CloseableHttpClient client;
 
     private final boolean logHttp;
     private final int logHttpMax;
+    private final int maxBodyBytes; // tope de lectura de respuestas
+
+    // Timeouts: default + overrides por endpoint (mp.timeout.socket.getOrder, etc.)
+    private final RequestConfig defaultRequestConfig;
+    private final ConcurrentHashMap<String, RequestConfig> requestConfigByOp = new ConcurrentHashMap<>();
+
+    // Reintentos: default + overrides por endpoint (mp.retry.maxAttempts.createOrder, etc.)
+    private final MpRetryPolicy defaultRetryPolicy;
+    private final ConcurrentHashMap<String, MpRetryPolicy> retryPolicyByOp = new ConcurrentHashMap<>();
 
     public MpHttpClient(MpConfig cfg) {
         this(cfg, null);
@@ -30,23 +42,46 @@ public class MpHttpClient {
         this.logger = logger;
         this.logHttp = cfg.logHttp();
         this.logHttpMax = cfg.logHttpMax();
-        this.client = HttpClients.createDefault();
+        this.maxBodyBytes = Math.max(1024, cfg.getInt("mp.http.maxBodyBytes", 2 * 1024 * 1024));
+        this.defaultRequestConfig = buildRequestConfig(cfg, null);
+        this.defaultRetryPolicy = MpRetryPolicy.forOp(cfg, null);
+    }
+
+    static RequestConfig buildRequestConfig(MpConfig cfg, String op) {
+        return RequestConfig.custom()
+                .setConnectTimeout(cfg.connectTimeoutMs(op))
+                .setSocketTimeout(cfg.socketTimeoutMs(op))
+                .setConnectionRequestTimeout(cfg.poolTimeoutMs(op))
+                .build();
+    }
+
+    private RequestConfig requestConfig(String op) {
+        if (op == null || op.isEmpty()) {
+            return defaultRequestConfig;
+        }
+        return requestConfigByOp.computeIfAbsent(op, k -> buildRequestConfig(cfg, k));
     }
 
     /* =========================================================
        PUBLIC API
        ========================================================= */
     public MpHttpResponse get(String endpoint) throws Exception {
-        HttpGet req = new HttpGet(cfg.baseUrl() + endpoint);
-        applyHeaders(req);
-        return execute(req, null);
+        return get(null, endpoint, null);
     }
 
     public MpHttpResponse get(String endpoint, String idempotencyKey) throws Exception {
+        return get(null, endpoint, idempotencyKey);
+    }
+
+    /**
+     * @param op nombre del endpoint en config (getOrder, searchPos...) para
+     * aplicar overrides de timeout; null = defaults.
+     */
+    public MpHttpResponse get(String op, String endpoint, String idempotencyKey) throws Exception {
         HttpGet req = new HttpGet(cfg.baseUrl() + endpoint);
         applyHeaders(req);
         applyIdempotency(req, idempotencyKey);
-        return execute(req, null);
+        return execute(op, req, null);
     }
 
     public MpHttpResponse postJson(String endpoint, String jsonBody) throws Exception {
@@ -55,17 +90,21 @@ public class MpHttpClient {
         if (jsonBody != null) {
             req.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
         }
-        return execute(req, jsonBody);
+        return execute(null, req, jsonBody);
     }
 
     public MpHttpResponse postJson(String endpoint, String jsonBody, String idempotencyKey) throws Exception {
+        return postJson(null, endpoint, jsonBody, idempotencyKey);
+    }
+
+    public MpHttpResponse postJson(String op, String endpoint, String jsonBody, String idempotencyKey) throws Exception {
         HttpPost req = new HttpPost(cfg.baseUrl() + endpoint);
         applyHeaders(req);
         applyIdempotency(req, idempotencyKey);
         if (jsonBody != null) {
             req.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
         }
-        return execute(req, jsonBody);
+        return execute(op, req, jsonBody);
     }
 
     public MpHttpResponse putJson(String endpoint, String jsonBody) throws Exception {
@@ -74,7 +113,7 @@ public class MpHttpClient {
         if (jsonBody != null) {
             req.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
         }
-        return execute(req, jsonBody);
+        return execute(null, req, jsonBody);
     }
 
     public MpHttpResponse putJson(String endpoint, String jsonBody, String idempotencyKey) throws Exception {
@@ -84,13 +123,13 @@ public class MpHttpClient {
         if (jsonBody != null) {
             req.setEntity(new StringEntity(jsonBody, StandardCharsets.UTF_8));
         }
-        return execute(req, jsonBody);
+        return execute(null, req, jsonBody);
     }
 
     public MpHttpResponse delete(String endpoint) throws Exception {
         HttpDelete req = new HttpDelete(cfg.baseUrl() + endpoint);
         applyHeaders(req);
-        return execute(req, null);
+        return execute(null, req, null);
     }
 
     private void applyIdempotency(HttpRequestBase req, String idempotencyKey) {
@@ -105,7 +144,13 @@ public class MpHttpClient {
     /* =========================================================
        CORE EXECUTION
        ========================================================= */
-    private MpHttpResponse execute(HttpRequestBase req, String requestBody) throws Exception {
+    private MpHttpResponse execute(String op, HttpRequestBase req, String requestBody) throws Exception {
+
+        RequestConfig rc = requestConfig(op);
+        MpRetryPolicy policy = retryPolicy(op);
+        boolean repeatable = "GET".equals(req.getMethod()) || req.containsHeader("X-Idempotency-Key");
+        int maxAttempts = repeatable ? policy.maxAttempts : 1;
+        long deadline = System.currentTimeMillis() + policy.deadlineMs;
 
         if (logHttp && logger != null) {
             logger.info("MP HTTP REQUEST " + req.getMethod() + " " + req.getURI());
@@ -114,21 +159,176 @@ public class MpHttpClient {
             }
         }
 
-        try ( CloseableHttpResponse resp = client.execute(req)) {
+        String metric = op != null ? op : req.getMethod();
+        long bytesOut = requestBytes(req);
+        MpCircuitBreaker breaker = MpCircuitBreaker.forConfig(cfg);
+        MpRateLimiter.Bucket bucket = MpRateLimiter.bucket(cfg, op);
+        MpHttpResponse last = null;
+        IOException lastError = null;
+
+        for (int attempt = 1;; attempt++) {
+            // 1) circuito abierto: fallar ya (sin esperar cupo ni timeouts)
+            if (breaker != null && breaker.rejectsNow()) {
+                if (attempt == 1) {
+                    throw new MpCircuitOpenException(breaker.name(), breaker.retryInMs());
+                }
+                return lastOutcome(attempt - 1, last, lastError);
+            }
 
-            int status = resp.getStatusLine().getStatusCode();
-            String body = extractBody(resp);
-            Header[] headers = resp.getAllHeaders();
+            // 2) límite de tasa, antes del permiso: no esperar turno con una prueba de HALF_OPEN tomada
+            if (bucket != null) {
+                long maxWait = attempt == 1 ? bucket.maxWaitMs()
+                        : Math.min(bucket.maxWaitMs(), deadline - System.currentTimeMillis());
+                if (!bucket.acquire(maxWait)) {
+                    if (attempt == 1) {
+                        throw new MpRateLimitedException(bucket.bucketClass(), bucket.maxWaitMs());
+                    }
+                    // sin cupo para reintentar: queda el resultado del intento anterior
+                    return lastOutcome(attempt - 1, last, lastError);
+                }
+            }
+
+            // 3) permiso del circuito (en HALF_OPEN solo salen "probes" pruebas)
+            long permit = breaker == null ? 0 : breaker.tryAcquire();
+            if (permit == MpCircuitBreaker.REJECTED) {
+                if (attempt == 1) {
+                    throw new MpCircuitOpenException(breaker.name(), breaker.retryInMs());
+                }
+                return lastOutcome(attempt - 1, last, lastError);
+            }
 
-            if (logHttp && logger != null) {
-                logger.info("MP HTTP RESPONSE status=" + status);
-                if (body != null && !body.isEmpty()) {
-                    logger.info("MP HTTP RESPONSE JSON: " + preview(body));
+            MpHttpResponse r;
+            long t0 = System.nanoTime();
+            boolean recorded = false;
+            try {
+                req.reset();
+                req.setConfig(attempt == 1 ? rc : capSocketTimeout(rc, deadline));
+                r = executeOnce(metric, req, attempt, bytesOut);
+                if (breaker != null) {
+                    breaker.onResponse(permit, r.statusCode, (System.nanoTime() - t0) / 1_000_000L);
+                }
+                recorded = true;
+            } catch (MpBodyTooLargeException e) {
+                if (breaker != null) {
+                    breaker.onResponse(permit, e.httpCode(), (System.nanoTime() - t0) / 1_000_000L);
+                }
+                recorded = true;
+                throw e;
+            } catch (IOException e) {
+                if (breaker != null) {
+                    breaker.onError(permit, (System.nanoTime() - t0) / 1_000_000L);
+                }
+                recorded = true;
+                long wait = policy.backoffMs(attempt);
+                if (attempt >= maxAttempts || !MpRetryPolicy.retryableError(e) || !sleepBefore(deadline, wait)) {
+                    throw retryFailure(attempt, e);
+                }
+                logRetry(op, attempt, maxAttempts, wait, e.toString());
+                last = null;
+                lastError = e;
+                continue;
+            } finally {
+                // excepción inesperada (pool cerrado, NPE...): la prueba de HALF_OPEN no puede quedar tomada
+                if (!recorded && breaker != null) {
+                    breaker.release(permit);
                 }
             }
 
-            // ✅ ahora con headers
-            return new MpHttpResponse(status, body, headers);
+            if (r.statusCode == 429 && bucket != null) {
+                bucket.drain(); // MP ya nos está frenando: no seguir gastando cupo
+            }
+            if (attempt >= maxAttempts || !policy.retryableStatus(r.statusCode)) {
+                return r;
+            }
+            long retryAfter = MpRetryPolicy.retryAfterMs(r.headers, System.currentTimeMillis());
+            long wait = retryAfter >= 0 ? retryAfter : policy.backoffMs(attempt);
+            if (retryAfter > policy.retryAfterMaxMs || !sleepBefore(deadline, wait)) {
+                return r; // no entra en el plazo: devolver la respuesta tal cual
+            }
+            logRetry(op, attempt, maxAttempts, wait, "HTTP " + r.statusCode);
+            last = r;
+            lastError = null;
+        }
+    }
+
+    private static IOException retryFailure(int attempts, IOException e) {
+        return attempts > 1 ? new MpHttpRetryException(attempts, e) : e;
+    }
+
+    // Se corta el reintento: vale lo que dio el intento anterior
+    private static MpHttpResponse lastOutcome(int attempts, MpHttpResponse last, IOException lastError) throws IOException {
+        if (lastError != null) {
+            throw retryFailure(attempts, lastError);
+        }
+        return last;
+    }
+
+    // Un intento; registra latencia, status y bytes en MpMetrics
+    private MpHttpResponse executeOnce(String metric, HttpRequestBase req, int attempt, long bytesOut) throws IOException {
+        long t0 = System.nanoTime();
+        int status;
+        MpBody body;
+        Header[] headers;
+        // pool keep-alive de la cuenta; se resuelve en cada request por si se cerró (closeQuietly)
+        CloseableHttpClient client = MpHttpTransport.forConfig(cfg).client();
+        try ( CloseableHttpResponse resp = client.execute(req)) {
+            status = resp.getStatusLine().getStatusCode();
+            body = MpBody.read(resp.getEntity(), maxBodyBytes);
+            headers = resp.getAllHeaders();
+        } catch (IOException e) {
+            MpMetrics.httpError(metric, System.nanoTime() - t0, bytesOut);
+            throw e;
+        }
+        MpMetrics.http(metric, status, System.nanoTime() - t0, bytesOut, body.length());
+        if (body.truncated()) {
+            throw new MpBodyTooLargeException(status, maxBodyBytes);
+        }
+
+        if (logHttp && logger != null) {
+            logger.info("MP HTTP RESPONSE status=" + status);
+            if (!body.isEmpty()) {
+                logger.info("MP HTTP RESPONSE JSON: " + body.preview(logHttpMax)); // sin decodificar todo
+            }
+        }
+
+        // ✅ ahora con headers
+        return new MpHttpResponse(status, body, headers, attempt);
+    }
+
+    private MpRetryPolicy retryPolicy(String op) {
+        if (op == null || op.isEmpty()) {
+            return defaultRetryPolicy;
+        }
+        return retryPolicyByOp.computeIfAbsent(op, k -> MpRetryPolicy.forOp(cfg, k));
+    }
+
+    // Un reintento no puede esperar la respuesta más allá del plazo total
+    static RequestConfig capSocketTimeout(RequestConfig rc, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (rc.getSocketTimeout() > 0 && remaining >= rc.getSocketTimeout()) {
+            return rc;
+        }
+        return RequestConfig.copy(rc).setSocketTimeout((int) Math.max(1, remaining)).build();
+    }
+
+    // false si la espera no entra en el plazo o el hilo fue interrumpido
+    private static boolean sleepBefore(long deadline, long waitMs) {
+        if (System.currentTimeMillis() + waitMs >= deadline) {
+            return false;
+        }
+        try {
+            Thread.sleep(waitMs);
+            return true;
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private void logRetry(String op, int attempt, int maxAttempts, long waitMs, String cause) {
+        if (logger != null) {
+            logger.warning("MP HTTP reintento " + (op == null ? "" : op + " ") + (attempt + 1) + "/" + maxAttempts
+                    + " en " + waitMs + " ms (" + cause + ")");
         }
     }
 
@@ -136,17 +336,29 @@ public class MpHttpClient {
        HELPERS
        ========================================================= */
     private void applyHeaders(HttpRequestBase req) {
-        req.setHeader("Authorization", "Bearer " + cfg.accessToken());
+        req.setHeader("Authorization", cfg.authorizationHeader());
         req.setHeader("Content-Type", "application/json");
         req.setHeader("Accept", "application/json");
     }
 
-    private String extractBody(HttpResponse resp) throws Exception {
-        HttpEntity entity = resp.getEntity();
-        if (entity == null) {
-            return "";
+    // Charset del Content-Type o UTF-8 (igual que EntityUtils.toString)
+    static Charset charsetOf(HttpEntity entity) {
+        try {
+            ContentType ct = ContentType.get(entity);
+            if (ct != null && ct.getCharset() != null) {
+                return ct.getCharset();
+            }
+        } catch (RuntimeException ignored) {
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    static long requestBytes(HttpRequestBase req) {
+        if (req instanceof HttpEntityEnclosingRequest) {
+            HttpEntity e = ((HttpEntityEnclosingRequest) req).getEntity();
+            return e == null ? 0 : Math.max(0, e.getContentLength());
         }
-        return EntityUtils.toString(entity, StandardCharsets.UTF_8);
+        return 0;
     }
 
     private String preview(String s) {
@@ -163,24 +375,39 @@ public class MpHttpClient {
        ========================================================= */
     /**
      * Llamar al final del proceso si lo usás como “app standalone”.
+     * Cierra el transporte de la cuenta (no usar en el runtime ISCOBOL).
      */
     public void closeQuietly() {
-        try {
-            client.close();
-        } catch (Exception ignored) {
-        }
+        MpHttpTransport.shutdown(cfg);
     }
 
     public static class MpHttpResponse {
 
         public final int statusCode;
-        public final String body;
         public final Header[] headers;
+        public final int attempts;
+        private final MpBody content;
 
         public MpHttpResponse(int statusCode, String body, Header[] headers) {
+            this(statusCode, MpBody.of(body), headers, 1);
+        }
+
+        public MpHttpResponse(int statusCode, MpBody content, Header[] headers, int attempts) {
             this.statusCode = statusCode;
-            this.body = body;
+            this.content = content;
             this.headers = headers;
+            this.attempts = attempts;
+        }
+
+        /**
+         * Cuerpo como texto (se decodifica en el primer uso).
+         */
+        public String body() {
+            return content.text();
+        }
+
+        public MpBody content() {
+            return content;
         }
 
         public boolean is2xx() {
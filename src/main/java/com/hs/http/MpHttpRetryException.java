@@ -0,0 +1,21 @@
+package com.hs.http;
+
+import java.io.IOException;
+
+/**
+ * Error de red que persistió luego de todos los intentos permitidos por
+ * MpRetryPolicy; la causa es el último error.
+ */
+public class MpHttpRetryException extends IOException {
+
+    private final int attempts;
+
+    public MpHttpRetryException(int attempts, IOException last) {
+        super(last.getMessage() + " (tras " + attempts + " intentos)", last);
+        this.attempts = attempts;
+    }
+
+    public int attempts() {
+        return attempts;
+    }
+}
@@ -0,0 +1,257 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import com.hs.metrics.MpMetrics;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpClientConnection;
+import org.apache.http.HttpHost;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ConnectionRequest;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * Transporte HTTP por cuenta de MP (MpConfig.accountKey(): tenant + token):
+ * pool de conexiones keep-alive hacia api.mercadopago.com.
+ *
+ * El runtime ISCOBOL vive todo el día; crear un HttpClient por llamada implica
+ * un handshake TLS por operación y pools que nunca se cierran. Acá se crea uno
+ * por cuenta (lazy) con la config de su primera llamada: los límites del pool
+ * de una cuenta no los consume otra, aunque dos configs en memoria compartan
+ * el tenant por defecto.
+ *
+ * Properties (opcionales): mp.http.pool.maxTotal, mp.http.pool.maxPerRoute,
+ * mp.http.pool.validateAfterInactivityMs, mp.http.pool.idleEvictMs,
+ * mp.http.keepAliveMs
+ */
+public final class MpHttpTransport {
+
+    private static final ConcurrentHashMap<String, MpHttpTransport> BY_ACCOUNT = new ConcurrentHashMap<>();
+
+    private final PoolingHttpClientConnectionManager pool;
+    private final CloseableHttpClient client;
+    private final long keepAliveMs;
+    private volatile boolean closed;
+
+    static {
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(MpHttpTransport::shutdownAll, "mp-http-shutdown"));
+        } catch (Exception ignored) {
+        }
+    }
+
+    public MpHttpTransport(MpConfig cfg) {
+        this.keepAliveMs = cfg.getInt("mp.http.keepAliveMs", 30000);
+        long idleEvictMs = cfg.getInt("mp.http.pool.idleEvictMs", 30000);
+
+        this.pool = new TimedPool();
+        this.pool.setMaxTotal(cfg.getInt("mp.http.pool.maxTotal", 50));
+        this.pool.setDefaultMaxPerRoute(cfg.getInt("mp.http.pool.maxPerRoute", 20));
+        this.pool.setValidateAfterInactivity(cfg.getInt("mp.http.pool.validateAfterInactivityMs", 2000));
+
+        // Respeta el Keep-Alive del server, pero nunca más allá de mp.http.keepAliveMs
+        ConnectionKeepAliveStrategy keepAlive = (response, context) -> {
+            long server = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return server > 0 ? Math.min(server, this.keepAliveMs) : this.keepAliveMs;
+        };
+
+        this.client = HttpClients.custom()
+                .setConnectionManager(pool)
+                .setKeepAliveStrategy(keepAlive)
+                .evictExpiredConnections()
+                .evictIdleConnections(idleEvictMs, TimeUnit.MILLISECONDS)
+                .setDefaultRequestConfig(MpHttpClient.buildRequestConfig(cfg, null))
+                .disableAutomaticRetries() // los reintentos los decide MpHttpClient (MpRetryPolicy)
+                .build();
+    }
+
+    /**
+     * Transporte de la cuenta de cfg. Si alguien lo cerró (app standalone), se
+     * vuelve a crear en la próxima llamada.
+     */
+    public static MpHttpTransport forConfig(MpConfig cfg) {
+        String key = cfg.accountKey();
+        MpHttpTransport t = BY_ACCOUNT.get(key);
+        if (t == null || t.closed) {
+            t = BY_ACCOUNT.compute(key, (k, old) -> old == null || old.closed ? new MpHttpTransport(cfg) : old);
+        }
+        return t;
+    }
+
+    /**
+     * Cierra el transporte de la cuenta de cfg (baja en MpTenantRegistry).
+     */
+    public static void shutdown(MpConfig cfg) {
+        close(cfg.accountKey());
+    }
+
+    private static void close(String accountKey) {
+        MpHttpTransport t = BY_ACCOUNT.remove(accountKey);
+        if (t != null) {
+            t.closeQuietly();
+        }
+    }
+
+    /**
+     * Cierra todos los transportes (fin de proceso standalone).
+     */
+    public static void shutdownAll() {
+        for (String key : BY_ACCOUNT.keySet()) {
+            close(key);
+        }
+    }
+
+    public CloseableHttpClient client() {
+        return client;
+    }
+
+    public PoolStats stats() {
+        return pool.getTotalStats();
+    }
+
+    /**
+     * Suma de los pools de todas las cuentas (monitoreo); null si todavía no
+     * se creó ninguno.
+     */
+    public static PoolStats totalStats() {
+        int leased = 0;
+        int pending = 0;
+        int available = 0;
+        int max = 0;
+        boolean any = false;
+        for (MpHttpTransport t : BY_ACCOUNT.values()) {
+            if (t.closed) {
+                continue;
+            }
+            PoolStats s = t.stats();
+            leased += s.getLeased();
+            pending += s.getPending();
+            available += s.getAvailable();
+            max += s.getMax();
+            any = true;
+        }
+        return any ? new PoolStats(leased, pending, available, max) : null;
+    }
+
+    /**
+     * Cantidad de transportes abiertos (uno por cuenta).
+     */
+    public static int count() {
+        return BY_ACCOUNT.size();
+    }
+
+    /**
+     * Deja hasta n conexiones abiertas (TCP + TLS) hacia baseUrl en el pool,
+     * sin mandar requests: se piden todas juntas para que sean distintas, se
+     * conectan en paralelo sobre executor y se devuelven como reutilizables
+     * por mp.http.keepAliveMs. Devuelve cuántas quedaron abiertas.
+     */
+    public int preconnect(String baseUrl, int n, int connectTimeoutMs, Executor executor) throws Exception {
+        URI u = URI.create(baseUrl);
+        boolean secure = "https".equalsIgnoreCase(u.getScheme());
+        int port = u.getPort() > 0 ? u.getPort() : (secure ? 443 : 80);
+        // La misma ruta que arma el route planner, si no el pool no las reusa
+        HttpRoute route = new HttpRoute(new HttpHost(u.getHost(), port, u.getScheme()), null, secure);
+
+        List<HttpClientConnection> leased = new ArrayList<>();
+        List<CompletableFuture<Boolean>> opened = new ArrayList<>();
+        try {
+            try {
+                for (int i = 0; i < Math.min(n, pool.getMaxPerRoute(route)); i++) {
+                    leased.add(pool.requestConnection(route, null).get(connectTimeoutMs, TimeUnit.MILLISECONDS));
+                }
+            } catch (ConnectionPoolTimeoutException e) {
+                // pool ocupado: alcanza con las que se consiguieron
+            }
+            for (HttpClientConnection conn : leased) {
+                opened.add(CompletableFuture.supplyAsync(() -> open(conn, route, connectTimeoutMs), executor));
+            }
+        } finally {
+            // interrupción, error del pool o executor que rechaza: las que no
+            // llegaron a open() (que las devuelve siempre) vuelven al pool acá
+            for (int i = opened.size(); i < leased.size(); i++) {
+                pool.releaseConnection(leased.get(i), null, 0, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        int ok = 0;
+        for (CompletableFuture<Boolean> f : opened) {
+            ok += f.join() ? 1 : 0;
+        }
+        return ok;
+    }
+
+    private boolean open(HttpClientConnection conn, HttpRoute route, int connectTimeoutMs) {
+        boolean ok = conn.isOpen();
+        try {
+            if (!ok) {
+                HttpClientContext ctx = HttpClientContext.create();
+                pool.connect(conn, route, connectTimeoutMs, ctx);
+                pool.routeComplete(conn, route, ctx);
+                ok = true;
+            }
+        } catch (Exception e) {
+            try {
+                conn.shutdown();
+            } catch (Exception ignored) {
+            }
+        } finally {
+            // cerrada vuelve al pool y se descarta; abierta queda para la próxima request
+            pool.releaseConnection(conn, null, ok ? keepAliveMs : 0, TimeUnit.MILLISECONDS);
+        }
+        return ok;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public void closeQuietly() {
+        closed = true;
+        try {
+            client.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    // ==========================================================
+    // Pool que mide la espera por una conexión (lease)
+    // ==========================================================
+    private static final class TimedPool extends PoolingHttpClientConnectionManager {
+
+        @Override
+        public ConnectionRequest requestConnection(HttpRoute route, Object state) {
+            final ConnectionRequest req = super.requestConnection(route, state);
+            return new ConnectionRequest() {
+                @Override
+                public HttpClientConnection get(long timeout, TimeUnit unit)
+                        throws InterruptedException, ExecutionException, ConnectionPoolTimeoutException {
+                    long t0 = System.nanoTime();
+                    try {
+                        return req.get(timeout, unit);
+                    } finally {
+                        MpMetrics.poolLease(System.nanoTime() - t0);
+                    }
+                }
+
+                @Override
+                public boolean cancel() {
+                    return req.cancel();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.hs.http;
+
+import java.io.IOException;
+
+/**
+ * El limitador local no tenía cupo dentro de la espera máxima: el request no
+ * salió hacia MP.
+ */
+public class MpRateLimitedException extends IOException {
+
+    private final String bucketClass;
+
+    public MpRateLimitedException(String bucketClass, long maxWaitMs) {
+        super("Límite de tasa local (" + bucketClass + "): sin cupo en " + maxWaitMs + " ms");
+        this.bucketClass = bucketClass;
+    }
+
+    public String bucketClass() {
+        return bucketClass;
+    }
+}
@@ -0,0 +1,314 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitador de tasa del lado cliente (token bucket), uno por cuenta
+ * (MpConfig.accountKey(), nunca el token en claro) y clase de endpoint:
+ * orders.write (createOrder/cancelOrder/refundOrder), orders.read (getOrder)
+ * y admin (stores/POS). Las properties se leen una vez por snapshot de
+ * config; mientras no cambie, cada request es un par de gets en mapas.
+ *
+ * Sin cupo, el request espera su turno hasta maxWaitMs (reserva: los tokens
+ * pueden quedar negativos y cada uno espera lo que le toca); si la espera
+ * supera ese máximo se rechaza sin tocar la red (MpRateLimitedException, res
+ * 6). Un 429 de MP vacía el bucket para frenar la ráfaga siguiente.
+ *
+ * Properties: mp.ratelimit.enabled (true), mp.ratelimit.&lt;clase&gt;.perSecond,
+ * mp.ratelimit.&lt;clase&gt;.burst, mp.ratelimit.&lt;clase&gt;.maxWaitMs (2000) y
+ * mp.ratelimit.class.&lt;endpoint&gt; para reasignar un endpoint a otra clase.
+ */
+public final class MpRateLimiter {
+
+    public static final String ORDERS_WRITE = "orders.write";
+    public static final String ORDERS_READ = "orders.read";
+    public static final String ADMIN = "admin";
+
+    private static final ConcurrentHashMap<String, Bucket> BUCKETS = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Limits> BY_ACCOUNT = new ConcurrentHashMap<>();
+
+    private static volatile ScheduledExecutorService scheduler;
+
+    private MpRateLimiter() {
+    }
+
+    /**
+     * Bucket de la cuenta de cfg para el endpoint op; null si el limitador
+     * está deshabilitado. Los límites se actualizan si cambió la config.
+     */
+    public static Bucket bucket(MpConfig cfg, String op) {
+        Limits l = BY_ACCOUNT.get(cfg.accountKey());
+        if (l == null || l.cfg != cfg) {
+            l = new Limits(cfg);
+            BY_ACCOUNT.put(cfg.accountKey(), l);
+        }
+        if (!l.enabled) {
+            return null;
+        }
+        return l.byOp.computeIfAbsent(op == null ? "" : op, k -> resolve(cfg, op));
+    }
+
+    private static Bucket resolve(MpConfig cfg, String op) {
+        String cls = classOf(cfg, op);
+        double perSecond = parseDouble(cfg.get("mp.ratelimit." + cls + ".perSecond", null), defaultRate(cls));
+        int burst = cfg.getInt("mp.ratelimit." + cls + ".burst", (int) Math.max(1, perSecond * 2));
+        long maxWaitMs = cfg.getInt("mp.ratelimit." + cls + ".maxWaitMs", cfg.getInt("mp.ratelimit.maxWaitMs", 2000));
+
+        String token = cfg.authorizationHeader() == null ? "" : cfg.authorizationHeader();
+        Bucket b = BUCKETS.computeIfAbsent(cfg.accountKey() + "|" + cls, k -> new Bucket(mask(token), cls));
+        b.configure(perSecond, burst, maxWaitMs);
+        return b;
+    }
+
+    public static String classOf(MpConfig cfg, String op) {
+        if (op != null) {
+            String explicit = cfg.get("mp.ratelimit.class." + op, null);
+            if (explicit != null && !explicit.trim().isEmpty()) {
+                return explicit.trim();
+            }
+            switch (op) {
+                case "createOrder":
+                case "cancelOrder":
+                case "refundOrder":
+                    return ORDERS_WRITE;
+                case "getOrder":
+                    return ORDERS_READ;
+                default:
+            }
+        }
+        return ADMIN;
+    }
+
+    private static double defaultRate(String cls) {
+        switch (cls) {
+            case ORDERS_WRITE:
+                return 10;
+            case ORDERS_READ:
+                return 20;
+            default:
+                return 5;
+        }
+    }
+
+    /**
+     * Estado actual de todos los buckets (monitoreo).
+     */
+    public static List<State> snapshot() {
+        List<State> out = new ArrayList<>();
+        for (Bucket b : BUCKETS.values()) {
+            out.add(b.state());
+        }
+        return out;
+    }
+
+    /**
+     * Future que se completa luego de ms (para el cliente async: esperar el
+     * turno sin bloquear un hilo).
+     */
+    static CompletableFuture<Void> delay(long ms) {
+        CompletableFuture<Void> f = new CompletableFuture<>();
+        if (ms <= 0) {
+            f.complete(null);
+            return f;
+        }
+        scheduler().schedule(() -> f.complete(null), ms, TimeUnit.MILLISECONDS);
+        return f;
+    }
+
+    private static ScheduledExecutorService scheduler() {
+        ScheduledExecutorService s = scheduler;
+        if (s == null) {
+            synchronized (MpRateLimiter.class) {
+                s = scheduler;
+                if (s == null) {
+                    s = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "mp-ratelimit");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    scheduler = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    // Últimos 4 caracteres: identifica el token sin exponerlo
+    private static String mask(String authHeader) {
+        String t = authHeader.startsWith("Bearer ") ? authHeader.substring(7) : authHeader;
+        return t.length() <= 4 ? "****" : "****" + t.substring(t.length() - 4);
+    }
+
+    private static double parseDouble(String s, double def) {
+        try {
+            return (s == null || s.trim().isEmpty()) ? def : Double.parseDouble(s.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
+    // ==========================================================
+    // Límites resueltos de un snapshot de config
+    // ==========================================================
+    private static final class Limits {
+
+        final MpConfig cfg;
+        final boolean enabled;
+        final ConcurrentHashMap<String, Bucket> byOp = new ConcurrentHashMap<>();
+
+        Limits(MpConfig cfg) {
+            this.cfg = cfg;
+            this.enabled = cfg.getBoolean("mp.ratelimit.enabled", true);
+        }
+    }
+
+    // ==========================================================
+    // Bucket
+    // ==========================================================
+    public static final class Bucket {
+
+        private final String token;
+        private final String cls;
+
+        private double perSecond;
+        private int burst;
+        private volatile long maxWaitMs;
+
+        private double tokens;
+        private long lastNanos;
+        private boolean initialized;
+
+        private final AtomicLong granted = new AtomicLong();
+        private final AtomicLong delayed = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+
+        Bucket(String token, String cls) {
+            this.token = token;
+            this.cls = cls;
+        }
+
+        synchronized void configure(double perSecond, int burst, long maxWaitMs) {
+            this.perSecond = Math.max(0.001, perSecond);
+            this.burst = Math.max(1, burst);
+            this.maxWaitMs = Math.max(0, maxWaitMs);
+            if (!initialized) {
+                tokens = this.burst;
+                lastNanos = System.nanoTime();
+                initialized = true;
+            }
+        }
+
+        public String bucketClass() {
+            return cls;
+        }
+
+        public long maxWaitMs() {
+            return maxWaitMs;
+        }
+
+        /**
+         * Reserva un token. Devuelve cuánto esperar (ms, 0 = ya) o -1 si la
+         * espera superaría maxWaitMs (no se reserva nada).
+         */
+        public long reserve(long maxWaitMs) {
+            long wait;
+            synchronized (this) {
+                refill();
+                double after = tokens - 1;
+                wait = after >= 0 ? 0 : (long) Math.ceil(-after / perSecond * 1000.0);
+                if (wait > maxWaitMs) {
+                    rejected.incrementAndGet();
+                    return -1;
+                }
+                tokens = after;
+            }
+            granted.incrementAndGet();
+            if (wait > 0) {
+                delayed.incrementAndGet();
+            }
+            return wait;
+        }
+
+        /**
+         * Reserva y espera el turno en el hilo actual. false = rechazado (o
+         * interrumpido).
+         */
+        public boolean acquire(long maxWaitMs) {
+            long wait = reserve(maxWaitMs);
+            if (wait < 0) {
+                return false;
+            }
+            if (wait > 0) {
+                try {
+                    Thread.sleep(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * MP respondió 429: no quedan tokens disponibles (sin cancelar
+         * reservas ya hechas).
+         */
+        public synchronized void drain() {
+            refill();
+            tokens = Math.min(tokens, 0);
+        }
+
+        private void refill() {
+            long now = System.nanoTime();
+            tokens = Math.min(burst, tokens + (now - lastNanos) / 1e9 * perSecond);
+            lastNanos = now;
+        }
+
+        public synchronized State state() {
+            refill();
+            return new State(token, cls, tokens, burst, perSecond, maxWaitMs, granted.get(), delayed.get(), rejected.get());
+        }
+    }
+
+    /**
+     * Foto de un bucket para monitoreo (tokens negativos = requests en cola).
+     */
+    public static final class State {
+        public final String token;
+        public final String bucketClass;
+        public final double tokens;
+        public final int burst;
+        public final double perSecond;
+        public final long maxWaitMs;
+        public final long granted;
+        public final long delayed;
+        public final long rejected;
+
+        State(String token, String bucketClass, double tokens, int burst, double perSecond, long maxWaitMs,
+                long granted, long delayed, long rejected) {
+            this.token = token;
+            this.bucketClass = bucketClass;
+            this.tokens = tokens;
+            this.burst = burst;
+            this.perSecond = perSecond;
+            this.maxWaitMs = maxWaitMs;
+            this.granted = granted;
+            this.delayed = delayed;
+            this.rejected = rejected;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(java.util.Locale.ROOT, "%s %s tokens=%.1f/%d rate=%.1f/s granted=%d delayed=%d rejected=%d",
+                    token, bucketClass, tokens, burst, perSecond, granted, delayed, rejected);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import javax.net.ssl.SSLException;
+import org.apache.http.Header;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+
+/**
+ * Política de reintentos de un endpoint: backoff exponencial con "full
+ * jitter" y un plazo total.
+ *
+ * Solo se reintenta lo que es seguro repetir (GET, o requests con
+ * X-Idempotency-Key), ante HTTP 429/502/503/504 o errores de red transitorios
+ * (conexión rechazada/reseteada, sin respuesta, timeouts). Retry-After manda
+ * sobre el backoff; si no entra en el plazo, se devuelve la respuesta tal cual.
+ *
+ * Properties (default global + override por endpoint, ej:
+ * mp.retry.maxAttempts.createOrder): mp.retry.maxAttempts (3, 1 = sin
+ * reintentos), mp.retry.baseMs (200), mp.retry.maxDelayMs (2000),
+ * mp.retry.deadlineMs (10000), mp.retry.retryAfterMaxMs (5000),
+ * mp.retry.statuses (429,502,503,504)
+ */
+public final class MpRetryPolicy {
+
+    final int maxAttempts;
+    final long baseMs;
+    final long maxDelayMs;
+    final long deadlineMs;
+    final long retryAfterMaxMs;
+    private final Set<Integer> statuses;
+
+    MpRetryPolicy(int maxAttempts, long baseMs, long maxDelayMs, long deadlineMs, long retryAfterMaxMs, Set<Integer> statuses) {
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.baseMs = Math.max(1, baseMs);
+        this.maxDelayMs = Math.max(this.baseMs, maxDelayMs);
+        this.deadlineMs = deadlineMs;
+        this.retryAfterMaxMs = retryAfterMaxMs;
+        this.statuses = statuses;
+    }
+
+    public static MpRetryPolicy forOp(MpConfig cfg, String op) {
+        Set<Integer> statuses = new HashSet<>();
+        for (String s : cfg.get("mp.retry.statuses", "429,502,503,504").split(",")) {
+            try {
+                statuses.add(Integer.parseInt(s.trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return new MpRetryPolicy(
+                cfg.getInt("mp.retry.maxAttempts", op, 3),
+                cfg.getInt("mp.retry.baseMs", op, 200),
+                cfg.getInt("mp.retry.maxDelayMs", op, 2000),
+                cfg.getInt("mp.retry.deadlineMs", op, 10000),
+                cfg.getInt("mp.retry.retryAfterMaxMs", op, 5000),
+                statuses);
+    }
+
+    public boolean retryableStatus(int status) {
+        return statuses.contains(status);
+    }
+
+    /**
+     * Errores de red en los que reintentar tiene sentido. No se reintenta si
+     * el pool local está saturado (ConnectionPoolTimeoutException), DNS ni
+     * errores de certificado.
+     */
+    public static boolean retryableError(IOException e) {
+        if (e instanceof ConnectionPoolTimeoutException) {
+            return false;
+        }
+        if (e instanceof SSLException) {
+            return e.getCause() instanceof SocketException; // reset durante TLS
+        }
+        // SocketException cubre connection refused/reset y no route to host
+        return e instanceof NoHttpResponseException
+                || e instanceof ConnectTimeoutException
+                || e instanceof SocketTimeoutException
+                || e instanceof SocketException;
+    }
+
+    /**
+     * Espera antes del intento attempt+1 (attempt = intentos ya hechos):
+     * random(0, min(maxDelay, base * 2^(attempt-1))).
+     */
+    public long backoffMs(int attempt) {
+        long cap = baseMs << Math.min(attempt - 1, 20);
+        cap = Math.min(maxDelayMs, cap <= 0 ? maxDelayMs : cap);
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Retry-After en milisegundos (segundos o fecha HTTP); -1 si no viene o
+     * no se entiende.
+     */
+    public static long retryAfterMs(Header[] headers, long nowMs) {
+        if (headers == null) {
+            return -1;
+        }
+        for (Header h : headers) {
+            if (!"Retry-After".equalsIgnoreCase(h.getName()) || h.getValue() == null) {
+                continue;
+            }
+            String v = h.getValue().trim();
+            try {
+                return Math.max(0, Long.parseLong(v) * 1000L);
+            } catch (NumberFormatException ignored) {
+            }
+            Date d = DateUtils.parseDate(v);
+            if (d != null) {
+                return Math.max(0, d.getTime() - nowMs);
+            }
+        }
+        return -1;
+    }
+}
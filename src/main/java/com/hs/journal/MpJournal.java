@@ -0,0 +1,614 @@
+package com.hs.journal;
+
+import com.hs.config.MpConfig;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Journal de escritura anticipada (WAL) para createOrder / cancelOrder /
+ * refundOrder, sobre archivos mapeados en memoria.
+ *
+ * Antes del POST se anota la intención (acción, endpoint, X-Idempotency-Key,
+ * hash y body); al tener respuesta, el resultado. Si la JVM o la caja se caen
+ * en el medio, al arrancar quedan intenciones sin resultado (recovered()):
+ * el core las concilia con MP (ver MpBridgeCore.replayJournal).
+ *
+ * Escribir es copiar bytes al mapeo (sin fsync por registro): lo escrito
+ * sobrevive a la caída de la JVM porque ya está en el page cache; contra un
+ * corte de luz se fuerza a disco cada mp.journal.syncMs (group commit). Cada
+ * registro lleva CRC: uno cortado a medias se descarta al leer.
+ *
+ * Se alternan dos archivos (.a/.b) con número de generación en la cabecera:
+ * cuando el activo se llena se copian las intenciones pendientes al otro y
+ * recién entonces se lo marca como activo (no hace falta renombrar archivos
+ * mapeados, que en Windows no se puede).
+ *
+ * Un journal tiene un solo dueño: al abrirlo se toma un lock exclusivo sobre
+ * &lt;file&gt;.lock. Si otra JVM ya lo tiene (otra caja con el mismo archivo, el
+ * daemon y sus JVM de respaldo) esta sigue sin journal y lo avisa en el log,
+ * en vez de pisarle registros y re-enviar intenciones que el otro tiene en
+ * curso.
+ *
+ * Properties: mp.journal.enabled (false), mp.journal.file (default
+ * MP_QR_HIBRIDO-[tenant-]&lt;hash de cuenta&gt;.journal junto al log), mp.journal.sizeKb (4096 por archivo),
+ * mp.journal.syncMs (50, 0 = fsync en cada registro),
+ * mp.journal.replayOnStart (true), mp.journal.replayMaxAgeMinutes (60)
+ */
+public final class MpJournal {
+
+    private static final int MAGIC = 0x4D504A31; // "MPJ1"
+    private static final int HEADER = 16;        // magic(4) generación(8) crc(4)
+    private static final byte INTENT = 1;
+    private static final byte OUTCOME = 2;
+
+    private static final ConcurrentHashMap<String, MpJournal> BY_FILE = new ConcurrentHashMap<>();
+    private static final Logger LOG = Logger.getLogger(MpJournal.class.getName());
+
+    private static volatile ScheduledExecutorService syncer;
+
+    private final String base;
+    private final FileLock lock;
+    private final Segment[] segments = new Segment[2];
+    private final long syncMs;
+    private final LinkedHashMap<Long, Entry> pending = new LinkedHashMap<>();
+    private final AtomicBoolean replayClaimed = new AtomicBoolean();
+
+    private int active;
+    private long generation;
+    private long nextSeq = 1;
+    private long loadedUpTo;        // último seq leído del disco al abrir
+    private volatile boolean dirty;
+    private boolean closed;
+
+    /**
+     * Intención sin resultado (lo que hay que re-enviar).
+     */
+    public static final class Entry {
+        public final long seq;
+        public final long atMillis;
+        public final String op;
+        public final String endpoint;
+        public final String idempotencyKey;
+        public final int bodyHash;
+        public final String body;
+
+        Entry(long seq, long atMillis, String op, String endpoint, String idempotencyKey, int bodyHash, String body) {
+            this.seq = seq;
+            this.atMillis = atMillis;
+            this.op = op;
+            this.endpoint = endpoint;
+            this.idempotencyKey = idempotencyKey;
+            this.bodyHash = bodyHash;
+            this.body = body;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + seq + " " + op + " " + endpoint + " idem=" + idempotencyKey
+                    + " body=" + Integer.toHexString(bodyHash);
+        }
+    }
+
+    // ==========================================================
+    // Apertura
+    // ==========================================================
+    /**
+     * Journal configurado en cfg (uno por archivo en la JVM); null si está
+     * deshabilitado o no se pudo abrir (la operación sigue sin journal).
+     */
+    public static MpJournal forConfig(MpConfig cfg) {
+        if (!cfg.getBoolean("mp.journal.enabled", false)) {
+            return null;
+        }
+        String file = cfg.get("mp.journal.file", "");
+        String path = (file == null || file.trim().isEmpty()) ? defaultFile(cfg) : file.trim();
+        MpJournal j = BY_FILE.get(path);
+        if (j != null) {
+            return j;
+        }
+        synchronized (BY_FILE) {
+            j = BY_FILE.get(path);
+            if (j == null) {
+                try {
+                    j = open(new File(path), cfg.getInt("mp.journal.sizeKb", 4096) * 1024,
+                            cfg.getInt("mp.journal.syncMs", 50));
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Journal " + path + " deshabilitado en esta JVM: " + e.getMessage());
+                    return null;
+                }
+                BY_FILE.put(path, j);
+            }
+        }
+        return j;
+    }
+
+    /**
+     * Abre (o crea) el journal con base en file (usa file.a y file.b). Lanza
+     * IOException si otro proceso lo tiene abierto.
+     */
+    public static MpJournal open(File file, int sizeBytes, long syncMs) throws IOException {
+        MpJournal j = new MpJournal(file.getPath(), lock(file), syncMs);
+        try {
+            j.load(Math.max(64 * 1024, sizeBytes));
+        } catch (IOException | RuntimeException e) {
+            j.close();
+            throw e;
+        }
+        if (syncMs > 0) {
+            syncer().scheduleWithFixedDelay(j::syncIfDirty, syncMs, syncMs, TimeUnit.MILLISECONDS);
+        }
+        return j;
+    }
+
+    private MpJournal(String base, FileLock lock, long syncMs) {
+        this.base = base;
+        this.lock = lock;
+        this.syncMs = syncMs;
+    }
+
+    // Lock exclusivo de todo el journal (.a y .b) para esta JVM
+    private static FileLock lock(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null && !parent.exists()) {
+            parent.mkdirs();
+        }
+        File f = new File(file.getPath() + ".lock");
+        FileChannel ch = new RandomAccessFile(f, "rw").getChannel();
+        FileLock l;
+        try {
+            l = ch.tryLock();
+        } catch (OverlappingFileLockException e) {
+            l = null; // ya abierto en esta JVM por fuera de forConfig
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        if (l == null) {
+            ch.close();
+            throw new IOException("abierto por otro proceso (" + f + ")");
+        }
+        return l;
+    }
+
+    private void load(int size) throws IOException {
+        segments[0] = new Segment(new File(base + ".a"), size);
+        segments[1] = new Segment(new File(base + ".b"), size);
+
+        long g0 = segments[0].generation();
+        long g1 = segments[1].generation();
+        if (g0 <= 0 && g1 <= 0) {
+            active = 0;
+            generation = 1;
+            segments[0].format(generation);
+            return;
+        }
+        active = g1 > g0 ? 1 : 0;
+        generation = Math.max(g0, g1);
+        scan(segments[active]);
+        loadedUpTo = nextSeq - 1;
+    }
+
+    // Lee registros válidos hasta el terminador o el primero con CRC roto
+    private void scan(Segment s) {
+        MappedByteBuffer b = s.buf;
+        int pos = HEADER;
+        while (pos + 8 <= b.capacity()) {
+            int len = b.getInt(pos);
+            if (len <= 0 || pos + 8 + len > b.capacity()) {
+                break;
+            }
+            byte[] rec = new byte[len];
+            b.position(pos + 8);
+            b.get(rec);
+            if (crc(rec) != b.getInt(pos + 4)) {
+                LOG.warning("journal " + s.file + ": registro cortado en " + pos + ", se descarta el resto");
+                break;
+            }
+            apply(rec);
+            pos += 8 + len;
+        }
+        s.pos = pos;
+    }
+
+    private void apply(byte[] rec) {
+        Reader r = new Reader(rec);
+        byte type = r.b();
+        long seq = r.l();
+        long at = r.l();
+        if (type == INTENT) {
+            pending.put(seq, new Entry(seq, at, r.s(), r.s(), r.s(), r.i(), r.s()));
+        } else if (type == OUTCOME) {
+            pending.remove(seq);
+        }
+        nextSeq = Math.max(nextSeq, seq + 1);
+    }
+
+    // ==========================================================
+    // Escritura
+    // ==========================================================
+    /**
+     * Anota la intención antes del POST. Devuelve el número de registro para
+     * outcome(), o -1 si no se pudo anotar (la operación sigue igual).
+     */
+    public long intent(String op, String endpoint, String idempotencyKey, String body) {
+        byte[] bOp = utf8(op);
+        byte[] bEnd = utf8(endpoint);
+        byte[] bIdem = utf8(idempotencyKey);
+        byte[] bBody = utf8(body);
+        int hash = hash(bBody);
+        synchronized (this) {
+            if (closed) {
+                return -1;
+            }
+            long seq = nextSeq++;
+            long at = System.currentTimeMillis();
+            Writer w = new Writer(1 + 8 + 8 + 4 * 5 + bOp.length + bEnd.length + bIdem.length + bBody.length);
+            w.b(INTENT).l(seq).l(at).s(bOp).s(bEnd).s(bIdem).i(hash).s(bBody);
+            if (!append(w.out)) {
+                return -1;
+            }
+            pending.put(seq, new Entry(seq, at, nz(op), nz(endpoint), nz(idempotencyKey), hash, nz(body)));
+            return seq;
+        }
+    }
+
+    /**
+     * Anota el resultado de la intención seq (httpCode -1 = no se envió). Si
+     * MP respondió, también cierra intenciones anteriores con la misma acción
+     * y clave (un reintento del lado COBOL ya las resolvió).
+     */
+    public void outcome(long seq, int httpCode, String result) {
+        if (seq <= 0) {
+            return;
+        }
+        byte[] bRes = utf8(result);
+        synchronized (this) {
+            Entry e = closed ? null : pending.remove(seq);
+            if (e == null) {
+                return;
+            }
+            writeOutcome(seq, httpCode, bRes);
+            if (httpCode < 0) {
+                return;
+            }
+            List<Long> same = new ArrayList<>();
+            for (Entry p : pending.values()) {
+                if (p.op.equals(e.op) && p.idempotencyKey.equals(e.idempotencyKey)) {
+                    same.add(p.seq);
+                }
+            }
+            for (Long s : same) {
+                pending.remove(s);
+                writeOutcome(s, httpCode, bRes);
+            }
+        }
+    }
+
+    // Con el lock tomado
+    private void writeOutcome(long seq, int httpCode, byte[] bRes) {
+        Writer w = new Writer(1 + 8 + 8 + 4 + 4 + bRes.length);
+        w.b(OUTCOME).l(seq).l(System.currentTimeMillis()).i(httpCode).s(bRes);
+        append(w.out);
+    }
+
+    private boolean append(byte[] rec) {
+        Segment s = segments[active];
+        if (s.pos + 8 + rec.length + 4 > s.buf.capacity()) {
+            compact();
+            s = segments[active];
+            if (s.pos + 8 + rec.length + 4 > s.buf.capacity()) {
+                LOG.warning("journal " + base + " lleno (" + pending.size() + " pendientes), registro sin anotar");
+                return false;
+            }
+        }
+        s.write(rec);
+        if (syncMs <= 0) {
+            s.buf.force();
+        } else {
+            dirty = true;
+        }
+        return true;
+    }
+
+    // Copia las pendientes al otro archivo y lo activa
+    private void compact() {
+        Segment next = segments[1 - active];
+        next.format(0); // inválido hasta terminar de copiar
+        for (Entry e : pending.values()) {
+            byte[] bOp = utf8(e.op);
+            byte[] bEnd = utf8(e.endpoint);
+            byte[] bIdem = utf8(e.idempotencyKey);
+            byte[] bBody = utf8(e.body);
+            Writer w = new Writer(1 + 8 + 8 + 4 * 5 + bOp.length + bEnd.length + bIdem.length + bBody.length);
+            w.b(INTENT).l(e.seq).l(e.atMillis).s(bOp).s(bEnd).s(bIdem).i(e.bodyHash).s(bBody);
+            if (next.pos + 8 + w.out.length + 4 > next.buf.capacity()) {
+                return; // no entran ni las pendientes: seguir con el activo
+            }
+            next.write(w.out);
+        }
+        next.buf.force();
+        next.header(++generation);
+        next.buf.force();
+        active = 1 - active;
+    }
+
+    // Group commit: el fsync va fuera del lock para no frenar a quien escribe
+    private void syncIfDirty() {
+        if (!dirty) {
+            return;
+        }
+        MappedByteBuffer b;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            dirty = false;
+            b = segments[active].buf;
+        }
+        b.force();
+    }
+
+    /**
+     * Fuerza a disco lo escrito.
+     */
+    public synchronized void sync() {
+        if (!closed) {
+            dirty = false;
+            segments[active].buf.force();
+        }
+    }
+
+    // ==========================================================
+    // Consulta / re-envío
+    // ==========================================================
+    /**
+     * Intenciones sin resultado, en orden.
+     */
+    public synchronized List<Entry> pending() {
+        return new ArrayList<>(pending.values());
+    }
+
+    /**
+     * Intenciones sin resultado que ya estaban en el archivo al abrirlo (las
+     * de una JVM anterior), sin las que esta JVM tiene en curso.
+     */
+    public synchronized List<Entry> recovered() {
+        List<Entry> out = new ArrayList<>();
+        for (Entry e : pending.values()) {
+            if (e.seq <= loadedUpTo) {
+                out.add(e);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * true una sola vez por journal: quien lo recibe hace el re-envío de
+     * arranque.
+     */
+    public boolean claimReplay() {
+        return replayClaimed.compareAndSet(false, true);
+    }
+
+    public String file() {
+        return base;
+    }
+
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (Segment s : segments) {
+            if (s != null) {
+                s.buf.force();
+                s.close();
+            }
+        }
+        try {
+            lock.channel().close(); // suelta el lock
+        } catch (IOException ignored) {
+        }
+        BY_FILE.remove(base, this);
+    }
+
+    // ==========================================================
+    // Helpers
+    // ==========================================================
+    private static ScheduledExecutorService syncer() {
+        ScheduledExecutorService s = syncer;
+        if (s == null) {
+            synchronized (MpJournal.class) {
+                s = syncer;
+                if (s == null) {
+                    s = Executors.newSingleThreadScheduledExecutor(r -> {
+                        Thread t = new Thread(r, "mp-journal-sync");
+                        t.setDaemon(true);
+                        return t;
+                    });
+                    syncer = s;
+                }
+            }
+        }
+        return s;
+    }
+
+    // Un archivo por cuenta (tenant + token, ver MpConfig.accountKey), con o
+    // sin mp.tenant.id: el replay usa el token de la config que lo abrió y no
+    // puede reenviar intenciones de otra cuenta.
+    private static String defaultFile(MpConfig cfg) {
+        String t = cfg.get("mp.tenant.id", "").trim().replaceAll("[^A-Za-z0-9_.-]", "_");
+        String name = "MP_QR_HIBRIDO-" + (t.isEmpty() ? "" : t + "-") + cfg.accountKey().substring(0, 12)
+                + ".journal";
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("win")) {
+            return "C:\\A2JTMP\\" + name;
+        }
+        return new File(System.getProperty("java.io.tmpdir"), name).getPath();
+    }
+
+    private static String nz(String s) {
+        return s == null ? "" : s;
+    }
+
+    private static byte[] utf8(String s) {
+        return s == null ? new byte[0] : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int crc(byte[] b) {
+        CRC32 c = new CRC32();
+        c.update(b, 0, b.length);
+        return (int) c.getValue();
+    }
+
+    // Hash del body (FNV-1a 32): identifica el contenido en logs y al re-enviar
+    static int hash(byte[] b) {
+        int h = 0x811C9DC5;
+        for (byte x : b) {
+            h ^= x & 0xFF;
+            h *= 0x01000193;
+        }
+        return h;
+    }
+
+    // Un archivo mapeado
+    private static final class Segment {
+        final File file;
+        final RandomAccessFile raf;
+        final MappedByteBuffer buf;
+        int pos;
+
+        Segment(File file, int size) throws IOException {
+            this.file = file;
+            this.raf = new RandomAccessFile(file, "rw");
+            if (raf.length() < size) {
+                raf.setLength(size);
+            }
+            this.buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, raf.length());
+        }
+
+        long generation() {
+            if (buf.getInt(0) != MAGIC) {
+                return 0;
+            }
+            long g = buf.getLong(4);
+            CRC32 c = new CRC32();
+            for (int i = 0; i < 12; i++) {
+                c.update(buf.get(i));
+            }
+            return (int) c.getValue() == buf.getInt(12) ? g : 0;
+        }
+
+        void format(long gen) {
+            header(gen);
+            buf.putInt(HEADER, 0);
+            pos = HEADER;
+        }
+
+        void header(long gen) {
+            buf.putInt(0, MAGIC);
+            buf.putLong(4, gen);
+            CRC32 c = new CRC32();
+            for (int i = 0; i < 12; i++) {
+                c.update(buf.get(i));
+            }
+            buf.putInt(12, (int) c.getValue());
+        }
+
+        // Registro + terminador (len 0) para que la lectura sepa dónde parar
+        void write(byte[] rec) {
+            int p = pos;
+            buf.putInt(p + 8 + rec.length, 0);
+            buf.position(p + 8);
+            buf.put(rec);
+            buf.putInt(p + 4, crc(rec));
+            buf.putInt(p, rec.length);
+            pos = p + 8 + rec.length;
+        }
+
+        void close() {
+            try {
+                raf.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static final class Writer {
+        final byte[] out;
+        int p;
+
+        Writer(int size) {
+            out = new byte[size];
+        }
+
+        Writer b(byte v) {
+            out[p++] = v;
+            return this;
+        }
+
+        Writer i(int v) {
+            out[p++] = (byte) (v >>> 24);
+            out[p++] = (byte) (v >>> 16);
+            out[p++] = (byte) (v >>> 8);
+            out[p++] = (byte) v;
+            return this;
+        }
+
+        Writer l(long v) {
+            return i((int) (v >>> 32)).i((int) v);
+        }
+
+        Writer s(byte[] v) {
+            i(v.length);
+            System.arraycopy(v, 0, out, p, v.length);
+            p += v.length;
+            return this;
+        }
+    }
+
+    private static final class Reader {
+        final byte[] in;
+        int p;
+
+        Reader(byte[] in) {
+            this.in = in;
+        }
+
+        byte b() {
+            return in[p++];
+        }
+
+        int i() {
+            return ((in[p++] & 0xFF) << 24) | ((in[p++] & 0xFF) << 16) | ((in[p++] & 0xFF) << 8) | (in[p++] & 0xFF);
+        }
+
+        long l() {
+            return ((long) i() << 32) | (i() & 0xFFFFFFFFL);
+        }
+
+        String s() {
+            int n = i();
+            String v = new String(in, p, n, StandardCharsets.UTF_8);
+            p += n;
+            return v;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.hs.json;
+
+import com.hs.dto.OrderIn;
+
+/**
+ * Serializador del body de createOrder sin árbol intermedio.
+ *
+ * La forma del body es fija, así que se escribe directo en un StringBuilder
+ * reutilizado por hilo. La salida es idéntica byte a byte a
+ * gson.toJson(JsonObject) con Gson por defecto (mismo orden de campos y mismo
+ * escape "html safe": &lt; &gt; &amp; = ' como \\u00XX).
+ *
+ * Defaults (iguales al armado anterior): mode=dynamic, unit_measure=unidad,
+ * title=Item; expiration_time y external_code solo si vienen.
+ */
+public final class MpOrderBodyWriter {
+
+    private static final int MAX_RETAINED = 16 * 1024;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final ThreadLocal<StringBuilder> BUF = ThreadLocal.withInitial(() -> new StringBuilder(512));
+
+    private MpOrderBodyWriter() {
+    }
+
+    /**
+     * Requiere externalReference, externalPosId y totalAmount no vacíos
+     * (validados por MpBridgeCore).
+     */
+    public static String write(OrderIn in) {
+        String total = in.totalAmount.trim();
+
+        StringBuilder sb = BUF.get();
+        sb.setLength(0);
+
+        sb.append("{\"type\":\"qr\",\"total_amount\":");
+        str(sb, total);
+        sb.append(",\"description\":");
+        str(sb, in.description == null ? "" : in.description);
+        sb.append(",\"external_reference\":");
+        str(sb, in.externalReference.trim());
+        if (!isBlank(in.expirationTime)) {
+            sb.append(",\"expiration_time\":");
+            str(sb, in.expirationTime.trim());
+        }
+
+        sb.append(",\"config\":{\"qr\":{\"external_pos_id\":");
+        str(sb, in.externalPosId.trim());
+        sb.append(",\"mode\":");
+        str(sb, isBlank(in.mode) ? "dynamic" : in.mode.trim());
+        sb.append("}}");
+
+        sb.append(",\"transactions\":{\"payments\":[{\"amount\":");
+        str(sb, total);
+        sb.append("}]}");
+
+        sb.append(",\"items\":[{\"title\":");
+        str(sb, isBlank(in.itemTitle) ? "Item" : in.itemTitle.trim());
+        sb.append(",\"unit_price\":");
+        str(sb, total);
+        sb.append(",\"quantity\":1,\"unit_measure\":");
+        str(sb, isBlank(in.unitMeasure) ? "unidad" : in.unitMeasure.trim());
+        if (!isBlank(in.externalCode)) {
+            sb.append(",\"external_code\":");
+            str(sb, in.externalCode.trim());
+        }
+        sb.append("}]}");
+
+        String out = sb.toString();
+        if (sb.capacity() > MAX_RETAINED) {
+            BUF.remove(); // no retener buffers grandes por hilo
+        }
+        return out;
+    }
+
+    /**
+     * String JSON con el mismo escape que Gson (htmlSafe por defecto).
+     */
+    static void str(StringBuilder sb, String s) {
+        sb.append('"');
+        int last = 0;
+        int len = s.length();
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            String rep;
+            if (c < 0x20) {
+                switch (c) {
+                    case '\t':
+                        rep = "\\t";
+                        break;
+                    case '\b':
+                        rep = "\\b";
+                        break;
+                    case '\n':
+                        rep = "\\n";
+                        break;
+                    case '\r':
+                        rep = "\\r";
+                        break;
+                    case '\f':
+                        rep = "\\f";
+                        break;
+                    default:
+                        rep = null;
+                }
+                if (rep == null) {
+                    sb.append(s, last, i);
+                    unicode(sb, c);
+                    last = i + 1;
+                    continue;
+                }
+            } else if (c == '"') {
+                rep = "\\\"";
+            } else if (c == '\\') {
+                rep = "\\\\";
+            } else if (c == '<' || c == '>' || c == '&' || c == '=' || c == '\'' || c == '\u2028' || c == '\u2029') {
+                sb.append(s, last, i);
+                unicode(sb, c);
+                last = i + 1;
+                continue;
+            } else {
+                continue;
+            }
+            sb.append(s, last, i).append(rep);
+            last = i + 1;
+        }
+        sb.append(s, last, len);
+        sb.append('"');
+    }
+
+    private static void unicode(StringBuilder sb, char c) {
+        sb.append("\\u")
+                .append(HEX[(c >> 12) & 0xF]).append(HEX[(c >> 8) & 0xF])
+                .append(HEX[(c >> 4) & 0xF]).append(HEX[c & 0xF]);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
@@ -0,0 +1,24 @@
+package com.hs.json;
+
+/**
+ * Campos de una orden MP que usa el puente (todo lo demás se ignora).
+ * Nunca null: "" si el campo no vino.
+ */
+public final class MpOrderFields {
+
+    public String id = "";
+    public String status = "";
+    public String statusDetail = "";
+    public String paymentId = "";     // transactions.payments[0].id
+    public String paymentStatus = ""; // transactions.payments[0].status
+    public String qrData = "";        // type_response.qr_data
+
+    void clear() {
+        id = "";
+        status = "";
+        statusDetail = "";
+        paymentId = "";
+        paymentStatus = "";
+        qrData = "";
+    }
+}
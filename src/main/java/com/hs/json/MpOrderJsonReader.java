@@ -0,0 +1,144 @@
+package com.hs.json;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * Extractor de una sola pasada (JsonReader) para respuestas de órdenes.
+ *
+ * Lee solo id, status, status_detail, transactions.payments[0].id/status y
+ * type_response.qr_data; el resto se saltea sin armar árbol JsonObject. Mismo
+ * criterio que el parseo con Gson: si el JSON está roto, todos los campos
+ * quedan vacíos.
+ */
+public final class MpOrderJsonReader {
+
+    private MpOrderJsonReader() {
+    }
+
+    public static MpOrderFields read(String json) {
+        MpOrderFields f = new MpOrderFields();
+        if (json == null || json.trim().isEmpty()) {
+            return f;
+        }
+        return read(new StringReader(json), f);
+    }
+
+    public static MpOrderFields read(Reader in, MpOrderFields f) {
+        try {
+            JsonReader r = new JsonReader(in);
+            r.setLenient(true); // igual que Gson.fromJson
+            if (r.peek() != JsonToken.BEGIN_OBJECT) {
+                return f;
+            }
+            r.beginObject();
+            while (r.hasNext()) {
+                switch (r.nextName()) {
+                    case "id":
+                        f.id = scalar(r);
+                        break;
+                    case "status":
+                        f.status = scalar(r);
+                        break;
+                    case "status_detail":
+                        f.statusDetail = scalar(r);
+                        break;
+                    case "transactions":
+                        readTransactions(r, f);
+                        break;
+                    case "type_response":
+                        readTypeResponse(r, f);
+                        break;
+                    default:
+                        r.skipValue();
+                }
+            }
+            r.endObject();
+            if (r.peek() != JsonToken.END_DOCUMENT) {
+                f.clear(); // basura al final: Gson lo rechaza igual
+            }
+        } catch (Exception e) {
+            f.clear();
+        }
+        return f;
+    }
+
+    private static void readTransactions(JsonReader r, MpOrderFields f) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) {
+            r.skipValue();
+            return;
+        }
+        r.beginObject();
+        while (r.hasNext()) {
+            if ("payments".equals(r.nextName()) && r.peek() == JsonToken.BEGIN_ARRAY) {
+                f.paymentId = "";
+                f.paymentStatus = "";
+                r.beginArray();
+                if (r.hasNext()) {
+                    readFirstPayment(r, f);
+                }
+                while (r.hasNext()) {
+                    r.skipValue();
+                }
+                r.endArray();
+            } else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+    }
+
+    private static void readFirstPayment(JsonReader r, MpOrderFields f) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) {
+            r.skipValue();
+            return;
+        }
+        r.beginObject();
+        while (r.hasNext()) {
+            switch (r.nextName()) {
+                case "id":
+                    f.paymentId = scalar(r);
+                    break;
+                case "status":
+                    f.paymentStatus = scalar(r);
+                    break;
+                default:
+                    r.skipValue();
+            }
+        }
+        r.endObject();
+    }
+
+    private static void readTypeResponse(JsonReader r, MpOrderFields f) throws IOException {
+        if (r.peek() != JsonToken.BEGIN_OBJECT) {
+            r.skipValue();
+            return;
+        }
+        r.beginObject();
+        while (r.hasNext()) {
+            if ("qr_data".equals(r.nextName())) {
+                f.qrData = scalar(r);
+            } else {
+                r.skipValue();
+            }
+        }
+        r.endObject();
+    }
+
+    // String/número/boolean como texto; null, objetos y arrays -> ""
+    private static String scalar(JsonReader r) throws IOException {
+        switch (r.peek()) {
+            case STRING:
+            case NUMBER:
+                return r.nextString();
+            case BOOLEAN:
+                return String.valueOf(r.nextBoolean());
+            default:
+                r.skipValue();
+                return "";
+        }
+    }
+}
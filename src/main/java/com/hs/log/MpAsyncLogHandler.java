@@ -0,0 +1,241 @@
+package com.hs.log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+
+/**
+ * Handler java.util.logging asincrónico: publish() solo encola el LogRecord en
+ * un ring buffer acotado; un hilo escritor arma los lotes y los escribe con un
+ * único FileChannel abierto (sin fsync por registro).
+ *
+ * Rotación por tamaño (maxBytes) y por día; se conservan maxFiles archivos
+ * (archivo.1 ... archivo.N). Si la cola se llena: DROP descarta y cuenta, BLOCK
+ * espera hasta blockMaxMs y después descarta.
+ */
+public class MpAsyncLogHandler extends Handler {
+
+    public enum WhenFull {
+        DROP, BLOCK
+    }
+
+    private static final DateTimeFormatter TS
+            = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+    private static final int BATCH = 512;
+
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final boolean rotateDaily;
+    private final WhenFull whenFull;
+    private final long blockMaxNanos;
+
+    private final MpRingBuffer<LogRecord> queue;
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // Solo los toca el hilo escritor
+    private FileChannel channel;
+    private long currentSize;
+    private LocalDate currentDay;
+    private long reportedDropped;
+
+    public MpAsyncLogHandler(File file, int capacity, long maxBytes, int maxFiles,
+            boolean rotateDaily, WhenFull whenFull, long blockMaxMs) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        this.rotateDaily = rotateDaily;
+        this.whenFull = whenFull == null ? WhenFull.DROP : whenFull;
+        this.blockMaxNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, blockMaxMs));
+        this.queue = new MpRingBuffer<>(capacity);
+
+        this.writer = new Thread(this::writeLoop, "mp-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (record == null || !running || !isLoggable(record)) {
+            return;
+        }
+        if (queue.offer(record)) {
+            return;
+        }
+        if (whenFull == WhenFull.BLOCK) {
+            long deadline = System.nanoTime() + blockMaxNanos;
+            while (System.nanoTime() < deadline) {
+                LockSupport.parkNanos(50_000L);
+                if (queue.offer(record)) {
+                    return;
+                }
+            }
+        }
+        dropped.incrementAndGet();
+    }
+
+    /**
+     * Espera (acotado) a que el escritor vacíe la cola.
+     */
+    @Override
+    public void flush() {
+        long target = queue.published();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (written.get() < target && writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.parkNanos(1_000_000L);
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(2000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    public long writtenCount() {
+        return written.get();
+    }
+
+    public File file() {
+        return file;
+    }
+
+    // ======= HILO ESCRITOR =======
+    private void writeLoop() {
+        StringBuilder sb = new StringBuilder(16 * 1024);
+        try {
+            while (true) {
+                int n = 0;
+                LogRecord r;
+                while (n < BATCH && (r = queue.poll()) != null) {
+                    format(sb, r);
+                    n++;
+                }
+                long d = dropped.get();
+                if (d != reportedDropped) {
+                    sb.append(TS.format(Instant.now())).append(" WARNING [mp-log] ")
+                            .append(d - reportedDropped).append(" registros descartados (cola llena)\n");
+                    reportedDropped = d;
+                }
+                if (sb.length() > 0) {
+                    writeBatch(sb);
+                    written.addAndGet(n);
+                    sb.setLength(0);
+                    continue;
+                }
+                if (!running) {
+                    break;
+                }
+                LockSupport.parkNanos(5_000_000L);
+            }
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void format(StringBuilder sb, LogRecord r) {
+        sb.append(TS.format(Instant.ofEpochMilli(r.getMillis())))
+                .append(' ').append(r.getLevel().getName())
+                .append(" [").append(r.getLoggerName()).append("] ");
+        String msg = r.getMessage();
+        if (msg != null && r.getParameters() != null && r.getParameters().length > 0) {
+            try {
+                msg = java.text.MessageFormat.format(msg, r.getParameters());
+            } catch (Exception ignored) {
+            }
+        }
+        sb.append(msg == null ? "" : msg).append('\n');
+        if (r.getThrown() != null) {
+            StringWriter sw = new StringWriter();
+            r.getThrown().printStackTrace(new PrintWriter(sw));
+            sb.append(sw);
+        }
+    }
+
+    private void writeBatch(StringBuilder sb) {
+        try {
+            byte[] bytes = sb.toString().getBytes(StandardCharsets.UTF_8);
+            rotateIfNeeded(bytes.length);
+            ByteBuffer buf = ByteBuffer.wrap(bytes);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            currentSize += bytes.length;
+        } catch (Exception e) {
+            // No romper nada por el log: cerrar y reintentar abrir en el próximo lote
+            closeChannel();
+        }
+    }
+
+    private void rotateIfNeeded(int incoming) throws IOException {
+        LocalDate today = LocalDate.now();
+        if (channel == null) {
+            open();
+        }
+        boolean bySize = maxBytes > 0 && currentSize > 0 && currentSize + incoming > maxBytes;
+        boolean byDay = rotateDaily && currentDay != null && !today.equals(currentDay) && currentSize > 0;
+        if (bySize || byDay) {
+            closeChannel();
+            for (int i = maxFiles - 1; i >= 1; i--) {
+                File src = new File(file.getPath() + "." + i);
+                if (src.exists()) {
+                    Files.move(src.toPath(), new File(file.getPath() + "." + (i + 1)).toPath(),
+                            StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file.toPath(), new File(file.getPath() + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+            open();
+        }
+    }
+
+    private void open() throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        currentSize = channel.size();
+        currentDay = currentSize > 0
+                ? Instant.ofEpochMilli(file.lastModified()).atZone(ZoneId.systemDefault()).toLocalDate()
+                : LocalDate.now();
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (Exception ignored) {
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.hs.log;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logger único del puente, con handler asincrónico (MpAsyncLogHandler).
+ *
+ * Se inicializa una sola vez por JVM; antes cada llamada abría y cerraba un
+ * FileHandler (lock file incluido). Como el logger existe antes de leer el
+ * .properties, se configura por System properties (-D en el runtime ISCOBOL):
+ *
+ * mp.log.file (default C:\A2JTMP\MP_QR_HIBRIDO.log en Windows, tmpdir en otros)
+ * mp.log.queue (8192), mp.log.maxBytes (10 MB), mp.log.maxFiles (5),
+ * mp.log.rotateDaily (true), mp.log.whenFull (drop | block), mp.log.blockMaxMs
+ * (50)
+ */
+public final class MpLog {
+
+    private static final String LOGGER_NAME = "MP_QR_HIBRIDO_CALL";
+
+    private static volatile Logger bridge;
+    private static volatile MpAsyncLogHandler handler;
+
+    private MpLog() {
+    }
+
+    public static Logger bridgeLogger() {
+        Logger l = bridge;
+        if (l == null) {
+            synchronized (MpLog.class) {
+                l = bridge;
+                if (l == null) {
+                    l = create();
+                    bridge = l;
+                }
+            }
+        }
+        return l;
+    }
+
+    /**
+     * Handler activo (null si no se pudo crear); útil para monitoreo.
+     */
+    public static MpAsyncLogHandler handler() {
+        return handler;
+    }
+
+    private static Logger create() {
+        Logger l = Logger.getLogger(LOGGER_NAME);
+        l.setUseParentHandlers(false);
+        l.setLevel(Level.INFO);
+        try {
+            MpAsyncLogHandler h = new MpAsyncLogHandler(
+                    new File(System.getProperty("mp.log.file", defaultFile())),
+                    Integer.getInteger("mp.log.queue", 8192),
+                    Long.getLong("mp.log.maxBytes", 10L * 1024 * 1024),
+                    Integer.getInteger("mp.log.maxFiles", 5),
+                    Boolean.parseBoolean(System.getProperty("mp.log.rotateDaily", "true")),
+                    "block".equalsIgnoreCase(System.getProperty("mp.log.whenFull", "drop"))
+                    ? MpAsyncLogHandler.WhenFull.BLOCK : MpAsyncLogHandler.WhenFull.DROP,
+                    Long.getLong("mp.log.blockMaxMs", 50L));
+            h.setLevel(Level.INFO);
+            l.addHandler(h);
+            handler = h;
+
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                h.flush();
+                h.close();
+            }, "mp-log-shutdown"));
+        } catch (Exception e) {
+            // No romper la operación si falla el log
+            l.setUseParentHandlers(true);
+        }
+        return l;
+    }
+
+    private static String defaultFile() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("win")) {
+            return "C:\\A2JTMP\\MP_QR_HIBRIDO.log";
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "MP_QR_HIBRIDO.log").getPath();
+    }
+}
@@ -0,0 +1,42 @@
+package com.hs.log;
+
+/**
+ * Formato de los registros del puente (una línea por valor).
+ *
+ * Antes vivía como métodos privados de MP_QR_HIBRIDO; se separa para poder
+ * medirlo aislado (benchmarks JMH) sin armar un argv ISCOBOL.
+ */
+public final class MpLogFormat {
+
+    private MpLogFormat() {
+    }
+
+    /**
+     * Una sola línea (CR/LF -> espacio), sin blancos extremos y cortada a max
+     * caracteres (+ "..."); max <= 0 no corta.
+     */
+    public static String sanitize(String s, int max) {
+        if (s == null) {
+            return "";
+        }
+        String x = s.replace('\r', ' ').replace('\n', ' ').trim();
+        if (max > 0 && x.length() > max) {
+            return x.substring(0, max) + "...";
+        }
+        return x;
+    }
+
+    /**
+     * Texto del registro label=valor para valores grandes (raw json). Un solo
+     * registro: el handler asincrónico no tiene límite de línea.
+     */
+    public static String large(String label, String text) {
+        if (text == null) {
+            return label + "=<null>";
+        }
+        if (text.isEmpty()) {
+            return label + "=[]";
+        }
+        return label + "=" + text;
+    }
+}
@@ -0,0 +1,85 @@
+package com.hs.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Cola acotada sin locks (muchos productores, un consumidor).
+ *
+ * Cada slot tiene un número de secuencia: el productor reserva la posición con
+ * CAS sobre tail y publica el slot; el consumidor lee en orden. offer() nunca
+ * bloquea: si no hay lugar devuelve false y decide quien llama.
+ */
+final class MpRingBuffer<T> {
+
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong head = new AtomicLong();
+
+    MpRingBuffer(int capacity) {
+        int cap = 1;
+        while (cap < Math.max(2, capacity)) {
+            cap <<= 1;
+        }
+        this.mask = cap - 1;
+        this.items = new AtomicReferenceArray<>(cap);
+        this.sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    boolean offer(T item) {
+        while (true) {
+            long pos = tail.get();
+            int idx = (int) (pos & mask);
+            long seq = sequences.get(idx);
+            long diff = seq - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    items.lazySet(idx, item);
+                    sequences.set(idx, pos + 1); // publica
+                    return true;
+                }
+            } else if (diff < 0) {
+                return false; // lleno
+            }
+            // otro productor ganó la posición: reintentar
+        }
+    }
+
+    /**
+     * Solo desde el hilo consumidor.
+     */
+    T poll() {
+        long pos = head.get();
+        int idx = (int) (pos & mask);
+        long seq = sequences.get(idx);
+        if (seq != pos + 1) {
+            return null; // vacío (o el productor todavía no publicó)
+        }
+        T item = items.get(idx);
+        items.lazySet(idx, null);
+        head.lazySet(pos + 1);
+        sequences.set(idx, pos + mask + 1); // libera el slot para la próxima vuelta
+        return item;
+    }
+
+    /**
+     * Total de elementos encolados desde el inicio.
+     */
+    long published() {
+        return tail.get();
+    }
+
+    boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    int capacity() {
+        return mask + 1;
+    }
+}
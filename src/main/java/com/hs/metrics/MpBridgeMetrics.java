@@ -0,0 +1,96 @@
+package com.hs.metrics;
+
+import com.hs.core.MpResultCache;
+import com.hs.http.MpCircuitBreaker;
+import com.hs.http.MpHttpTransport;
+import com.hs.http.MpRateLimiter;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.http.pool.PoolStats;
+
+/**
+ * MBean general: pool de conexiones, bytes, limitador de tasa, circuit
+ * breakers y caché de idempotencia, más el reporte completo de MpMetrics.
+ */
+public final class MpBridgeMetrics implements MpBridgeMetricsMBean {
+
+    @Override
+    public long getPoolLeaseCount() {
+        return MpMetrics.poolLease().snapshot().count;
+    }
+
+    @Override
+    public double getPoolLeaseP99Ms() {
+        return MpMetrics.poolLease().snapshot().percentile(99) / 1000.0;
+    }
+
+    @Override
+    public double getPoolLeaseMaxMs() {
+        return MpMetrics.poolLease().snapshot().maxMicros / 1000.0;
+    }
+
+    @Override
+    public String getPool() {
+        PoolStats s = MpHttpTransport.totalStats();
+        return s == null ? "sin transporte" : "leased=" + s.getLeased() + " available=" + s.getAvailable()
+                + " pending=" + s.getPending() + " max=" + s.getMax() + " tenants=" + MpHttpTransport.count();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return MpMetrics.bytesIn();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return MpMetrics.bytesOut();
+    }
+
+    @Override
+    public String[] getRateLimiters() {
+        List<String> out = new ArrayList<>();
+        for (MpRateLimiter.State s : MpRateLimiter.snapshot()) {
+            out.add(s.toString());
+        }
+        return out.toArray(new String[0]);
+    }
+
+    @Override
+    public String[] getCircuitBreakers() {
+        List<String> out = new ArrayList<>();
+        for (MpCircuitBreaker b : MpCircuitBreaker.all()) {
+            out.add(b.snapshot());
+        }
+        return out.toArray(new String[0]);
+    }
+
+    @Override
+    public String getIdempotencyCache() {
+        return MpResultCache.totalStats();
+    }
+
+    @Override
+    public String getReport() {
+        return MpMetrics.report();
+    }
+
+    @Override
+    public void reset() {
+        MpMetrics.reset();
+    }
+
+    // Pool, limitador y breakers para el reporte de texto
+    static List<String> transportLines() {
+        MpBridgeMetrics m = new MpBridgeMetrics();
+        List<String> out = new ArrayList<>();
+        out.add("pool " + m.getPool());
+        for (String s : m.getRateLimiters()) {
+            out.add("ratelimit " + s);
+        }
+        for (String s : m.getCircuitBreakers()) {
+            out.add(s);
+        }
+        out.add(m.getIdempotencyCache());
+        return out;
+    }
+}
@@ -0,0 +1,32 @@
+package com.hs.metrics;
+
+/**
+ * Vista JMX general del puente (com.hs.mp:type=Bridge,name=MpBridge).
+ */
+public interface MpBridgeMetricsMBean {
+
+    long getPoolLeaseCount();
+
+    double getPoolLeaseP99Ms();
+
+    double getPoolLeaseMaxMs();
+
+    /**
+     * Pools HTTP de todos los tenants sumados: leased/available/pending/max.
+     */
+    String getPool();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    String[] getRateLimiters();
+
+    String[] getCircuitBreakers();
+
+    String getIdempotencyCache();
+
+    String getReport();
+
+    void reset();
+}
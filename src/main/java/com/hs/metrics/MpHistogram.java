@@ -0,0 +1,119 @@
+package com.hs.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias sin locks, con buckets estilo HDR: valores en
+ * microsegundos, 32 sub-buckets lineales por cada potencia de 2 (error
+ * relativo <= ~3 %), hasta ~38 horas. Registrar es un incremento atómico en un
+ * arreglo fijo; no hay allocations.
+ */
+public final class MpHistogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB = 1 << SUB_BITS;          // 32
+    private static final int MAX_EXP = 31;                 // hasta 2^37 us
+    private static final long MAX_VALUE = ((long) SUB << (MAX_EXP + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray((MAX_EXP + 2) * SUB);
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void recordNanos(long nanos) {
+        record(nanos / 1000L);
+    }
+
+    public void record(long micros) {
+        long v = micros < 0 ? 0 : Math.min(micros, MAX_VALUE);
+        counts.incrementAndGet(index(v));
+        sum.add(v);
+        long m = max.get();
+        while (v > m && !max.compareAndSet(m, v)) {
+            m = max.get();
+        }
+    }
+
+    static int index(long v) {
+        if (v < SUB) {
+            return (int) v;
+        }
+        int exp = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return (exp + 1) * SUB + (int) ((v >>> exp) - SUB);
+    }
+
+    // Mayor valor que cae en el bucket i
+    static long highestEquivalent(int i) {
+        if (i < SUB) {
+            return i;
+        }
+        int exp = i / SUB - 1;
+        long sub = i % SUB + SUB;
+        return ((sub + 1) << exp) - 1;
+    }
+
+    /**
+     * Vuelve a cero (no es atómico respecto de registros concurrentes: alguno
+     * puede quedar contado a medias, aceptable para monitoreo).
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        sum.reset();
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] c = new long[counts.length()];
+        long n = 0;
+        for (int i = 0; i < c.length; i++) {
+            c[i] = counts.get(i);
+            n += c[i];
+        }
+        return new Snapshot(c, n, sum.sum(), max.get());
+    }
+
+    // ==========================================================
+    // Snapshot
+    // ==========================================================
+    /**
+     * Copia consistente para calcular percentiles (en microsegundos).
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long sumMicros;
+        public final long maxMicros;
+
+        Snapshot(long[] counts, long count, long sumMicros, long maxMicros) {
+            this.counts = counts;
+            this.count = count;
+            this.sumMicros = sumMicros;
+            this.maxMicros = maxMicros;
+        }
+
+        /**
+         * @param p percentil entre 0 y 100 (ej: 99.9)
+         */
+        public long percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestEquivalent(i), maxMicros);
+                }
+            }
+            return maxMicros;
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : (double) sumMicros / count;
+        }
+    }
+}
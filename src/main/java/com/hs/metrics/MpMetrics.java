@@ -0,0 +1,280 @@
+package com.hs.metrics;
+
+import com.hs.config.MpConfig;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Métricas del puente (una instancia por JVM):
+ *
+ * - por endpoint HTTP (nombre del endpoint en config: getOrder, createOrder...):
+ * latencia de cada intento, conteo por status (ERR = error de red) y bytes;
+ * - por operación de MpBridgeCore: latencia total (reintentos incluidos) y
+ * conteo por res;
+ * - espera para obtener una conexión del pool (lease) y bytes totales.
+ *
+ * Se publican como MBeans (com.hs.mp:type=Bridge / Endpoint / Operation) y se
+ * vuelcan a un archivo de texto cada mp.metrics.dumpSeconds.
+ *
+ * Properties: mp.metrics.enabled (true), mp.metrics.jmx (true),
+ * mp.metrics.file (default MP_QR_HIBRIDO.metrics junto al log),
+ * mp.metrics.dumpSeconds (60, 0 = no volcar)
+ */
+public final class MpMetrics {
+
+    public static final String JMX_DOMAIN = "com.hs.mp";
+
+    private static final ConcurrentHashMap<String, MpStats> HTTP = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, MpStats> OPS = new ConcurrentHashMap<>();
+    private static final MpHistogram POOL_LEASE = new MpHistogram();
+    private static final LongAdder BYTES_IN = new LongAdder();
+    private static final LongAdder BYTES_OUT = new LongAdder();
+
+    private static volatile boolean enabled = true;
+    private static volatile boolean jmx;
+    private static volatile boolean started;
+    private static volatile Logger logger;
+
+    private MpMetrics() {
+    }
+
+    // ==========================================================
+    // Registro
+    // ==========================================================
+    /**
+     * Un intento HTTP terminado con respuesta.
+     */
+    public static void http(String endpoint, int status, long nanos, long bytesOut, long bytesIn) {
+        if (enabled) {
+            stats(HTTP, "Endpoint", endpoint).record(String.valueOf(status), nanos, bytesIn, bytesOut);
+            BYTES_IN.add(Math.max(0, bytesIn));
+            BYTES_OUT.add(Math.max(0, bytesOut));
+        }
+    }
+
+    /**
+     * Un intento HTTP que terminó en error de red / timeout.
+     */
+    public static void httpError(String endpoint, long nanos, long bytesOut) {
+        if (enabled) {
+            stats(HTTP, "Endpoint", endpoint).record("ERR", nanos, 0, bytesOut);
+            BYTES_OUT.add(Math.max(0, bytesOut));
+        }
+    }
+
+    /**
+     * Una operación de MpBridgeCore terminada.
+     */
+    public static void operation(String op, int res, long nanos) {
+        if (enabled) {
+            stats(OPS, "Operation", op).record("res=" + res, nanos, 0, 0);
+        }
+    }
+
+    /**
+     * Espera hasta obtener una conexión del pool.
+     */
+    public static void poolLease(long nanos) {
+        if (enabled) {
+            POOL_LEASE.recordNanos(nanos);
+        }
+    }
+
+    private static MpStats stats(ConcurrentHashMap<String, MpStats> map, String type, String name) {
+        String key = name == null || name.isEmpty() ? "otros" : name;
+        MpStats s = map.get(key);
+        if (s == null) {
+            s = map.computeIfAbsent(key, MpStats::new);
+            if (jmx) {
+                register(type, key, s);
+            }
+        }
+        return s;
+    }
+
+    // ==========================================================
+    // Consulta
+    // ==========================================================
+    public static MpStats endpoint(String name) {
+        return HTTP.get(name);
+    }
+
+    public static MpStats operation(String op) {
+        return OPS.get(op);
+    }
+
+    public static MpHistogram poolLease() {
+        return POOL_LEASE;
+    }
+
+    public static long bytesIn() {
+        return BYTES_IN.sum();
+    }
+
+    public static long bytesOut() {
+        return BYTES_OUT.sum();
+    }
+
+    /**
+     * Reporte de texto (el mismo que se vuelca al archivo).
+     */
+    public static String report() {
+        StringBuilder sb = new StringBuilder(1024);
+        sb.append("# MP metrics ").append(new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date()))
+                .append(" (ms, acumulado)\n");
+        sb.append("[http]\n");
+        appendLines(sb, HTTP);
+        sb.append("[operaciones]\n");
+        appendLines(sb, OPS);
+        MpHistogram.Snapshot lease = POOL_LEASE.snapshot();
+        sb.append("[pool]\n").append(String.format(Locale.ROOT,
+                "lease count=%d p50=%.2f p99=%.2f p99.9=%.2f max=%.2f bytesIn=%d bytesOut=%d%n",
+                lease.count, lease.percentile(50) / 1000.0, lease.percentile(99) / 1000.0,
+                lease.percentile(99.9) / 1000.0, lease.maxMicros / 1000.0, BYTES_IN.sum(), BYTES_OUT.sum()));
+        for (String s : MpBridgeMetrics.transportLines()) {
+            sb.append(s).append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static void appendLines(StringBuilder sb, ConcurrentHashMap<String, MpStats> map) {
+        List<String> names = new ArrayList<>(map.keySet());
+        Collections.sort(names);
+        for (String n : names) {
+            sb.append(map.get(n).line()).append('\n');
+        }
+    }
+
+    /**
+     * Vuelve a cero todo (histogramas, códigos y bytes).
+     */
+    public static void reset() {
+        for (MpStats s : HTTP.values()) {
+            s.reset();
+        }
+        for (MpStats s : OPS.values()) {
+            s.reset();
+        }
+        POOL_LEASE.reset();
+        BYTES_IN.reset();
+        BYTES_OUT.reset();
+    }
+
+    // ==========================================================
+    // JMX + volcado periódico
+    // ==========================================================
+    /**
+     * Registra los MBeans y arranca el volcado a archivo (una sola vez por
+     * JVM, con la config de la primera llamada).
+     */
+    public static void ensureStarted(MpConfig cfg, Logger log) {
+        if (started) {
+            return;
+        }
+        synchronized (MpMetrics.class) {
+            if (started) {
+                return;
+            }
+            started = true;
+            logger = log;
+            enabled = cfg.getBoolean("mp.metrics.enabled", true);
+            if (!enabled) {
+                return;
+            }
+            if (cfg.getBoolean("mp.metrics.jmx", true)) {
+                jmx = true;
+                register("Bridge", "MpBridge", new MpBridgeMetrics());
+                for (MpStats s : HTTP.values()) {
+                    register("Endpoint", s.getName(), s);
+                }
+                for (MpStats s : OPS.values()) {
+                    register("Operation", s.getName(), s);
+                }
+            }
+            int seconds = cfg.getInt("mp.metrics.dumpSeconds", 60);
+            String file = cfg.get("mp.metrics.file", "");
+            if (seconds > 0) {
+                startDumper(new File(file == null || file.trim().isEmpty() ? defaultFile() : file.trim()), seconds);
+            }
+        }
+    }
+
+    private static void register(String type, String name, Object mbean) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName on = new ObjectName(JMX_DOMAIN + ":type=" + type + ",name=" + ObjectName.quote(name));
+            if (!server.isRegistered(on)) {
+                server.registerMBean(mbean, on);
+            }
+        } catch (Exception e) {
+            log(Level.WARNING, "No se pudo registrar MBean " + type + "/" + name + ": " + e.getMessage());
+        }
+    }
+
+    private static void startDumper(File file, int seconds) {
+        ScheduledExecutorService s = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "mp-metrics-dump");
+            t.setDaemon(true);
+            return t;
+        });
+        s.scheduleWithFixedDelay(() -> dump(file), seconds, seconds, TimeUnit.SECONDS);
+        try {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(file), "mp-metrics-shutdown"));
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Escribe el reporte en file (se reemplaza entero: siempre queda la última
+     * foto completa).
+     */
+    public static void dump(File file) {
+        try {
+            Path target = file.toPath();
+            Path tmp = target.resolveSibling(file.getName() + ".tmp");
+            Files.write(tmp, report().getBytes(StandardCharsets.UTF_8));
+            try {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            log(Level.WARNING, "No se pudo volcar métricas en " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static String defaultFile() {
+        String os = System.getProperty("os.name", "").toLowerCase();
+        if (os.contains("win")) {
+            return "C:\\A2JTMP\\MP_QR_HIBRIDO.metrics";
+        }
+        return new File(System.getProperty("java.io.tmpdir"), "MP_QR_HIBRIDO.metrics").getPath();
+    }
+
+    private static void log(Level level, String msg) {
+        Logger l = logger;
+        if (l != null) {
+            l.log(level, msg);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.hs.metrics;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Métricas de un nombre (endpoint HTTP u operación del core): histograma de
+ * latencia, conteo por código y bytes.
+ */
+public final class MpStats implements MpStatsMBean {
+
+    private final String name;
+    private final MpHistogram latency = new MpHistogram();
+    private final ConcurrentHashMap<String, LongAdder> codes = new ConcurrentHashMap<>();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+
+    MpStats(String name) {
+        this.name = name;
+    }
+
+    void record(String code, long nanos, long in, long out) {
+        latency.recordNanos(nanos);
+        LongAdder c = codes.get(code);
+        if (c == null) {
+            c = codes.computeIfAbsent(code, k -> new LongAdder());
+        }
+        c.increment();
+        if (in > 0) {
+            bytesIn.add(in);
+        }
+        if (out > 0) {
+            bytesOut.add(out);
+        }
+    }
+
+    public MpHistogram histogram() {
+        return latency;
+    }
+
+    public Map<String, Long> codeCounts() {
+        Map<String, Long> m = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> e : codes.entrySet()) {
+            m.put(e.getKey(), e.getValue().sum());
+        }
+        return m;
+    }
+
+    /**
+     * Una línea: nombre, cantidad, percentiles (ms), códigos y bytes.
+     */
+    public String line() {
+        MpHistogram.Snapshot s = latency.snapshot();
+        return String.format(Locale.ROOT,
+                "%s count=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f p99.9=%.1f max=%.1f codes=%s in=%d out=%d",
+                name, s.count, s.meanMicros() / 1000.0, ms(s.percentile(50)), ms(s.percentile(90)),
+                ms(s.percentile(99)), ms(s.percentile(99.9)), ms(s.maxMicros), getCodes(), bytesIn.sum(),
+                bytesOut.sum());
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+
+    // ==========================================================
+    // JMX
+    // ==========================================================
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCount() {
+        return latency.snapshot().count;
+    }
+
+    @Override
+    public double getMeanMs() {
+        return latency.snapshot().meanMicros() / 1000.0;
+    }
+
+    @Override
+    public double getP50Ms() {
+        return ms(latency.snapshot().percentile(50));
+    }
+
+    @Override
+    public double getP90Ms() {
+        return ms(latency.snapshot().percentile(90));
+    }
+
+    @Override
+    public double getP99Ms() {
+        return ms(latency.snapshot().percentile(99));
+    }
+
+    @Override
+    public double getP999Ms() {
+        return ms(latency.snapshot().percentile(99.9));
+    }
+
+    @Override
+    public double getMaxMs() {
+        return ms(latency.snapshot().maxMicros);
+    }
+
+    @Override
+    public String getCodes() {
+        return codeCounts().toString();
+    }
+
+    @Override
+    public long getBytesIn() {
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut() {
+        return bytesOut.sum();
+    }
+
+    @Override
+    public void reset() {
+        latency.reset();
+        codes.clear();
+        bytesIn.reset();
+        bytesOut.reset();
+    }
+}
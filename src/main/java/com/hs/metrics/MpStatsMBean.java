@@ -0,0 +1,36 @@
+package com.hs.metrics;
+
+/**
+ * Vista JMX de un endpoint HTTP u operación del core
+ * (com.hs.mp:type=Endpoint|Operation,name=...). Tiempos en milisegundos,
+ * acumulados desde el arranque o el último reset.
+ */
+public interface MpStatsMBean {
+
+    String getName();
+
+    long getCount();
+
+    double getMeanMs();
+
+    double getP50Ms();
+
+    double getP90Ms();
+
+    double getP99Ms();
+
+    double getP999Ms();
+
+    double getMaxMs();
+
+    /**
+     * Conteo por código: status HTTP (200, 503, ERR) o res del core (res=0...).
+     */
+    String getCodes();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    void reset();
+}
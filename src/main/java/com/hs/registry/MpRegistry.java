@@ -0,0 +1,464 @@
+package com.hs.registry;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hs.config.MpConfig;
+import com.hs.core.MpExecutors;
+import com.hs.dto.MpResult;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Stores y POS de la cuenta en memoria, para resolver external_id -> id sin
+ * buscar en MP en cada llamada.
+ *
+ * La primera consulta trae todas las páginas de /users/{id}/stores/search y
+ * /pos (la primera para saber el total, el resto en paralelo). Índices:
+ * external_id -> store / POS, nombre -> store / POS y store_id -> POS. Al
+ * vencer el TTL se vuelve a paginar en segundo plano y se sigue respondiendo
+ * con el índice anterior. Entre sincronizaciones el índice se completa de a
+ * una entrada: altas hechas por el puente (S/P) y búsquedas puntuales por
+ * external_id cuando no está en memoria.
+ *
+ * Un registro por cuenta (MpConfig.accountKey + user_id), compartido por la JVM.
+ *
+ * Properties: mp.registry.enabled (true), mp.registry.ttlSeconds (600),
+ * mp.registry.pageSize (50), mp.registry.parallelism (4),
+ * mp.registry.validateOrders (false: rechazar O con un external_pos_id que
+ * no existe en la cuenta)
+ */
+public final class MpRegistry {
+
+    private static final ConcurrentHashMap<String, MpRegistry> SHARED = new ConcurrentHashMap<>();
+
+    public static final String STORE = "store";
+    public static final String POS = "pos";
+
+    /**
+     * Búsquedas paginadas de MP (las implementa MpBridgeCore con searchStores /
+     * searchPos: mismo transporte, métricas y límites).
+     */
+    public interface Source {
+
+        MpResult stores(int limit, int offset, String externalId);
+
+        MpResult pos(int limit, int offset, String externalId);
+    }
+
+    public static final class Entry {
+
+        public final String kind;         // STORE / POS
+        public final String id;
+        public final String name;
+        public final String externalId;
+        public final String storeId;      // solo POS
+        public final String externalStoreId; // solo POS
+
+        public Entry(String kind, String id, String name, String externalId, String storeId, String externalStoreId) {
+            this.kind = kind;
+            this.id = nvl(id);
+            this.name = nvl(name);
+            this.externalId = nvl(externalId);
+            this.storeId = nvl(storeId);
+            this.externalStoreId = nvl(externalStoreId);
+        }
+
+        public String toJson() {
+            JsonObject o = new JsonObject();
+            o.addProperty("type", kind);
+            o.addProperty("id", id);
+            o.addProperty("name", name);
+            o.addProperty("external_id", externalId);
+            if (POS.equals(kind)) {
+                o.addProperty("store_id", storeId);
+                o.addProperty("external_store_id", externalStoreId);
+            }
+            return o.toString();
+        }
+
+        @Override
+        public String toString() {
+            return kind + " " + externalId + " -> " + id;
+        }
+    }
+
+    // Índices de una sincronización; las entradas sueltas se agregan encima
+    private static final class Index {
+        final Map<String, Entry> storesByExt = new ConcurrentHashMap<>();
+        final Map<String, Entry> posByExt = new ConcurrentHashMap<>();
+        final Map<String, Entry> storesByName = new ConcurrentHashMap<>();
+        final Map<String, Entry> posByName = new ConcurrentHashMap<>();
+        final Map<String, List<Entry>> posByStore = new ConcurrentHashMap<>();
+        final long syncedAt;
+
+        Index(long syncedAt) {
+            this.syncedAt = syncedAt;
+        }
+
+        void add(Entry e) {
+            if (STORE.equals(e.kind)) {
+                storesByExt.put(e.externalId, e);
+                if (!e.name.isEmpty()) {
+                    storesByName.put(nameKey(e.name), e);
+                }
+                return;
+            }
+            Entry old = posByExt.put(e.externalId, e);
+            if (old != null && !old.storeId.isEmpty()) {
+                List<Entry> l = posByStore.get(old.storeId);
+                if (l != null) {
+                    l.remove(old);
+                }
+            }
+            if (!e.name.isEmpty()) {
+                posByName.put(nameKey(e.name), e);
+            }
+            if (!e.storeId.isEmpty()) {
+                posByStore.computeIfAbsent(e.storeId, k -> new CopyOnWriteArrayList<>()).add(e);
+            }
+        }
+    }
+
+    // Una página de búsqueda ya parseada
+    private static final class Page {
+        final int total;
+        final List<Entry> entries;
+
+        Page(int total, List<Entry> entries) {
+            this.total = total;
+            this.entries = entries;
+        }
+    }
+
+    // Página que no vino OK: corta la sincronización con el resultado de MP
+    private static final class PageFailed extends RuntimeException {
+        final MpResult result;
+
+        PageFailed(MpResult result) {
+            super(result.msg, null, false, false);
+            this.result = result;
+        }
+    }
+
+    private volatile long ttlMs;
+    private volatile int pageSize;
+    private volatile int parallelism;
+
+    private volatile Index index; // null hasta la primera sincronización
+    private final Object syncLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    public MpRegistry(long ttlMs, int pageSize, int parallelism) {
+        this.ttlMs = ttlMs;
+        this.pageSize = Math.max(1, pageSize);
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Registro de la cuenta de cfg; null si mp.registry.enabled=false o si
+     * falta el token (la búsqueda directa reporta el error).
+     */
+    public static MpRegistry forConfig(MpConfig cfg) {
+        if (!cfg.getBoolean("mp.registry.enabled", true)) {
+            return null;
+        }
+        String userId;
+        try {
+            cfg.authorizationHeader();
+        } catch (IllegalStateException e) {
+            return null;
+        }
+        try {
+            userId = cfg.userId();
+        } catch (IllegalStateException e) {
+            userId = ""; // la búsqueda de stores reporta que falta
+        }
+        // por cuenta (tenant + SHA-256 del token): dos tokens no comparten índice
+        String key = cfg.accountKey() + "|" + nvl(userId);
+        MpRegistry r = SHARED.computeIfAbsent(key, k -> new MpRegistry(0, 50, 4));
+        r.ttlMs = cfg.getInt("mp.registry.ttlSeconds", 600) * 1000L;
+        r.pageSize = Math.max(1, cfg.getInt("mp.registry.pageSize", 50));
+        r.parallelism = Math.max(1, cfg.getInt("mp.registry.parallelism", 4));
+        return r;
+    }
+
+    // ==========================================================
+    // Consultas
+    // ==========================================================
+    public Entry store(String externalId, Source src) {
+        return byExternalId(STORE, externalId, src);
+    }
+
+    public Entry pos(String externalId, Source src) {
+        return byExternalId(POS, externalId, src);
+    }
+
+    /**
+     * Store por nombre (sin distinguir mayúsculas). MP no filtra por nombre:
+     * solo sale del índice.
+     */
+    public Entry storeByName(String name, Source src) {
+        Index idx = current(src);
+        return idx == null || isBlank(name) ? null : idx.storesByName.get(nameKey(name));
+    }
+
+    public Entry posByName(String name, Source src) {
+        Index idx = current(src);
+        return idx == null || isBlank(name) ? null : idx.posByName.get(nameKey(name));
+    }
+
+    public List<Entry> posOfStore(String storeId, Source src) {
+        Index idx = current(src);
+        List<Entry> l = idx == null || isBlank(storeId) ? null : idx.posByStore.get(storeId.trim());
+        return l == null ? Collections.emptyList() : new ArrayList<>(l);
+    }
+
+    /**
+     * true solo si el POS seguro no existe: índice cargado, no está y la
+     * búsqueda puntual tampoco lo encuentra. Sin índice no opina (y lo pide
+     * en segundo plano).
+     */
+    public boolean missingPos(String externalId, Source src) {
+        Index idx = index;
+        if (idx == null) {
+            refreshAsync(src);
+            return false;
+        }
+        return pos(externalId, src) == null;
+    }
+
+    private Entry byExternalId(String kind, String externalId, Source src) {
+        if (isBlank(externalId)) {
+            return null;
+        }
+        String ext = externalId.trim();
+        Index idx = current(src);
+        if (idx != null) {
+            Entry e = (STORE.equals(kind) ? idx.storesByExt : idx.posByExt).get(ext);
+            if (e != null) {
+                return e;
+            }
+        }
+        // No está (alta posterior a la última sincronización): búsqueda puntual
+        Entry e = fetchOne(kind, ext, src);
+        if (e != null) {
+            put(e);
+        }
+        return e;
+    }
+
+    /**
+     * Búsqueda puntual por external_id, sin índice (también la usa el core con
+     * el registro deshabilitado). Lanza IllegalStateException si MP no
+     * respondió OK.
+     */
+    public static Entry fetchOne(String kind, String externalId, Source src) {
+        MpResult r = STORE.equals(kind) ? src.stores(50, 0, externalId) : src.pos(50, 0, externalId);
+        if (r.res != 0) {
+            throw new PageFailed(r);
+        }
+        for (Entry e : parse(kind, r.rawJson()).entries) {
+            if (externalId.equals(e.externalId)) {
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * MpResult de la búsqueda que falló, o null si ex no viene de una página.
+     */
+    public static MpResult failure(Throwable ex) {
+        Throwable t = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        return t instanceof PageFailed ? ((PageFailed) t).result : null;
+    }
+
+    // ==========================================================
+    // Altas incrementales
+    // ==========================================================
+    /**
+     * Agrega (o reemplaza) una entrada en el índice vigente. Sin índice todavía
+     * no hace nada: la primera sincronización la va a traer.
+     */
+    public void put(Entry e) {
+        Index idx = index;
+        if (idx != null && e != null && !e.externalId.isEmpty()) {
+            idx.add(e);
+        }
+    }
+
+    // ==========================================================
+    // Sincronización
+    // ==========================================================
+    private Index current(Source src) {
+        Index idx = index;
+        if (idx == null) {
+            synchronized (syncLock) {
+                idx = index;
+                if (idx == null) {
+                    sync(src);
+                    idx = index;
+                }
+            }
+        } else if (System.currentTimeMillis() - idx.syncedAt > ttlMs) {
+            refreshAsync(src);
+        }
+        return idx;
+    }
+
+    private void refreshAsync(Source src) {
+        if (!refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        MpExecutors.fanOut().execute(() -> {
+            try {
+                synchronized (syncLock) {
+                    sync(src);
+                }
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    /**
+     * Trae todas las páginas de stores y POS y reemplaza el índice. Si alguna
+     * página falla se conserva el índice anterior y se devuelve ese error.
+     */
+    public MpResult sync(Source src) {
+        long t0 = System.currentTimeMillis();
+        try {
+            List<Entry> stores = all(STORE, src);
+            List<Entry> pos = all(POS, src);
+            Index idx = new Index(t0);
+            for (Entry e : stores) {
+                idx.add(e);
+            }
+            for (Entry e : pos) {
+                idx.add(e);
+            }
+            index = idx;
+            MpResult out = MpResult.ok();
+            out.msg = "OK stores=" + stores.size() + " pos=" + pos.size() + " ms="
+                    + (System.currentTimeMillis() - t0);
+            return out;
+        } catch (RuntimeException ex) {
+            MpResult failed = failure(ex);
+            if (failed != null) {
+                return failed;
+            }
+            return MpResult.error(4, "Error sincronizando stores/POS: " + ex.getMessage());
+        }
+    }
+
+    private List<Entry> all(String kind, Source src) {
+        int limit = pageSize;
+        Page first = page(kind, limit, 0, src);
+        List<Entry> out = new ArrayList<>(Math.max(first.total, first.entries.size()));
+        out.addAll(first.entries);
+        List<Integer> offsets = new ArrayList<>();
+        for (int off = limit; off < first.total; off += limit) {
+            offsets.add(off);
+        }
+        for (Page p : MpExecutors.parallel(offsets, parallelism, off -> page(kind, limit, off, src))) {
+            out.addAll(p.entries);
+        }
+        return out;
+    }
+
+    private static Page page(String kind, int limit, int offset, Source src) {
+        MpResult r = STORE.equals(kind) ? src.stores(limit, offset, null) : src.pos(limit, offset, null);
+        if (r.res != 0) {
+            throw new PageFailed(r);
+        }
+        return parse(kind, r.rawJson());
+    }
+
+    // {"paging":{"total":N,...},"results":[{...}]}
+    private static Page parse(String kind, String json) {
+        List<Entry> entries = new ArrayList<>();
+        int total = 0;
+        try {
+            JsonObject o = JsonParser.parseString(json).getAsJsonObject();
+            JsonElement paging = o.get("paging");
+            if (paging != null && paging.isJsonObject()) {
+                total = (int) longOf(paging.getAsJsonObject(), "total");
+            }
+            JsonElement results = o.get("results");
+            if (results != null && results.isJsonArray()) {
+                JsonArray a = results.getAsJsonArray();
+                for (JsonElement el : a) {
+                    if (el.isJsonObject()) {
+                        JsonObject x = el.getAsJsonObject();
+                        entries.add(new Entry(kind, str(x, "id"), str(x, "name"), str(x, "external_id"),
+                                str(x, "store_id"), str(x, "external_store_id")));
+                    }
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new PageFailed(MpResult.error(4, "Respuesta de búsqueda inválida: " + e.getMessage()));
+        }
+        return new Page(Math.max(total, entries.size()), entries);
+    }
+
+    // ==========================================================
+    // Estado
+    // ==========================================================
+    public boolean loaded() {
+        return index != null;
+    }
+
+    public String stats() {
+        Index idx = index;
+        if (idx == null) {
+            return "registry sin sincronizar";
+        }
+        return "registry stores=" + idx.storesByExt.size() + " pos=" + idx.posByExt.size() + " edadMs="
+                + (System.currentTimeMillis() - idx.syncedAt);
+    }
+
+    /**
+     * Descarta el índice (la próxima consulta vuelve a paginar).
+     */
+    public void invalidate() {
+        index = null;
+    }
+
+    // ==========================================================
+    // Helpers
+    // ==========================================================
+    private static String str(JsonObject o, String k) {
+        JsonElement e = o.get(k);
+        return e == null || e.isJsonNull() || !e.isJsonPrimitive() ? "" : e.getAsString();
+    }
+
+    private static long longOf(JsonObject o, String k) {
+        try {
+            JsonElement e = o.get(k);
+            return e == null || e.isJsonNull() ? 0 : e.getAsLong();
+        } catch (RuntimeException ex) {
+            return 0;
+        }
+    }
+
+    private static String nameKey(String name) {
+        return name.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+
+    private static String nvl(String s) {
+        return s == null ? "" : s.trim();
+    }
+}
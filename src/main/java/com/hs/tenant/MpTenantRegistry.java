@@ -0,0 +1,165 @@
+package com.hs.tenant;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.http.MpHttpAsyncClient;
+import com.hs.http.MpHttpTransport;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Logger;
+
+/**
+ * Un MpBridgeCore por cuenta de Mercado Pago (tenant) en la JVM: varias
+ * razones sociales comparten el runtime ISCOBOL o el daemon sin armar nada
+ * por llamada ni mezclar credenciales.
+ *
+ * Cada tenant es un .properties con su token y sus límites; su clave es
+ * MpConfig.tenant() (mp.tenant.id o la ruta) y un mp.tenant.id repetido en
+ * dos archivos se rechaza. El core se arma una vez sobre el snapshot
+ * inmutable de la config (con el header Authorization ya resuelto). El pool
+ * HTTP, el limitador de tasa, el registro de stores/POS y la caché de
+ * idempotencia van por cuenta (MpConfig.accountKey()). Si el archivo cambia,
+ * la próxima llamada arma un core nuevo con el snapshot nuevo.
+ *
+ * I_PATH acepta la ruta del .properties o "tenant:&lt;id&gt;"; el id se busca
+ * entre los registrados y, si no, en mp.tenant.&lt;id&gt;.config de la config
+ * por defecto.
+ */
+public final class MpTenantRegistry {
+
+    public static final String ID_PREFIX = "tenant:";
+
+    private static final MpTenantRegistry SHARED = new MpTenantRegistry();
+
+    private final ConcurrentHashMap<String, Tenant> byTenant = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, String> pathById = new ConcurrentHashMap<>();
+
+    public static MpTenantRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * Core armado para un snapshot de config (el que está vigente para su
+     * tenant).
+     */
+    public static final class Tenant {
+
+        public final MpConfig cfg;
+        public final MpBridgeCore core;
+
+        Tenant(MpConfig cfg, MpBridgeCore core) {
+            this.cfg = cfg;
+            this.core = core;
+        }
+    }
+
+    // ==========================================================
+    // Resolución
+    // ==========================================================
+    /**
+     * Config de un I_PATH: ruta del .properties, "tenant:&lt;id&gt;" o vacío
+     * (defaultPath; si también está vacío, MpConfig.load()).
+     */
+    public MpConfig config(String ref, String defaultPath) {
+        String r = isBlank(ref) ? defaultPath : ref.trim();
+        if (isBlank(r)) {
+            return MpConfig.load();
+        }
+        if (!r.startsWith(ID_PREFIX)) {
+            return MpConfig.forPath(r);
+        }
+        String id = r.substring(ID_PREFIX.length()).trim();
+        String path = pathById.get(id);
+        if (path == null) {
+            MpConfig base = isBlank(defaultPath) || defaultPath.trim().startsWith(ID_PREFIX)
+                    ? MpConfig.load() : MpConfig.forPath(defaultPath);
+            path = base.get("mp.tenant." + id + ".config", "").trim();
+            if (path.isEmpty()) {
+                throw new IllegalArgumentException("Tenant desconocido: " + id);
+            }
+            pathById.putIfAbsent(id, path);
+        }
+        return MpConfig.forPath(path);
+    }
+
+    /**
+     * Core del tenant de cfg: un get en el mapa mientras no cambie el
+     * snapshot.
+     *
+     * @throws IllegalArgumentException si otro archivo ya declaró el mismo
+     * mp.tenant.id
+     */
+    public MpBridgeCore core(MpConfig cfg, Logger logger) {
+        Tenant t = byTenant.get(cfg.tenant());
+        if (t != null && t.cfg == cfg) {
+            return t.core;
+        }
+        boolean[] created = new boolean[1];
+        Tenant[] replaced = new Tenant[1];
+        t = byTenant.compute(cfg.tenant(), (k, old) -> {
+            if (old != null && old.cfg == cfg) {
+                return old;
+            }
+            if (old != null && !old.cfg.source().equals(cfg.source())) {
+                // si no, cada llamada alternada entre los dos archivos armaría un core nuevo
+                throw new IllegalArgumentException("mp.tenant.id " + k + " repetido en " + old.cfg.source()
+                        + " y " + cfg.source());
+            }
+            created[0] = true;
+            replaced[0] = old;
+            return new Tenant(cfg, new MpBridgeCore(cfg, logger));
+        });
+        if (created[0]) {
+            if (replaced[0] != null && !replaced[0].cfg.accountKey().equals(cfg.accountKey())) {
+                closePools(replaced[0].cfg); // cambió el token: el pool viejo ya no lo usa nadie
+            }
+            // Intenciones del journal que quedaron sin respuesta (una vez por archivo)
+            t.core.startJournalReplay();
+        }
+        return t.core;
+    }
+
+    /**
+     * Registra (o reemplaza) el .properties de un id para "tenant:&lt;id&gt;".
+     */
+    public void register(String id, String path) {
+        if (isBlank(id) || isBlank(path)) {
+            throw new IllegalArgumentException("Tenant: falta id o ruta");
+        }
+        String prev = pathById.put(id.trim(), path.trim());
+        if (prev != null && !prev.equals(path.trim())) {
+            // el id se mudó de archivo: no es un duplicado
+            Tenant t = byTenant.remove(id.trim());
+            if (t != null) {
+                closePools(t.cfg);
+            }
+        }
+    }
+
+    /**
+     * Baja de un tenant (clave de MpConfig.tenant(); si es un id registrado
+     * también se olvida su ruta): suelta el core y cierra sus pools HTTP
+     * (sincrónico y async). Las llamadas en curso con ese core pueden fallar.
+     */
+    public boolean remove(String tenant) {
+        pathById.remove(tenant);
+        Tenant t = byTenant.remove(tenant);
+        if (t == null) {
+            return false;
+        }
+        closePools(t.cfg);
+        return true;
+    }
+
+    private static void closePools(MpConfig cfg) {
+        MpHttpTransport.shutdown(cfg);
+        MpHttpAsyncClient.shutdown(cfg);
+    }
+
+    public int size() {
+        return byTenant.size();
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
@@ -0,0 +1,114 @@
+package com.hs.webhook;
+
+import com.hs.config.MpConfig;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Último estado conocido de cada orden, alimentado por los webhooks de MP.
+ *
+ * MpBridgeCore.getOrder ("Q") responde desde acá si la entrada está fresca
+ * (TTL) y solo consulta la API si no hay dato. Las entradas vencidas se
+ * descartan al leerlas y con una purga cuando el mapa crece demasiado.
+ *
+ * Un cache por cuenta (MpConfig.accountKey), con el TTL de su config.
+ */
+public class MpOrderStatusCache {
+
+    private static final ConcurrentHashMap<String, MpOrderStatusCache> BY_ACCOUNT = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Entry> map = new ConcurrentHashMap<>();
+    private volatile long ttlMs;
+    private final int maxEntries;
+
+    public MpOrderStatusCache(long ttlMs, int maxEntries) {
+        this.ttlMs = ttlMs;
+        this.maxEntries = Math.max(100, maxEntries);
+    }
+
+    /**
+     * Cache de la cuenta de cfg (TTL de mp.webhook.cacheTtlSeconds).
+     */
+    public static MpOrderStatusCache forConfig(MpConfig cfg) {
+        MpOrderStatusCache c = BY_ACCOUNT.computeIfAbsent(cfg.accountKey(), k -> new MpOrderStatusCache(600_000L, 50000));
+        c.ttlMs = cfg.getInt("mp.webhook.cacheTtlSeconds", 600) * 1000L;
+        return c;
+    }
+
+    public static class Entry {
+
+        public final String orderId;
+        public final String status;
+        public final String statusDetail;
+        public final String paymentId;
+        public final String paymentStatus;
+        public final long version;
+        public final String rawJson;
+        public final long receivedAt;
+
+        public Entry(String orderId, String status, String statusDetail, String paymentId,
+                String paymentStatus, long version, String rawJson, long receivedAt) {
+            this.orderId = orderId;
+            this.status = status;
+            this.statusDetail = statusDetail;
+            this.paymentId = paymentId;
+            this.paymentStatus = paymentStatus;
+            this.version = version;
+            this.rawJson = rawJson;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * Guarda la notificación salvo que ya haya una de versión mayor (MP puede
+     * entregar fuera de orden).
+     */
+    public void put(Entry e) {
+        if (e == null || e.orderId == null || e.orderId.isEmpty()) {
+            return;
+        }
+        map.merge(e.orderId, e, (old, neu) -> (neu.version >= old.version || isExpired(old)) ? neu : old);
+        if (map.size() > maxEntries) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * Entrada vigente o null.
+     */
+    public Entry getFresh(String orderId) {
+        if (orderId == null) {
+            return null;
+        }
+        Entry e = map.get(orderId);
+        if (e == null) {
+            return null;
+        }
+        if (isExpired(e)) {
+            map.remove(orderId, e);
+            return null;
+        }
+        return e;
+    }
+
+    public void setTtlMs(long ttlMs) {
+        this.ttlMs = ttlMs;
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void purgeExpired() {
+        for (Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator(); it.hasNext();) {
+            if (isExpired(it.next().getValue())) {
+                it.remove();
+            }
+        }
+    }
+
+    private boolean isExpired(Entry e) {
+        return System.currentTimeMillis() - e.receivedAt > ttlMs;
+    }
+}
@@ -0,0 +1,341 @@
+package com.hs.webhook;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.hs.config.MpConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Receptor HTTP embebido para notificaciones (webhooks) de Mercado Pago.
+ *
+ * Cada notificación de tipo "order" actualiza el MpOrderStatusCache de la
+ * cuenta; así el polling "Q" de COBOL se responde en memoria en vez de ir a
+ * la API.
+ *
+ * Properties: mp.webhook.enabled (false), mp.webhook.host (127.0.0.1),
+ * mp.webhook.port (8089), mp.webhook.path (/mp/webhook),
+ * mp.webhook.cacheTtlSeconds (600), mp.webhook.pendingFreshMs (3000),
+ * mp.webhook.retryMs (5000), mp.webhook.secret (obligatoria: valida
+ * x-signature; sin ella el receptor no arranca)
+ */
+public class MpWebhookServer {
+
+    private static final int MAX_BODY = 64 * 1024;
+    private static final Gson GSON = new Gson();
+
+    private static final long RETRY_MS = 5000;
+    private static final long MAX_RETRY_MS = 5 * 60 * 1000L;
+
+    // Un receptor por cuenta (MpConfig.accountKey), cada uno con su cache
+    private static final ConcurrentHashMap<String, MpWebhookServer> BY_ACCOUNT = new ConcurrentHashMap<>();
+
+    private final MpOrderStatusCache cache;
+    private final String secret;
+    private final Logger logger;
+    private volatile HttpServer server;
+    private ExecutorService executor;
+    private volatile long retryAt;    // tras un arranque fallido
+    private volatile boolean disabled; // falta el secret: no se reintenta
+    private int failures;             // bajo el lock del receptor
+
+    public MpWebhookServer(MpOrderStatusCache cache, String secret, Logger logger) {
+        this.cache = cache;
+        this.secret = (secret == null || secret.trim().isEmpty()) ? null : secret.trim();
+        this.logger = logger;
+    }
+
+    /**
+     * Arranca el receptor de la cuenta de cfg si mp.webhook.enabled=true (una
+     * vez por cuenta; cada tenant con su mp.webhook.port/path y su secret).
+     * Sin mp.webhook.secret no arranca: cualquiera que llegue al puerto
+     * podría cargar estados falsos. Si el puerto está ocupado (p.ej. en
+     * TIME_WAIT tras un reinicio) se loguea, se sigue sin webhook y se vuelve
+     * a intentar con backoff (mp.webhook.retryMs = 5 s, 10 s, ... hasta 5 min).
+     */
+    public static void ensureStarted(MpConfig cfg, Logger logger) {
+        if (!cfg.getBoolean("mp.webhook.enabled", false)) {
+            return;
+        }
+        MpOrderStatusCache cache = MpOrderStatusCache.forConfig(cfg);
+        MpWebhookServer s = BY_ACCOUNT.computeIfAbsent(cfg.accountKey(),
+                k -> new MpWebhookServer(cache, cfg.get("mp.webhook.secret", ""), logger));
+        if (s.server == null && !s.disabled && System.currentTimeMillis() >= s.retryAt) {
+            s.tryStart(cfg);
+        }
+    }
+
+    private synchronized void tryStart(MpConfig cfg) {
+        if (server != null || disabled || System.currentTimeMillis() < retryAt) {
+            return;
+        }
+        if (secret == null) {
+            log(logger, Level.WARNING, "Webhook no iniciado (" + cfg.tenant() + "): falta mp.webhook.secret");
+            disabled = true; // falta de config: no reintentar en cada llamada
+            return;
+        }
+        try {
+            start(cfg.get("mp.webhook.host", "127.0.0.1"), cfg.getInt("mp.webhook.port", 8089),
+                    cfg.get("mp.webhook.path", "/mp/webhook"));
+            failures = 0;
+        } catch (Exception e) {
+            stop();
+            long first = Math.max(1, cfg.getInt("mp.webhook.retryMs", (int) RETRY_MS));
+            long backoff = Math.min(MAX_RETRY_MS, first << Math.min(failures++, 6));
+            retryAt = System.currentTimeMillis() + backoff;
+            log(logger, Level.WARNING, "No se pudo iniciar webhook (" + cfg.tenant() + "): " + e.getMessage()
+                    + " (reintento en " + backoff + " ms)");
+        }
+    }
+
+    static boolean running(MpConfig cfg) {
+        MpWebhookServer s = BY_ACCOUNT.get(cfg.accountKey());
+        return s != null && s.server != null;
+    }
+
+    // Para tests: baja todos los receptores y olvida los reintentos
+    static void stopAll() {
+        for (MpWebhookServer s : BY_ACCOUNT.values()) {
+            s.stop();
+        }
+        BY_ACCOUNT.clear();
+    }
+
+    /**
+     * @return puerto efectivo (útil con port=0 en tests)
+     */
+    public int start(String host, int port, String path) throws Exception {
+        server = HttpServer.create(new InetSocketAddress(host, port), 64);
+        server.createContext(path, this::handle);
+        executor = Executors.newFixedThreadPool(2, r -> {
+            Thread t = new Thread(r, "mp-webhook");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.start();
+        int effective = server.getAddress().getPort();
+        log(logger, Level.INFO, "Webhook MP escuchando en " + host + ":" + effective + path);
+        return effective;
+    }
+
+    public void stop() {
+        HttpServer srv = server;
+        server = null;
+        if (srv != null) {
+            srv.stop(0);
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    // ======= HANDLER =======
+    private void handle(HttpExchange ex) {
+        int code = 200;
+        try {
+            if (!"POST".equalsIgnoreCase(ex.getRequestMethod())) {
+                code = 405;
+                return;
+            }
+            String body = readBody(ex.getRequestBody());
+            if (body == null) {
+                code = 413;
+                return;
+            }
+            JsonObject root = GSON.fromJson(body, JsonObject.class);
+            JsonObject data = obj(root == null ? null : root.get("data"));
+            if (data == null) {
+                return; // notificación sin data: se acepta y se ignora
+            }
+
+            String type = str(root, "type");
+            String orderId = str(data, "id");
+            String queryId = queryParam(ex.getRequestURI().getRawQuery(), "data.id");
+
+            if (secret != null && !validSignature(ex, queryId != null ? queryId : orderId)) {
+                code = 401;
+                log(logger, Level.WARNING, "Webhook con firma inválida descartado");
+                return;
+            }
+
+            if (!type.isEmpty() && !"order".equalsIgnoreCase(type)) {
+                return; // por ahora solo órdenes
+            }
+
+            String paymentId = "";
+            String paymentStatus = "";
+            JsonObject tr = obj(data.get("transactions"));
+            JsonArray payments = (tr != null && tr.get("payments") != null && tr.get("payments").isJsonArray())
+                    ? tr.getAsJsonArray("payments") : null;
+            if (payments != null && payments.size() > 0) {
+                JsonObject p0 = obj(payments.get(0));
+                paymentId = str(p0, "id");
+                paymentStatus = str(p0, "status");
+            }
+
+            long version = 0;
+            try {
+                version = Long.parseLong(str(data, "version"));
+            } catch (Exception ignored) {
+            }
+
+            cache.put(new MpOrderStatusCache.Entry(orderId, str(data, "status"), str(data, "status_detail"),
+                    paymentId, paymentStatus, version, data.toString(), System.currentTimeMillis()));
+
+            log(logger, Level.INFO, "Webhook order " + orderId + " status=" + str(data, "status"));
+
+        } catch (Exception e) {
+            code = 400;
+            log(logger, Level.WARNING, "Webhook inválido: " + e.getMessage());
+        } finally {
+            reply(ex, code);
+        }
+    }
+
+    /**
+     * x-signature: "ts=...,v1=..." con HMAC-SHA256 de
+     * "id:{data.id};request-id:{x-request-id};ts:{ts};"
+     */
+    private boolean validSignature(HttpExchange ex, String dataId) {
+        try {
+            String sig = ex.getRequestHeaders().getFirst("x-signature");
+            String requestId = ex.getRequestHeaders().getFirst("x-request-id");
+            if (sig == null) {
+                return false;
+            }
+            String ts = null;
+            String v1 = null;
+            for (String part : sig.split(",")) {
+                String[] kv = part.trim().split("=", 2);
+                if (kv.length == 2 && "ts".equals(kv[0])) {
+                    ts = kv[1];
+                } else if (kv.length == 2 && "v1".equals(kv[0])) {
+                    v1 = kv[1];
+                }
+            }
+            if (ts == null || v1 == null) {
+                return false;
+            }
+            StringBuilder manifest = new StringBuilder();
+            if (dataId != null && !dataId.isEmpty()) {
+                manifest.append("id:").append(dataId.toLowerCase()).append(';');
+            }
+            if (requestId != null && !requestId.isEmpty()) {
+                manifest.append("request-id:").append(requestId).append(';');
+            }
+            manifest.append("ts:").append(ts).append(';');
+
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            byte[] h = mac.doFinal(manifest.toString().getBytes(StandardCharsets.UTF_8));
+            byte[] given = unhex(v1);
+            // tiempo constante: no revelar cuántos bytes del v1 coinciden
+            return given != null && MessageDigest.isEqual(h, given);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    // null si no es hex válido
+    private static byte[] unhex(String s) {
+        if (s.length() % 2 != 0) {
+            return null;
+        }
+        byte[] b = new byte[s.length() / 2];
+        for (int i = 0; i < b.length; i++) {
+            int hi = Character.digit(s.charAt(2 * i), 16);
+            int lo = Character.digit(s.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) {
+                return null;
+            }
+            b[i] = (byte) ((hi << 4) | lo);
+        }
+        return b;
+    }
+
+    private static String readBody(InputStream in) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(2048);
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            if (out.size() + n > MAX_BODY) {
+                return null;
+            }
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void reply(HttpExchange ex, int code) {
+        try {
+            ex.sendResponseHeaders(code, -1);
+        } catch (Exception ignored) {
+        } finally {
+            try {
+                OutputStream os = ex.getResponseBody();
+                os.close();
+            } catch (Exception ignored) {
+            }
+            ex.close();
+        }
+    }
+
+    private static String queryParam(String rawQuery, String name) {
+        if (rawQuery == null) {
+            return null;
+        }
+        try {
+            for (String kv : rawQuery.split("&")) {
+                int i = kv.indexOf('=');
+                if (i > 0 && name.equals(URLDecoder.decode(kv.substring(0, i), "UTF-8"))) {
+                    return URLDecoder.decode(kv.substring(i + 1), "UTF-8");
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        return null;
+    }
+
+    private static JsonObject obj(JsonElement e) {
+        return (e != null && e.isJsonObject()) ? e.getAsJsonObject() : null;
+    }
+
+    private static String str(JsonObject o, String k) {
+        try {
+            if (o == null) {
+                return "";
+            }
+            JsonElement e = o.get(k);
+            return (e == null || e.isJsonNull()) ? "" : e.getAsString();
+        } catch (Exception ex) {
+            return "";
+        }
+    }
+
+    private static void log(Logger logger, Level level, String msg) {
+        try {
+            if (logger != null) {
+                logger.log(level, msg);
+            }
+        } catch (Exception ignored) {
+        }
+    }
+}
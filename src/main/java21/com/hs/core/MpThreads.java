@@ -0,0 +1,23 @@
+package com.hs.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Variante Java 21+ (META-INF/versions/21 del jar): un hilo virtual por
+ * tarea. Los hilos bloqueados en I/O de MpHttp liberan su carrier, así que
+ * miles de llamadas en vuelo cuestan memoria de stack, no hilos del SO.
+ */
+final class MpThreads {
+
+    private MpThreads() {
+    }
+
+    static boolean virtualSupported() {
+        return true;
+    }
+
+    static ExecutorService newVirtualPerTask(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix, 1).factory());
+    }
+}
@@ -0,0 +1,151 @@
+package com.hs.admin;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hs.MpQrService;
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.StoreIn;
+import com.hs.load.MpFakeServer;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.util.Properties;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Batch JSON-lines contra el servidor falso: acciones mezcladas en paralelo,
+ * salida en el orden de entrada y líneas rotas como ERROR.
+ */
+public class MpBatchTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 5;
+        server.options.latencySigma = 1.0; // que terminen desordenadas
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private MpBridgeCore core(String token) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        return new MpBridgeCore(MpConfig.fromProperties(p), Logger.getLogger("test"));
+    }
+
+    private MpQrService service(String token) {
+        return new MpQrService(core(token), Logger.getLogger("test"));
+    }
+
+    private static JsonObject[] parse(String out) {
+        String[] lines = out.split("\n");
+        JsonObject[] r = new JsonObject[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            r[i] = JsonParser.parseString(lines[i]).getAsJsonObject();
+        }
+        return r;
+    }
+
+    @Test
+    void runsMixedActionsInParallelKeepingInputOrder() throws Exception {
+        MpQrService service = service("TEST-batch-1");
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            in.append("{\"seq\":\"S").append(i).append("\",\"action\":\"CREATE_ORDER\",\"input\":{")
+                    .append("\"external_reference\":\"BATCH-").append(i).append("\",\"description\":\"Café\",")
+                    .append("\"config\":{\"qr\":{\"external_pos_id\":\"CAJA1\"}},\"total_amount\":\"10.00\"}}\n");
+        }
+        StringWriter out = new StringWriter();
+        MpBatch.Report r = new MpBatch(service, 8).run(new StringReader(in.toString()), out);
+
+        assertEquals(60, r.lines);
+        assertEquals(60, r.ok.get(), r.toString());
+        JsonObject[] created = parse(out.toString());
+        assertEquals(60, created.length);
+        StringBuilder next = new StringBuilder();
+        for (int i = 0; i < 60; i++) {
+            assertEquals("S" + i, created[i].get("seq").getAsString());
+            JsonObject data = created[i].getAsJsonObject("data");
+            assertEquals("BATCH-" + i, data.get("external_reference").getAsString());
+            String id = data.get("order_id").getAsString();
+            // flat: GET / CANCEL alternados, sin seq (toma el número de línea)
+            next.append("{\"action\":\"").append(i % 2 == 0 ? "GET_ORDER" : "CANCEL_ORDER")
+                    .append("\",\"order_id\":\"").append(id).append("\"}\n");
+        }
+
+        out = new StringWriter();
+        r = new MpBatch(service, 8).run(new StringReader(next.toString()), out);
+        assertEquals(60, r.ok.get(), r.toString());
+        JsonObject[] second = parse(out.toString());
+        for (int i = 0; i < 60; i++) {
+            assertEquals(String.valueOf(i + 1), second[i].get("seq").getAsString());
+            assertEquals(created[i].getAsJsonObject("data").get("order_id"),
+                    second[i].getAsJsonObject("data").get("order_id"));
+            if (i % 2 == 1) {
+                assertEquals("cancelled", second[i].getAsJsonObject("data").get("status").getAsString());
+            }
+        }
+    }
+
+    @Test
+    void brokenLinesAndUnknownActionsAreErrorsInPlace() throws Exception {
+        MpQrService service = service("TEST-batch-2");
+        String in = "{\"action\":\"SEARCH_STORES\",\"limit\":5}\n"
+                + "\n"
+                + "esto no es json\n"
+                + "{\"action\":\"NOPE\"}\n"
+                + "[1,2]\n"
+                + "{\"action\":\"GET_ORDER\",\"order_id\":\"ORD-NO-EXISTE\"}\n";
+        StringWriter out = new StringWriter();
+        MpBatch.Report r = new MpBatch(service, 4).run(new StringReader(in), out);
+
+        assertEquals(5, r.lines);
+        assertEquals(1, r.ok.get(), r.toString());
+        assertEquals(4, r.failed.get(), r.toString());
+        JsonObject[] lines = parse(out.toString());
+        assertEquals(5, lines.length);
+        assertEquals("OK", lines[0].get("status").getAsString());
+        assertEquals("2", lines[1].get("seq").getAsString());
+        assertTrue(lines[1].get("message").getAsString().contains("inválida"));
+        assertTrue(lines[2].get("message").getAsString().contains("no soportada"));
+        assertEquals("ERROR", lines[3].get("status").getAsString());
+        assertEquals("GET_ORDER", lines[4].get("action").getAsString());
+        assertNotEquals(0, lines[4].getAsJsonObject("data").get("res").getAsInt());
+    }
+
+    @Test
+    void lookupsAboveThePoolSizeDoNotStarveIt() throws Exception {
+        MpBridgeCore core = core("TEST-batch-3");
+        StringBuilder in = new StringBuilder();
+        for (int i = 0; i < 120; i++) {
+            StoreIn s = new StoreIn();
+            s.name = "Sucursal " + i;
+            s.externalId = "BSUC" + i;
+            assertEquals(0, core.createStore(s).res);
+            in.append("{\"action\":\"LOOKUP\",\"store_external_id\":\"BSUC").append(i).append("\"}\n");
+        }
+        MpQrService service = new MpQrService(core, Logger.getLogger("test"));
+        StringWriter out = new StringWriter();
+
+        // la primera búsqueda sincroniza el registro (paginado en fanOut)
+        MpBatch.Report r = assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> new MpBatch(service, 64).run(new StringReader(in.toString()), out));
+        assertEquals(120, r.ok.get(), r.toString());
+    }
+}
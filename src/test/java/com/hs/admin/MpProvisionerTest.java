@@ -0,0 +1,152 @@
+package com.hs.admin;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.core.MpExecutors;
+import com.hs.dto.MpResult;
+import com.hs.dto.StoreIn;
+import com.hs.load.MpFakeServer;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Alta masiva desde CSV contra el servidor falso: POS enganchados a su
+ * store, 409 como hecho y reanudación desde el CSV de resultado.
+ */
+public class MpProvisionerTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 1;
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private MpBridgeCore core(String token) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        return new MpBridgeCore(MpConfig.fromProperties(p), Logger.getLogger("test"));
+    }
+
+    private static File csv(int stores) throws Exception {
+        StringBuilder sb = new StringBuilder("type;external_id;name;store_external_id;city\n");
+        for (int i = 0; i < stores; i++) {
+            sb.append("STORE;SUC").append(i).append(";\"Sucursal ").append(i).append("\";;Córdoba\n");
+            for (int j = 0; j < 3; j++) {
+                sb.append("POS;SUC").append(i).append("POS").append(j).append(";Caja ").append(j)
+                        .append(";SUC").append(i).append(";\n");
+            }
+        }
+        sb.append("POS;VIEJAPOS1;Caja vieja;VIEJA;\n"); // store que ya estaba en MP
+        File f = File.createTempFile("mp-alta", ".csv");
+        Files.write(f.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    @Test
+    void provisionsStoresAndPosWiringStoreIds() throws Exception {
+        MpBridgeCore core = core("TEST-prov-1");
+        StoreIn old = new StoreIn();
+        old.name = "Vieja";
+        old.externalId = "VIEJA";
+        String oldId = core.createStore(old).id;
+        StoreIn dup = new StoreIn();
+        dup.name = "Sucursal 3";
+        dup.externalId = "SUC3";
+        assertEquals(0, core.createStore(dup).res);
+
+        File in = csv(20);
+        File out = new File(in.getPath() + ".out");
+        MpProvisioner.Report r = new MpProvisioner(core, 8).run(in, out);
+
+        assertEquals(19 + 60 + 1, r.ok.get(), r.toString());
+        assertEquals(1, r.exists.get(), "SUC3 ya existía (409)");
+        assertEquals(0, r.failed.get() + r.skipped.get(), r.toString());
+
+        Map<String, String> done = MpProvisioner.checkpoint(out);
+        assertEquals(20 + 60 + 1, done.size());
+        String suc3 = done.get("STORE|SUC3");
+        for (String line : Files.readAllLines(out.toPath(), StandardCharsets.UTF_8)) {
+            assertFalse(line.contains("ERROR"), line);
+        }
+        MpResult pos = core.lookupPos("SUC3POS2");
+        assertTrue(pos.rawJson().contains("\"store_id\":\"" + suc3 + "\""), pos.rawJson());
+        assertTrue(core.lookupPos("VIEJAPOS1").rawJson().contains("\"store_id\":\"" + oldId + "\""));
+    }
+
+    @Test
+    void resumesFromResultFileWithoutDuplicates() throws Exception {
+        MpBridgeCore core = core("TEST-prov-2");
+        StoreIn old = new StoreIn();
+        old.name = "Vieja";
+        old.externalId = "VIEJA";
+        assertEquals(0, core.createStore(old).res);
+        File in = csv(15);
+        File out = new File(in.getPath() + ".out");
+
+        server.options.errorRate = 0.3;
+        MpProvisioner.Report first = new MpProvisioner(core, 4).run(in, out);
+        assertTrue(first.failed.get() + first.skipped.get() > 0, first.toString());
+        int firstDone = first.ok.get() + first.exists.get();
+
+        server.options.errorRate = 0;
+        MpProvisioner.Report second = new MpProvisioner(core, 4).run(in, out);
+        assertEquals(firstDone, second.resumed, second.toString());
+        assertEquals(0, second.failed.get() + second.skipped.get(), second.toString());
+        assertEquals(15 + 45 + 1, MpProvisioner.checkpoint(out).size());
+
+        List<String> lines = Files.readAllLines(out.toPath(), StandardCharsets.UTF_8);
+        assertEquals(MpProvisioner.OUT_HEADER, lines.get(0));
+    }
+
+    @Test
+    void manyPosOfExistingStoresDoNotStarveThePool() throws Exception {
+        MpBridgeCore core = core("TEST-prov-3");
+        List<Integer> idx = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            idx.add(i);
+        }
+        MpExecutors.parallel(idx, 16, i -> {
+            StoreIn s = new StoreIn();
+            s.name = "Existente " + i;
+            s.externalId = "EX" + i;
+            assertEquals(0, core.createStore(s).res);
+            return i;
+        });
+        StringBuilder sb = new StringBuilder("type,external_id,name,store_external_id\n");
+        for (int i = 0; i < 300; i++) {
+            sb.append("POS,EX").append(i).append("POS,Caja,EX").append(i).append('\n');
+        }
+        File in = File.createTempFile("mp-alta", ".csv");
+        Files.write(in.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        File out = new File(in.getPath() + ".out");
+
+        // cada fila busca su store en el registro desde una tarea del pool
+        MpProvisioner.Report r = assertTimeoutPreemptively(Duration.ofSeconds(60),
+                () -> new MpProvisioner(core, 8).run(in, out));
+        assertEquals(300, r.ok.get(), r.toString());
+    }
+}
@@ -0,0 +1,61 @@
+package com.hs.config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Cache de snapshots por ruta (forPath) y detección de cambios.
+ */
+public class MpConfigTest {
+
+    @Test
+    void forPath_returnsSameSnapshotUntilFileChanges() throws Exception {
+        File f = File.createTempFile("mpcfg", ".properties");
+        f.deleteOnExit();
+        write(f, "mp.etapa=test\nmp.accessTokenTest=TOK-1\nmp.config.recheckSeconds=0\n");
+
+        MpConfig a = MpConfig.forPath(f.getPath());
+        MpConfig b = MpConfig.forPath(f.getPath());
+        assertSame(a, b);
+        assertEquals("Bearer TOK-1", a.authorizationHeader());
+
+        // Mismo archivo por otra ruta -> misma entrada (clave canónica)
+        MpConfig c = MpConfig.forPath(f.getParent() + File.separator + "." + File.separator + f.getName());
+        assertSame(a, c);
+
+        write(f, "mp.etapa=test\nmp.accessTokenTest=TOK-22\nmp.config.recheckSeconds=0\n");
+        f.setLastModified(f.lastModified() + 2000);
+
+        MpConfig d = MpConfig.forPath(f.getPath());
+        assertNotSame(a, d);
+        assertEquals("Bearer TOK-22", d.authorizationHeader());
+        assertEquals("Bearer TOK-1", a.authorizationHeader()); // el snapshot viejo no cambia
+    }
+
+    @Test
+    void endpointTemplatesAndTimeoutOverrides() throws Exception {
+        File f = File.createTempFile("mpcfg", ".properties");
+        f.deleteOnExit();
+        write(f, "mp.endpoint.getOrder=/v1/orders/%s\nmp.timeout.socket=20000\nmp.timeout.socket.getOrder=3000\n");
+
+        MpConfig cfg = MpConfig.forPath(f.getPath());
+        assertEquals("/v1/orders/%s", cfg.endpoint("getOrder", "x"));
+        assertEquals("/pos", cfg.endpoint("searchPos", "/pos"));
+        assertEquals(3000, cfg.socketTimeoutMs("getOrder"));
+        assertEquals(20000, cfg.socketTimeoutMs("createOrder"));
+        assertThrows(IllegalStateException.class, cfg::accessToken);
+    }
+
+    private static void write(File f, String content) throws Exception {
+        try (Writer w = new OutputStreamWriter(new FileOutputStream(f), StandardCharsets.ISO_8859_1)) {
+            w.write(content);
+        }
+        assertTrue(Files.size(f.toPath()) > 0);
+    }
+}
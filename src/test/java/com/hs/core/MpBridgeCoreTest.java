@@ -3,6 +3,8 @@ package com.hs.core;
 import com.hs.config.MpConfig;
 import com.hs.dto.*;
 import com.hs.http.MpHttp;
+import java.time.Duration;
+import java.util.Properties;
 import java.util.logging.Logger;
 import static org.junit.jupiter.api.Assertions.*;
 import org.junit.jupiter.api.Test;
@@ -92,4 +94,93 @@ public class MpBridgeCoreTest {
 //        assertEquals(0, r.res);
 //        verify(http, times(1)).get(contains("external_id="));
 //    }
+
+    @Test
+    void awaitOrder_pollsUntilTerminalStatus() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("mp.await.initialMs", "50");
+        p.setProperty("mp.await.maxIntervalMs", "100");
+
+        MpHttp http = mock(MpHttp.class);
+        when(http.get(eq("getOrder"), eq("/v1/orders/ORD1")))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD1\",\"status\":\"created\"}"))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD1\",\"status\":\"action_required\"}"))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD1\",\"status\":\"processed\","
+                        + "\"transactions\":{\"payments\":[{\"id\":\"PAY1\",\"status\":\"processed\"}]}}"));
+
+        MpBridgeCore core = new MpBridgeCore(MpConfig.fromProperties(p), http);
+        MpResult r = core.awaitOrder("ORD1", 5000);
+
+        assertEquals(0, r.res);
+        assertEquals("processed", r.status);
+        assertEquals("PAY1", r.paymentId);
+        verify(http, times(3)).get(eq("getOrder"), anyString());
+    }
+
+    @Test
+    void awaitOrder_returnsCode3WhenDeadlinePasses() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("mp.await.initialMs", "50");
+
+        MpHttp http = mock(MpHttp.class);
+        when(http.get(eq("getOrder"), anyString()))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD2\",\"status\":\"created\"}"));
+
+        MpBridgeCore core = new MpBridgeCore(MpConfig.fromProperties(p), http);
+        MpResult r = core.awaitOrder("ORD2", 300);
+
+        assertEquals(3, r.res);
+        assertEquals("created", r.status);
+    }
+
+    @Test
+    void awaitOrder_callerWaitIsClampedToLimit() throws Exception {
+        Properties p = new Properties();
+        p.setProperty("mp.await.initialMs", "50");
+        p.setProperty("mp.await.limitMs", "300");
+
+        MpHttp http = mock(MpHttp.class);
+        when(http.get(eq("getOrder"), anyString()))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD3\",\"status\":\"created\"}"));
+
+        MpBridgeCore core = new MpBridgeCore(MpConfig.fromProperties(p), http);
+        MpResult r = assertTimeoutPreemptively(Duration.ofSeconds(5),
+                () -> core.awaitOrder("ORD3", 3_600_000));
+
+        assertEquals(3, r.res);
+    }
+
+    @Test
+    void asyncVariants_shareParsingWithSyncPath() throws Exception {
+        MpHttp http = mock(MpHttp.class);
+        when(http.postJson(eq("createOrder"), eq("/v1/orders"), anyString(), eq("IDEM-A")))
+                .thenReturn(new MpHttp.MpHttpResponse(201, "{\"id\":\"ORD9\",\"status\":\"created\","
+                        + "\"type_response\":{\"qr_data\":\"000201ABC\"}}"));
+        when(http.get(eq("getOrder"), eq("/v1/orders/ORD9")))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD9\",\"status\":\"processed\"}"));
+
+        MpBridgeCore core = new MpBridgeCore(MpConfig.fromProperties(new Properties()), http);
+
+        OrderIn in = new OrderIn();
+        in.externalReference = "REF-A";
+        in.externalPosId = "POS-A";
+        in.totalAmount = "10.00";
+        in.idempotencyKey = "IDEM-A";
+
+        MpResult created = core.createOrderAsync(in).get();
+        assertEquals(0, created.res);
+        assertEquals("ORD9", created.id);
+        assertEquals("000201ABC", created.qrData);
+
+        // cancel async: valida status (processed) y no llega a postear
+        MpResult cancel = core.cancelOrderAsync("ORD9", null).get();
+        assertEquals(2, cancel.res);
+        verify(http, never()).postJson(eq("cancelOrder"), anyString(), anyString(), anyString());
+
+        // error técnico -> res=4 igual que el camino sincrónico
+        when(http.get(eq("getOrder"), eq("/v1/orders/BAD"))).thenThrow(new java.io.IOException("reset"));
+        MpResult bad = core.getOrderAsync("BAD").get();
+        assertEquals(4, bad.res);
+        assertTrue(bad.msg.contains("reset"));
+    }
 }
@@ -0,0 +1,72 @@
+package com.hs.core;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * parallel(): orden de resultados, corte ante error y parallel() anidado
+ * sobre un pool chico sin quedarse sin hilos.
+ */
+public class MpExecutorsTest {
+
+    private static List<Integer> range(int n) {
+        List<Integer> l = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            l.add(i);
+        }
+        return l;
+    }
+
+    @Test
+    void nestedParallelOnASaturatedPoolCompletes() {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            List<Integer> sums = assertTimeoutPreemptively(Duration.ofSeconds(20),
+                    () -> MpExecutors.parallel(range(8), 8, i -> {
+                        // cada tarea externa hace su propio abanico en el mismo pool
+                        List<Integer> inner = MpExecutors.parallel(range(10), 4, j -> {
+                            sleep(2);
+                            return i * 100 + j;
+                        }, pool);
+                        return inner.stream().mapToInt(Integer::intValue).sum();
+                    }, pool));
+            for (int i = 0; i < 8; i++) {
+                assertEquals(i * 1000 + 45, (int) sums.get(i));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void firstFailureStopsAndIsRethrown() {
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            CompletionException e = assertThrows(CompletionException.class,
+                    () -> MpExecutors.parallel(range(100), 4, i -> {
+                        if (i == 3) {
+                            throw new IllegalStateException("falla " + i);
+                        }
+                        sleep(1);
+                        return i;
+                    }, pool));
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.hs.core;
+
+import com.hs.config.MpConfig;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.http.MpHttp;
+import java.io.File;
+import java.net.SocketTimeoutException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Caché de resultados por acción + clave de idempotencia.
+ */
+public class MpResultCacheTest {
+
+    private static final String CREATED = "{\"id\":\"ORD-1\",\"status\":\"created\"}";
+
+    private static MpConfig cfg(String token) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        return MpConfig.fromProperties(p);
+    }
+
+    private static OrderIn order(String ref) {
+        OrderIn in = new OrderIn();
+        in.externalReference = ref;
+        in.externalPosId = "POS-1";
+        in.totalAmount = "10.00";
+        return in;
+    }
+
+    @Test
+    void repeatedCreateIsServedLocally() throws Exception {
+        MpHttp http = mock(MpHttp.class);
+        when(http.postJson(eq("createOrder"), anyString(), anyString(), anyString()))
+                .thenReturn(new MpHttp.MpHttpResponse(201, CREATED));
+        MpBridgeCore core = new MpBridgeCore(cfg("TEST-idem-1"), http);
+
+        MpResult first = core.createOrder(order("REF-1"));
+        first.msg = "modificado por el llamador";
+        MpResult again = core.createOrder(order("REF-1"));
+
+        assertEquals(0, again.res);
+        assertEquals("ORD-1", again.id);
+        assertEquals("OK", again.msg);
+        assertEquals(0, again.attempts, "no salió a la red");
+        verify(http, times(1)).postJson(eq("createOrder"), anyString(), anyString(), eq("REF-1"));
+
+        // otra clave u otro token: llamada nueva
+        core.createOrder(order("REF-2"));
+        new MpBridgeCore(cfg("TEST-idem-1b"), http).createOrder(order("REF-1"));
+        verify(http, times(3)).postJson(eq("createOrder"), anyString(), anyString(), anyString());
+    }
+
+    @Test
+    void oneCachePerAccount() {
+        MpResultCache a = MpResultCache.forConfig(cfg("TEST-idem-cuenta-a"));
+        assertSame(a, MpResultCache.forConfig(cfg("TEST-idem-cuenta-a")));
+        assertNotSame(a, MpResultCache.forConfig(cfg("TEST-idem-cuenta-b")), "mismo tenant, otro token");
+        assertTrue(MpResultCache.totalStats().contains("accounts="));
+    }
+
+    @Test
+    void inFlightDuplicatesWaitForTheFirstCall() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        MpHttp http = mock(MpHttp.class);
+        when(http.postJson(eq("createOrder"), anyString(), anyString(), anyString())).thenAnswer(inv -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new MpHttp.MpHttpResponse(201, CREATED);
+        });
+        MpBridgeCore core = new MpBridgeCore(cfg("TEST-idem-2"), http);
+
+        CompletableFuture<MpResult> a = CompletableFuture.supplyAsync(() -> core.createOrder(order("REF-W")));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<MpResult> b = CompletableFuture.supplyAsync(() -> core.createOrder(order("REF-W")));
+        CompletableFuture<MpResult> c = core.createOrderAsync(order("REF-W"));
+        Thread.sleep(100);
+        assertFalse(b.isDone() || c.isDone(), "los duplicados esperan a la primera");
+        release.countDown();
+
+        assertEquals("ORD-1", a.get(5, TimeUnit.SECONDS).id);
+        assertEquals("ORD-1", b.get(5, TimeUnit.SECONDS).id);
+        assertEquals("ORD-1", c.get(5, TimeUnit.SECONDS).id);
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void onlyFinalOutcomesAreKept() throws Exception {
+        MpHttp http = mock(MpHttp.class);
+        // error técnico: no se guarda
+        when(http.postJson(eq("createOrder"), anyString(), anyString(), eq("REF-E")))
+                .thenThrow(new SocketTimeoutException("Read timed out"))
+                .thenReturn(new MpHttp.MpHttpResponse(201, CREATED));
+        // cancel: primero no cancelable (rechazo local), después 409 de MP (se guarda)
+        when(http.get(eq("getOrder"), eq("/v1/orders/O-9")))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"O-9\",\"status\":\"processed\"}"))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"O-9\",\"status\":\"created\"}"));
+        when(http.postJson(eq("cancelOrder"), anyString(), anyString(), eq("O-9")))
+                .thenReturn(new MpHttp.MpHttpResponse(409, "{\"code\":\"cannot_cancel_order\"}"));
+        MpBridgeCore core = new MpBridgeCore(cfg("TEST-idem-3"), http);
+
+        assertEquals(4, core.createOrder(order("REF-E")).res);
+        assertEquals(0, core.createOrder(order("REF-E")).res);
+
+        assertEquals(2, core.cancelOrder("O-9", null).res); // local: processed
+        assertEquals(2, core.cancelOrder("O-9", null).res); // MP 409
+        MpResult cached = core.cancelOrder("O-9", null);
+        assertEquals(2, cached.res);
+        assertEquals(0, cached.attempts);
+        verify(http, times(2)).get(eq("getOrder"), eq("/v1/orders/O-9"));
+        verify(http, times(1)).postJson(eq("cancelOrder"), anyString(), anyString(), eq("O-9"));
+    }
+
+    @Test
+    void ttlSizeAndPersistence() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        MpResultCache c = new MpResultCache(100, 10, 1000);
+        c.execute("k", () -> ok(calls));
+        c.execute("k", () -> ok(calls));
+        assertEquals(1, calls.get());
+        Thread.sleep(150);
+        c.execute("k", () -> ok(calls));
+        assertEquals(2, calls.get(), "vencida por TTL");
+
+        MpResultCache big = new MpResultCache(60000, 10, 1000);
+        for (int i = 0; i < 50; i++) {
+            big.execute("k" + i, () -> ok(calls));
+        }
+        assertTrue(big.size() <= 11, "size=" + big.size());
+
+        File f = File.createTempFile("mp-idem", ".jsonl");
+        big.save(f);
+        MpResultCache loaded = new MpResultCache(60000, 10, 1000);
+        loaded.load(f);
+        assertEquals(big.size(), loaded.size());
+        int before = calls.get();
+        MpResult r = loaded.execute("k49", () -> ok(calls));
+        assertEquals("ORD-1", r.id);
+        assertEquals(before, calls.get(), "sale del archivo");
+        f.delete();
+    }
+
+    private static MpResult ok(AtomicInteger calls) {
+        calls.incrementAndGet();
+        MpResult r = MpResult.ok();
+        r.id = "ORD-1";
+        r.attempts = 1;
+        return r;
+    }
+}
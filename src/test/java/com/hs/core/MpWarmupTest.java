@@ -0,0 +1,93 @@
+package com.hs.core;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.hs.config.MpConfig;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.http.MpHttpTransport;
+import com.hs.load.MpFakeServer;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Warm-up (WU): conexiones abiertas sin mandar requests a MP y reporte de
+ * tiempos; host que no resuelve = res 4 y un preconnect fallido no deja
+ * conexiones tomadas.
+ */
+public class MpWarmupTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 1;
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private static MpConfig cfg(String token, String baseUrl) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", baseUrl);
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        p.setProperty("mp.warmup.connections", "3");
+        p.setProperty("mp.warmup.rounds", "200");
+        return MpConfig.fromProperties(p);
+    }
+
+    @Test
+    void opensPooledConnectionsWithoutCallingMp() {
+        MpBridgeCore core = new MpBridgeCore(cfg("TEST-warm-1", server.baseUrl()), Logger.getLogger("test"));
+        MpResult r = core.warmUp();
+
+        assertEquals(0, r.res, r.msg);
+        assertTrue(r.msg.startsWith("Warm-up OK en "), r.msg);
+        JsonObject report = JsonParser.parseString(r.rawJson()).getAsJsonObject();
+        assertEquals(3, report.get("connections").getAsInt());
+        assertEquals(200, report.get("rounds").getAsInt());
+        assertTrue(report.get("classes").getAsInt() > 10, r.rawJson());
+        assertEquals(0, server.requests(), "el warm-up no manda requests");
+
+        // La primera venta sale por el pool ya abierto
+        OrderIn in = new OrderIn();
+        in.externalReference = "WARM-SALE-1";
+        in.externalPosId = "POS1";
+        in.totalAmount = "10.00";
+        in.description = "Venta";
+        assertEquals(0, core.createOrder(in).res);
+        assertEquals(1, server.requests());
+    }
+
+    @Test
+    void unresolvableHostIsReportedAsTechnicalError() {
+        MpResult r = MpWarmup.run(cfg("TEST-warm-2", "http://mp-warmup.invalid"), null);
+        assertEquals(4, r.res);
+        assertTrue(r.msg.contains("DNS mp-warmup.invalid"), r.msg);
+        assertEquals(0, JsonParser.parseString(r.rawJson()).getAsJsonObject().get("connections").getAsInt());
+    }
+
+    @Test
+    void failedPreconnectReturnsLeasedConnectionsToThePool() {
+        MpHttpTransport t = MpHttpTransport.forConfig(cfg("TEST-warm-leak", server.baseUrl()));
+        Executor rejecting = r -> {
+            throw new RejectedExecutionException("apagado");
+        };
+        assertThrows(RejectedExecutionException.class, () -> t.preconnect(server.baseUrl(), 3, 1000, rejecting));
+        assertEquals(0, t.stats().getLeased(), "ninguna conexión queda tomada");
+    }
+}
@@ -0,0 +1,238 @@
+package com.hs.daemon;
+
+import com.hs.bridge.MpBridgeActions;
+import com.hs.config.MpConfig;
+import com.hs.load.MpFakeServer;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Daemon: varias "cajas" (clientes) contra un solo core por loopback, frames
+ * del protocolo, handshake con secreto, argv[10] restringido y daemon caído
+ * = Unavailable (sin enviar el pedido); conexión del pool cortada antes de
+ * responder = un reintento con conexión nueva.
+ */
+public class MpDaemonTest {
+
+    private MpFakeServer server;
+    private MpDaemon daemon;
+    private File props;
+    private File secretFile;
+    private int port;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 1;
+        server.start();
+
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-daemon-1");
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        p.setProperty("mp.journal.enabled", "false");
+        secretFile = secret("s3cr3t-de-las-cajas");
+        p.setProperty("mp.daemon.secretFile", secretFile.getPath());
+        props = File.createTempFile("mp-daemon", ".properties");
+        try (OutputStream os = new FileOutputStream(props)) {
+            p.store(os, null);
+        }
+        MpConfig cfg = MpConfig.forPath(props.getPath());
+        daemon = new MpDaemon(cfg, props.getPath(), Logger.getLogger("test"));
+        port = daemon.start(new InetSocketAddress("127.0.0.1", 0));
+    }
+
+    @AfterEach
+    void stop() {
+        daemon.stop();
+        server.stop();
+        props.delete();
+        secretFile.delete();
+    }
+
+    // archivo solo legible por el dueño (Files.createTempFile ya lo crea 600 en POSIX)
+    private static File secret(String value) throws IOException {
+        File f = Files.createTempFile("mp-daemon", ".secret").toFile();
+        Files.write(f.toPath(), value.getBytes(StandardCharsets.UTF_8));
+        return f;
+    }
+
+    private static String[] order(String ref) {
+        String[] in = new String[MpBridgeActions.IN_FIELDS];
+        Arrays.fill(in, "");
+        in[MpBridgeActions.I_ACCION] = "O";
+        in[MpBridgeActions.I_EXT_REF] = ref;
+        in[MpBridgeActions.I_DESC] = "Café con leche";
+        in[MpBridgeActions.I_EXT_POS] = "CAJA1";
+        in[MpBridgeActions.I_TOTAL] = "1500.00";
+        return in;
+    }
+
+    private MpDaemonClient client() {
+        return client("s3cr3t-de-las-cajas");
+    }
+
+    private MpDaemonClient client(String secret) {
+        return new MpDaemonClient(new InetSocketAddress("127.0.0.1", port), 500, 10000, 1 << 20,
+                secret.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void servesManyRegistersOverOneCore() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        List<Future<String[]>> calls = new ArrayList<>();
+        List<MpDaemonClient> registers = new ArrayList<>();
+        for (int c = 0; c < 4; c++) {
+            MpDaemonClient reg = client();
+            registers.add(reg);
+            for (int i = 0; i < 20; i++) {
+                String ref = "DMN-" + c + "-" + i;
+                calls.add(pool.submit(() -> reg.call(order(ref))));
+            }
+        }
+        for (Future<String[]> f : calls) {
+            String[] out = f.get();
+            assertEquals(MpBridgeActions.OUT_FIELDS, out.length);
+            assertEquals("0", out[0], out[1]);
+            assertFalse(out[2].isEmpty(), "order_id");
+            assertFalse(out[3].isEmpty(), "qr_data");
+        }
+        pool.shutdown();
+        assertEquals(80, server.requests());
+
+        String[] bad = order("X");
+        bad[MpBridgeActions.I_ACCION] = "ZZ";
+        String[] out = registers.get(0).call(bad);
+        assertEquals("8", out[0]);
+        assertEquals(80, server.requests());
+        registers.forEach(MpDaemonClient::close);
+    }
+
+    @Test
+    void framesCarryLargeUtf8FieldsAndRejectOversized() throws Exception {
+        char[] big = new char[200_000];
+        Arrays.fill(big, 'ñ');
+        String[] fields = {"", "Córdoba", new String(big)};
+        byte[] frame = MpDaemonProtocol.encode(fields);
+
+        String[] back = MpDaemonProtocol.read(new DataInputStream(new ByteArrayInputStream(frame)), 1 << 20);
+        assertArrayEquals(fields, back);
+        assertThrows(IOException.class,
+                () -> MpDaemonProtocol.read(new DataInputStream(new ByteArrayInputStream(frame)), 1024));
+        assertThrows(IOException.class, () -> MpDaemonProtocol.read(
+                new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(frame, frame.length - 10))), 1 << 20));
+        assertNull(MpDaemonProtocol.read(new DataInputStream(new ByteArrayInputStream(new byte[0])), 1024));
+    }
+
+    @Test
+    void downDaemonIsUnavailableBeforeSending() throws Exception {
+        int closed;
+        try (ServerSocket s = new ServerSocket(0)) {
+            closed = s.getLocalPort();
+        }
+        MpDaemonClient c = new MpDaemonClient(new InetSocketAddress("127.0.0.1", closed), 500, 1000, 1 << 20,
+                new byte[]{1});
+        assertThrows(MpDaemonClient.Unavailable.class, () -> c.call(order("DOWN-1")));
+        assertEquals(0, server.requests());
+    }
+
+    @Test
+    void pooledConnectionClosedBeforeAnsweringIsRetriedOnce() throws Exception {
+        byte[] key = "k".getBytes(StandardCharsets.UTF_8);
+        ConcurrentLinkedQueue<String> script = new ConcurrentLinkedQueue<>(
+                Arrays.asList("ok", "close", "ok", "close"));
+        AtomicInteger executed = new AtomicInteger();
+        try (ServerSocket fake = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            // daemon falso: "close" corta la conexión al recibir el pedido, sin ejecutarlo
+            Thread t = new Thread(() -> {
+                while (!fake.isClosed()) {
+                    try (Socket s = fake.accept()) {
+                        DataInputStream in = new DataInputStream(s.getInputStream());
+                        DataOutputStream out = new DataOutputStream(s.getOutputStream());
+                        MpDaemonProtocol.write(out, new String[]{MpDaemonProtocol.HELLO, "n"});
+                        MpDaemonProtocol.read(in, 1024);
+                        MpDaemonProtocol.write(out, new String[]{MpDaemonProtocol.OK});
+                        while (MpDaemonProtocol.read(in, 1 << 20) != null && "ok".equals(script.poll())) {
+                            MpDaemonProtocol.write(out, new String[]{"0", "ok " + executed.incrementAndGet(),
+                                "", "", "", "", ""});
+                        }
+                    } catch (IOException ignored) {
+                    }
+                }
+            }, "fake-daemon");
+            t.setDaemon(true);
+            t.start();
+
+            MpDaemonClient c = new MpDaemonClient(new InetSocketAddress("127.0.0.1", fake.getLocalPort()), 500,
+                    5000, 1 << 20, key);
+            assertEquals("ok 1", c.call(order("R-1"))[1]);
+            assertEquals("ok 2", c.call(order("R-2"))[1], "conexión del pool cerrada: se reintenta con una nueva");
+
+            // conexión nueva que se corta: error común (pudo haber llegado), no Unavailable
+            c.close();
+            IOException e = assertThrows(IOException.class, () -> c.call(order("R-3")));
+            assertFalse(e instanceof MpDaemonClient.Unavailable, e.toString());
+            assertEquals(2, executed.get());
+        }
+    }
+
+    @Test
+    void wrongSecretAndForeignConfigPathsAreRefused() throws Exception {
+        assertThrows(MpDaemonClient.Unavailable.class, () -> client("otro").call(order("AUTH-1")));
+        assertEquals(0, server.requests());
+
+        // otro .properties (otro token) por argv[10]: no se carga
+        File foreign = File.createTempFile("mp-ajeno", ".properties");
+        MpDaemonClient c = client();
+        try {
+            String[] in = order("PATH-1");
+            in[MpBridgeActions.I_PATH] = foreign.getPath();
+            String[] out = c.call(in);
+            assertEquals("4", out[0], out[1]);
+            assertEquals(0, server.requests());
+
+            in[MpBridgeActions.I_PATH] = props.getPath(); // la del daemon sí
+            assertEquals("0", c.call(in)[0]);
+        } finally {
+            c.close();
+            foreign.delete();
+        }
+
+        // secreto legible por otros: el daemon no arranca
+        if (Files.getFileAttributeView(secretFile.toPath(), PosixFileAttributeView.class) != null) {
+            Files.setPosixFilePermissions(secretFile.toPath(), PosixFilePermissions.fromString("rw-r--r--"));
+            MpDaemon other = new MpDaemon(MpConfig.forPath(props.getPath()), props.getPath(), null);
+            assertThrows(IOException.class, () -> other.start(new InetSocketAddress("127.0.0.1", 0)));
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.hs.http;
+
+import com.hs.bridge.MpBridgeActions;
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Cuerpos de respuesta: decodificación perezosa, lectura por partes en el
+ * cliente async, tope mp.http.maxBodyBytes (sin reintentos, res 4) y parseo
+ * del core sobre los bytes.
+ */
+public class MpBodyTest {
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @BeforeEach
+    void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            hits.incrementAndGet();
+            // /size/N: JSON de ~N bytes, .../big: 200 KB; ?chunked lo manda sin Content-Length
+            String path = ex.getRequestURI().getPath();
+            if (path.equals("/endless")) {
+                // cuerpo sin fin: solo termina si el cliente corta la conexión
+                ex.sendResponseHeaders(200, 0);
+                byte[] block = new byte[16 * 1024];
+                Arrays.fill(block, (byte) 'x');
+                try (OutputStream os = ex.getResponseBody()) {
+                    while (true) {
+                        os.write(block);
+                    }
+                } catch (IOException aborted) {
+                    return;
+                }
+            }
+            int size = path.endsWith("/big") ? 200000
+                    : path.startsWith("/size/") ? Integer.parseInt(path.substring(6)) : 0;
+            byte[] b = json(size).getBytes(StandardCharsets.UTF_8);
+            boolean chunked = "chunked".equals(ex.getRequestURI().getQuery());
+            ex.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            ex.sendResponseHeaders(200, chunked ? 0 : b.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(b);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private static String json(int size) {
+        StringBuilder sb = new StringBuilder("{\"id\":\"ORD-1\",\"description\":\"Café ñandú\",\"items\":\"");
+        while (sb.length() < size) {
+            sb.append("abcdefghij");
+        }
+        return sb.append("\"}").toString();
+    }
+
+    private MpConfig cfg(String token) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        p.setProperty("mp.http.maxBodyBytes", "65536");
+        p.setProperty("mp.retry.baseMs", "10");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        return MpConfig.fromProperties(p);
+    }
+
+    @Test
+    void decodesLazilyOnceAndPreviewsOnlyAPrefix() throws Exception {
+        MpHttpClient.MpHttpResponse r = new MpHttpClient(cfg("TEST-body-1")).get("getOrder", "/size/40000?chunked", null);
+        MpBody body = r.content();
+        assertEquals(json(40000).getBytes(StandardCharsets.UTF_8).length, body.length());
+        assertFalse(body.truncated());
+        assertTrue(body.preview(64).startsWith("{\"id\":\"ORD-1\",\"description\":\"Café ñandú\""));
+        assertEquals(json(40000), r.body());
+        assertSame(r.body(), r.body(), "se decodifica una sola vez");
+    }
+
+    @Test
+    void asyncClientAssemblesChunksIntoTheSameBody() throws Exception {
+        MpHttpAsyncClient async = new MpHttpAsyncClient(cfg("TEST-body-2"), null);
+        MpHttp.MpHttpResponse r = async.getAsync("getOrder", "/size/50000?chunked").join();
+        assertEquals(200, r.httpCode);
+        assertEquals(json(50000), r.body());
+
+        CompletionException ce = assertThrows(CompletionException.class,
+                () -> async.getAsync("getOrder", "/size/100000").join());
+        assertTrue(ce.getCause() instanceof MpBodyTooLargeException, ce.toString());
+    }
+
+    @Test
+    void oversizedBodyIsCutNotRetriedAndMapsToTechnicalError() throws Exception {
+        MpHttpClient http = new MpHttpClient(cfg("TEST-body-3"));
+        MpBodyTooLargeException e = assertThrows(MpBodyTooLargeException.class,
+                () -> http.get("getOrder", "/size/200000?chunked", null));
+        assertEquals(200, e.httpCode());
+        assertEquals(1, hits.get(), "un cuerpo gigante no se reintenta");
+
+        // sobre el tope no se sigue bajando: la conexión se aborta
+        assertThrows(MpBodyTooLargeException.class, () -> assertTimeoutPreemptively(Duration.ofSeconds(10),
+                () -> http.get("getOrder", "/endless", null)));
+
+        MpResult res = new MpBridgeCore(cfg("TEST-body-3"), Logger.getLogger("test")).getOrder("big");
+        assertEquals(4, res.res, res.msg);
+        assertTrue(res.msg.contains("65536"), res.msg);
+    }
+
+    @Test
+    void coreParsesFromBytesAndDecodesRawOnlyWhenAsked() throws Exception {
+        String json = "{\"id\":\"ORD-9\",\"status\":\"processed\",\"status_detail\":\"accredited\","
+                + "\"transactions\":{\"payments\":[{\"id\":\"PAY-9\",\"status\":\"processed\"}]}}";
+        MpBody bytes = MpBody.read(new StringEntity(json, ContentType.APPLICATION_JSON), 65536);
+        MpHttp http = mock(MpHttp.class);
+        when(http.get(anyString(), anyString())).thenReturn(new MpHttp.MpHttpResponse(200, bytes, 1));
+
+        MpResult r = new MpBridgeCore(cfg("TEST-body-4"), http).getOrder("ORD-9");
+        assertEquals("processed", r.status);
+        assertEquals("PAY-9", r.paymentId);
+        assertNull(r.rawJson, "sin pedirlo no se decodifica");
+        assertEquals("", MpBridgeActions.outputs(r, MpBridgeActions.OUT_FIELDS - 1)[6]);
+        assertNull(r.rawJson);
+        assertEquals(json, MpBridgeActions.outputs(r)[6]);
+        assertSame(r.rawJson(), r.rawJson());
+    }
+}
@@ -0,0 +1,185 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Circuit breaker: abre por tasa de fallas, corta en seco con res=7, cierra
+ * con las pruebas de HALF_OPEN, ignora resultados de estados anteriores y no
+ * pierde pruebas por errores inesperados.
+ */
+public class MpCircuitBreakerTest {
+
+    private HttpServer server;
+    private volatile int status = 200;
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @BeforeEach
+    void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            hits.incrementAndGet();
+            byte[] b = "{\"results\":[]}".getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(status, b.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(b);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private MpConfig cfg(String... extra) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-breaker");
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.window", "4");
+        p.setProperty("mp.breaker.minCalls", "4");
+        p.setProperty("mp.breaker.failureRate", "50");
+        p.setProperty("mp.breaker.openMs", "200");
+        p.setProperty("mp.breaker.probes", "2");
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            p.setProperty(extra[i], extra[i + 1]);
+        }
+        return MpConfig.fromProperties(p);
+    }
+
+    @Test
+    void opensOnFailureRateAndFailsFastWithCode7() throws Exception {
+        MpConfig c = cfg();
+        List<MpCircuitBreaker.Transition> seen = new CopyOnWriteArrayList<>();
+        MpCircuitBreaker.forConfig(c).addListener(seen::add);
+        MpBridgeCore core = new MpBridgeCore(c, Logger.getLogger("test"));
+
+        core.searchPos(10, 0, null);
+        core.searchPos(10, 0, null);
+        status = 503;
+        core.searchPos(10, 0, null);
+        assertEquals(MpCircuitBreaker.State.CLOSED, MpCircuitBreaker.forConfig(c).state()); // 1/3, sin mínimo
+        core.searchPos(10, 0, null);                                                       // 2/4 = 50 %
+        assertEquals(MpCircuitBreaker.State.OPEN, MpCircuitBreaker.forConfig(c).state());
+        assertEquals(1, seen.size());
+        assertEquals(MpCircuitBreaker.State.OPEN, seen.get(0).to);
+
+        int before = hits.get();
+        MpResult r = core.searchPos(10, 0, null);
+        assertEquals(7, r.res);
+        assertEquals(0, r.attempts);
+        assertTrue(r.msg.contains("circuito abierto"), r.msg);
+        assertEquals(before, hits.get(), "no debe salir hacia MP");
+        assertEquals(1, MpCircuitBreaker.forConfig(c).rejectedCount());
+    }
+
+    @Test
+    void halfOpenProbesCloseOrReopen() throws Exception {
+        MpConfig c = cfg("mp.breaker.minCalls", "2", "mp.breaker.window", "2");
+        MpCircuitBreaker b = MpCircuitBreaker.forConfig(c);
+        MpHttpClient http = new MpHttpClient(c);
+
+        status = 500;
+        http.get("searchPos", "/pos", null);
+        http.get("searchPos", "/pos", null);
+        assertEquals(MpCircuitBreaker.State.OPEN, b.state());
+        assertTrue(b.retryInMs() > 0);
+
+        // prueba que falla: vuelve a abrir
+        Thread.sleep(250);
+        http.get("searchPos", "/pos", null);
+        assertEquals(MpCircuitBreaker.State.OPEN, b.state());
+
+        // dos pruebas OK: cierra
+        Thread.sleep(250);
+        status = 200;
+        long p1 = b.tryAcquire();
+        long p2 = b.tryAcquire();
+        assertTrue(p1 >= 0 && p2 >= 0);
+        assertEquals(MpCircuitBreaker.REJECTED, b.tryAcquire(), "solo 'probes' pruebas a la vez");
+        b.onResponse(p1, 200, 5);
+        b.onResponse(p2, 200, 5);
+        assertEquals(MpCircuitBreaker.State.CLOSED, b.state());
+        assertEquals(200, http.get("searchPos", "/pos", null).statusCode);
+
+        assertNull(MpCircuitBreaker.forConfig(cfg("mp.breaker.enabled", "false")));
+    }
+
+    @Test
+    void lateResultsFromAnEarlierStateAreIgnored() throws Exception {
+        MpConfig c = cfg("mp.breaker.minCalls", "2", "mp.breaker.window", "2", "mp.breaker.probes", "1");
+        MpCircuitBreaker b = MpCircuitBreaker.forConfig(c);
+        MpHttpClient http = new MpHttpClient(c);
+
+        long slowFromClosed = b.tryAcquire(); // llamada que sigue en vuelo mientras el circuito abre
+        status = 500;
+        http.get("searchPos", "/pos", null);
+        http.get("searchPos", "/pos", null);
+        assertEquals(MpCircuitBreaker.State.OPEN, b.state());
+
+        Thread.sleep(250);
+        long probe = b.tryAcquire();
+        assertEquals(MpCircuitBreaker.State.HALF_OPEN, b.state());
+        b.onResponse(slowFromClosed, 200, 5);
+        assertEquals(MpCircuitBreaker.State.HALF_OPEN, b.state(), "un OK viejo no cierra");
+        b.release(slowFromClosed);
+        assertEquals(MpCircuitBreaker.REJECTED, b.tryAcquire(), "la prueba en curso sigue contando");
+
+        b.onError(probe, 5);
+        assertEquals(MpCircuitBreaker.State.OPEN, b.state());
+    }
+
+    @Test
+    void probesAreNotLeakedByUnexpectedErrors() throws Exception {
+        MpConfig c = cfg("mp.breaker.minCalls", "2", "mp.breaker.window", "2", "mp.breaker.probes", "1",
+                "mp.log.http", "true");
+        MpCircuitBreaker b = MpCircuitBreaker.forConfig(c);
+        Logger broken = Logger.getAnonymousLogger();
+        broken.setUseParentHandlers(false);
+        broken.setFilter(rec -> {
+            if (rec.getMessage().startsWith("MP HTTP RESPONSE")) {
+                throw new IllegalStateException("falla fuera de la red");
+            }
+            return false;
+        });
+
+        status = 500;
+        new MpHttpClient(c).get("searchPos", "/pos", null);
+        new MpHttpClient(c).get("searchPos", "/pos", null);
+        assertEquals(MpCircuitBreaker.State.OPEN, b.state());
+
+        // la prueba corta con una RuntimeException: el permiso vuelve
+        Thread.sleep(250);
+        status = 200;
+        assertThrows(IllegalStateException.class, () -> new MpHttpClient(c, broken).get("searchPos", "/pos", null));
+        long probe = b.tryAcquire();
+        assertTrue(probe >= 0, "la prueba no debe quedar tomada");
+
+        // una prueba que nunca informa vence a los openMs
+        assertEquals(MpCircuitBreaker.REJECTED, b.tryAcquire());
+        Thread.sleep(250);
+        long fresh = b.tryAcquire();
+        assertTrue(fresh > probe, "nueva generación de pruebas");
+        b.onError(probe, 5);
+        assertEquals(MpCircuitBreaker.State.HALF_OPEN, b.state(), "el resultado de la prueba vencida no cuenta");
+        b.onResponse(fresh, 200, 5);
+        assertEquals(MpCircuitBreaker.State.CLOSED, b.state());
+    }
+}
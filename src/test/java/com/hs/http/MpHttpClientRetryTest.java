@@ -0,0 +1,157 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Reintentos de MpHttpClient y de MpHttpAsyncClient contra un servidor local
+ * con respuestas guionadas (código[:Retry-After]).
+ */
+public class MpHttpClientRetryTest {
+
+    private HttpServer server;
+    private final ConcurrentLinkedQueue<String> script = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    @BeforeEach
+    void start() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            hits.incrementAndGet();
+            String step = script.poll();
+            String[] s = (step == null ? "200" : step).split(":");
+            if (s.length > 1) {
+                ex.getResponseHeaders().set("Retry-After", s[1]);
+            }
+            byte[] b = ("{\"hit\":" + hits.get() + "}").getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(Integer.parseInt(s[0]), b.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(b);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop(0);
+    }
+
+    private MpHttpClient client(String... extra) {
+        return new MpHttpClient(cfg(extra));
+    }
+
+    private MpConfig cfg(String... extra) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-x");
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        p.setProperty("mp.retry.baseMs", "10");
+        p.setProperty("mp.retry.maxDelayMs", "20");
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            p.setProperty(extra[i], extra[i + 1]);
+        }
+        return MpConfig.fromProperties(p);
+    }
+
+    @Test
+    void retriesGetAndIdempotentPostOnTransientStatus() throws Exception {
+        script.add("503");
+        script.add("502");
+        MpHttpClient.MpHttpResponse r = client().get("getOrder", "/v1/orders/1", null);
+        assertEquals(200, r.statusCode);
+        assertEquals(3, r.attempts);
+
+        script.add("504");
+        r = client().postJson("createOrder", "/v1/orders", "{}", "IDEM-1");
+        assertEquals(200, r.statusCode);
+        assertEquals(2, r.attempts);
+    }
+
+    @Test
+    void clientBuiltBeforeCloseQuietlyKeepsWorking() throws Exception {
+        MpHttpClient first = client();
+        MpHttpClient other = client();
+        other.closeQuietly();
+        assertEquals(200, first.get("getOrder", "/v1/orders/1", null).statusCode);
+    }
+
+    @Test
+    void postWithoutIdempotencyKeyIsNotRetried() throws Exception {
+        script.add("503");
+        MpHttpClient.MpHttpResponse r = client().postJson("createOrder", "/v1/orders", "{}", null);
+        assertEquals(503, r.statusCode);
+        assertEquals(1, r.attempts);
+        assertEquals(1, hits.get());
+    }
+
+    @Test
+    void honorsRetryAfterAndPerEndpointBudget() throws Exception {
+        script.add("429:1");
+        long t0 = System.currentTimeMillis();
+        MpHttpClient.MpHttpResponse r = client().get("getOrder", "/v1/orders/1", null);
+        assertEquals(200, r.statusCode);
+        assertTrue(System.currentTimeMillis() - t0 >= 900, "debe esperar el Retry-After");
+
+        // Retry-After más largo que el permitido: se devuelve el 429 sin esperar
+        script.add("429:30");
+        r = client().get("getOrder", "/v1/orders/1", null);
+        assertEquals(429, r.statusCode);
+        assertEquals(1, r.attempts);
+
+        // presupuesto por endpoint
+        script.add("503");
+        script.add("503");
+        r = client("mp.retry.maxAttempts.searchPos", "2").get("searchPos", "/pos", null);
+        assertEquals(503, r.statusCode);
+        assertEquals(2, r.attempts);
+    }
+
+    @Test
+    void connectionErrorsAreRetriedThenReported() throws Exception {
+        int port = server.getAddress().getPort();
+        server.stop(0);
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-x");
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:" + port);
+        p.setProperty("mp.retry.baseMs", "5");
+        MpHttpClient c = new MpHttpClient(MpConfig.fromProperties(p));
+
+        MpHttpRetryException e = assertThrows(MpHttpRetryException.class, () -> c.get("getOrder", "/v1/orders/1", null));
+        assertEquals(3, e.attempts());
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0); // para @AfterEach
+    }
+
+    @Test
+    void asyncClientAppliesTheSamePolicyAndFailsTheFuture() throws Exception {
+        MpHttpAsyncClient async = new MpHttpAsyncClient(cfg(), null);
+        script.add("503");
+        script.add("502");
+        MpHttp.MpHttpResponse r = async.getAsync("getOrder", "/v1/orders/1").join();
+        assertEquals(200, r.httpCode);
+        assertEquals(3, r.attempts);
+
+        script.add("503");
+        r = async.postJsonAsync("createOrder", "/v1/orders", "{}", null).join();
+        assertEquals(503, r.httpCode);
+        assertEquals(1, r.attempts, "POST sin X-Idempotency-Key no se reintenta");
+
+        // sin token: future fallido, no excepción al llamar
+        Properties p = new Properties();
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        CompletableFuture<MpHttp.MpHttpResponse> f = new MpHttpAsyncClient(MpConfig.fromProperties(p), null)
+                .getAsync("getOrder", "/v1/orders/1");
+        assertTrue(f.isCompletedExceptionally());
+        assertEquals(4, hits.get());
+    }
+}
@@ -0,0 +1,90 @@
+package com.hs.http;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import java.util.Properties;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Token bucket por cuenta + clase de endpoint.
+ */
+public class MpRateLimiterTest {
+
+    private static MpConfig cfg(String token, String... extra) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.baseUrl", "http://127.0.0.1:9"); // nunca se llega a conectar
+        p.setProperty("mp.retry.maxAttempts", "1");
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            p.setProperty(extra[i], extra[i + 1]);
+        }
+        return MpConfig.fromProperties(p);
+    }
+
+    @Test
+    void burstThenBoundedWaitThenReject() {
+        MpConfig c = cfg("TEST-bucket-1", "mp.ratelimit.orders.read.perSecond", "10",
+                "mp.ratelimit.orders.read.burst", "2");
+        MpRateLimiter.Bucket b = MpRateLimiter.bucket(c, "getOrder");
+
+        assertEquals(0, b.reserve(0));
+        assertEquals(0, b.reserve(0));
+        assertEquals(-1, b.reserve(0));                 // vacío y sin espera
+        long w = b.reserve(500);                         // en cola: ~100 ms
+        assertTrue(w > 0 && w <= 100, "wait=" + w);
+        assertTrue(b.reserve(500) > w);                 // el siguiente espera más
+
+        MpRateLimiter.State s = b.state();
+        assertEquals(MpRateLimiter.ORDERS_READ, s.bucketClass);
+        assertEquals("****et-1", s.token);
+        assertEquals(1, s.rejected);
+        assertTrue(s.tokens < 0);
+    }
+
+    @Test
+    void bucketsAreSeparatedByTokenAndClass() {
+        MpConfig a = cfg("TEST-bucket-A", "mp.ratelimit.orders.write.burst", "1");
+        MpConfig b = cfg("TEST-bucket-B", "mp.ratelimit.orders.write.burst", "1");
+
+        assertNotSame(MpRateLimiter.bucket(a, "createOrder"), MpRateLimiter.bucket(a, "getOrder"));
+        assertSame(MpRateLimiter.bucket(a, "createOrder"), MpRateLimiter.bucket(a, "cancelOrder"));
+        assertEquals(0, MpRateLimiter.bucket(a, "createOrder").reserve(0));
+        assertEquals(0, MpRateLimiter.bucket(b, "createOrder").reserve(0));
+        assertEquals(MpRateLimiter.ADMIN, MpRateLimiter.classOf(a, "searchPos"));
+        assertNull(MpRateLimiter.bucket(cfg("TEST-off", "mp.ratelimit.enabled", "false"), "getOrder"));
+    }
+
+    @Test
+    void limitsAreResolvedOncePerSnapshot() {
+        MpConfig before = cfg("TEST-bucket-snap", "mp.ratelimit.orders.read.burst", "1");
+        MpRateLimiter.Bucket b = MpRateLimiter.bucket(before, "getOrder");
+        assertSame(b, MpRateLimiter.bucket(before, "getOrder"));
+        assertEquals(1, b.state().burst);
+
+        // misma cuenta, snapshot nuevo: mismo bucket (conserva el cupo) con los límites nuevos
+        MpConfig after = cfg("TEST-bucket-snap", "mp.ratelimit.orders.read.burst", "4");
+        assertEquals(before.accountKey(), after.accountKey());
+        assertSame(b, MpRateLimiter.bucket(after, "getOrder"));
+        assertEquals(4, b.state().burst);
+        assertEquals("****snap", b.state().token);
+        assertNull(MpRateLimiter.bucket(cfg("TEST-bucket-snap", "mp.ratelimit.enabled", "false"), "getOrder"));
+        assertSame(b, MpRateLimiter.bucket(after, "getOrder"));
+    }
+
+    @Test
+    void emptyBucketFailsFastWithCode6() {
+        MpConfig c = cfg("TEST-bucket-core", "mp.ratelimit.admin.burst", "1",
+                "mp.ratelimit.admin.perSecond", "0.01", "mp.ratelimit.admin.maxWaitMs", "0");
+        MpRateLimiter.bucket(c, "searchPos").reserve(0); // se consume el único token
+
+        MpBridgeCore core = new MpBridgeCore(c, Logger.getLogger("test"));
+        MpResult r = core.searchPos(10, 0, null);
+
+        assertEquals(6, r.res);
+        assertEquals(0, r.attempts);
+        assertTrue(r.msg.contains("admin"), r.msg);
+    }
+}
@@ -0,0 +1,187 @@
+package com.hs.journal;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.http.MpHttp;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Properties;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Journal mapeado: persistencia de intenciones, registros cortados,
+ * compactación y re-envío desde el core con la misma clave.
+ */
+public class MpJournalTest {
+
+    private static File base() throws Exception {
+        Path dir = Files.createTempDirectory("mp-journal");
+        return new File(dir.toFile(), "test.journal");
+    }
+
+    @Test
+    void pendingIntentsSurviveReopen() throws Exception {
+        File f = base();
+        MpJournal j = MpJournal.open(f, 0, 0);
+        long a = j.intent("createOrder", "/v1/orders", "REF-1", "{\"a\":1}");
+        long b = j.intent("cancelOrder", "/v1/orders/O2/cancel", "O2", "{}");
+        long c = j.intent("refundOrder", "/v1/orders/O3/refund", "O3", "{}");
+        j.outcome(b, 200, "res=0");
+        j.close();
+
+        MpJournal r = MpJournal.open(f, 0, 0);
+        List<MpJournal.Entry> p = r.pending();
+        assertEquals(2, p.size());
+        assertEquals(a, p.get(0).seq);
+        assertEquals("REF-1", p.get(0).idempotencyKey);
+        assertEquals("{\"a\":1}", p.get(0).body);
+        assertEquals(c, p.get(1).seq);
+        assertTrue(r.intent("createOrder", "/v1/orders", "REF-4", "{}") > c, "seq sigue creciendo");
+        r.close();
+    }
+
+    @Test
+    void tornTailIsDiscarded() throws Exception {
+        File f = base();
+        MpJournal j = MpJournal.open(f, 0, 0);
+        j.intent("createOrder", "/v1/orders", "REF-1", "{}");
+        j.intent("createOrder", "/v1/orders", "REF-2", "{\"x\":\"" + new String(new char[200]).replace('\0', 'x') + "\"}");
+        j.close();
+
+        // se rompe un byte del último registro (escritura cortada)
+        try (RandomAccessFile raf = new RandomAccessFile(new File(f.getPath() + ".a"), "rw")) {
+            raf.seek(16 + 8 + 60 + 8 + 100);
+            raf.write(0x55);
+        }
+        MpJournal r = MpJournal.open(f, 0, 0);
+        assertEquals(1, r.pending().size());
+        assertEquals("REF-1", r.pending().get(0).idempotencyKey);
+        r.close();
+    }
+
+    @Test
+    void compactionKeepsOnlyPendingAcrossFiles() throws Exception {
+        File f = base();
+        MpJournal j = MpJournal.open(f, 64 * 1024, 0);
+        String body = "{\"pad\":\"" + new String(new char[500]).replace('\0', 'p') + "\"}";
+        long keep = j.intent("createOrder", "/v1/orders", "KEEP", body);
+        for (int i = 0; i < 1000; i++) { // ~600 KB: varias vueltas entre .a y .b
+            long s = j.intent("createOrder", "/v1/orders", "REF-" + i, body);
+            j.outcome(s, 201, "res=0");
+        }
+        long last = j.intent("cancelOrder", "/v1/orders/X/cancel", "X", "{}");
+        j.close();
+
+        MpJournal r = MpJournal.open(f, 64 * 1024, 0);
+        List<MpJournal.Entry> p = r.pending();
+        assertEquals(2, p.size());
+        assertEquals(keep, p.get(0).seq);
+        assertEquals(body, p.get(0).body);
+        assertEquals(last, p.get(1).seq);
+        r.close();
+    }
+
+    @Test
+    void secondOwnerIsRefusedUntilTheFirstCloses() throws Exception {
+        File f = base();
+        MpJournal j = MpJournal.open(f, 0, 0);
+        assertThrows(IOException.class, () -> MpJournal.open(f, 0, 0));
+
+        Properties props = new Properties();
+        props.setProperty("mp.journal.enabled", "true");
+        props.setProperty("mp.journal.file", f.getPath());
+        assertNull(MpJournal.forConfig(MpConfig.fromProperties(props)), "sin journal mientras otro lo tiene");
+
+        j.close();
+        MpJournal r = MpJournal.forConfig(MpConfig.fromProperties(props));
+        assertNotNull(r);
+        r.close();
+    }
+
+    @Test
+    void defaultFileIsPerAccount() {
+        Properties a = new Properties();
+        a.setProperty("mp.journal.enabled", "true");
+        a.setProperty("mp.journal.syncMs", "0");
+        a.setProperty("mp.accessTokenTest", "TEST-cuenta-a-" + System.nanoTime());
+        Properties b = new Properties();
+        b.putAll(a);
+        b.setProperty("mp.accessTokenTest", "TEST-cuenta-b-" + System.nanoTime());
+
+        MpJournal ja = MpJournal.forConfig(MpConfig.fromProperties(a));
+        MpJournal jb = MpJournal.forConfig(MpConfig.fromProperties(b));
+        try {
+            assertNotSame(ja, jb, "mismo origen, otro token: otro journal");
+            assertNotEquals(ja.file(), jb.file());
+            assertSame(ja, MpJournal.forConfig(MpConfig.fromProperties(a)));
+        } finally {
+            ja.close();
+            jb.close();
+            for (MpJournal j : new MpJournal[]{ja, jb}) {
+                for (String ext : new String[]{".a", ".b", ".lock"}) {
+                    new File(j.file() + ext).delete();
+                }
+            }
+        }
+    }
+
+    @Test
+    void coreReplaysOnlyRecoveredIntentsAndReconcilesCreates() throws Exception {
+        File f = base();
+        // JVM anterior: se cayó con tres intenciones sin resultado
+        MpJournal prev = MpJournal.open(f, 0, 0);
+        prev.intent("createOrder", "/v1/orders", "REF-J1", "{\"external_reference\":\"REF-J1\"}");
+        prev.intent("createOrder", "/v1/orders", "REF-J2", "{\"external_reference\":\"REF-J2\"}");
+        prev.intent("cancelOrder", "/v1/orders/ORD-C/cancel", "ORD-C", "{}");
+        prev.close();
+
+        Properties props = new Properties();
+        props.setProperty("mp.accessTokenTest", "TEST-journal");
+        props.setProperty("mp.journal.enabled", "true");
+        props.setProperty("mp.journal.file", f.getPath());
+        props.setProperty("mp.journal.syncMs", "0");
+        MpConfig cfg = MpConfig.fromProperties(props);
+
+        MpHttp http = mock(MpHttp.class);
+        when(http.postJson(eq("createOrder"), eq("/v1/orders"), anyString(), eq("REF-J3")))
+                .thenThrow(new SocketTimeoutException("Read timed out"));
+        when(http.get("searchOrders", "/v1/orders?external_reference=REF-J1")).thenReturn(new MpHttp.MpHttpResponse(200,
+                "{\"data\":[{\"id\":\"ORD-J1\",\"external_reference\":\"REF-J1\",\"status\":\"created\"}]}"));
+        when(http.get("searchOrders", "/v1/orders?external_reference=REF-J2"))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"data\":[]}"));
+        when(http.postJson("cancelOrder", "/v1/orders/ORD-C/cancel", "{}", "ORD-C"))
+                .thenReturn(new MpHttp.MpHttpResponse(200, "{\"id\":\"ORD-C\",\"status\":\"canceled\"}"));
+        MpBridgeCore core = new MpBridgeCore(cfg, http);
+
+        // intención de esta JVM (timeout): pendiente, pero no es de la caída
+        OrderIn in = new OrderIn();
+        in.externalReference = "REF-J3";
+        in.externalPosId = "POS-1";
+        in.totalAmount = "10.00";
+        assertEquals(4, core.createOrder(in).res);
+        MpJournal j = MpJournal.forConfig(cfg);
+        assertEquals(4, j.pending().size());
+        assertEquals(3, j.recovered().size());
+
+        assertEquals(3, core.replayJournal());
+        List<MpJournal.Entry> left = j.pending();
+        assertEquals(1, left.size());
+        assertEquals("REF-J3", left.get(0).idempotencyKey);
+        // los createOrder se buscan, no se re-envían; el cancel sí
+        verify(http, never()).postJson(eq("createOrder"), anyString(), anyString(), eq("REF-J1"));
+        verify(http, never()).postJson(eq("createOrder"), anyString(), anyString(), eq("REF-J2"));
+        verify(http).postJson("cancelOrder", "/v1/orders/ORD-C/cancel", "{}", "ORD-C");
+        assertEquals(0, core.replayJournal());
+        j.close();
+    }
+}
@@ -0,0 +1,114 @@
+package com.hs.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.hs.dto.OrderIn;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * El writer debe producir exactamente el mismo body que el armado con árbol
+ * Gson que reemplaza.
+ */
+public class MpOrderBodyWriterTest {
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void sameBytesAsGsonTree() {
+        String[] texts = {
+            "Venta mostrador",
+            "",
+            "  con espacios  ",
+            "ñandú € 日本 😀",
+            "<b>\"a\" & 'b' = c</b>",
+            "barra \\ tab\t nl\n cr\r bs\b ff\f",
+            "ctrl \u0000\u0001\u001f del\u007f",
+            "sep \u2028 \u2029 fin"
+        };
+        for (String t : texts) {
+            OrderIn in = order();
+            in.description = t;
+            in.itemTitle = t;
+            in.externalCode = t;
+            in.externalReference = "REF-" + t;
+            assertEquals(tree(in), MpOrderBodyWriter.write(in), t);
+        }
+    }
+
+    @Test
+    void optionalFieldsAndDefaults() {
+        OrderIn in = order();
+        in.description = null;
+        in.mode = " ";
+        in.itemTitle = null;
+        in.unitMeasure = "";
+        in.expirationTime = null;
+        in.externalCode = " ";
+        assertEquals(tree(in), MpOrderBodyWriter.write(in));
+
+        in.mode = " static ";
+        in.expirationTime = "PT15M";
+        in.externalCode = "SKU-1";
+        assertEquals(tree(in), MpOrderBodyWriter.write(in));
+    }
+
+    private static OrderIn order() {
+        OrderIn in = new OrderIn();
+        in.externalReference = "REF-1";
+        in.externalPosId = " POS001 ";
+        in.totalAmount = " 54.00 ";
+        in.description = "Venta";
+        return in;
+    }
+
+    // Armado original de MpBridgeCore.orderBody (referencia)
+    private String tree(OrderIn in) {
+        String mode = isBlank(in.mode) ? "dynamic" : in.mode.trim();
+        String unitMeasure = isBlank(in.unitMeasure) ? "unidad" : in.unitMeasure.trim();
+        String itemTitle = isBlank(in.itemTitle) ? "Item" : in.itemTitle.trim();
+
+        JsonObject body = new JsonObject();
+        body.addProperty("type", "qr");
+        body.addProperty("total_amount", in.totalAmount.trim());
+        body.addProperty("description", in.description == null ? "" : in.description);
+        body.addProperty("external_reference", in.externalReference.trim());
+        if (!isBlank(in.expirationTime)) {
+            body.addProperty("expiration_time", in.expirationTime.trim());
+        }
+
+        JsonObject cfgNode = new JsonObject();
+        JsonObject qr = new JsonObject();
+        qr.addProperty("external_pos_id", in.externalPosId.trim());
+        qr.addProperty("mode", mode);
+        cfgNode.add("qr", qr);
+        body.add("config", cfgNode);
+
+        JsonObject transactions = new JsonObject();
+        JsonArray payments = new JsonArray();
+        JsonObject p0 = new JsonObject();
+        p0.addProperty("amount", in.totalAmount.trim());
+        payments.add(p0);
+        transactions.add("payments", payments);
+        body.add("transactions", transactions);
+
+        JsonArray items = new JsonArray();
+        JsonObject it = new JsonObject();
+        it.addProperty("title", itemTitle);
+        it.addProperty("unit_price", in.totalAmount.trim());
+        it.addProperty("quantity", 1);
+        it.addProperty("unit_measure", unitMeasure);
+        if (!isBlank(in.externalCode)) {
+            it.addProperty("external_code", in.externalCode.trim());
+        }
+        items.add(it);
+        body.add("items", items);
+
+        return gson.toJson(body);
+    }
+
+    private static boolean isBlank(String s) {
+        return s == null || s.trim().isEmpty();
+    }
+}
@@ -0,0 +1,92 @@
+package com.hs.json;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * El extractor streaming debe dar lo mismo que el recorrido del árbol Gson.
+ */
+public class MpOrderJsonReaderTest {
+
+    static final String ORDER = "{\"id\":\"ORD01JQ4S4KY8\",\"type\":\"qr\",\"processing_mode\":\"automatic\","
+            + "\"external_reference\":\"REF-1\",\"total_amount\":\"54.00\",\"status\":\"processed\","
+            + "\"status_detail\":\"accredited\",\"config\":{\"qr\":{\"external_pos_id\":\"POS1\",\"mode\":\"dynamic\"}},"
+            + "\"transactions\":{\"payments\":[{\"id\":\"PAY01\",\"amount\":\"54.00\",\"status\":\"processed\","
+            + "\"payment_method\":{\"id\":\"account_money\",\"type\":\"account_money\"}},{\"id\":\"PAY02\",\"status\":\"x\"}]},"
+            + "\"items\":[{\"title\":\"Item\",\"unit_price\":\"54.00\",\"quantity\":1}],"
+            + "\"type_response\":{\"qr_data\":\"00020101021243650016COM.MERCADOLIBRE02013063638f1192a-5fd1-4180\"}}";
+
+    private final Gson gson = new Gson();
+
+    @Test
+    void matchesGsonTreeExtraction() {
+        String[] samples = {
+            ORDER,
+            "{\"id\":123,\"status\":null,\"transactions\":{\"payments\":[]}}",
+            "{\"id\":\"A\",\"transactions\":{\"payments\":[\"raro\"]},\"type_response\":null}",
+            "{\"status\":{\"nested\":true},\"id\":true}",
+            "{\"id\":\"A\"} basura",
+            "{roto",
+            "[]",
+            ""
+        };
+        for (String json : samples) {
+            MpOrderFields s = MpOrderJsonReader.read(json);
+            JsonObject t = tree(json);
+            JsonObject p0 = firstPayment(t);
+            assertEquals(str(t, "id"), s.id, json);
+            assertEquals(str(t, "status"), s.status, json);
+            assertEquals(str(t, "status_detail"), s.statusDetail, json);
+            assertEquals(str(p0, "id"), s.paymentId, json);
+            assertEquals(str(p0, "status"), s.paymentStatus, json);
+            assertEquals(str(obj(t.get("type_response")), "qr_data"), s.qrData, json);
+        }
+    }
+
+    @Test
+    void readsOnlyConfiguredPaths() {
+        MpOrderFields f = MpOrderJsonReader.read(ORDER);
+        assertEquals("ORD01JQ4S4KY8", f.id);
+        assertEquals("PAY01", f.paymentId);
+        assertEquals("processed", f.paymentStatus);
+        assertTrue(f.qrData.startsWith("000201"));
+    }
+
+    private JsonObject tree(String json) {
+        try {
+            JsonObject o = gson.fromJson(json, JsonObject.class);
+            return o == null ? new JsonObject() : o;
+        } catch (Exception e) {
+            return new JsonObject();
+        }
+    }
+
+    private static JsonObject firstPayment(JsonObject mp) {
+        JsonObject tr = obj(mp.get("transactions"));
+        JsonElement p = tr == null ? null : tr.get("payments");
+        if (p != null && p.isJsonArray() && ((JsonArray) p).size() > 0) {
+            return obj(((JsonArray) p).get(0));
+        }
+        return null;
+    }
+
+    private static JsonObject obj(JsonElement e) {
+        return (e != null && e.isJsonObject()) ? e.getAsJsonObject() : null;
+    }
+
+    private static String str(JsonObject o, String k) {
+        try {
+            if (o == null) {
+                return "";
+            }
+            JsonElement e = o.get(k);
+            return (e == null || e.isJsonNull()) ? "" : e.getAsString();
+        } catch (Exception ex) {
+            return "";
+        }
+    }
+}
@@ -0,0 +1,444 @@
+package com.hs.load;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Doble local de la API de Mercado Pago para pruebas de carga sin salir a
+ * api.mercadopago.com.
+ *
+ * Endpoints: POST /v1/orders, GET /v1/orders?external_reference=, GET
+ * /v1/orders/{id}, POST
+ * /v1/orders/{id}/cancel|refund, POST /users/{id}/stores, GET
+ * /users/{id}/stores/search, POST /pos, GET /pos.
+ *
+ * Latencia log-normal (mediana + sigma), tasa de errores 5xx, ráfagas de 429
+ * con Retry-After y estado de órdenes en memoria (created -> processed luego
+ * de payAfterMs, cancel/refund con 409 si no corresponde).
+ */
+public class MpFakeServer {
+
+    static {
+        // Sin esto el HttpServer del JDK suma ~40 ms por respuesta (Nagle +
+        // delayed ACK entre headers y body) y se mide el doble, no el puente.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        // Por defecto cierra las conexiones ociosas por encima de 200: con
+        // miles en vuelo (MpFanOutBench) el cliente reusaría sockets muertos.
+        if (System.getProperty("sun.net.httpserver.maxIdleConnections") == null) {
+            System.setProperty("sun.net.httpserver.maxIdleConnections", "10000");
+        }
+    }
+
+    /**
+     * Comportamiento del servidor (se lee en cada request: se puede cambiar
+     * en caliente).
+     */
+    public static class Options {
+        public volatile long latencyMedianMs = 80;
+        public volatile double latencySigma = 0.5;
+        public volatile long latencyMaxMs = 5000;
+        public volatile double errorRate = 0.0;        // 500/502/503
+        public volatile long burst429EveryMs = 0;      // 0 = sin ráfagas
+        public volatile long burst429LengthMs = 1000;
+        public volatile int retryAfterSeconds = 1;
+        public volatile long payAfterMs = 2000;        // created -> processed
+    }
+
+    private static final class Order {
+        final String id;
+        final String paymentId;
+        final String externalReference;
+        final String externalPosId;
+        final String totalAmount;
+        final long createdAt;
+        volatile String status = "created";
+        volatile String statusDetail = "created";
+        volatile String paymentStatus = "created";
+
+        Order(String id, String paymentId, String ref, String pos, String total) {
+            this.id = id;
+            this.paymentId = paymentId;
+            this.externalReference = ref;
+            this.externalPosId = pos;
+            this.totalAmount = total;
+            this.createdAt = System.currentTimeMillis();
+        }
+    }
+
+    public final Options options = new Options();
+
+    private final Map<String, Order> orders = new ConcurrentHashMap<>();
+    private final Map<String, String> orderByIdem = new ConcurrentHashMap<>();
+    private final Map<String, String> stores = new ConcurrentHashMap<>();   // external_id -> json
+    private final Map<String, String> pos = new ConcurrentHashMap<>();
+    private final AtomicLong seq = new AtomicLong(1000);
+    private final AtomicLong requests = new AtomicLong();
+    private final Map<String, AtomicLong> byToken = new ConcurrentHashMap<>();
+    private final AtomicLongArray byStatus = new AtomicLongArray(600);
+    private final long startedAt = System.currentTimeMillis();
+
+    private HttpServer server;
+    private ExecutorService executor;
+
+    public int start() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "mp-fake");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    public String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public long requests() {
+        return requests.get();
+    }
+
+    /**
+     * Requests autenticados con ese access token (multi-cuenta).
+     */
+    public long requests(String accessToken) {
+        AtomicLong n = byToken.get(accessToken);
+        return n == null ? 0 : n.get();
+    }
+
+    public long count(int httpCode) {
+        return byStatus.get(httpCode);
+    }
+
+    // ==========================================================
+    // Routing
+    // ==========================================================
+    private void handle(HttpExchange ex) throws IOException {
+        requests.incrementAndGet();
+        try {
+            String method = ex.getRequestMethod();
+            String path = ex.getRequestURI().getPath();
+            String body = read(ex.getRequestBody());
+
+            sleep(latencyMs());
+
+            String auth = ex.getRequestHeaders().getFirst("Authorization");
+            if (auth == null || !auth.startsWith("Bearer ")) {
+                send(ex, 401, "{\"message\":\"invalid access token\",\"status\":401}");
+                return;
+            }
+            byToken.computeIfAbsent(auth.substring(7), k -> new AtomicLong()).incrementAndGet();
+            if (inBurst()) {
+                ex.getResponseHeaders().set("Retry-After", String.valueOf(options.retryAfterSeconds));
+                send(ex, 429, "{\"message\":\"too many requests\",\"status\":429}");
+                return;
+            }
+            if (options.errorRate > 0 && ThreadLocalRandom.current().nextDouble() < options.errorRate) {
+                int[] codes = {500, 502, 503};
+                int code = codes[ThreadLocalRandom.current().nextInt(codes.length)];
+                send(ex, code, "{\"message\":\"internal_error\",\"status\":" + code + "}");
+                return;
+            }
+
+            String[] p = path.split("/");   // "", "v1", "orders", id, action
+            if (path.equals("/v1/orders") && "POST".equals(method)) {
+                createOrder(ex, body);
+            } else if (path.equals("/v1/orders") && "GET".equals(method)) {
+                searchOrders(ex);
+            } else if (p.length == 4 && path.startsWith("/v1/orders/") && "GET".equals(method)) {
+                getOrder(ex, p[3]);
+            } else if (p.length == 5 && path.startsWith("/v1/orders/") && "POST".equals(method)) {
+                orderAction(ex, p[3], p[4]);
+            } else if (p.length == 4 && "users".equals(p[1]) && "stores".equals(p[3]) && "POST".equals(method)) {
+                createStore(ex, body);
+            } else if (p.length == 5 && "users".equals(p[1]) && "search".equals(p[4]) && "GET".equals(method)) {
+                search(ex, stores);
+            } else if (path.equals("/pos") && "POST".equals(method)) {
+                createPos(ex, body);
+            } else if (path.equals("/pos") && "GET".equals(method)) {
+                search(ex, pos);
+            } else {
+                send(ex, 404, "{\"message\":\"resource not found\",\"status\":404}");
+            }
+        } catch (Exception e) {
+            send(ex, 500, "{\"message\":\"fake: " + e.getClass().getSimpleName() + "\",\"status\":500}");
+        }
+    }
+
+    // ==========================================================
+    // Orders
+    // ==========================================================
+    private void createOrder(HttpExchange ex, String body) throws IOException {
+        String idem = ex.getRequestHeaders().getFirst("X-Idempotency-Key");
+        if (idem != null) {
+            String existing = orderByIdem.get(idem);
+            if (existing != null && orders.containsKey(existing)) {
+                send(ex, 201, orderJson(orders.get(existing)));
+                return;
+            }
+        }
+
+        JsonObject in = JsonParser.parseString(body).getAsJsonObject();
+        JsonObject qr = in.getAsJsonObject("config").getAsJsonObject("qr");
+        long n = seq.incrementAndGet();
+        Order o = new Order("ORD01FAKE" + n, "PAY01FAKE" + n,
+                str(in, "external_reference"), str(qr, "external_pos_id"), str(in, "total_amount"));
+        orders.put(o.id, o);
+        if (idem != null) {
+            orderByIdem.putIfAbsent(idem, o.id);
+        }
+        send(ex, 201, orderJson(o));
+    }
+
+    private void getOrder(HttpExchange ex, String id) throws IOException {
+        Order o = orders.get(id);
+        if (o == null) {
+            send(ex, 404, "{\"message\":\"order not found\",\"status\":404}");
+            return;
+        }
+        send(ex, 200, orderJson(o));
+    }
+
+    private void searchOrders(HttpExchange ex) throws IOException {
+        String ref = query(ex.getRequestURI().getRawQuery()).get("external_reference");
+        StringBuilder sb = new StringBuilder("{\"data\":[");
+        boolean first = true;
+        for (Order o : orders.values()) {
+            if (ref != null && ref.equals(o.externalReference)) {
+                sb.append(first ? "" : ",").append(orderJson(o));
+                first = false;
+            }
+        }
+        send(ex, 200, sb.append("]}").toString());
+    }
+
+    private void orderAction(HttpExchange ex, String id, String action) throws IOException {
+        Order o = orders.get(id);
+        if (o == null) {
+            send(ex, 404, "{\"message\":\"order not found\",\"status\":404}");
+            return;
+        }
+        synchronized (o) {
+            advance(o);
+            if ("cancel".equals(action)) {
+                if (!"created".equals(o.status)) {
+                    send(ex, 409, "{\"errors\":[{\"code\":\"cannot_cancel_order\"}],\"status\":409}");
+                    return;
+                }
+                o.status = "canceled";
+                o.statusDetail = "canceled";
+                o.paymentStatus = "canceled";
+            } else if ("refund".equals(action)) {
+                if (!"processed".equals(o.status)) {
+                    send(ex, 409, "{\"errors\":[{\"code\":\"cannot_refund_order\"}],\"status\":409}");
+                    return;
+                }
+                o.status = "refunded";
+                o.statusDetail = "refunded";
+                o.paymentStatus = "refunded";
+            } else {
+                send(ex, 404, "{\"message\":\"resource not found\",\"status\":404}");
+                return;
+            }
+        }
+        send(ex, 201, orderJson(o));
+    }
+
+    // Simula el cobro: la orden se paga sola luego de payAfterMs
+    private void advance(Order o) {
+        if ("created".equals(o.status) && options.payAfterMs >= 0
+                && System.currentTimeMillis() - o.createdAt >= options.payAfterMs) {
+            o.status = "processed";
+            o.statusDetail = "accredited";
+            o.paymentStatus = "approved";   // lo que espera checkRefundable
+        }
+    }
+
+    private String orderJson(Order o) {
+        synchronized (o) {
+            advance(o);
+        }
+        return "{\"id\":\"" + o.id + "\",\"type\":\"qr\",\"processing_mode\":\"automatic\","
+                + "\"external_reference\":\"" + o.externalReference + "\",\"description\":\"Venta mostrador\","
+                + "\"total_amount\":\"" + o.totalAmount + "\",\"country_code\":\"ARG\",\"user_id\":\"1859061146\","
+                + "\"status\":\"" + o.status + "\",\"status_detail\":\"" + o.statusDetail + "\",\"currency\":\"ARS\","
+                + "\"created_date\":\"2025-03-25T12:01:12.529Z\",\"last_updated_date\":\"2025-03-25T12:01:12.529Z\","
+                + "\"integration_data\":{\"application_id\":\"8464617380385447\"},"
+                + "\"transactions\":{\"payments\":[{\"id\":\"" + o.paymentId + "\",\"amount\":\"" + o.totalAmount + "\","
+                + "\"status\":\"" + o.paymentStatus + "\"}]},"
+                + "\"config\":{\"qr\":{\"external_pos_id\":\"" + o.externalPosId + "\",\"mode\":\"dynamic\"}},"
+                + "\"items\":[{\"title\":\"Item\",\"unit_price\":\"" + o.totalAmount + "\",\"quantity\":1,\"unit_measure\":\"unidad\"}],"
+                + "\"type_response\":{\"qr_data\":\"00020101021243650016COM.MERCADOLIBRE02013063638f1192a-"
+                + o.id + "5204000053039865802AR5925FAKE6007BARUERI62070503***6304ABCD\"}}";
+    }
+
+    // ==========================================================
+    // Stores / POS
+    // ==========================================================
+    private void createStore(HttpExchange ex, String body) throws IOException {
+        JsonObject in = JsonParser.parseString(body).getAsJsonObject();
+        String extId = str(in, "external_id");
+        String json = "{\"id\":" + seq.incrementAndGet() + ",\"name\":\"" + str(in, "name")
+                + "\",\"external_id\":\"" + extId + "\",\"date_creation\":\"2025-03-25T12:00:00.000Z\"}";
+        if (stores.putIfAbsent(extId, json) != null) {
+            send(ex, 409, "{\"message\":\"store already exists\",\"status\":409}");
+            return;
+        }
+        send(ex, 201, json);
+    }
+
+    private void createPos(HttpExchange ex, String body) throws IOException {
+        JsonObject in = JsonParser.parseString(body).getAsJsonObject();
+        String extId = str(in, "external_id");
+        long id = seq.incrementAndGet();
+        String json = "{\"id\":" + id + ",\"name\":\"" + str(in, "name") + "\",\"external_id\":\"" + extId
+                + "\",\"store_id\":\"" + str(in, "store_id") + "\",\"fixed_amount\":true,"
+                + "\"qr\":{\"image\":\"https://www.mercadopago.com/instore/merchant/qr/" + id + "/x.png\"}}";
+        if (pos.putIfAbsent(extId, json) != null) {
+            send(ex, 409, "{\"message\":\"pos already exists\",\"status\":409}");
+            return;
+        }
+        send(ex, 201, json);
+    }
+
+    private void search(HttpExchange ex, Map<String, String> src) throws IOException {
+        Map<String, String> q = query(ex.getRequestURI().getRawQuery());
+        int limit = intOf(q.get("limit"), 50);
+        int offset = intOf(q.get("offset"), 0);
+        String extId = q.get("external_id");
+
+        List<String> all = new ArrayList<>();
+        if (extId != null) {
+            String one = src.get(extId);
+            if (one != null) {
+                all.add(one);
+            }
+        } else {
+            all.addAll(src.values());
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"paging\":{\"total\":").append(all.size()).append(",\"offset\":").append(offset)
+                .append(",\"limit\":").append(limit).append("},\"results\":[");
+        for (int i = offset; i < Math.min(all.size(), offset + limit); i++) {
+            if (i > offset) {
+                sb.append(',');
+            }
+            sb.append(all.get(i));
+        }
+        sb.append("]}");
+        send(ex, 200, sb.toString());
+    }
+
+    // ==========================================================
+    // Helpers
+    // ==========================================================
+    private long latencyMs() {
+        long median = options.latencyMedianMs;
+        if (median <= 0) {
+            return 0;
+        }
+        double ms = median * Math.exp(options.latencySigma * ThreadLocalRandom.current().nextGaussian());
+        return Math.min((long) ms, options.latencyMaxMs);
+    }
+
+    private boolean inBurst() {
+        long every = options.burst429EveryMs;
+        if (every <= 0) {
+            return false;
+        }
+        return (System.currentTimeMillis() - startedAt) % every < options.burst429LengthMs;
+    }
+
+    private void send(HttpExchange ex, int code, String json) throws IOException {
+        byStatus.incrementAndGet(Math.min(code, 599));
+        byte[] b = json.getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type", "application/json");
+        ex.sendResponseHeaders(code, b.length);
+        try (OutputStream os = ex.getResponseBody()) {
+            os.write(b);
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void sleep(long ms) {
+        if (ms <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.MILLISECONDS.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Map<String, String> query(String raw) {
+        Map<String, String> q = new ConcurrentHashMap<>();
+        if (raw == null) {
+            return q;
+        }
+        for (String kv : raw.split("&")) {
+            int i = kv.indexOf('=');
+            if (i > 0) {
+                try {
+                    q.put(kv.substring(0, i), java.net.URLDecoder.decode(kv.substring(i + 1), "UTF-8"));
+                } catch (Exception ignored) {
+                }
+            }
+        }
+        return q;
+    }
+
+    private static int intOf(String s, int def) {
+        try {
+            return s == null ? def : Integer.parseInt(s.trim());
+        } catch (Exception e) {
+            return def;
+        }
+    }
+
+    private static String str(JsonObject o, String k) {
+        JsonElement e = o == null ? null : o.get(k);
+        return (e == null || e.isJsonNull()) ? "" : e.getAsString();
+    }
+}
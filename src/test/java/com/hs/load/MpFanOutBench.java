@@ -0,0 +1,248 @@
+package com.hs.load;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.core.MpExecutors;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.logging.Logger;
+
+/**
+ * Ejecutor de fanOut (plataforma vs hilos virtuales) contra MpFakeServer:
+ * calls consultas GET /v1/orders bloqueantes con hasta inFlight en vuelo, vía
+ * MpExecutors.parallel sobre cada ejecutor. Informa tiempo total, throughput,
+ * latencia p50/p99 por llamada y pico de hilos de plataforma.
+ *
+ * Los hilos virtuales salen de META-INF/versions/21: hay que correrlo con
+ * Java 21+ y el jar (no target/classes) en el classpath; si no, "virtual" se
+ * informa como platform.
+ *
+ * Uso (classpath de test, jar primero):
+ * java -cp mercadopagoQR-1.0.jar:test-classes:... com.hs.load.MpFanOutBench
+ * calls=5000 inFlight=2000 orders=200 latencyMs=100 sigma=0.3
+ * kinds=platform,virtual rounds=3
+ */
+public class MpFanOutBench {
+
+    // ==========================================================
+    // Parámetros
+    // ==========================================================
+    public static class Params {
+        public int calls = 5000;
+        public int inFlight = 2000;
+        public int orders = 200;
+        public int rounds = 3;              // la primera es calentamiento
+        public String kinds = MpExecutors.PLATFORM + "," + MpExecutors.VIRTUAL;
+
+        public static Params parse(String[] args) {
+            Params p = new Params();
+            for (String a : args) {
+                int i = a.indexOf('=');
+                if (i <= 0) {
+                    continue;
+                }
+                String k = a.substring(0, i);
+                String v = a.substring(i + 1);
+                switch (k) {
+                    case "calls":
+                        p.calls = Integer.parseInt(v);
+                        break;
+                    case "inFlight":
+                        p.inFlight = Integer.parseInt(v);
+                        break;
+                    case "orders":
+                        p.orders = Integer.parseInt(v);
+                        break;
+                    case "rounds":
+                        p.rounds = Integer.parseInt(v);
+                        break;
+                    case "kinds":
+                        p.kinds = v;
+                        break;
+                    default:
+                }
+            }
+            return p;
+        }
+    }
+
+    public static class Result {
+        public final String kind;
+        public String effectiveKind;
+        public int calls;
+        public int ok;
+        public double seconds;
+        public double p50Ms;
+        public double p99Ms;
+        public int peakThreads;
+        public final Map<Integer, Integer> byRes = new TreeMap<>();
+        public String firstError;
+
+        Result(String kind) {
+            this.kind = kind;
+        }
+
+        public double throughput() {
+            return seconds <= 0 ? 0 : calls / seconds;
+        }
+    }
+
+    // ==========================================================
+    // Ejecución
+    // ==========================================================
+    public static void main(String[] args) throws Exception {
+        Params p = Params.parse(args);
+        MpFakeServer server = new MpFakeServer();
+        MpLoadHarness.configure(server.options, args);
+        server.start();
+        try {
+            System.out.println(format(p, run(p, server)));
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    public static Map<String, Result> run(Params p, MpFakeServer server) {
+        MpBridgeCore core = new MpBridgeCore(config(server, p), Logger.getLogger("MP_FANOUT_BENCH"));
+        List<String> ids = createOrders(core, p.orders, server);
+        List<String> work = new ArrayList<>(p.calls);
+        for (int i = 0; i < p.calls; i++) {
+            work.add(ids.get(i % ids.size()));
+        }
+
+        Map<String, Result> out = new LinkedHashMap<>();
+        for (String kind : p.kinds.split(",")) {
+            kind = kind.trim();
+            ExecutorService ex = MpExecutors.newFanOut(kind);
+            try {
+                Result r = null;
+                for (int round = 0; round < Math.max(1, p.rounds); round++) {
+                    r = measure(kind, core, work, p.inFlight, ex);
+                }
+                out.put(kind, r);
+            } finally {
+                ex.shutdown();
+            }
+        }
+        return out;
+    }
+
+    private static Result measure(String kind, MpBridgeCore core, List<String> work, int inFlight,
+            ExecutorService ex) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        String[] names = new String[1];
+        long t0 = System.nanoTime();
+        String[] firstError = new String[1];
+        List<long[]> calls = MpExecutors.parallel(work, inFlight, id -> {
+            if (names[0] == null) {
+                names[0] = Thread.currentThread().toString();
+            }
+            long t = System.nanoTime();
+            MpResult r = core.getOrder(id);
+            if (r.res != 0 && firstError[0] == null) {
+                firstError[0] = r.res + " " + r.msg;
+            }
+            return new long[]{System.nanoTime() - t, r.res};
+        }, ex);
+        long t1 = System.nanoTime();
+
+        Result r = new Result(kind);
+        r.effectiveKind = String.valueOf(names[0]).contains("mp-vfanout-") ? MpExecutors.VIRTUAL : MpExecutors.PLATFORM;
+        r.calls = work.size();
+        r.seconds = (t1 - t0) / 1e9;
+        r.peakThreads = threads.getPeakThreadCount();
+        long[] lat = new long[calls.size()];
+        for (int i = 0; i < lat.length; i++) {
+            lat[i] = calls.get(i)[0];
+            r.byRes.merge((int) calls.get(i)[1], 1, Integer::sum);
+        }
+        r.ok = r.byRes.getOrDefault(0, 0);
+        r.firstError = firstError[0];
+        Arrays.sort(lat);
+        r.p50Ms = percentile(lat, 50);
+        r.p99Ms = percentile(lat, 99);
+        return r;
+    }
+
+    private static List<String> createOrders(MpBridgeCore core, int n, MpFakeServer server) {
+        long latency = server.options.latencyMedianMs;
+        server.options.latencyMedianMs = 1;
+        try {
+            List<Integer> idx = new ArrayList<>();
+            for (int i = 0; i < Math.max(1, n); i++) {
+                idx.add(i);
+            }
+            String run = Long.toString(System.currentTimeMillis(), 36);
+            return MpExecutors.parallel(idx, 16, i -> {
+                OrderIn in = new OrderIn();
+                in.externalReference = "FANOUT-" + run + "-" + i;
+                in.externalPosId = "CAJA1";
+                in.totalAmount = "100.00";
+                in.description = "Bench fan-out";
+                MpResult r = core.createOrder(in);
+                if (r.res != 0) {
+                    throw new IllegalStateException("No se pudo crear la orden: " + r.msg);
+                }
+                return r.id;
+            });
+        } finally {
+            server.options.latencyMedianMs = latency;
+        }
+    }
+
+    private static MpConfig config(MpFakeServer server, Params params) {
+        int pool = Math.max(20, params.inFlight);
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", "TEST-fanout-bench");
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        p.setProperty("mp.journal.enabled", "false");
+        // el pool HTTP no tiene que ser el cuello: se mide el ejecutor
+        p.setProperty("mp.http.pool.maxTotal", String.valueOf(pool));
+        p.setProperty("mp.http.pool.maxPerRoute", String.valueOf(pool));
+        return MpConfig.fromProperties(p);
+    }
+
+    private static double percentile(long[] sortedNanos, double pct) {
+        if (sortedNanos.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.ceil(pct / 100.0 * sortedNanos.length) - 1;
+        return sortedNanos[Math.max(0, Math.min(i, sortedNanos.length - 1))] / 1e6;
+    }
+
+    public static String format(Params p, Map<String, Result> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "java=%s calls=%d inFlight=%d fanOut()=%s%n",
+                System.getProperty("java.version"), p.calls, p.inFlight, MpExecutors.kind()));
+        sb.append(String.format(Locale.ROOT, "%-9s %-9s %8s %10s %9s %9s %8s %6s%n",
+                "kind", "efectivo", "s", "calls/s", "p50 ms", "p99 ms", "hilos", "ok"));
+        for (Result r : results.values()) {
+            sb.append(String.format(Locale.ROOT, "%-9s %-9s %8.2f %10.0f %9.1f %9.1f %8d %6d%n",
+                    r.kind, r.effectiveKind, r.seconds, r.throughput(), r.p50Ms, r.p99Ms, r.peakThreads, r.ok));
+        }
+        for (Result r : results.values()) {
+            if (r.firstError != null) {
+                sb.append(r.kind).append(": res=").append(r.byRes).append(" primer error: ").append(r.firstError)
+                        .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,63 @@
+package com.hs.load;
+
+import com.hs.core.MpExecutors;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Corrida corta del bench de fanOut (plataforma y virtual) contra el
+ * servidor falso: valida el circuito y la elección del ejecutor, no mide.
+ */
+public class MpFanOutBenchTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 5;
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void bothExecutorsCompleteEveryCall() {
+        MpFanOutBench.Params p = new MpFanOutBench.Params();
+        p.calls = 300;
+        p.inFlight = 40;
+        p.orders = 10;
+        p.rounds = 1;
+
+        Map<String, MpFanOutBench.Result> r = MpFanOutBench.run(p, server);
+
+        assertEquals(2, r.size());
+        for (MpFanOutBench.Result x : r.values()) {
+            assertEquals(300, x.ok, x.kind);
+            assertTrue(x.p50Ms <= x.p99Ms, x.kind);
+        }
+        assertEquals(MpExecutors.PLATFORM, r.get(MpExecutors.PLATFORM).effectiveKind);
+        assertTrue(MpFanOutBench.format(p, r).contains("calls/s"));
+    }
+
+    @Test
+    void platformCanBeForced() {
+        String old = System.getProperty("mp.fanout");
+        try {
+            System.setProperty("mp.fanout", "platform");
+            assertEquals(MpExecutors.PLATFORM, MpExecutors.kind());
+        } finally {
+            if (old == null) {
+                System.clearProperty("mp.fanout");
+            } else {
+                System.setProperty("mp.fanout", old);
+            }
+        }
+    }
+}
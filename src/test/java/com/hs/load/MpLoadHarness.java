@@ -0,0 +1,483 @@
+package com.hs.load;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.dto.SearchIn;
+import com.hs.dto.StoreIn;
+import com.iscobol.rts.IscobolCall;
+import com.iscobol.types.CobolVar;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Carga de punta a punta contra MpFakeServer: N carriles concurrentes
+ * ejecutan una mezcla de acciones sobre MpBridgeCore (target=core) o sobre
+ * MP_QR_HIBRIDO.call con CobolVar falsos (target=call), y al final se informa
+ * throughput y latencias p50/p95/p99/p99.9 por acción.
+ *
+ * Uso (classpath de test):
+ * java com.hs.load.MpLoadHarness lanes=32 seconds=60 warmup=10 target=call
+ * mix=O:40,Q:40,C:5,R:5,LS:5,LP:5 latencyMs=80 sigma=0.5 errorRate=0.01
+ * burst429EveryMs=30000 burst429LengthMs=2000 payAfterMs=2000 rateLimit=true breaker=true
+ * journal=true
+ */
+public class MpLoadHarness {
+
+    // ==========================================================
+    // Parámetros
+    // ==========================================================
+    public static class Params {
+        public int lanes = 16;
+        public int seconds = 30;
+        public int warmupSeconds = 5;
+        public String target = "core";      // core | call
+        public String mix = "O:40,Q:40,C:5,R:5,LS:5,LP:5";
+        public boolean rateLimit = false;   // limitador local (mp.ratelimit.*) con sus defaults
+        public boolean breaker = false;     // circuit breaker (mp.breaker.*) con sus defaults
+        public boolean journal = false;     // journal de create/cancel/refund (mp.journal.*)
+
+        public static Params parse(String[] args) {
+            Params p = new Params();
+            for (String a : args) {
+                int i = a.indexOf('=');
+                if (i <= 0) {
+                    continue;
+                }
+                String k = a.substring(0, i);
+                String v = a.substring(i + 1);
+                switch (k) {
+                    case "lanes":
+                        p.lanes = Integer.parseInt(v);
+                        break;
+                    case "seconds":
+                        p.seconds = Integer.parseInt(v);
+                        break;
+                    case "warmup":
+                        p.warmupSeconds = Integer.parseInt(v);
+                        break;
+                    case "target":
+                        p.target = v;
+                        break;
+                    case "mix":
+                        p.mix = v;
+                        break;
+                    case "rateLimit":
+                        p.rateLimit = Boolean.parseBoolean(v);
+                        break;
+                    case "breaker":
+                        p.breaker = Boolean.parseBoolean(v);
+                        break;
+                    case "journal":
+                        p.journal = Boolean.parseBoolean(v);
+                        break;
+                    default:
+                }
+            }
+            return p;
+        }
+    }
+
+    // ==========================================================
+    // Resultado
+    // ==========================================================
+    public static class Stats {
+        public final String action;
+        public long count;
+        public final Map<Integer, Long> byRes = new TreeMap<>();
+        private long[] nanos = new long[1024];
+
+        Stats(String action) {
+            this.action = action;
+        }
+
+        void record(long ns, int res) {
+            if (count == nanos.length) {
+                nanos = Arrays.copyOf(nanos, nanos.length * 2);
+            }
+            nanos[(int) count++] = ns;
+            byRes.merge(res, 1L, Long::sum);
+        }
+
+        void merge(Stats o) {
+            if (count + o.count > nanos.length) {
+                nanos = Arrays.copyOf(nanos, (int) Math.max(nanos.length * 2L, count + o.count));
+            }
+            System.arraycopy(o.nanos, 0, nanos, (int) count, (int) o.count);
+            count += o.count;
+            o.byRes.forEach((k, v) -> byRes.merge(k, v, Long::sum));
+        }
+
+        /**
+         * Percentil por rango más cercano, en milisegundos.
+         */
+        public double percentileMs(double pct) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] s = Arrays.copyOf(nanos, (int) count);
+            Arrays.sort(s);
+            int idx = (int) Math.ceil(pct / 100.0 * s.length) - 1;
+            return s[Math.max(0, Math.min(idx, s.length - 1))] / 1_000_000.0;
+        }
+    }
+
+    public static class Report {
+        public final Map<String, Stats> byAction = new LinkedHashMap<>();
+        public Stats total = new Stats("TOTAL");
+        public double seconds;
+        public long serverRequests;
+        public final Map<Integer, Long> serverByStatus = new TreeMap<>();
+
+        public double throughput() {
+            return seconds <= 0 ? 0 : total.count / seconds;
+        }
+
+        public String format(Params p) {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format(Locale.ROOT, "target=%s lanes=%d seconds=%.1f ops=%d throughput=%.1f ops/s%n",
+                    p.target, p.lanes, seconds, total.count, throughput()));
+            sb.append(String.format(Locale.ROOT, "%-6s %8s %9s %9s %9s %9s %9s  %s%n",
+                    "accion", "n", "p50(ms)", "p95", "p99", "p99.9", "max", "res"));
+            List<Stats> rows = new ArrayList<>(byAction.values());
+            rows.add(total);
+            for (Stats s : rows) {
+                sb.append(String.format(Locale.ROOT, "%-6s %8d %9.2f %9.2f %9.2f %9.2f %9.2f  %s%n",
+                        s.action, s.count, s.percentileMs(50), s.percentileMs(95), s.percentileMs(99),
+                        s.percentileMs(99.9), s.percentileMs(100), s.byRes));
+            }
+            sb.append("servidor (incluye warmup): requests=").append(serverRequests).append(" http=").append(serverByStatus);
+            return sb.toString();
+        }
+    }
+
+    // ==========================================================
+    // Ejecución
+    // ==========================================================
+    public static void main(String[] args) throws Exception {
+        Params p = Params.parse(args);
+        MpFakeServer server = new MpFakeServer();
+        configure(server.options, args);
+        server.start();
+        try {
+            Report r = run(p, server);
+            System.out.println(r.format(p));
+        } finally {
+            server.stop();
+        }
+        System.exit(0);
+    }
+
+    static void configure(MpFakeServer.Options o, String[] args) {
+        for (String a : args) {
+            int i = a.indexOf('=');
+            if (i <= 0) {
+                continue;
+            }
+            String k = a.substring(0, i);
+            String v = a.substring(i + 1);
+            switch (k) {
+                case "latencyMs":
+                    o.latencyMedianMs = Long.parseLong(v);
+                    break;
+                case "sigma":
+                    o.latencySigma = Double.parseDouble(v);
+                    break;
+                case "errorRate":
+                    o.errorRate = Double.parseDouble(v);
+                    break;
+                case "burst429EveryMs":
+                    o.burst429EveryMs = Long.parseLong(v);
+                    break;
+                case "burst429LengthMs":
+                    o.burst429LengthMs = Long.parseLong(v);
+                    break;
+                case "payAfterMs":
+                    o.payAfterMs = Long.parseLong(v);
+                    break;
+                default:
+            }
+        }
+    }
+
+    public static Report run(Params p, MpFakeServer server) throws Exception {
+        File props = writeProperties(server, p);
+        if (System.getProperty("mp.log.file") == null) {
+            System.setProperty("mp.log.file", new File(props.getParentFile(), "mp-load-bridge.log").getAbsolutePath());
+        }
+        String[] actions = expandMix(p.mix);
+        MpConfig cfg = MpConfig.forPath(props.getAbsolutePath());
+
+        // calentamiento (no se mide)
+        if (p.warmupSeconds > 0) {
+            runLanes(p, cfg, props, actions, p.warmupSeconds * 1000L);
+        }
+
+        long t0 = System.nanoTime();
+        Lane[] lanes = runLanes(p, cfg, props, actions, p.seconds * 1000L);
+        long t1 = System.nanoTime();
+
+        Report r = new Report();
+        r.seconds = (t1 - t0) / 1e9;
+        for (Lane l : lanes) {
+            for (Stats s : l.stats.values()) {
+                r.byAction.computeIfAbsent(s.action, Stats::new).merge(s);
+                r.total.merge(s);
+            }
+        }
+        r.serverRequests = server.requests();
+        for (int code : new int[]{200, 201, 401, 404, 409, 429, 500, 502, 503}) {
+            long n = server.count(code);
+            if (n > 0) {
+                r.serverByStatus.put(code, n);
+            }
+        }
+        props.delete();
+        return r;
+    }
+
+    private static Lane[] runLanes(Params p, MpConfig cfg, File props, String[] actions, long durationMs) throws Exception {
+        long deadline = System.currentTimeMillis() + durationMs;
+        Lane[] lanes = new Lane[p.lanes];
+        CountDownLatch done = new CountDownLatch(p.lanes);
+        for (int i = 0; i < p.lanes; i++) {
+            lanes[i] = "call".equals(p.target) ? new CallLane(i, props) : new CoreLane(i, cfg);
+            Lane lane = lanes[i];
+            Thread t = new Thread(() -> {
+                try {
+                    lane.loop(actions, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "mp-load-" + i);
+            t.setDaemon(true);
+            t.start();
+        }
+        done.await();
+        return lanes;
+    }
+
+    private static String[] expandMix(String mix) {
+        List<String> out = new ArrayList<>();
+        for (String part : mix.split(",")) {
+            String[] kv = part.trim().split(":");
+            int w = kv.length > 1 ? Integer.parseInt(kv[1].trim()) : 1;
+            for (int i = 0; i < w; i++) {
+                out.add(kv[0].trim().toUpperCase());
+            }
+        }
+        return out.toArray(new String[0]);
+    }
+
+    private static File writeProperties(MpFakeServer server, Params params) throws Exception {
+        int lanes = params.lanes;
+        Properties p = new Properties();
+        p.setProperty("mp.ratelimit.enabled", String.valueOf(params.rateLimit));
+        p.setProperty("mp.breaker.enabled", String.valueOf(params.breaker));
+        p.setProperty("mp.journal.enabled", String.valueOf(params.journal));
+        p.setProperty("mp.journal.file", new File(System.getProperty("java.io.tmpdir"), "mp-load.journal").getPath());
+        p.setProperty("mp.etapa", "test");
+        p.setProperty("mp.accessTokenTest", "TEST-load-harness");
+        p.setProperty("mp.userIdTest", "1859061146");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.http.pool.maxTotal", String.valueOf(Math.max(50, lanes * 2)));
+        p.setProperty("mp.http.pool.maxPerRoute", String.valueOf(Math.max(20, lanes * 2)));
+        File f = File.createTempFile("mp-load", ".properties");
+        try (OutputStream out = new FileOutputStream(f)) {
+            p.store(out, "MpLoadHarness");
+        }
+        return f;
+    }
+
+    // ==========================================================
+    // Carriles
+    // ==========================================================
+    private abstract static class Lane {
+        final int id;
+        final Map<String, Stats> stats = new LinkedHashMap<>();
+        final ArrayDeque<String> orders = new ArrayDeque<>();
+        long seq;
+
+        Lane(int id) {
+            this.id = id;
+        }
+
+        void loop(String[] actions, long deadline) {
+            ThreadLocalRandom rnd = ThreadLocalRandom.current();
+            while (System.currentTimeMillis() < deadline) {
+                String action = actions[rnd.nextInt(actions.length)];
+                String orderId = null;
+                if (!"O".equals(action) && !action.startsWith("L") && !"S".equals(action)) {
+                    orderId = pickOrder(action);
+                    if (orderId == null) {
+                        action = "O";
+                    }
+                }
+                long t0 = System.nanoTime();
+                MpResult r;
+                try {
+                    r = execute(action, orderId);
+                } catch (Exception e) {
+                    r = MpResult.error(9, e.toString());
+                }
+                long ns = System.nanoTime() - t0;
+                stats.computeIfAbsent(action, Stats::new).record(ns, r.res);
+                if ("O".equals(action) && r.res == 0 && r.id != null && !r.id.isEmpty()) {
+                    orders.addLast(r.id);
+                    if (orders.size() > 256) {
+                        orders.removeFirst();
+                    }
+                }
+            }
+        }
+
+        // C usa la orden más nueva (aún created); Q y R, la más vieja (ya cobrada)
+        private String pickOrder(String action) {
+            if (orders.isEmpty()) {
+                return null;
+            }
+            return "C".equals(action) ? orders.pollLast() : orders.peekFirst();
+        }
+
+        String nextRef() {
+            return "LOAD-" + id + "-" + (++seq) + "-" + System.nanoTime();
+        }
+
+        abstract MpResult execute(String action, String orderId) throws Exception;
+    }
+
+    private static final class CoreLane extends Lane {
+        private final MpBridgeCore core;
+
+        CoreLane(int id, MpConfig cfg) {
+            super(id);
+            Logger quiet = Logger.getLogger("mp.load.core");
+            quiet.setUseParentHandlers(false);
+            this.core = new MpBridgeCore(cfg, quiet);
+        }
+
+        @Override
+        MpResult execute(String action, String orderId) {
+            switch (action) {
+                case "O": {
+                    OrderIn in = new OrderIn();
+                    in.externalReference = nextRef();
+                    in.externalPosId = "POS" + id;
+                    in.totalAmount = "54.00";
+                    in.description = "Venta mostrador";
+                    return core.createOrder(in);
+                }
+                case "Q":
+                    return core.getOrder(orderId);
+                case "C":
+                    return core.cancelOrder(orderId, null);
+                case "R":
+                    return core.refundOrder(orderId, null);
+                case "S": {
+                    StoreIn in = new StoreIn();
+                    in.name = "Sucursal " + id;
+                    in.externalId = "ST" + nextRef().replace("-", "");
+                    return core.createStore(in);
+                }
+                case "LS":
+                    return core.searchStores(new SearchIn());
+                case "LP":
+                    return core.searchPos(new SearchIn());
+                default:
+                    return MpResult.error(8, "Acción inválida: " + action);
+            }
+        }
+    }
+
+    /**
+     * MP_QR_HIBRIDO.call completo (argv de 33 CobolVar falsos). La clase
+     * está en el paquete por defecto: se instancia por reflexión.
+     */
+    private static final class CallLane extends Lane {
+        private final IscobolCall bridge;
+        private final CobolVar[] argv = new CobolVar[33];
+        private final String path;
+
+        CallLane(int id, File props) {
+            super(id);
+            this.path = props.getAbsolutePath();
+            try {
+                this.bridge = (IscobolCall) Class.forName("MP_QR_HIBRIDO").getDeclaredConstructor().newInstance();
+            } catch (Exception e) {
+                throw new IllegalStateException("No se pudo instanciar MP_QR_HIBRIDO", e);
+            }
+            for (int i = 0; i < argv.length; i++) {
+                argv[i] = fakeVar();
+            }
+        }
+
+        @Override
+        MpResult execute(String action, String orderId) {
+            for (CobolVar v : argv) {
+                v.set("");
+            }
+            argv[0].set(action);
+            argv[10].set(path);
+            switch (action) {
+                case "O":
+                    argv[1].set(nextRef());
+                    argv[2].set("Venta mostrador");
+                    argv[3].set("POS" + id);
+                    argv[6].set("54.00");
+                    break;
+                case "S":
+                    argv[12].set("Sucursal " + id);
+                    argv[13].set("ST" + nextRef().replace("-", ""));
+                    break;
+                default:
+                    if (orderId != null) {
+                        argv[1].set(orderId);
+                    }
+            }
+
+            bridge.call((Object[]) argv);
+
+            MpResult r = MpResult.ok();
+            try {
+                r.res = Integer.parseInt(argv[26].toString().trim());
+            } catch (NumberFormatException e) {
+                r.res = 9;
+            }
+            r.msg = argv[27].toString();
+            r.id = argv[28].toString();
+            return r;
+        }
+    }
+
+    // CobolVar en memoria: set(String) guarda, toString() devuelve
+    static CobolVar fakeVar() {
+        AtomicReference<String> value = new AtomicReference<>("");
+        CobolVar v = mock(CobolVar.class, withSettings().stubOnly());
+        doAnswer(a -> {
+            value.set(String.valueOf((Object) a.getArgument(0)));
+            return null;
+        }).when(v).set(anyString());
+        when(v.toString()).thenAnswer(a -> value.get());
+        return v;
+    }
+}
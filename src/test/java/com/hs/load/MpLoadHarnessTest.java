@@ -0,0 +1,66 @@
+package com.hs.load;
+
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Corrida corta del harness (core y call) contra el servidor falso: valida
+ * que el circuito completo funcione, no mide nada.
+ */
+public class MpLoadHarnessTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 2;
+        server.options.payAfterMs = 100;
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    @Test
+    void coreAndCallTargetsCompleteWithoutTechnicalErrors() throws Exception {
+        for (String target : new String[]{"core", "call"}) {
+            MpLoadHarness.Params p = new MpLoadHarness.Params();
+            p.lanes = 4;
+            p.seconds = 1;
+            p.warmupSeconds = 0;
+            p.target = target;
+
+            MpLoadHarness.Report r = MpLoadHarness.run(p, server);
+
+            assertTrue(r.total.count > 0, target);
+            assertTrue(r.byAction.containsKey("O"), target);
+            assertEquals(r.total.count, r.total.byRes.values().stream().mapToLong(Long::longValue).sum(), target);
+            for (int res : r.total.byRes.keySet()) {
+                assertTrue(res == 0 || res == 2, target + " res=" + res + " " + r.format(p));
+            }
+            assertTrue(r.total.percentileMs(50) <= r.total.percentileMs(99.9));
+        }
+    }
+
+    @Test
+    void fakeServerReturns429DuringBurst() throws Exception {
+        server.options.burst429EveryMs = 60_000;
+        server.options.burst429LengthMs = 60_000;
+
+        MpLoadHarness.Params p = new MpLoadHarness.Params();
+        p.lanes = 2;
+        p.seconds = 1;
+        p.warmupSeconds = 0;
+        p.mix = "O:1";
+
+        MpLoadHarness.Report r = MpLoadHarness.run(p, server);
+
+        assertTrue(server.count(429) > 0);
+        assertEquals(0L, (long) r.total.byRes.getOrDefault(0, 0L));
+    }
+}
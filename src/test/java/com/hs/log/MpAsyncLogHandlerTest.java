@@ -0,0 +1,62 @@
+package com.hs.log;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Handler asincrónico: escritura por lotes, rotación por tamaño y ring buffer.
+ */
+public class MpAsyncLogHandlerTest {
+
+    @Test
+    void writesRecordsAndRotatesBySize() throws Exception {
+        File dir = Files.createTempDirectory("mplog").toFile();
+        File f = new File(dir, "bridge.log");
+
+        MpAsyncLogHandler h = new MpAsyncLogHandler(f, 1024, 4096, 3, false,
+                MpAsyncLogHandler.WhenFull.BLOCK, 1000);
+        try {
+            for (int i = 0; i < 200; i++) {
+                LogRecord r = new LogRecord(Level.INFO, "linea " + i + " xxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxxx");
+                r.setLoggerName("TEST");
+                h.publish(r);
+                if (i % 20 == 19) {
+                    h.flush(); // un lote por cada 20 (la rotación se evalúa por lote)
+                }
+            }
+            h.flush();
+        } finally {
+            h.close();
+        }
+
+        assertEquals(200, h.writtenCount());
+        assertEquals(0, h.droppedCount());
+        assertTrue(f.exists());
+        assertTrue(new File(dir, "bridge.log.1").exists(), "debería haber rotado");
+        assertFalse(new File(dir, "bridge.log.4").exists(), "maxFiles=3");
+        String last = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+        assertTrue(last.contains("linea 199"));
+        assertTrue(last.contains("INFO [TEST]"));
+    }
+
+    @Test
+    void ringBufferRejectsWhenFullAndKeepsOrder() {
+        MpRingBuffer<Integer> q = new MpRingBuffer<>(4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(q.offer(i));
+        }
+        assertFalse(q.offer(99));
+        assertEquals(Integer.valueOf(0), q.poll());
+        assertTrue(q.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(Integer.valueOf(i), q.poll());
+        }
+        assertNull(q.poll());
+        assertTrue(q.isEmpty());
+    }
+}
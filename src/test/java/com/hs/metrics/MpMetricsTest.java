@@ -0,0 +1,106 @@
+package com.hs.metrics;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Histograma HDR y registro de métricas HTTP / core con su vista JMX.
+ */
+public class MpMetricsTest {
+
+    @Test
+    void histogramPercentilesStayWithinBucketError() {
+        MpHistogram h = new MpHistogram();
+        for (int i = 1; i <= 10000; i++) {
+            h.record(i);
+        }
+        MpHistogram.Snapshot s = h.snapshot();
+        assertEquals(10000, s.count);
+        assertEquals(10000, s.maxMicros);
+        assertEquals(5000.5, s.meanMicros(), 0.001);
+        assertEquals(5000, s.percentile(50), 5000 * 0.035);
+        assertEquals(9900, s.percentile(99), 9900 * 0.035);
+        assertEquals(10000, s.percentile(100));
+        for (long v = 0; v < 1L << 36; v = v * 3 + 1) {
+            int i = MpHistogram.index(v);
+            assertTrue(MpHistogram.highestEquivalent(i) >= v, "v=" + v);
+            assertTrue(i == 0 || MpHistogram.highestEquivalent(i - 1) < v, "v=" + v);
+        }
+
+        h.reset();
+        assertEquals(0, h.snapshot().count);
+        assertEquals(0, h.snapshot().percentile(99));
+    }
+
+    @Test
+    void recordsHttpAndCoreOperationsAndPublishesMBeans() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", ex -> {
+            byte[] b = "{\"results\":[]}".getBytes(StandardCharsets.UTF_8);
+            ex.sendResponseHeaders(ex.getRequestURI().getPath().startsWith("/pos") ? 200 : 404, b.length);
+            try (OutputStream os = ex.getResponseBody()) {
+                os.write(b);
+            }
+        });
+        server.start();
+        try {
+            Properties p = new Properties();
+            p.setProperty("mp.accessTokenTest", "TEST-metrics");
+            p.setProperty("mp.userIdTest", "1");
+            p.setProperty("mp.baseUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+            p.setProperty("mp.retry.maxAttempts", "1");
+            p.setProperty("mp.ratelimit.enabled", "false");
+            p.setProperty("mp.metrics.dumpSeconds", "0");
+            MpConfig cfg = MpConfig.fromProperties(p);
+            MpMetrics.ensureStarted(cfg, Logger.getLogger("test"));
+            MpBridgeCore core = new MpBridgeCore(cfg, Logger.getLogger("test"));
+
+            long before = count(MpMetrics.endpoint("searchPos"));
+            long bytesIn = MpMetrics.bytesIn();
+            MpResult r = core.searchPos(10, 0, null);
+            assertEquals(0, r.res);
+            MpResult s = core.searchStores("1", 10, 0, null);
+            assertEquals(5, s.res);
+
+            MpStats http = MpMetrics.endpoint("searchPos");
+            assertEquals(before + 1, http.getCount());
+            assertTrue(http.codeCounts().get("200") >= 1);
+            assertTrue(MpMetrics.endpoint("searchStores").codeCounts().get("404") >= 1);
+            assertTrue(MpMetrics.operation("searchStores").codeCounts().get("res=5") >= 1);
+            assertTrue(MpMetrics.bytesIn() - bytesIn >= 2 * "{\"results\":[]}".length());
+            assertTrue(MpMetrics.poolLease().snapshot().count >= 2);
+
+            MBeanServer mbs = ManagementFactory.getPlatformMBeanServer();
+            ObjectName op = new ObjectName(MpMetrics.JMX_DOMAIN + ":type=Operation,name=\"searchPos\"");
+            assertTrue((Long) mbs.getAttribute(op, "Count") >= 1);
+            ObjectName bridge = new ObjectName(MpMetrics.JMX_DOMAIN + ":type=Bridge,name=\"MpBridge\"");
+            assertTrue(((String) mbs.getAttribute(bridge, "Report")).contains("searchPos count="));
+
+            File f = File.createTempFile("mp-metrics", ".txt");
+            MpMetrics.dump(f);
+            String dumped = new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
+            assertTrue(dumped.contains("[operaciones]") && dumped.contains("searchStores count="), dumped);
+            f.delete();
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static long count(MpStats s) {
+        return s == null ? 0 : s.getCount();
+    }
+}
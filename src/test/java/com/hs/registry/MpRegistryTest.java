@@ -0,0 +1,131 @@
+package com.hs.registry;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.core.MpExecutors;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.load.MpFakeServer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Registro de stores/POS: paginado completo, índices y altas incrementales
+ * contra el servidor falso.
+ */
+public class MpRegistryTest {
+
+    private MpFakeServer server;
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 0;
+        server.start();
+    }
+
+    @AfterEach
+    void stop() {
+        server.stop();
+    }
+
+    private MpBridgeCore core(String token, boolean validateOrders) {
+        Properties p = new Properties();
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.registry.validateOrders", String.valueOf(validateOrders));
+        return new MpBridgeCore(MpConfig.fromProperties(p), Logger.getLogger("test"));
+    }
+
+    @Test
+    void syncsAllPagesAndResolvesFromMemory() throws Exception {
+        MpBridgeCore seed = core("TEST-registry-seed", false);
+        List<Integer> stores = new ArrayList<>();
+        for (int i = 0; i < 130; i++) {
+            stores.add(i);
+        }
+        MpExecutors.parallel(stores, 8, i -> {
+            MpResult s = seed.createStore(store(i));
+            assertEquals(0, s.res, s.msg);
+            for (int j = 0; j < 2; j++) {
+                assertEquals(0, seed.createPos("Caja " + i + "-" + j, "POS-" + i + "-" + j,
+                        Long.parseLong(s.id), null).res);
+            }
+            return s.id;
+        });
+
+        MpBridgeCore core = core("TEST-registry-1", false);
+        long before = server.requests();
+        MpResult sync = core.syncRegistry();
+        assertEquals(0, sync.res, sync.msg);
+        assertTrue(sync.msg.contains("stores=130 pos=260"), sync.msg);
+        assertEquals(3 + 6, server.requests() - before, "una búsqueda por página");
+
+        before = server.requests();
+        MpResult pos = core.lookupPos("POS-7-1");
+        assertEquals(0, pos.res);
+        assertEquals("pos", pos.status);
+        assertTrue(pos.rawJson().contains("\"external_id\":\"POS-7-1\""), pos.rawJson());
+        MpResult store = core.lookupStore("SUC-7");
+        assertEquals(0, store.res);
+        assertEquals(store.id, core.lookupStoreByName("sucursal 7").id);
+        assertEquals(2, core.posOfStore(store.id).size());
+        assertEquals(before, server.requests(), "todo desde memoria");
+
+        // alta por el puente: entra al índice sin volver a paginar
+        MpResult created = core.createPos("Caja nueva", "POS-NEW", Long.parseLong(store.id), null);
+        before = server.requests();
+        assertEquals(created.id, core.lookupPos("POS-NEW").id);
+        assertEquals(3, core.posOfStore(store.id).size());
+        assertEquals(before, server.requests());
+
+        // no está en memoria: una búsqueda puntual
+        MpResult missing = core.lookupPos("NOPE");
+        assertEquals(2, missing.res);
+        assertEquals(before + 1, server.requests());
+
+        // O con un POS inexistente no llega a MP
+        MpBridgeCore validating = core("TEST-registry-1", true);
+        OrderIn in = new OrderIn();
+        in.externalReference = "REF-REG";
+        in.externalPosId = "POS-X";
+        in.totalAmount = "10.00";
+        MpResult o = validating.createOrder(in);
+        assertEquals(4, o.res);
+        assertTrue(o.msg.contains("POS-X"), o.msg);
+        in.externalPosId = "POS-7-0";
+        assertEquals(0, validating.createOrder(in).res);
+    }
+
+    @Test
+    void failedPageKeepsPreviousIndex() throws Exception {
+        MpBridgeCore core = core("TEST-registry-2", false);
+        for (String ext : Arrays.asList("A", "B")) {
+            assertEquals(0, core.createStore(store(ext)).res);
+        }
+        assertEquals(0, core.syncRegistry().res);
+
+        server.options.errorRate = 1.0;
+        MpResult failed = core.syncRegistry();
+        assertEquals(5, failed.res, failed.msg);
+        server.options.errorRate = 0;
+        assertEquals(0, core.lookupStore("SUC-A").res, "sigue el índice anterior");
+    }
+
+    private static com.hs.dto.StoreIn store(Object i) {
+        com.hs.dto.StoreIn in = new com.hs.dto.StoreIn();
+        in.name = "Sucursal " + i;
+        in.externalId = "SUC-" + i;
+        return in;
+    }
+}
@@ -0,0 +1,188 @@
+package com.hs.tenant;
+
+import com.hs.bridge.MpBridgeActions;
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.dto.OrderIn;
+import com.hs.http.MpHttpTransport;
+import com.hs.load.MpFakeServer;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Dos cuentas de MP en la misma JVM: un core y un pool por tenant, cada uno
+ * con su token, resolución por ruta o "tenant:&lt;id&gt;", core nuevo si
+ * cambia el archivo y un mp.tenant.id repetido rechazado.
+ */
+public class MpTenantRegistryTest {
+
+    private MpFakeServer server;
+    private File norte;
+    private File sur;
+    private File base;
+    private final Logger logger = Logger.getLogger("test");
+
+    @BeforeEach
+    void start() throws Exception {
+        server = new MpFakeServer();
+        server.options.latencyMedianMs = 1;
+        server.start();
+        norte = props("NORTE", "TEST-tenant-norte", 3);
+        sur = props("SUR", "TEST-tenant-sur", 7);
+        Properties b = new Properties();
+        b.setProperty("mp.tenant.SUR.config", sur.getPath());
+        base = write(b);
+    }
+
+    @AfterEach
+    void stop() {
+        MpHttpTransport.shutdown(MpConfig.forPath(norte.getPath()));
+        MpHttpTransport.shutdown(MpConfig.forPath(sur.getPath()));
+        server.stop();
+        norte.delete();
+        sur.delete();
+        base.delete();
+    }
+
+    private File props(String id, String token, int maxTotal) throws Exception {
+        Properties p = new Properties();
+        p.setProperty("mp.tenant.id", id);
+        p.setProperty("mp.accessTokenTest", token);
+        p.setProperty("mp.userIdTest", "1");
+        p.setProperty("mp.baseUrl", server.baseUrl());
+        p.setProperty("mp.retry.maxAttempts", "1");
+        p.setProperty("mp.ratelimit.enabled", "false");
+        p.setProperty("mp.breaker.enabled", "false");
+        p.setProperty("mp.journal.enabled", "false");
+        p.setProperty("mp.config.recheckSeconds", "0");
+        p.setProperty("mp.http.pool.maxTotal", String.valueOf(maxTotal));
+        return write(p);
+    }
+
+    private static File write(Properties p) throws Exception {
+        File f = File.createTempFile("mp-tenant", ".properties");
+        try (OutputStream os = new FileOutputStream(f)) {
+            p.store(os, null);
+        }
+        return f;
+    }
+
+    private static OrderIn order(String ref) {
+        OrderIn in = new OrderIn();
+        in.externalReference = ref;
+        in.externalPosId = "CAJA1";
+        in.totalAmount = "10.00";
+        return in;
+    }
+
+    @Test
+    void eachTenantKeepsItsOwnCoreTokenAndPool() {
+        MpTenantRegistry reg = new MpTenantRegistry();
+        MpConfig n = reg.config(norte.getPath(), null);
+        MpConfig s = reg.config("tenant:SUR", base.getPath());
+        assertEquals("NORTE", n.tenant());
+        assertEquals("SUR", s.tenant());
+        assertSame(n, reg.config(norte.getPath(), null));
+
+        MpBridgeCore coreN = reg.core(n, logger);
+        MpBridgeCore coreS = reg.core(s, logger);
+        assertNotSame(coreN, coreS);
+        assertSame(coreN, reg.core(n, logger));
+        assertSame(coreS, reg.core(reg.config("tenant:SUR", base.getPath()), logger));
+        assertEquals(2, reg.size());
+
+        assertNotSame(MpHttpTransport.forConfig(n), MpHttpTransport.forConfig(s));
+        assertEquals(3, MpHttpTransport.forConfig(n).stats().getMax());
+        assertEquals(7, MpHttpTransport.forConfig(s).stats().getMax());
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, coreN.createOrder(order("N-" + i)).res);
+        }
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, coreS.createOrder(order("S-" + i)).res);
+        }
+        assertEquals(5, server.requests("TEST-tenant-norte"));
+        assertEquals(3, server.requests("TEST-tenant-sur"));
+
+        assertTrue(reg.remove("NORTE"));
+        assertEquals(1, reg.size());
+        assertNotSame(coreN, reg.core(n, logger));
+    }
+
+    @Test
+    void changedFileBuildsNewCoreAndUnknownTenantFails() throws Exception {
+        MpTenantRegistry reg = new MpTenantRegistry();
+        MpConfig before = reg.config(norte.getPath(), null);
+        MpBridgeCore first = reg.core(before, logger);
+
+        Properties p = new Properties();
+        try (InputStream in = new FileInputStream(norte)) {
+            p.load(in);
+        }
+        p.setProperty("mp.timeout.socket", "15000");
+        try (OutputStream os = new FileOutputStream(norte)) {
+            p.store(os, null);
+        }
+        assertTrue(norte.setLastModified(norte.lastModified() + 2000));
+
+        MpConfig after = reg.config(norte.getPath(), null);
+        assertNotSame(before, after);
+        assertEquals("NORTE", after.tenant());
+        assertNotSame(first, reg.core(after, logger));
+        assertEquals(1, reg.size());
+
+        assertThrows(IllegalArgumentException.class, () -> reg.config("tenant:NADIE", base.getPath()));
+        String[] in = new String[MpBridgeActions.IN_FIELDS];
+        Arrays.fill(in, "");
+        in[MpBridgeActions.I_ACCION] = "Q";
+        in[MpBridgeActions.I_EXT_REF] = "ORD-X";
+        in[MpBridgeActions.I_PATH] = "tenant:NADIE";
+        MpResult r = MpBridgeActions.run(in, base.getPath(), logger);
+        assertEquals(9, r.res);
+        assertTrue(r.msg.contains("NADIE"), r.msg);
+    }
+
+    @Test
+    void duplicateTenantIdIsRejectedAndPoolsFollowTheAccount() throws Exception {
+        File copia = props("NORTE", "TEST-tenant-otra", 2);
+        try {
+            MpTenantRegistry reg = new MpTenantRegistry();
+            MpBridgeCore first = reg.core(reg.config(norte.getPath(), null), logger);
+            MpConfig dup = reg.config(copia.getPath(), null);
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> reg.core(dup, logger));
+            assertTrue(e.getMessage().contains("NORTE"), e.getMessage());
+            assertSame(first, reg.core(reg.config(norte.getPath(), null), logger));
+            assertEquals(1, reg.size());
+
+            // mismo tenant ("memory"), distinto token: cada cuenta su pool
+            Properties a = new Properties();
+            a.setProperty("mp.accessTokenTest", "TEST-pool-a");
+            Properties b = new Properties();
+            b.setProperty("mp.accessTokenTest", "TEST-pool-b");
+            MpConfig ca = MpConfig.fromProperties(a);
+            MpConfig cb = MpConfig.fromProperties(b);
+            assertEquals(ca.tenant(), cb.tenant());
+            try {
+                assertNotSame(MpHttpTransport.forConfig(ca), MpHttpTransport.forConfig(cb));
+                assertSame(MpHttpTransport.forConfig(ca), MpHttpTransport.forConfig(MpConfig.fromProperties(a)));
+            } finally {
+                MpHttpTransport.shutdown(ca);
+                MpHttpTransport.shutdown(cb);
+            }
+        } finally {
+            MpHttpTransport.shutdown(MpConfig.forPath(copia.getPath()));
+            copia.delete();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.hs.webhook;
+
+import com.hs.config.MpConfig;
+import com.hs.core.MpBridgeCore;
+import com.hs.dto.MpResult;
+import com.hs.http.MpHttp;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+import java.util.logging.Logger;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import static org.junit.jupiter.api.Assertions.*;
+import org.junit.jupiter.api.Test;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * POST local de notificaciones de ejemplo -> cache -> getOrder sin API.
+ */
+public class MpWebhookServerTest {
+
+    private static final String SAMPLE = "{\"action\":\"order.processed\",\"type\":\"order\",\"data\":{"
+            + "\"id\":\"ORD01WEBHOOKTEST\",\"status\":\"processed\",\"status_detail\":\"accredited\",\"version\":3,"
+            + "\"transactions\":{\"payments\":[{\"id\":\"PAY01X\",\"status\":\"processed\"}]}}}";
+
+    @Test
+    void notificationFeedsCacheAndPaymentIsConfirmedWithApi() throws Exception {
+        MpOrderStatusCache cache = new MpOrderStatusCache(60000, 100);
+        MpWebhookServer server = new MpWebhookServer(cache, null, Logger.getLogger("test"));
+        int port = server.start("127.0.0.1", 0, "/mp/webhook");
+        String pending = SAMPLE.replace("ORD01WEBHOOKTEST", "ORD02WEBHOOKTEST")
+                .replace("processed\",\"status_detail\":\"accredited", "action_required\",\"status_detail\":\"waiting_payment")
+                .replace("\"status\":\"processed\"}]", "\"status\":\"action_required\"}]");
+        try {
+            assertEquals(200, post(port, SAMPLE));
+            // versión vieja no pisa la nueva
+            assertEquals(200, post(port, SAMPLE.replace("\"version\":3", "\"version\":1").replace("processed\",\"status_detail", "created\",\"status_detail")));
+            assertEquals(200, post(port, pending));
+            assertEquals(400, post(port, "{no es json"));
+        } finally {
+            server.stop();
+        }
+        assertEquals("processed", cache.getFresh("ORD01WEBHOOKTEST").status);
+
+        Properties p = new Properties();
+        p.setProperty("mp.webhook.enabled", "true");
+        MpHttp http = mock(MpHttp.class);
+        when(http.get(anyString(), eq("/v1/orders/ORD01WEBHOOKTEST"))).thenReturn(new MpHttp.MpHttpResponse(200,
+                "{\"id\":\"ORD01WEBHOOKTEST\",\"status\":\"processed\",\"status_detail\":\"accredited\","
+                + "\"transactions\":{\"payments\":[{\"id\":\"PAY01X\",\"status\":\"processed\"}]}}"));
+        MpBridgeCore core = new MpBridgeCore(MpConfig.fromProperties(p), http, cache);
+
+        // estado intermedio: desde memoria, sin API
+        MpResult r = core.getOrder("ORD02WEBHOOKTEST");
+        assertEquals(0, r.res);
+        assertEquals("action_required", r.status);
+        assertEquals("waiting_payment", r.statusDetail);
+        verify(http, never()).get(anyString(), anyString());
+
+        // pago: se confirma con GET antes de informarlo
+        r = core.getOrder("ORD01WEBHOOKTEST");
+        assertEquals(0, r.res);
+        assertEquals("processed", r.status);
+        assertEquals("PAY01X", r.paymentId);
+        verify(http, times(1)).get(anyString(), eq("/v1/orders/ORD01WEBHOOKTEST"));
+
+        // estado intermedio viejo (se pudo perder el webhook de "processed"): a la API
+        p.setProperty("mp.webhook.pendingFreshMs", "0");
+        when(http.get(anyString(), eq("/v1/orders/ORD02WEBHOOKTEST"))).thenReturn(new MpHttp.MpHttpResponse(200,
+                "{\"id\":\"ORD02WEBHOOKTEST\",\"status\":\"processed\"}"));
+        Thread.sleep(5);
+        r = new MpBridgeCore(MpConfig.fromProperties(p), http, cache).getOrder("ORD02WEBHOOKTEST");
+        assertEquals("processed", r.status);
+        verify(http, times(1)).get(anyString(), eq("/v1/orders/ORD02WEBHOOKTEST"));
+    }
+
+    @Test
+    void eachAccountHasItsOwnStatusCache() {
+        Properties a = new Properties();
+        a.setProperty("mp.accessTokenTest", "TEST-cache-a");
+        Properties b = new Properties();
+        b.setProperty("mp.accessTokenTest", "TEST-cache-b");
+        MpOrderStatusCache ca = MpOrderStatusCache.forConfig(MpConfig.fromProperties(a));
+        MpOrderStatusCache cb = MpOrderStatusCache.forConfig(MpConfig.fromProperties(b));
+        assertNotSame(ca, cb);
+        assertSame(ca, MpOrderStatusCache.forConfig(MpConfig.fromProperties(a)));
+
+        ca.put(new MpOrderStatusCache.Entry("ORD-A", "created", "", "", "", 1, "{}", System.currentTimeMillis()));
+        assertNotNull(ca.getFresh("ORD-A"));
+        assertNull(cb.getFresh("ORD-A"));
+    }
+
+    @Test
+    void checksSignatureWhenSecretConfigured() throws Exception {
+        MpOrderStatusCache cache = new MpOrderStatusCache(60000, 100);
+        MpWebhookServer server = new MpWebhookServer(cache, "s3cr3t", null);
+        int port = server.start("127.0.0.1", 0, "/hook");
+        try {
+            HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/hook").openConnection();
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty("x-signature", "ts=1,v1=deadbeef");
+            try (OutputStream os = c.getOutputStream()) {
+                os.write(SAMPLE.getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(401, c.getResponseCode());
+            assertNull(cache.getFresh("ORD01WEBHOOKTEST"));
+
+            // firma correcta (hex en mayúsculas también vale)
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec("s3cr3t".getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
+            StringBuilder v1 = new StringBuilder();
+            for (byte b : mac.doFinal("id:ord01webhooktest;request-id:REQ1;ts:1;".getBytes(StandardCharsets.UTF_8))) {
+                v1.append(String.format("%02X", b));
+            }
+            c = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/hook").openConnection();
+            c.setRequestMethod("POST");
+            c.setDoOutput(true);
+            c.setRequestProperty("x-request-id", "REQ1");
+            c.setRequestProperty("x-signature", "ts=1,v1=" + v1);
+            try (OutputStream os = c.getOutputStream()) {
+                os.write(SAMPLE.getBytes(StandardCharsets.UTF_8));
+            }
+            assertEquals(200, c.getResponseCode());
+            assertEquals("processed", cache.getFresh("ORD01WEBHOOKTEST").status);
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    void busyPortIsRetriedLaterInsteadOfDisablingWebhooks() throws Exception {
+        ServerSocket busy = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        Properties p = new Properties();
+        p.setProperty("mp.webhook.enabled", "true");
+        p.setProperty("mp.webhook.secret", "s3cr3t");
+        p.setProperty("mp.webhook.port", String.valueOf(busy.getLocalPort()));
+        p.setProperty("mp.webhook.retryMs", "100");
+        MpConfig cfg = MpConfig.fromProperties(p);
+        try {
+            MpWebhookServer.ensureStarted(cfg, null);
+            assertFalse(MpWebhookServer.running(cfg));
+            busy.close();
+            MpWebhookServer.ensureStarted(cfg, null); // dentro del backoff: no reintenta
+            assertFalse(MpWebhookServer.running(cfg));
+            Thread.sleep(150);
+            MpWebhookServer.ensureStarted(cfg, null);
+            assertTrue(MpWebhookServer.running(cfg));
+        } finally {
+            busy.close();
+            MpWebhookServer.stopAll();
+        }
+    }
+
+    private static int post(int port, String body) throws Exception {
+        HttpURLConnection c = (HttpURLConnection) new URL("http://127.0.0.1:" + port + "/mp/webhook").openConnection();
+        c.setRequestMethod("POST");
+        c.setDoOutput(true);
+        c.setRequestProperty("Content-Type", "application/json");
+        try (OutputStream os = c.getOutputStream()) {
+            os.write(body.getBytes(StandardCharsets.UTF_8));
+        }
+        return c.getResponseCode();
+    }
+}